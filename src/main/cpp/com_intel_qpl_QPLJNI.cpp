@@ -6,7 +6,27 @@
 
 #include "com_intel_qpl_QPLJNI.h"
 
+#include <dirent.h>
+#include <sched.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#include <unistd.h>
+
+#include <algorithm>
+#include <cerrno>
+#include <chrono>
+#include <climits>
+#include <cstdint>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
 #include <memory>
+#include <thread>
+#include <vector>
+
+#if defined(__x86_64__) || defined(__i386__)
+#include <immintrin.h>
+#endif
 
 #include "qpl/qpl.h"
 #include "util.h"
@@ -28,21 +48,65 @@ static constexpr const char *INPUT_INVALID =
     "Input byteArray or buffer is invalid";
 static constexpr const char *OUTPUT_INVALID =
     "Output byteArray or buffer is invalid";
+static constexpr const char *OUTPUT_TOO_LARGE =
+    "Decompressed data exceeds the maximum array size";
+static constexpr const char *MEMORY_MAPPING_ERROR =
+    "Failed to map memory for a direct buffer";
+
+// Largest output a Java byte array can hold.
+static constexpr jlong MAX_ARRAY_LENGTH = INT_MAX - 8;
+// Smallest output buffer allocated when the size hint is not usable.
+static constexpr jlong MIN_OUTPUT_LENGTH = 4096;
+
+// Backoff policy codes, must match QPLUtils.BackoffPolicies
+static constexpr jint BACKOFF_SPIN = 0;
+static constexpr jint BACKOFF_YIELD = 1;
+static constexpr jint BACKOFF_EXPONENTIAL = 2;
+static constexpr jlong INITIAL_BACKOFF_NANOS = 1000;
+
+// Outcome codes of an operation, must match QPLUtils.Statuses
+static constexpr jint STATUS_OK = 0;
+static constexpr jint STATUS_OUTPUT_OVERFLOW = 1;
+static constexpr jint STATUS_QUEUES_BUSY = 2;
+static constexpr jint STATUS_ERROR = 3;
+// Returned by poll while the submitted operation is still being processed.
+static constexpr jint STATUS_PENDING = -1;
+
+// Transparent huge page size, mappings that use huge pages are aligned to it.
+static constexpr size_t HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+// MPOL_PREFERRED from <numaif.h>, which would add a dependency on libnuma.
+static constexpr int NUMA_POLICY_PREFERRED = 1;
+static constexpr int MAX_NUMA_NODES = 1024;
 
 static int src_chunk_len;
 static int idxd_wq_max_transfer_bytes;
 static int estimated_dst_chunk_len;
+// Chunk sizes for the devices of each NUMA node, 0 if the node has no known
+// device. Set once at initialization when the device topology is discovered.
+static int node_max_transfer_bytes[MAX_NUMA_NODES];
+static int node_estimated_dst_chunk_len[MAX_NUMA_NODES];
+static bool device_nodes_known = false;
+// The NUMA node of each CPU, -1 if unknown. Read once at initialization.
+static std::vector<jint> cpu_nodes;
 
 // Global caching
 static jclass qplJob_class;
 static jfieldID compression_level_id;
 static jfieldID retry_count_id;
+static jfieldID retry_timeout_id;
+static jfieldID backoff_policy_id;
+static jfieldID backoff_cap_id;
 static jfieldID jobBuffer_id;
 static jfieldID operation_type_id;
 static jfieldID flags_id;
 static jfieldID bytes_read_id;
 static jfieldID bytes_written_id;
 static jfieldID output_insufficient_id;
+static jfieldID crc_id;
+static jfieldID numa_node_id;
+static jfieldID submitted_numa_node_id;
+static jfieldID status_code_id;
+static jfieldID busy_count_id;
 
 /*
  * This function returns the minimum of two numbers.
@@ -52,6 +116,184 @@ static jfieldID output_insufficient_id;
  */
 static int min(int length, int remaining) { return (length > remaining) ? remaining : length; }
 
+/*
+ * Tracks how long a job may keep retrying while the work queues are busy and
+ * how it waits between the attempts. If a retry timeout is configured, retries
+ * are bounded by the elapsed time instead of the retry count.
+ */
+struct retry_budget {
+  jint retry_count;
+  jlong timeout_nanos;
+  std::chrono::steady_clock::time_point start;
+  jint backoff_policy;
+  jlong backoff_cap_nanos;
+  jlong backoff_nanos;
+  // Number of attempts that found the work queues busy.
+  jint busy_count;
+  // False while Java arrays are pinned by GetPrimitiveArrayCritical, since the
+  // thread must not block inside a critical region.
+  bool may_block;
+};
+
+/*
+ * Hints the processor that the caller is in a spin-wait loop.
+ */
+static inline void cpu_pause() {
+#if defined(__x86_64__) || defined(__i386__)
+  _mm_pause();
+#endif
+}
+
+/*
+ * Waits before the next attempt according to the configured backoff policy.
+ * The exponential backoff doubles the delay after every attempt, up to the
+ * configured cap. While Java arrays are pinned, blocking would stall the
+ * garbage collector, so the caller spins whatever the policy; when the policy
+ * blocks, QPLJob tries the pinned arrays once, and stages them in direct
+ * buffers to back off only after they found the work queues busy.
+ * @param budget the retry budget of the current operation.
+ */
+static void backoff(retry_budget &budget) {
+  if (!budget.may_block) {
+    cpu_pause();
+    return;
+  }
+  switch (budget.backoff_policy) {
+  case BACKOFF_YIELD:
+    std::this_thread::yield();
+    break;
+  case BACKOFF_EXPONENTIAL:
+    std::this_thread::sleep_for(std::chrono::nanoseconds(budget.backoff_nanos));
+    budget.backoff_nanos = std::min(budget.backoff_nanos * 2, budget.backoff_cap_nanos);
+    break;
+  default:
+    cpu_pause();
+  }
+}
+
+/*
+ * This function checks whether another attempt is allowed after the work
+ * queues reported busy.
+ * @param budget the retry budget of the current operation.
+ * @return true if the job may be resubmitted, false otherwise.
+ */
+static bool can_retry(retry_budget &budget) {
+  if (budget.timeout_nanos > 0) {
+    return std::chrono::steady_clock::now() - budget.start <
+           std::chrono::nanoseconds(budget.timeout_nanos);
+  }
+  budget.retry_count--;
+  return budget.retry_count > 0;
+}
+
+/*
+ * Executes the job, resubmitting it while the work queues are busy and the
+ * retry budget allows it. Between the attempts the caller backs off.
+ * @param job pointer to the qpl_job struct.
+ * @param budget the retry budget of the current operation.
+ * @return qpl_status of the last attempt.
+ */
+static qpl_status execute_with_retry(qpl_job *job, retry_budget &budget) {
+  qpl_status status;
+  budget.backoff_nanos = std::min(INITIAL_BACKOFF_NANOS, budget.backoff_cap_nanos);
+  while (true) {
+    status = qpl_execute_job(job);
+    if (status != QPL_STS_QUEUES_ARE_BUSY_ERR) {
+      return status;
+    }
+    budget.busy_count++;
+    if (!can_retry(budget)) {
+      return status;
+    }
+    backoff(budget);
+  }
+}
+
+/*
+ * This function checks whether the device topology lists a device on a node.
+ * @param numa_node the node.
+ * @return true if a device is known on the node.
+ */
+static bool has_devices(jint numa_node) {
+  return numa_node >= 0 && numa_node < MAX_NUMA_NODES && node_max_transfer_bytes[numa_node] > 0;
+}
+
+/*
+ * Parses a sysfs entry name made of the given prefix and a decimal number.
+ * @param name the entry name, e.g. "node1" or "cpu12".
+ * @param prefix the expected prefix.
+ * @return the number, or -1 if the name does not match.
+ */
+static long parse_sysfs_index(const char *name, const char *prefix) {
+  size_t prefix_length = std::strlen(prefix);
+  if (std::strncmp(name, prefix, prefix_length) != 0 || name[prefix_length] == '\0') {
+    return -1;
+  }
+  char *end = nullptr;
+  long index = std::strtol(name + prefix_length, &end, 10);
+  return *end == '\0' && index >= 0 ? index : -1;
+}
+
+/*
+ * Reads the NUMA node of each CPU from the "cpuN" links of the
+ * /sys/devices/system/node/nodeM directories, so that the node of the calling
+ * CPU is a table lookup. CPUs that are not listed keep node -1.
+ */
+static void init_cpu_nodes() {
+  cpu_nodes.clear();
+  DIR *nodes = opendir("/sys/devices/system/node");
+  if (nodes == nullptr) {
+    return;
+  }
+  while (struct dirent *node_entry = readdir(nodes)) {
+    long node = parse_sysfs_index(node_entry->d_name, "node");
+    if (node < 0 || node >= MAX_NUMA_NODES) {
+      continue;
+    }
+    char path[64];
+    std::snprintf(path, sizeof(path), "/sys/devices/system/node/node%ld", node);
+    DIR *cpus = opendir(path);
+    if (cpus == nullptr) {
+      continue;
+    }
+    while (struct dirent *cpu_entry = readdir(cpus)) {
+      long cpu = parse_sysfs_index(cpu_entry->d_name, "cpu");
+      if (cpu < 0 || cpu >= INT_MAX) {
+        continue;
+      }
+      if (static_cast<size_t>(cpu) >= cpu_nodes.size()) {
+        cpu_nodes.resize(cpu + 1, -1);
+      }
+      cpu_nodes[cpu] = static_cast<jint>(node);
+    }
+    closedir(cpus);
+  }
+  closedir(nodes);
+}
+
+/*
+ * Selects the NUMA node whose devices the job is submitted to. A negative node
+ * stands for the node of the CPU the calling thread runs on right now, when
+ * the device topology is known and shows a device on that node; otherwise the
+ * library picks the devices.
+ * @param job pointer to the qpl_job struct.
+ * @param numa_node the configured node, or a negative value.
+ * @return the selected node, or -1 if the library picks the devices.
+ */
+static jint select_numa_node(qpl_job *job, jint numa_node) {
+  if (numa_node < 0) {
+    numa_node = -1;
+    if (device_nodes_known) {
+      int cpu = sched_getcpu();
+      if (cpu >= 0 && static_cast<size_t>(cpu) < cpu_nodes.size() && has_devices(cpu_nodes[cpu])) {
+        numa_node = cpu_nodes[cpu];
+      }
+    }
+  }
+  job->numa_id = numa_node;
+  return numa_node;
+}
+
 /*
  * Compresses/decompresses a buffer pointed to by the given source pointer and
  * writes it to the destination buffer pointed to by the destination pointer.
@@ -67,14 +309,14 @@ static int min(int length, int remaining) { return (length > remaining) ? remain
  * @param p_output pointer to the output buffer.
  * @param output_pos output buffer position
  * @param output_length length of the output buffer.
- * @param retry_count the number of decompression retries before we give up.
+ * @param budget the retry budget shared by all the chunks of the operation.
  * @return qpl_status (0) on success, non-zero otherwise.
  */
 static qpl_status compress_or_decompress(JNIEnv *env, jclass clazz,
                                          qpl_job *job, uint8_t *p_input,
                                          jint input_pos, jint input_length,
                                          uint8_t *p_output, jint output_pos,
-                                         jint output_length, jint retry_count)
+                                         jint output_length, retry_budget &budget)
 {
 
   if (job->data_ptr.path == qpl_path_software) {
@@ -82,25 +324,34 @@ static qpl_status compress_or_decompress(JNIEnv *env, jclass clazz,
   }
   // initially status will be initialized with qpl error code 57
   qpl_status status = QPL_STS_SIZE_ERR;
-  jint src_chunk_size = job->op == qpl_op_decompress ? idxd_wq_max_transfer_bytes : src_chunk_len;
-  jint dst_chunk_size = job->op == qpl_op_decompress ? idxd_wq_max_transfer_bytes : estimated_dst_chunk_len;
+  jint max_transfer_bytes = idxd_wq_max_transfer_bytes;
+  jint compress_src_chunk_len = src_chunk_len;
+  jint compress_dst_chunk_len = estimated_dst_chunk_len;
+  if (has_devices(job->numa_id)) {
+    max_transfer_bytes = node_max_transfer_bytes[job->numa_id];
+    compress_src_chunk_len = max_transfer_bytes / 2;
+    compress_dst_chunk_len = node_estimated_dst_chunk_len[job->numa_id];
+  }
+  jint src_chunk_size = job->op == qpl_op_decompress ? max_transfer_bytes : compress_src_chunk_len;
+  jint dst_chunk_size = job->op == qpl_op_decompress ? max_transfer_bytes : compress_dst_chunk_len;
 
   jint input_to_consume = input_length;
   jint output_to_fill = output_length;
   jint input_offset = input_pos;
   jint output_offset = output_pos;
 
-  if (input_to_consume < idxd_wq_max_transfer_bytes && output_to_fill < idxd_wq_max_transfer_bytes) {
-    do {
-      status = qpl_execute_job(job);
-      retry_count--;
-    } while (status == QPL_STS_QUEUES_ARE_BUSY_ERR && retry_count > 0);
-    return status;
+  if (input_to_consume < max_transfer_bytes && output_to_fill < max_transfer_bytes) {
+    return execute_with_retry(job, budget);
   }
+  // Only the last chunk of an operation that ends the stream carries the LAST
+  // flag, so a middle piece of a multi-call stream stays open.
+  const bool ends_stream = (job->flags & QPL_FLAG_LAST) != 0;
   while ((input_to_consume > 0) || (job->op == qpl_op_decompress && status == QPL_STS_MORE_OUTPUT_NEEDED && output_to_fill > 0)) {
     jint in_chunk_length;
     if (input_to_consume <= src_chunk_size) {
-      job->flags |= QPL_FLAG_LAST;
+      if (ends_stream) {
+        job->flags |= QPL_FLAG_LAST;
+      }
       in_chunk_length = input_to_consume;
     } else {
       job->flags &= ~QPL_FLAG_LAST;
@@ -114,10 +365,7 @@ static qpl_status compress_or_decompress(JNIEnv *env, jclass clazz,
     job->available_out = out_chunk_length;
 
     // Execute compression operation
-    do {
-      status = qpl_execute_job(job);
-      retry_count--;
-    } while (status == QPL_STS_QUEUES_ARE_BUSY_ERR && retry_count > 0);
+    status = execute_with_retry(job, budget);
 
     input_to_consume = input_length - job->total_in;
     output_to_fill = output_length - job->total_out;
@@ -145,18 +393,43 @@ JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_initValuesAndIDs(JNIEnv *env, j
   qplJob_class = env->FindClass("com/intel/qpl/QPLJob");
   compression_level_id = env->GetFieldID(qplJob_class, "compressionLevel", "I");
   retry_count_id = env->GetFieldID(qplJob_class, "retryCount", "I");
+  retry_timeout_id = env->GetFieldID(qplJob_class, "retryTimeoutNanos", "J");
+  backoff_policy_id = env->GetFieldID(qplJob_class, "backoffPolicyCode", "I");
+  backoff_cap_id = env->GetFieldID(qplJob_class, "backoffCapNanos", "J");
   jobBuffer_id = env->GetFieldID(qplJob_class, "jobBuffer", "Ljava/nio/ByteBuffer;");
   operation_type_id = env->GetFieldID(qplJob_class, "operationType", "I");
   flags_id = env->GetFieldID(qplJob_class, "flags", "I");
   bytes_read_id = env->GetFieldID(qplJob_class, "bytesRead", "I");
   bytes_written_id = env->GetFieldID(qplJob_class, "bytesWritten", "I");
   output_insufficient_id = env->GetFieldID(qplJob_class, "outputInsufficient", "Z");
+  crc_id = env->GetFieldID(qplJob_class, "crc", "I");
+  numa_node_id = env->GetFieldID(qplJob_class, "numaNode", "I");
+  submitted_numa_node_id = env->GetFieldID(qplJob_class, "submittedNumaNode", "I");
+  status_code_id = env->GetFieldID(qplJob_class, "statusCode", "I");
+  busy_count_id = env->GetFieldID(qplJob_class, "busyCount", "I");
+  init_exception_classes(env);
+  init_cpu_nodes();
 
   idxd_wq_max_transfer_bytes=idxd_wq_size;
   src_chunk_len = idxd_wq_size/2;
   estimated_dst_chunk_len = estimated_len;
 }
 
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    setNumaMaxTransferBytes
+ * Signature: (III)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_setNumaMaxTransferBytes(
+    JNIEnv *env, jclass clazz, jint numa_node, jint max_transfer_bytes, jint estimated_len) {
+  if (numa_node < 0 || numa_node >= MAX_NUMA_NODES) {
+    return;
+  }
+  node_max_transfer_bytes[numa_node] = max_transfer_bytes;
+  node_estimated_dst_chunk_len[numa_node] = estimated_len;
+  device_nodes_known = true;
+}
+
 /*
  * Class:     com_intel_qpl_QPLJNI
  * Method:    getQPLJobSize
@@ -192,6 +465,191 @@ JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_initQPLJob(JNIEnv *env,
   }
 }
 
+/*
+ * Maps the status of a completed job to a QPLUtils.Statuses code.
+ * @param job pointer to the qpl_job struct.
+ * @param status qpl_status of the job.
+ * @param output_insufficient set to true if a decompression made progress but
+ * the output could not hold all of it, which is not an error.
+ * @return the outcome code.
+ */
+static jint classify_status(qpl_job *job, qpl_status status, jboolean &output_insufficient) {
+  output_insufficient = JNI_FALSE;
+  if (status == QPL_STS_MORE_OUTPUT_NEEDED) {
+    // A decompression that made progress returns what fits in the output.
+    if (job->op == qpl_op_decompress &&
+        (job->total_in != 0 || job->total_out != 0)) {
+      output_insufficient = JNI_TRUE;
+      return STATUS_OK;
+    }
+    return STATUS_OUTPUT_OVERFLOW;
+  } else if (status == QPL_STS_QUEUES_ARE_BUSY_ERR) {
+    return STATUS_QUEUES_BUSY;
+  } else if (status != QPL_STS_OK) {
+    return STATUS_ERROR;
+  }
+  return STATUS_OK;
+}
+
+// Stores the results of the completed operation of the qpl job in the Java job
+// and returns its outcome as a QPLUtils.Statuses code.
+static jint store_results(JNIEnv *env, jobject javaJob, qpl_job *job, qpl_status status) {
+  jboolean output_insufficient = JNI_FALSE;
+  jint outcome = classify_status(job, status, output_insufficient);
+  env->SetBooleanField(javaJob, output_insufficient_id, output_insufficient);
+  env->SetIntField(javaJob, bytes_read_id, job->total_in);
+  env->SetIntField(javaJob, bytes_written_id, job->total_out);
+  env->SetIntField(javaJob, crc_id, static_cast<jint>(job->crc));
+  env->SetIntField(javaJob, status_code_id, status);
+  return outcome;
+}
+
+// The operation configured on a Java job, read before any Java array is pinned.
+struct job_config {
+  qpl_job *job;
+  qpl_operation operation;
+  jint flags;
+  jint level;
+};
+
+// Reads the operation configured on the Java job into 'config'. Returns false
+// with a pending exception if the operation type is invalid.
+static bool read_job_config(JNIEnv *env, jobject javaJob, job_config &config) {
+  jobject buf_val = env->GetObjectField(javaJob, jobBuffer_id);
+  config.job = reinterpret_cast<qpl_job *>(env->GetDirectBufferAddress(buf_val));
+  config.operation = static_cast<qpl_operation>(env->GetIntField(javaJob, operation_type_id));
+  config.flags = env->GetIntField(javaJob, flags_id);
+  config.level = env->GetIntField(javaJob, compression_level_id);
+  if (config.operation != qpl_op_decompress && config.operation != qpl_op_compress) {
+    throw_exception(env, QPL_OPERATION_ERR);
+    return false;
+  }
+  return true;
+}
+
+// Sets up the qpl job for the configured operation over the given input and
+// output. Makes no JNI call, so it may run while Java arrays are pinned.
+static qpl_job *apply_job_config(const job_config &config, uint8_t *p_input,
+                                 jint input_size, uint8_t *p_output,
+                                 jint output_max_len) {
+  qpl_job *job = config.job;
+
+  // Performing an operation
+  job->next_in_ptr = p_input;
+  job->available_in = input_size;
+  job->next_out_ptr = p_output;
+  job->available_out = output_max_len;
+  job->total_in=0;
+  job->total_out=0;
+  job->op = config.operation;
+  job->flags = config.flags;
+  if (config.operation == qpl_op_compress) {
+    job->level = static_cast<qpl_compression_levels>(config.level);
+  }
+  return job;
+}
+
+// Sets up the qpl job of the Java job for the operation configured on the Java
+// job over the given input and output. Returns the qpl job, or nullptr with a
+// pending exception if the operation type is invalid.
+static qpl_job *configure_job(JNIEnv *env, jobject javaJob, uint8_t *p_input,
+                              jint input_size, uint8_t *p_output,
+                              jint output_max_len) {
+  job_config config;
+  if (!read_job_config(env, javaJob, config)) {
+    return nullptr;
+  }
+  return apply_job_config(config, p_input, input_size, p_output, output_max_len);
+}
+
+// Runs the operation configured on the Java job over the given input and output,
+// and stores the bytes read and written in the Java job. Returns the outcome
+// of the operation as a QPLUtils.Statuses code and the qpl status in 'status',
+// or -1 with a pending exception if the arguments are invalid.
+//
+// Every field of the Java job is read and the arguments are validated before
+// the arrays are pinned, and the arrays are released before any exception is
+// thrown, so no JNI call is made inside the critical region.
+static jint run_job(JNIEnv *env, jclass clazz, jobject javaJob,
+                    jbyteArray input_arr, jobject input_buf, jint input_start,
+                    jint input_size, jbyteArray output_arr,
+                    jobject output_buffer, jint output_start,
+                    jint output_max_len, qpl_status &status) {
+  job_config config;
+  if (!read_job_config(env, javaJob, config)) {
+    return -1;
+  }
+  jint rt = env->GetIntField(javaJob, retry_count_id);
+  jlong retry_timeout = env->GetLongField(javaJob, retry_timeout_id);
+  jint backoff_policy = env->GetIntField(javaJob, backoff_policy_id);
+  jlong backoff_cap = env->GetLongField(javaJob, backoff_cap_id);
+  jint numa_node = env->GetIntField(javaJob, numa_node_id);
+
+  uint8_t *p_input = nullptr;
+  uint8_t *p_output = nullptr;
+  if (input_arr == nullptr) {
+    p_input = input_buf != nullptr
+                  ? reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(input_buf))
+                  : nullptr;
+    if (p_input == nullptr) {
+      throw_exception(env, INPUT_INVALID);
+      return -1;
+    }
+  }
+  if (output_arr == nullptr) {
+    p_output = output_buffer != nullptr
+                   ? reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(output_buffer))
+                   : nullptr;
+    if (p_output == nullptr) {
+      throw_exception(env, OUTPUT_INVALID);
+      return -1;
+    }
+  }
+
+  if (input_arr != nullptr) {
+    p_input = reinterpret_cast<uint8_t *>(env->GetPrimitiveArrayCritical(input_arr, nullptr));
+    if (p_input == nullptr) {
+      throw_exception(env, INPUT_INVALID);
+      return -1;
+    }
+  }
+  if (output_arr != nullptr) {
+    p_output = reinterpret_cast<uint8_t *>(env->GetPrimitiveArrayCritical(output_arr, nullptr));
+    if (p_output == nullptr) {
+      if (input_arr != nullptr) {
+        env->ReleasePrimitiveArrayCritical(input_arr, p_input, JNI_ABORT);
+      }
+      throw_exception(env, OUTPUT_INVALID);
+      return -1;
+    }
+  }
+
+  qpl_job *job = apply_job_config(config, p_input + input_start, input_size,
+                                  p_output + output_start, output_max_len);
+
+  // if queues are busy then retry the task execution until operation count
+  // reaches its retryCount, or until the retry timeout elapses.
+  retry_budget budget = {rt, retry_timeout, std::chrono::steady_clock::now(),
+                         backoff_policy, backoff_cap, 0, 0,
+                         input_arr == nullptr && output_arr == nullptr};
+  numa_node = select_numa_node(job, numa_node);
+
+  status =
+      compress_or_decompress(env, clazz, job, p_input, input_start, input_size,
+                             p_output, output_start, output_max_len, budget);
+
+  if (input_arr != nullptr) {
+    env->ReleasePrimitiveArrayCritical(input_arr, p_input, JNI_ABORT);
+  }
+  if (output_arr != nullptr) {
+    env->ReleasePrimitiveArrayCritical(output_arr, p_output, 0);
+  }
+
+  env->SetIntField(javaJob, submitted_numa_node_id, numa_node);
+  env->SetIntField(javaJob, busy_count_id, budget.busy_count);
+  return store_results(env, javaJob, job, status);
+}
+
 /*
  * Class:     com_intel_qpl_QPLJNI
  * Method:    execute
@@ -202,112 +660,561 @@ JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_execute(
     JNIEnv *env, jclass clazz, jobject javaJob, jbyteArray input_arr,
     jobject input_buf, jint input_start, jint input_size, jbyteArray output_arr,
     jobject output_buffer, jint output_start, jint output_max_len) {
-  uint8_t *p_input = nullptr;
-  uint8_t *p_output = nullptr;
-  jboolean is_copy_src = false;
-  jboolean is_copy_dest = false;
+  qpl_status status = QPL_STS_OK;
+  jint outcome = run_job(env, clazz, javaJob, input_arr, input_buf, input_start,
+                         input_size, output_arr, output_buffer, output_start,
+                         output_max_len, status);
+  switch (outcome) {
+  case STATUS_OK:
+    return env->GetIntField(javaJob, bytes_written_id);
+  case STATUS_OUTPUT_OVERFLOW:
+    throw_ouput_overflow_exception(env, QPL_EXECUTE_JOB_ERROR, status);
+    break;
+  case STATUS_QUEUES_BUSY:
+    throw_queues_busy_exception(env, QPL_EXECUTE_JOB_ERROR, status);
+    break;
+  case STATUS_ERROR:
+    throw_exception(env, QPL_EXECUTE_JOB_ERROR, status);
+    break;
+  }
+  return 0;
+}
 
-  if (input_arr != nullptr) {
-    p_input = reinterpret_cast<uint8_t *>(
-        env->GetPrimitiveArrayCritical(input_arr, &is_copy_src));
-  } else if (input_buf != nullptr) {
-    p_input =
-        reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(input_buf));
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    tryExecute
+ * Signature:
+ * (Lcom/intel/qpl/QPLJob;[BLjava/nio/ByteBuffer;II[BLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_tryExecute(
+    JNIEnv *env, jclass clazz, jobject javaJob, jbyteArray input_arr,
+    jobject input_buf, jint input_start, jint input_size, jbyteArray output_arr,
+    jobject output_buffer, jint output_start, jint output_max_len) {
+  qpl_status status = QPL_STS_OK;
+  return run_job(env, clazz, javaJob, input_arr, input_buf, input_start,
+                 input_size, output_arr, output_buffer, output_start,
+                 output_max_len, status);
+}
+
+// A source or destination fragment of a vectored operation, backed by either a
+// byte array or a direct buffer.
+struct fragment {
+  jbyteArray array;
+  uint8_t *address;
+  jint start;
+  jint length;
+  // Bytes read from or written into the fragment so far.
+  jint done;
+};
+
+// Reads the fragments of one side of a vectored operation. Direct buffer
+// addresses are resolved here, arrays are pinned later by pin_fragments.
+// Returns false with a pending exception if a fragment is invalid.
+static bool read_fragments(JNIEnv *env, jobjectArray arrays, jobjectArray buffers,
+                           jintArray starts, jintArray lengths, jint count,
+                           const char *error, std::vector<fragment> &fragments) {
+  std::vector<jint> start(count), length(count);
+  env->GetIntArrayRegion(starts, 0, count, start.data());
+  env->GetIntArrayRegion(lengths, 0, count, length.data());
+  fragments.resize(count);
+  for (jint i = 0; i < count; i++) {
+    fragment &f = fragments[i];
+    f.array = static_cast<jbyteArray>(env->GetObjectArrayElement(arrays, i));
+    f.address = nullptr;
+    f.start = start[i];
+    f.length = length[i];
+    f.done = 0;
+    if (f.array == nullptr) {
+      jobject buffer = env->GetObjectArrayElement(buffers, i);
+      if (buffer != nullptr) {
+        f.address = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(buffer));
+        env->DeleteLocalRef(buffer);
+      }
+      if (f.address == nullptr) {
+        throw_exception(env, error);
+        return false;
+      }
+    }
   }
+  return true;
+}
 
-  if (p_input == nullptr) {
+static void pin_fragments(JNIEnv *env, std::vector<fragment> &fragments) {
+  for (fragment &f : fragments) {
+    if (f.array != nullptr) {
+      f.address = reinterpret_cast<uint8_t *>(env->GetPrimitiveArrayCritical(f.array, nullptr));
+    }
+  }
+}
+
+static void unpin_fragments(JNIEnv *env, std::vector<fragment> &fragments) {
+  for (auto f = fragments.rbegin(); f != fragments.rend(); ++f) {
+    if (f->array != nullptr) {
+      env->ReleasePrimitiveArrayCritical(f->array, f->address, 0);
+    }
+  }
+}
+
+/*
+ * Runs the operation of the job over the concatenation of the source fragments
+ * into the destination fragments, in order. The FIRST flag of the job applies
+ * to the first step and its LAST flag to the steps over the last source
+ * fragment. A decompression that fills a destination continues into the next
+ * one; a compression step has to fit in the current destination, since a
+ * compressed block cannot be resumed. Stores the bytes read and written in
+ * total in 'total_in' and 'total_out'.
+ * @return qpl_status of the last step.
+ */
+static qpl_status run_vectored(JNIEnv *env, jclass clazz, qpl_job *job,
+                               std::vector<fragment> &inputs,
+                               std::vector<fragment> &outputs, retry_budget &budget,
+                               uint32_t &total_in, uint32_t &total_out) {
+  const uint32_t flags = job->flags;
+  bool first = (flags & QPL_FLAG_FIRST) != 0;
+  const bool last = (flags & QPL_FLAG_LAST) != 0;
+  const size_t last_input = inputs.size() - 1;
+  size_t i = 0;
+  size_t o = 0;
+  qpl_status status = QPL_STS_OK;
+  total_in = 0;
+  total_out = 0;
+  while (true) {
+    while (i < inputs.size() && inputs[i].done == inputs[i].length) {
+      i++;
+    }
+    while (o < outputs.size() && outputs[o].done == outputs[o].length) {
+      o++;
+    }
+    bool input_left = i < inputs.size();
+    bool output_needed = job->op == qpl_op_decompress && status == QPL_STS_MORE_OUTPUT_NEEDED;
+    if (!input_left && !output_needed) {
+      return status;
+    }
+    if (o == outputs.size()) {
+      return QPL_STS_MORE_OUTPUT_NEEDED;
+    }
+    // Once the input is consumed, a decompression only flushes its output.
+    fragment &src = input_left ? inputs[i] : inputs[last_input];
+    fragment &dst = outputs[o];
+    jint src_pos = src.start + src.done;
+    jint src_len = src.length - src.done;
+    jint dst_pos = dst.start + dst.done;
+    jint dst_len = dst.length - dst.done;
+
+    job->flags = flags & ~(QPL_FLAG_FIRST | QPL_FLAG_LAST);
+    if (first) {
+      job->flags |= QPL_FLAG_FIRST;
+    }
+    if (last && i >= last_input) {
+      job->flags |= QPL_FLAG_LAST;
+    }
+    job->next_in_ptr = src.address + src_pos;
+    job->available_in = src_len;
+    job->next_out_ptr = dst.address + dst_pos;
+    job->available_out = dst_len;
+    job->total_in = 0;
+    job->total_out = 0;
+    status = compress_or_decompress(env, clazz, job, src.address, src_pos, src_len,
+                                    dst.address, dst_pos, dst_len, budget);
+    src.done += job->total_in;
+    dst.done += job->total_out;
+    total_in += job->total_in;
+    total_out += job->total_out;
+    first = false;
+    if (job->op == qpl_op_decompress && status == QPL_STS_MORE_OUTPUT_NEEDED) {
+      if (job->total_in == 0 && job->total_out == 0) {
+        return status;
+      }
+    } else if (status != QPL_STS_OK) {
+      return status;
+    }
+  }
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    executeVectored
+ * Signature:
+ * (Lcom/intel/qpl/QPLJob;[[B[Ljava/nio/ByteBuffer;[I[I[[B[Ljava/nio/ByteBuffer;[I[I[I[I)I
+ *
+ * Runs the operation configured on the Java job over several source and
+ * destination fragments in a single call, as if each side were contiguous.
+ * Each fragment is either a byte array or a direct buffer. The bytes read from
+ * each source and written into each destination are stored in 'bytes_read' and
+ * 'bytes_written', the totals in the Java job. Returns the outcome of the
+ * operation, or -1 with a pending exception if the arguments are invalid.
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_executeVectored(
+    JNIEnv *env, jclass clazz, jobject javaJob, jobjectArray input_arrs,
+    jobjectArray input_bufs, jintArray input_starts, jintArray input_sizes,
+    jobjectArray output_arrs, jobjectArray output_bufs, jintArray output_starts,
+    jintArray output_max_lens, jintArray bytes_read, jintArray bytes_written) {
+  jint input_count = env->GetArrayLength(input_starts);
+  jint output_count = env->GetArrayLength(output_starts);
+  if (input_count <= 0) {
     throw_exception(env, INPUT_INVALID);
-    return 0;
+    return -1;
+  }
+  if (output_count <= 0) {
+    throw_exception(env, OUTPUT_INVALID);
+    return -1;
+  }
+  if (env->EnsureLocalCapacity(input_count + output_count + 2) != JNI_OK) {
+    return -1;
   }
+  // Read everything needed from the Java objects before entering the critical
+  // sections, no other JNI call is allowed inside them.
+  std::vector<fragment> inputs, outputs;
+  if (!read_fragments(env, input_arrs, input_bufs, input_starts, input_sizes, input_count,
+                      INPUT_INVALID, inputs) ||
+      !read_fragments(env, output_arrs, output_bufs, output_starts, output_max_lens,
+                      output_count, OUTPUT_INVALID, outputs)) {
+    return -1;
+  }
+  qpl_job *job = configure_job(env, javaJob, nullptr, 0, nullptr, 0);
+  if (job == nullptr) {
+    return -1;
+  }
+  jint rt = env->GetIntField(javaJob, retry_count_id);
+  jlong retry_timeout = env->GetLongField(javaJob, retry_timeout_id);
+  jint backoff_policy = env->GetIntField(javaJob, backoff_policy_id);
+  jlong backoff_cap = env->GetLongField(javaJob, backoff_cap_id);
+  jint numa_node = env->GetIntField(javaJob, numa_node_id);
+  bool pins_arrays = false;
+  for (const fragment &f : inputs) {
+    pins_arrays |= f.array != nullptr;
+  }
+  for (const fragment &f : outputs) {
+    pins_arrays |= f.array != nullptr;
+  }
+  retry_budget budget = {rt, retry_timeout, std::chrono::steady_clock::now(),
+                         backoff_policy, backoff_cap, 0, 0, !pins_arrays};
+  numa_node = select_numa_node(job, numa_node);
 
-  if (output_arr != nullptr) {
-    p_output = reinterpret_cast<uint8_t *>(
-        env->GetPrimitiveArrayCritical(output_arr, &is_copy_dest));
-  } else if (output_buffer != nullptr) {
-    p_output =
-        reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(output_buffer));
+  uint32_t total_in = 0;
+  uint32_t total_out = 0;
+  pin_fragments(env, inputs);
+  pin_fragments(env, outputs);
+  qpl_status status =
+      run_vectored(env, clazz, job, inputs, outputs, budget, total_in, total_out);
+  unpin_fragments(env, outputs);
+  unpin_fragments(env, inputs);
+
+  std::vector<jint> done(std::max(input_count, output_count));
+  for (jint i = 0; i < input_count; i++) {
+    done[i] = inputs[i].done;
+  }
+  env->SetIntArrayRegion(bytes_read, 0, input_count, done.data());
+  for (jint i = 0; i < output_count; i++) {
+    done[i] = outputs[i].done;
   }
+  env->SetIntArrayRegion(bytes_written, 0, output_count, done.data());
 
+  job->total_in = total_in;
+  job->total_out = total_out;
+  env->SetIntField(javaJob, submitted_numa_node_id, numa_node);
+  env->SetIntField(javaJob, busy_count_id, budget.busy_count);
+  return store_results(env, javaJob, job, status);
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    submit
+ * Signature: (Lcom/intel/qpl/QPLJob;Ljava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II)I
+ *
+ * Submits the operation configured on the Java job over direct buffers and
+ * returns without waiting for it, STATUS_OK once submitted. The buffers must
+ * stay reachable until poll reports the completion. A submission that finds
+ * the work queues busy is not retried. An operation that does not fit in a
+ * single submission is not submitted and reported as an error with
+ * QPL_STS_SIZE_ERR.
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_submit(
+    JNIEnv *env, jclass clazz, jobject javaJob, jobject input_buf,
+    jint input_start, jint input_size, jobject output_buffer,
+    jint output_start, jint output_max_len) {
+  uint8_t *p_input = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(input_buf));
+  if (p_input == nullptr) {
+    throw_exception(env, INPUT_INVALID);
+    return -1;
+  }
+  uint8_t *p_output = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(output_buffer));
   if (p_output == nullptr) {
     throw_exception(env, OUTPUT_INVALID);
-    return 0;
+    return -1;
+  }
+  qpl_job *job = configure_job(env, javaJob, p_input + input_start, input_size,
+                               p_output + output_start, output_max_len);
+  if (job == nullptr) {
+    return -1;
+  }
+  jint numa_node = select_numa_node(job, env->GetIntField(javaJob, numa_node_id));
+  jint max_transfer_bytes =
+      has_devices(numa_node) ? node_max_transfer_bytes[numa_node] : idxd_wq_max_transfer_bytes;
+  qpl_status status = QPL_STS_SIZE_ERR;
+  if (job->data_ptr.path == qpl_path_software ||
+      (input_size < max_transfer_bytes && output_max_len < max_transfer_bytes)) {
+    status = qpl_submit_job(job);
   }
+  if (status != QPL_STS_OK) {
+    return store_results(env, javaJob, job, status);
+  }
+  env->SetIntField(javaJob, submitted_numa_node_id, numa_node);
+  return STATUS_OK;
+}
 
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    poll
+ * Signature: (Lcom/intel/qpl/QPLJob;)I
+ *
+ * Checks the operation submitted by submit without waiting for it. Returns
+ * STATUS_PENDING while it is being processed, otherwise stores its results in
+ * the Java job and returns its outcome.
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_poll(JNIEnv *env, jclass clazz,
+                                                      jobject javaJob) {
   jobject buf_val = env->GetObjectField(javaJob, jobBuffer_id);
-  jint operation_val = env->GetIntField(javaJob, operation_type_id);
-  jint rt = env->GetIntField(javaJob, retry_count_id);
-  jint flags_val = env->GetIntField(javaJob, flags_id);
+  qpl_job *job = reinterpret_cast<qpl_job *>(env->GetDirectBufferAddress(buf_val));
+  qpl_status status = qpl_check_job(job);
+  if (status == QPL_STS_BEING_PROCESSED) {
+    return STATUS_PENDING;
+  }
+  return store_results(env, javaJob, job, status);
+}
 
-  qpl_operation operationType = static_cast<qpl_operation>(operation_val);
-  uint8_t *job_buffer = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(buf_val));
-  qpl_job *job = reinterpret_cast<qpl_job *>(job_buffer);
-  qpl_status status;
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    executeBatch
+ * Signature: ([Lcom/intel/qpl/QPLJob;[Ljava/nio/ByteBuffer;[I[I[Ljava/nio/ByteBuffer;[I[II[I)V
+ *
+ * Submits the operations of 'count' jobs, one per input, before waiting for
+ * any of them, so that the devices work on the whole batch at once. Each
+ * operation must fit in a single submission; one that does not is not
+ * submitted and reported as an error with QPL_STS_SIZE_ERR. A job whose
+ * submission finds the work queues busy is not retried. The outcome of each
+ * operation is stored in 'outcomes', and its results in its Java job.
+ *
+ * The inputs and outputs are direct buffers: no Java array is pinned, so the
+ * garbage collector is not held off while the batch waits for the devices.
+ */
+JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_executeBatch(
+    JNIEnv *env, jclass clazz, jobjectArray java_jobs, jobjectArray input_bufs,
+    jintArray input_starts, jintArray input_sizes, jobjectArray output_bufs,
+    jintArray output_starts, jintArray output_max_lens, jint count,
+    jintArray outcomes) {
+  if (count <= 0) {
+    return;
+  }
+  if (env->EnsureLocalCapacity(count + 3) != JNI_OK) {
+    return;
+  }
+  std::vector<jint> in_start(count), in_size(count), out_start(count), out_len(count);
+  env->GetIntArrayRegion(input_starts, 0, count, in_start.data());
+  env->GetIntArrayRegion(input_sizes, 0, count, in_size.data());
+  env->GetIntArrayRegion(output_starts, 0, count, out_start.data());
+  env->GetIntArrayRegion(output_max_lens, 0, count, out_len.data());
 
-  // Performing an operation
-  job->next_in_ptr = p_input + input_start;
-  job->available_in = input_size;
-  job->next_out_ptr = p_output + output_start;
-  job->available_out = output_max_len;
-  job->total_in=0;
-  job->total_out=0;
+  std::vector<jobject> jobs(count);
+  std::vector<uint8_t *> p_inputs(count), p_outputs(count);
+  std::vector<qpl_job *> qpl_jobs(count);
+  std::vector<jint> numa_nodes(count);
+  std::vector<qpl_status> statuses(count, QPL_STS_OK);
+  std::vector<bool> submitted(count, false);
+  for (jint i = 0; i < count; i++) {
+    jobs[i] = env->GetObjectArrayElement(java_jobs, i);
+    jobject input_buf = env->GetObjectArrayElement(input_bufs, i);
+    jobject output_buf = env->GetObjectArrayElement(output_bufs, i);
+    p_inputs[i] = input_buf != nullptr
+                      ? reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(input_buf))
+                      : nullptr;
+    p_outputs[i] = output_buf != nullptr
+                       ? reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(output_buf))
+                       : nullptr;
+    env->DeleteLocalRef(input_buf);
+    env->DeleteLocalRef(output_buf);
+    if (jobs[i] == nullptr || p_inputs[i] == nullptr || p_outputs[i] == nullptr) {
+      throw_exception(env, jobs[i] == nullptr || p_inputs[i] == nullptr ? INPUT_INVALID
+                                                                         : OUTPUT_INVALID);
+      return;
+    }
+    jobject buf_val = env->GetObjectField(jobs[i], jobBuffer_id);
+    qpl_job *job = reinterpret_cast<qpl_job *>(env->GetDirectBufferAddress(buf_val));
+    env->DeleteLocalRef(buf_val);
+    jint operation_val = env->GetIntField(jobs[i], operation_type_id);
+    if (operation_val != qpl_op_compress && operation_val != qpl_op_decompress) {
+      throw_exception(env, QPL_OPERATION_ERR);
+      return;
+    }
+    job->op = static_cast<qpl_operation>(operation_val);
+    job->level = static_cast<qpl_compression_levels>(
+        env->GetIntField(jobs[i], compression_level_id));
+    job->flags = env->GetIntField(jobs[i], flags_id);
+    numa_nodes[i] = env->GetIntField(jobs[i], numa_node_id);
+    qpl_jobs[i] = job;
+  }
 
-  switch (operationType) {
-  case qpl_op_decompress: {
-    job->op = qpl_op_decompress;
-    job->flags = flags_val;
-    break;
+  for (jint i = 0; i < count; i++) {
+    qpl_job *job = qpl_jobs[i];
+    job->next_in_ptr = p_inputs[i] + in_start[i];
+    job->available_in = in_size[i];
+    job->next_out_ptr = p_outputs[i] + out_start[i];
+    job->available_out = out_len[i];
+    job->total_in = 0;
+    job->total_out = 0;
+    numa_nodes[i] = select_numa_node(job, numa_nodes[i]);
+    jint max_transfer_bytes = has_devices(numa_nodes[i]) ? node_max_transfer_bytes[numa_nodes[i]]
+                                                         : idxd_wq_max_transfer_bytes;
+    if (job->data_ptr.path != qpl_path_software &&
+        (in_size[i] >= max_transfer_bytes || out_len[i] >= max_transfer_bytes)) {
+      statuses[i] = QPL_STS_SIZE_ERR;
+      continue;
+    }
+    statuses[i] = qpl_submit_job(job);
+    submitted[i] = statuses[i] == QPL_STS_OK;
   }
-  case qpl_op_compress: {
-    // Returns the field ID for an compressionLevel instance variable of a
-    // QPLJob class.
-    jint cl_val = env->GetIntField(javaJob, compression_level_id);
-    job->op = qpl_op_compress;
-    job->level = static_cast<qpl_compression_levels>(cl_val);
-    job->flags = flags_val;
-    break;
+  for (jint i = 0; i < count; i++) {
+    if (submitted[i]) {
+      statuses[i] = qpl_wait_job(qpl_jobs[i]);
+    }
   }
-  default: {
-    throw_exception(env, QPL_OPERATION_ERR);
-    return 0;
+
+  std::vector<jint> results(count);
+  for (jint i = 0; i < count; i++) {
+    qpl_job *job = qpl_jobs[i];
+    jboolean output_insufficient = JNI_FALSE;
+    results[i] = classify_status(job, statuses[i], output_insufficient);
+    env->SetBooleanField(jobs[i], output_insufficient_id, output_insufficient);
+    env->SetIntField(jobs[i], bytes_read_id, job->total_in);
+    env->SetIntField(jobs[i], bytes_written_id, job->total_out);
+    env->SetIntField(jobs[i], crc_id, static_cast<jint>(job->crc));
+    env->SetIntField(jobs[i], submitted_numa_node_id, submitted[i] ? numa_nodes[i] : -1);
+    env->SetIntField(jobs[i], status_code_id, statuses[i]);
+    env->SetIntField(jobs[i], busy_count_id, statuses[i] == QPL_STS_QUEUES_ARE_BUSY_ERR ? 1 : 0);
   }
+  env->SetIntArrayRegion(outcomes, 0, count, results.data());
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    decompressAll
+ * Signature: (Lcom/intel/qpl/QPLJob;[BLjava/nio/ByteBuffer;III)[B
+ *
+ * Decompresses the whole input into a chain of native segments. The first one
+ * has the size of the hint, and each further one the size of the output so
+ * far, so that the capacity doubles whenever more output is needed without
+ * moving what was already decompressed. The segments are then concatenated
+ * into a new byte array, so the decompressed data is copied only once.
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_intel_qpl_QPLJNI_decompressAll(
+    JNIEnv *env, jclass clazz, jobject javaJob, jbyteArray input_arr,
+    jobject input_buf, jint input_start, jint input_size, jint size_hint) {
+  jobject buf_val = env->GetObjectField(javaJob, jobBuffer_id);
+  jint rt = env->GetIntField(javaJob, retry_count_id);
+  jlong retry_timeout = env->GetLongField(javaJob, retry_timeout_id);
+  jint backoff_policy = env->GetIntField(javaJob, backoff_policy_id);
+  jlong backoff_cap = env->GetLongField(javaJob, backoff_cap_id);
+  jint flags_val = env->GetIntField(javaJob, flags_id);
+  jint numa_node = env->GetIntField(javaJob, numa_node_id);
+  qpl_job *job = reinterpret_cast<qpl_job *>(env->GetDirectBufferAddress(buf_val));
+
+  jlong segment_size =
+      size_hint > 0 ? size_hint : std::max<jlong>(MIN_OUTPUT_LENGTH, input_size * 3L);
+  segment_size = std::min(segment_size, MAX_ARRAY_LENGTH);
+  std::vector<std::unique_ptr<uint8_t, decltype(&std::free)>> segments;
+  std::vector<jlong> segment_lengths;
+  segments.emplace_back(static_cast<uint8_t *>(std::malloc(segment_size)), &std::free);
+  if (!segments.back()) {
+    throw_exception(env, MEMORY_ALLOCATION_ERROR);
+    return nullptr;
   }
-  // if queues are busy then retry the task execution until operation count
-  // reaches its retryCount.
-  int retry_count = rt;
 
-  status =
-      compress_or_decompress(env, clazz, job, p_input, input_start, input_size,
-                             p_output, output_start, output_max_len, rt);
+  uint8_t *p_input = nullptr;
+  jboolean is_copy_src = false;
+  if (input_arr != nullptr) {
+    p_input = reinterpret_cast<uint8_t *>(
+        env->GetPrimitiveArrayCritical(input_arr, &is_copy_src));
+  } else if (input_buf != nullptr) {
+    p_input = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(input_buf));
+  }
+  if (p_input == nullptr) {
+    throw_exception(env, INPUT_INVALID);
+    return nullptr;
+  }
 
-  env->SetBooleanField(javaJob, output_insufficient_id, JNI_FALSE);
-  if (status != QPL_STS_OK) {
-    if (job->op == qpl_op_compress && status == QPL_STS_MORE_OUTPUT_NEEDED) {
-      throw_ouput_overflow_exception(env, QPL_EXECUTE_JOB_ERROR, status);
-    } else if (job->op == qpl_op_decompress && status == QPL_STS_MORE_OUTPUT_NEEDED ){
-        if(job->total_in == 0 && job->total_out == 0){
-        throw_ouput_overflow_exception(env, QPL_EXECUTE_JOB_ERROR, status);
-        }
-        else{
-        env->SetBooleanField(javaJob, output_insufficient_id, JNI_TRUE);
-        }
-    } else if (status != QPL_STS_MORE_OUTPUT_NEEDED) {
-      throw_exception(env, QPL_EXECUTE_JOB_ERROR, status);
+  job->op = qpl_op_decompress;
+  job->flags = flags_val;
+  numa_node = select_numa_node(job, numa_node);
+  retry_budget budget = {rt, retry_timeout, std::chrono::steady_clock::now(),
+                         backoff_policy, backoff_cap, 0, 0, input_arr == nullptr};
+  jlong consumed = 0;
+  jlong produced = 0;
+  qpl_status status;
+  bool out_of_memory = false;
+  while (true) {
+    uint8_t *segment = segments.back().get();
+    job->next_in_ptr = p_input + input_start + consumed;
+    job->available_in = input_size - consumed;
+    job->next_out_ptr = segment;
+    job->available_out = segment_size;
+    job->total_in = 0;
+    job->total_out = 0;
+    status = compress_or_decompress(env, clazz, job, p_input, input_start + consumed,
+                                    input_size - consumed, segment, 0, segment_size, budget);
+    consumed += job->total_in;
+    produced += job->total_out;
+    segment_lengths.push_back(job->total_out);
+    if (status != QPL_STS_MORE_OUTPUT_NEEDED || produced == MAX_ARRAY_LENGTH) {
+      break;
+    }
+    segment_size = std::min(std::max<jlong>(produced, MIN_OUTPUT_LENGTH),
+                            MAX_ARRAY_LENGTH - produced);
+    segments.emplace_back(static_cast<uint8_t *>(std::malloc(segment_size)), &std::free);
+    if (!segments.back()) {
+      out_of_memory = true;
+      break;
     }
+    // Continue the stream where the previous pass stopped.
+    job->flags = flags_val & ~QPL_FLAG_FIRST;
   }
 
   if (input_arr != nullptr) {
     env->ReleasePrimitiveArrayCritical(input_arr, reinterpret_cast<jbyte *>(p_input), 0);
   }
-  if (output_arr != nullptr) {
-    env->ReleasePrimitiveArrayCritical(output_arr, reinterpret_cast<jbyte *>(p_output), 0);
-  }
-
-  env->SetIntField(javaJob, bytes_read_id, job->total_in);
-  env->SetIntField(javaJob, bytes_written_id, job->total_out);
+  env->SetIntField(javaJob, bytes_read_id, static_cast<jint>(consumed));
+  env->SetIntField(javaJob, bytes_written_id, static_cast<jint>(produced));
+  env->SetIntField(javaJob, crc_id, static_cast<jint>(job->crc));
+  env->SetIntField(javaJob, submitted_numa_node_id, numa_node);
+  env->SetIntField(javaJob, busy_count_id, budget.busy_count);
+  env->SetBooleanField(javaJob, output_insufficient_id, JNI_FALSE);
 
+  if (out_of_memory) {
+    throw_exception(env, MEMORY_ALLOCATION_ERROR);
+    return nullptr;
+  } else if (status == QPL_STS_MORE_OUTPUT_NEEDED) {
+    throw_ouput_overflow_exception(env, OUTPUT_TOO_LARGE, status);
+    return nullptr;
+  } else if (status == QPL_STS_QUEUES_ARE_BUSY_ERR) {
+    throw_queues_busy_exception(env, QPL_EXECUTE_JOB_ERROR, status);
+    return nullptr;
+  } else if (status != QPL_STS_OK) {
+    throw_exception(env, QPL_EXECUTE_JOB_ERROR, status);
+    return nullptr;
+  }
 
-  return job->total_out;
+  jbyteArray result = env->NewByteArray(static_cast<jsize>(produced));
+  if (result != nullptr) {
+    jlong offset = 0;
+    for (size_t i = 0; i < segment_lengths.size(); i++) {
+      env->SetByteArrayRegion(result, static_cast<jsize>(offset),
+                              static_cast<jsize>(segment_lengths[i]),
+                              reinterpret_cast<jbyte *>(segments[i].get()));
+      offset += segment_lengths[i];
+    }
+  }
+  return result;
 }
+
 /*
  * Class:     com_intel_qpl_QPLJNI
  * Method:    finish
@@ -366,6 +1273,10 @@ JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_isExecutionPathAvailable(
  * Class:     com_intel_qpl_QPLJNI
  * Method:    isCompressionLevelSupported
  * Signature: (II)I
+ *
+ * Compresses a few bytes at the given level as a probe. The probe never throws:
+ * any failure is returned as the status, and the job is always finalized so
+ * that no hardware resources are leaked.
  */
 JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_isCompressionLevelSupported(
     JNIEnv *env, jclass clazz, jint exe_path_code, jint cl) {
@@ -378,23 +1289,23 @@ JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_isCompressionLevelSupported(
   uint32_t size = 0;
   qpl_status status = qpl_get_job_size(execution_path, &size);
   if (status != QPL_STS_OK) {
-    throw_exception(env, QPL_GET_JOB_SIZE_ERROR, status);
+    return status;
   }
   std::unique_ptr<qpl_job[]> job_buffer = nullptr;
   try {
     job_buffer = std::make_unique<qpl_job[]>(size);
   } catch (std::bad_alloc &e) {
-    throw_exception(env, e.what());
+    return QPL_STS_LIBRARY_INTERNAL_ERR;
   }
 
   qpl_job *job = job_buffer.get();
   status = qpl_init_job(execution_path, job);
   if (status != QPL_STS_OK) {
-    throw_exception(env, QPL_INIT_JOB_ERROR, status);
+    return status;
   }
 
   uint8_t source[source_size];
-  uint8_t destination[source_size + 5];
+  uint8_t destination[source_size * 5];
   for (int i = 0; i < source_size; ++i) source[i] = i;
 
   job->op = qpl_op_compress;
@@ -408,15 +1319,113 @@ JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_isCompressionLevelSupported(
 
   // Compression
   status = qpl_execute_job(job);
-  if (status == QPL_STS_UNSUPPORTED_COMPRESSION_LEVEL) {
-    return status;
-  } else if (status != QPL_STS_OK) {
-    throw_exception(env, QPL_FINI_JOB_ERROR, status);
+  // Freeing resources, whatever the outcome of the probe
+  qpl_status fini_status = qpl_fini_job(job);
+  return status != QPL_STS_OK ? status : fini_status;
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    getLibraryVersion
+ * Signature: ()Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_com_intel_qpl_QPLJNI_getLibraryVersion(
+    JNIEnv *env, jclass clazz) {
+  return env->NewStringUTF(qpl_get_library_version());
+}
+
+/*
+ * Sets the preferred NUMA node of a memory range. Fails silently, the memory
+ * then follows the default first-touch policy.
+ * @param address the start of the range, page aligned.
+ * @param length the length of the range.
+ * @param numa_node the preferred node.
+ */
+static void prefer_numa_node(void *address, size_t length, int numa_node) {
+  constexpr int bits_per_word = sizeof(unsigned long) * CHAR_BIT;
+  if (numa_node >= MAX_NUMA_NODES) {
+    return;
   }
-  // Freeing resources
-  status = qpl_fini_job(job);
-  if (status != QPL_STS_OK) {
-    throw_exception(env, QPL_FINI_JOB_ERROR, status);
+  unsigned long node_mask[MAX_NUMA_NODES / bits_per_word] = {};
+  node_mask[numa_node / bits_per_word] = 1UL << (numa_node % bits_per_word);
+  syscall(SYS_mbind, address, length, NUMA_POLICY_PREFERRED, node_mask,
+          MAX_NUMA_NODES + 1, 0);
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    allocateMemory
+ * Signature: (JIZ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_qpl_QPLJNI_allocateMemory(
+    JNIEnv *env, jclass clazz, jlong length, jint numa_node, jboolean huge_pages) {
+  const size_t page_size = static_cast<size_t>(sysconf(_SC_PAGESIZE));
+  const size_t size = static_cast<size_t>(length);
+  const size_t alignment = huge_pages ? HUGE_PAGE_SIZE : page_size;
+
+  // Map enough to place an aligned range of 'size' bytes, then unmap the rest.
+  const size_t mapped_size = size + alignment - page_size;
+  void *mapped = mmap(nullptr, mapped_size, PROT_READ | PROT_WRITE,
+                      MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+  if (mapped == MAP_FAILED) {
+    throw_exception(env, MEMORY_MAPPING_ERROR, errno);
+    return 0;
   }
-  return status;
+  const uintptr_t start = reinterpret_cast<uintptr_t>(mapped);
+  const uintptr_t aligned = (start + alignment - 1) & ~(alignment - 1);
+  const uintptr_t end = start + mapped_size;
+  if (aligned > start) {
+    munmap(mapped, aligned - start);
+  }
+  if (end > aligned + size) {
+    munmap(reinterpret_cast<void *>(aligned + size), end - aligned - size);
+  }
+
+  uint8_t *address = reinterpret_cast<uint8_t *>(aligned);
+#ifdef MADV_HUGEPAGE
+  if (huge_pages) {
+    madvise(address, size, MADV_HUGEPAGE);
+  }
+#endif
+  if (numa_node >= 0) {
+    prefer_numa_node(address, size, numa_node);
+  }
+
+  // Touch every page so that the device never faults on them; without an
+  // explicit node, this also places the pages on the node of this thread.
+  volatile uint8_t *pages = address;
+  for (size_t offset = 0; offset < size; offset += page_size) {
+    pages[offset] = 0;
+  }
+  return reinterpret_cast<jlong>(address);
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    wrapMemory
+ * Signature: (JI)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_intel_qpl_QPLJNI_wrapMemory(
+    JNIEnv *env, jclass clazz, jlong address, jint capacity) {
+  return env->NewDirectByteBuffer(reinterpret_cast<void *>(address), capacity);
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    getBufferAddress
+ * Signature: (Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_qpl_QPLJNI_getBufferAddress(
+    JNIEnv *env, jclass clazz, jobject buffer) {
+  return reinterpret_cast<jlong>(env->GetDirectBufferAddress(buffer));
+}
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    freeMemory
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_freeMemory(
+    JNIEnv *env, jclass clazz, jlong address, jlong length) {
+  munmap(reinterpret_cast<void *>(address), static_cast<size_t>(length));
 }
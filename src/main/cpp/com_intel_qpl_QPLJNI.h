@@ -21,6 +21,14 @@ extern "C" {
 JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_initValuesAndIDs
   (JNIEnv *, jclass, jint, jint);
 
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    setNumaMaxTransferBytes
+ * Signature: (III)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_setNumaMaxTransferBytes
+  (JNIEnv *, jclass, jint, jint, jint);
+
 /*
  * Class:     com_intel_qpl_QPLJNI
  * Method:    getQPLJobSize
@@ -45,6 +53,54 @@ JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_initQPLJob
 JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_execute
   (JNIEnv *, jclass, jobject, jbyteArray, jobject, jint, jint, jbyteArray, jobject, jint, jint);
 
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    tryExecute
+ * Signature: (Lcom/intel/qpl/QPLJob;[BLjava/nio/ByteBuffer;II[BLjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_tryExecute
+  (JNIEnv *, jclass, jobject, jbyteArray, jobject, jint, jint, jbyteArray, jobject, jint, jint);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    executeBatch
+ * Signature: ([Lcom/intel/qpl/QPLJob;[Ljava/nio/ByteBuffer;[I[I[Ljava/nio/ByteBuffer;[I[II[I)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_executeBatch
+  (JNIEnv *, jclass, jobjectArray, jobjectArray, jintArray, jintArray, jobjectArray, jintArray, jintArray, jint, jintArray);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    executeVectored
+ * Signature: (Lcom/intel/qpl/QPLJob;[[B[Ljava/nio/ByteBuffer;[I[I[[B[Ljava/nio/ByteBuffer;[I[I[I[I)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_executeVectored
+  (JNIEnv *, jclass, jobject, jobjectArray, jobjectArray, jintArray, jintArray, jobjectArray, jobjectArray, jintArray, jintArray, jintArray, jintArray);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    submit
+ * Signature: (Lcom/intel/qpl/QPLJob;Ljava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_submit
+  (JNIEnv *, jclass, jobject, jobject, jint, jint, jobject, jint, jint);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    poll
+ * Signature: (Lcom/intel/qpl/QPLJob;)I
+ */
+JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_poll
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    decompressAll
+ * Signature: (Lcom/intel/qpl/QPLJob;[BLjava/nio/ByteBuffer;III)[B
+ */
+JNIEXPORT jbyteArray JNICALL Java_com_intel_qpl_QPLJNI_decompressAll
+  (JNIEnv *, jclass, jobject, jbyteArray, jobject, jint, jint, jint);
+
 /*
  * Class:     com_intel_qpl_QPLJNI
  * Method:    finish
@@ -69,6 +125,46 @@ JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_isExecutionPathAvailable
 JNIEXPORT jint JNICALL Java_com_intel_qpl_QPLJNI_isCompressionLevelSupported
   (JNIEnv *, jclass, jint, jint);
 
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    getLibraryVersion
+ * Signature: ()Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_com_intel_qpl_QPLJNI_getLibraryVersion
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    allocateMemory
+ * Signature: (JIZ)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_qpl_QPLJNI_allocateMemory
+  (JNIEnv *, jclass, jlong, jint, jboolean);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    wrapMemory
+ * Signature: (JI)Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_intel_qpl_QPLJNI_wrapMemory
+  (JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    getBufferAddress
+ * Signature: (Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_com_intel_qpl_QPLJNI_getBufferAddress
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_intel_qpl_QPLJNI
+ * Method:    freeMemory
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_com_intel_qpl_QPLJNI_freeMemory
+  (JNIEnv *, jclass, jlong, jlong);
+
 #ifdef __cplusplus
 }
 #endif
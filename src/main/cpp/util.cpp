@@ -8,22 +8,68 @@
 
 #include <string>
 
+// Exception classes, cached as global references so that throwing does not
+// look them up on every failure.
+static jclass qpl_exception_class;
+static jclass output_overflow_exception_class;
+static jclass queues_busy_exception_class;
+
+static jclass find_global_class(JNIEnv *env, const char *name) {
+  jclass clz = env->FindClass(name);
+  if (clz == nullptr) {
+    return nullptr;
+  }
+  jclass global = static_cast<jclass>(env->NewGlobalRef(clz));
+  env->DeleteLocalRef(clz);
+  return global;
+}
+
+void init_exception_classes(JNIEnv *env) {
+  if (qpl_exception_class == nullptr) {
+    qpl_exception_class = find_global_class(env, "com/intel/qpl/QPLException");
+  }
+  if (output_overflow_exception_class == nullptr) {
+    output_overflow_exception_class =
+        find_global_class(env, "com/intel/qpl/QPLOutputOverflowException");
+  }
+  if (queues_busy_exception_class == nullptr) {
+    queues_busy_exception_class =
+        find_global_class(env, "com/intel/qpl/QPLQueuesBusyException");
+  }
+}
+
+static void throw_new(JNIEnv *env, jclass cached, const char *name, const char *msg) {
+  if (cached != nullptr) {
+    env->ThrowNew(cached, msg);
+    return;
+  }
+  jclass clz = env->FindClass(name);
+  if (clz != nullptr) {
+    env->ThrowNew(clz, msg);
+  }
+}
+
 void throw_exception(JNIEnv *env, const char *arg, jlong status) {
   char buf[256];
-  jclass clz = env->FindClass("com/intel/qpl/QPLException");
   std::snprintf(buf, sizeof(buf), "%s. Status code is - %ld", arg, status);
-  env->ThrowNew(clz, buf);
+  throw_new(env, qpl_exception_class, "com/intel/qpl/QPLException", buf);
 }
 
 void throw_exception(JNIEnv *env, const char *arg) {
-  jclass clz = env->FindClass("com/intel/qpl/QPLException");
-  env->ThrowNew(clz, arg);
+  throw_new(env, qpl_exception_class, "com/intel/qpl/QPLException", arg);
 }
 
 
 void throw_ouput_overflow_exception(JNIEnv *env, const char *arg, jlong status) {
   char buf[256];
-  jclass clz = env->FindClass("com/intel/qpl/QPLOutputOverflowException");
   std::snprintf(buf, sizeof(buf), "%s. Status code is - %ld", arg, status);
-  env->ThrowNew(clz, buf);
+  throw_new(env, output_overflow_exception_class,
+            "com/intel/qpl/QPLOutputOverflowException", buf);
+}
+
+void throw_queues_busy_exception(JNIEnv *env, const char *arg, jlong status) {
+  char buf[256];
+  std::snprintf(buf, sizeof(buf), "%s. Status code is - %ld", arg, status);
+  throw_new(env, queues_busy_exception_class,
+            "com/intel/qpl/QPLQueuesBusyException", buf);
 }
@@ -11,11 +11,17 @@
 #ifndef _Included_com_intel_qpl_util
 #define _Included_com_intel_qpl_util
 
+// Caches the exception classes thrown by the functions below, call it once
+// when the library is initialized.
+void init_exception_classes(JNIEnv *env);
+
 void throw_exception(JNIEnv *env, const char *arg, jlong status);
 
 void throw_exception(JNIEnv *env, const char *arg);
 
 void throw_ouput_overflow_exception(JNIEnv *env, const char *arg, jlong status);
 
+void throw_queues_busy_exception(JNIEnv *env, const char *arg, jlong status);
+
 
 #endif
\ No newline at end of file
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.lang.instrument.Instrumentation;
+import java.util.Locale;
+
+/**
+ * A java agent that redirects the java.util.zip compressors of an application to the library
+ * without changing its code. It is packaged as the "agent" classifier of this artifact:
+ *
+ * <pre>
+ *   java -javaagent:qpl-java-&lt;version&gt;-agent.jar[=options] ...
+ * </pre>
+ *
+ * <p>The classes loaded after the agent are rewritten by a {@link QPLZipTransformer}, so that they
+ * construct {@link QPLZipDeflater}, {@link QPLZipInflater}, {@link QPLGZIPOutputStream}, {@link
+ * QPLGZIPInputStream}, {@link QPLZipOutputStream} and {@link QPLZipInputStream} in place of their
+ * JDK superclasses. These fall back to the JDK implementation where the library cannot produce the
+ * same result, and count their calls in {@link QPLOffloadStatistics}.
+ *
+ * <p>The options are separated by commas:
+ *
+ * <ul>
+ *   <li>"report" prints {@link QPLOffloadStatistics#report()} to System.err on shutdown.
+ *   <li>"path=hardware" (the default), "path=software" or "path=auto" selects the execution path,
+ *       see {@link QPLUtils.ExecutionPaths}. The path can also be set with the system property
+ *       "qpl.agent.executionPath".
+ * </ul>
+ */
+public final class QPLAgent {
+  private static final String PATH_PROPERTY = "qpl.agent.executionPath";
+
+  private QPLAgent() {}
+
+  /**
+   * Installs the agent when the JVM starts.
+   *
+   * @param options the agent options.
+   * @param instrumentation the instrumentation of the JVM.
+   */
+  public static void premain(String options, Instrumentation instrumentation) {
+    install(options, instrumentation);
+  }
+
+  /**
+   * Installs the agent in a running JVM. Only the classes loaded afterwards are rewritten.
+   *
+   * @param options the agent options.
+   * @param instrumentation the instrumentation of the JVM.
+   */
+  public static void agentmain(String options, Instrumentation instrumentation) {
+    install(options, instrumentation);
+  }
+
+  private static void install(String options, Instrumentation instrumentation) {
+    boolean report = false;
+    if (options != null) {
+      for (String option : options.split(",")) {
+        option = option.trim();
+        if (option.equals("report")) {
+          report = true;
+        } else if (option.startsWith("path=")) {
+          System.setProperty(PATH_PROPERTY, option.substring("path=".length()));
+        } else if (!option.isEmpty()) {
+          throw new IllegalArgumentException("Unknown QPL agent option: " + option);
+        }
+      }
+    }
+    instrumentation.addTransformer(new QPLZipTransformer());
+    if (report) {
+      Runtime.getRuntime()
+          .addShutdownHook(
+              new Thread(() -> System.err.println(QPLOffloadStatistics.report()), "qpl-report"));
+    }
+  }
+
+  // Returns the execution path of the substituted classes, or null if they use the JDK.
+  static QPLUtils.ExecutionPaths executionPath() {
+    return Offload.PATH;
+  }
+
+  // Probes the library once, at the first substituted call.
+  private static final class Offload {
+    static final QPLUtils.ExecutionPaths PATH = probe();
+
+    private static QPLUtils.ExecutionPaths probe() {
+      String value = System.getProperty(PATH_PROPERTY, "hardware").toUpperCase(Locale.ROOT);
+      QPLUtils.ExecutionPaths path;
+      try {
+        path = QPLUtils.ExecutionPaths.valueOf("QPL_PATH_" + value);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+      try {
+        QPLUtils.ExecutionPaths valid = QPLJob.getValidExecutionPath(path);
+        // Without the accelerator, the JDK is faster than the software path of the library.
+        return path == QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE && valid != path ? null : valid;
+      } catch (Throwable t) {
+        // The native library is not available on this platform.
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,429 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses data for many concurrent callers, coalescing the calls that arrive close together
+ * into batches submitted to the accelerator at once.
+ *
+ * <p>Compressing a small payload costs little more on the device than the submission itself, so
+ * when many threads each compress small payloads, the per-call overhead dominates. The first call
+ * that finds no batch being collected waits up to the configured window for other calls to join,
+ * or until the maximum batch size is reached. It then submits the operations of the whole batch
+ * before waiting for any of them, and wakes each caller with its own result. Larger windows trade
+ * latency for throughput; a window of 0 batches only the calls that are already waiting.
+ *
+ * <p>A source larger than half the work queue maximum transfer size does not fit in a single
+ * submission and is compressed on its own. An operation of a batch that finds the work queues
+ * busy, or that fails, is executed again on its own, with the configured retries; the exception it
+ * raises, if any, is thrown to its caller.
+ *
+ * <p>The sources and destinations of a batch are staged in direct buffers from {@link
+ * QPLBufferAllocator#getDefault()}, so the callers' arrays are not pinned while the batch waits
+ * for the devices.
+ *
+ * <p>Each call produces a complete deflate stream, as {@link QPLCompressor#compress(byte[], int,
+ * int, byte[], int, int)} does.
+ *
+ * <p>This class is thread safe.
+ */
+public class QPLBatchCompressor {
+  private final QPLUtils.ExecutionPaths executionPath;
+  private final int compressionLevel;
+  private final int retryCount;
+  private final int maxBatchSize;
+  private final long windowNanos;
+  private final ConcurrentLinkedQueue<Batch> freeBatches = new ConcurrentLinkedQueue<>();
+  private final AtomicLong batchCount = new AtomicLong();
+  private final AtomicLong requestCount = new AtomicLong();
+  private final Object lock = new Object();
+  // Guarded by 'lock'. While a leader is collecting a batch, it is the only thread waiting on it.
+  private final ArrayDeque<Request> pending = new ArrayDeque<>();
+  private boolean leaderActive = false;
+
+  /**
+   * Creates a new QPLBatchCompressor that uses {@link QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE},
+   * {@link QPLUtils#DEFAULT_COMPRESSION_LEVEL}, {@link QPLUtils#DEFAULT_RETRY_COUNT}, {@link
+   * QPLUtils#DEFAULT_MAX_BATCH_SIZE} and {@link QPLUtils#DEFAULT_BATCH_WINDOW_NANOS}.
+   */
+  public QPLBatchCompressor() {
+    this(
+        QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE,
+        QPLUtils.DEFAULT_COMPRESSION_LEVEL,
+        QPLUtils.DEFAULT_RETRY_COUNT,
+        QPLUtils.DEFAULT_MAX_BATCH_SIZE,
+        QPLUtils.DEFAULT_BATCH_WINDOW_NANOS);
+  }
+
+  /**
+   * Creates a new QPLBatchCompressor with specified parameters.
+   *
+   * @param executionPath the execution path {@link QPLUtils.ExecutionPaths}
+   * @param compressionLevel the compression level.
+   * @param retryCount the number of attempts to acquire hardware resources.
+   * @param maxBatchSize the maximum number of calls submitted together.
+   * @param windowNanos the time in nanoseconds a batch waits for calls to join.
+   * @throws IllegalArgumentException if the maximum batch size is less than one or the window is
+   *     negative.
+   */
+  public QPLBatchCompressor(
+      QPLUtils.ExecutionPaths executionPath,
+      int compressionLevel,
+      int retryCount,
+      int maxBatchSize,
+      long windowNanos) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be > 0, got " + maxBatchSize);
+    }
+    if (windowNanos < 0) {
+      throw new IllegalArgumentException("Window must be >= 0, got " + windowNanos);
+    }
+    this.executionPath = executionPath;
+    this.compressionLevel = compressionLevel;
+    this.retryCount = retryCount;
+    this.maxBatchSize = maxBatchSize;
+    this.windowNanos = windowNanos;
+  }
+
+  /**
+   * Returns the maximum number of calls submitted together.
+   *
+   * @return maximum batch size.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Returns the time in nanoseconds a batch waits for calls to join.
+   *
+   * @return batch window in nanoseconds.
+   */
+  public long getWindowNanos() {
+    return windowNanos;
+  }
+
+  /**
+   * Returns the number of batches submitted so far.
+   *
+   * @return batch count.
+   */
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  /**
+   * Returns the number of calls compressed as part of a batch so far. Divided by {@link
+   * #getBatchCount()}, it gives the average batch size.
+   *
+   * @return batched call count.
+   */
+  public long getBatchedRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * Compresses the source array and stores the result in the destination array. Returns the actual
+   * number of bytes of the compressed data.
+   *
+   * @param src the source array holding the source data
+   * @param dst the destination array for the compressed data
+   * @return the size of the compressed data in bytes
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy for the whole retry budget.
+   */
+  public int compress(byte[] src, byte[] dst) {
+    return compress(src, 0, src.length, dst, 0, dst.length);
+  }
+
+  /**
+   * Compresses the source array, starting at the specified offset, and stores the result in the
+   * destination array starting at the specified destination offset. Returns the actual number of
+   * bytes of data compressed. The call blocks until the batch it joined completes; interrupting the
+   * calling thread does not abort it, the interrupt status is kept.
+   *
+   * @param src the source array holding the source data
+   * @param srcOffset the start offset of the source data
+   * @param srcLength the length of source data to compress
+   * @param dst the destination array for the compressed data
+   * @param dstOffset the destination offset where to start storing the compressed data
+   * @param dstLength the maximum length that can be written to the destination array
+   * @return the size of the compressed data in bytes
+   * @throws IllegalArgumentException if 'srcLength' is less than 1.
+   * @throws ArrayIndexOutOfBoundsException if 'src'/'dst' offset is less than 0 or, it's greater
+   *     than 'src'/'dst' length.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy for the whole retry budget.
+   */
+  public int compress(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    if (srcLength <= 0) {
+      throw new IllegalArgumentException("length must be > 0");
+    }
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+    if (srcLength > QPLJob.IDXD_WQ_MAX_TRANSFER_BYTES / 2) {
+      Batch batch = takeBatch();
+      try {
+        batch.prepare(0);
+        return batch.jobs[0].execute(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+      } finally {
+        freeBatches.offer(batch);
+      }
+    }
+    Request request = new Request(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    boolean lead;
+    synchronized (lock) {
+      pending.add(request);
+      lead = !leaderActive;
+      if (lead) {
+        leaderActive = true;
+      } else if (pending.size() >= maxBatchSize) {
+        lock.notify();
+      }
+    }
+    if (lead || request.awaitTurn()) {
+      execute(collect());
+    }
+    return request.getResult();
+  }
+
+  /**
+   * Releases the jobs held by this QPLBatchCompressor. Resources held by this object are
+   * automatically released on garbage collection. This method can be used to do this explicitly
+   * once no call is in progress; jobs created by later calls are released on garbage collection.
+   */
+  public void doClear() {
+    Batch batch;
+    while ((batch = freeBatches.poll()) != null) {
+      for (QPLJob job : batch.jobs) {
+        job.doClear();
+      }
+    }
+  }
+
+  // Waits for the batch window, then takes up to 'maxBatchSize' requests, the leader's first. The
+  // next pending request, if any, becomes the leader of the next batch.
+  private Request[] collect() {
+    boolean interrupted = false;
+    Request[] requests;
+    synchronized (lock) {
+      long deadline = System.nanoTime() + windowNanos;
+      long remaining = windowNanos;
+      while (pending.size() < maxBatchSize && remaining > 0 && !interrupted) {
+        try {
+          TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+        remaining = deadline - System.nanoTime();
+      }
+      requests = new Request[Math.min(pending.size(), maxBatchSize)];
+      for (int i = 0; i < requests.length; i++) {
+        requests[i] = pending.poll();
+      }
+      Request next = pending.peek();
+      if (next == null) {
+        leaderActive = false;
+      } else {
+        next.promote();
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return requests;
+  }
+
+  private void execute(Request[] requests) {
+    int count = requests.length;
+    Batch batch = takeBatch();
+    try {
+      for (int i = 0; i < count; i++) {
+        Request request = requests[i];
+        // A compressed stream never exceeds the bound, so larger destinations still fit in a
+        // single submission.
+        batch.dstLengths[i] =
+            Math.min(request.dstLength, QPLJob.maxCompressedLength(request.srcLength));
+        batch.stage(i, request);
+        batch.prepare(i);
+      }
+      QPLJob.executeBatch(
+          batch.jobs,
+          batch.srcs,
+          batch.srcOffsets,
+          batch.srcLengths,
+          batch.dsts,
+          batch.dstOffsets,
+          batch.dstLengths,
+          count,
+          batch.statuses);
+      batchCount.incrementAndGet();
+      requestCount.addAndGet(count);
+      for (int i = 0; i < count; i++) {
+        if (batch.statuses[i] == QPLUtils.Statuses.OK.getStatusCode()) {
+          int written = batch.jobs[i].getBytesWritten();
+          batch.dsts[i].get(requests[i].dst, requests[i].dstOffset, written);
+          requests[i].complete(written, null);
+        } else {
+          executeAlone(batch, i, requests[i]);
+        }
+      }
+    } catch (RuntimeException e) {
+      for (Request request : requests) {
+        request.complete(0, e);
+      }
+    } finally {
+      batch.clear(count);
+      freeBatches.offer(batch);
+    }
+  }
+
+  // Re-executes an operation of a batch on its own, with the retries and the exceptions of the
+  // regular API.
+  private void executeAlone(Batch batch, int index, Request request) {
+    try {
+      batch.prepare(index);
+      int written =
+          batch.jobs[index].execute(
+              request.src,
+              request.srcOffset,
+              request.srcLength,
+              request.dst,
+              request.dstOffset,
+              request.dstLength);
+      request.complete(written, null);
+    } catch (RuntimeException e) {
+      request.complete(0, e);
+    }
+  }
+
+  private Batch takeBatch() {
+    Batch batch = freeBatches.poll();
+    return batch != null ? batch : new Batch();
+  }
+
+  // The jobs and the arguments of a batch, reused across batches. The sources and destinations are
+  // direct buffers from the default allocator, so the offsets stay 0.
+  private class Batch {
+    private final QPLJob[] jobs = new QPLJob[maxBatchSize];
+    private final ByteBuffer[] srcs = new ByteBuffer[maxBatchSize];
+    private final int[] srcOffsets = new int[maxBatchSize];
+    private final int[] srcLengths = new int[maxBatchSize];
+    private final ByteBuffer[] dsts = new ByteBuffer[maxBatchSize];
+    private final int[] dstOffsets = new int[maxBatchSize];
+    private final int[] dstLengths = new int[maxBatchSize];
+    private final int[] statuses = new int[maxBatchSize];
+
+    Batch() {
+      for (int i = 0; i < maxBatchSize; i++) {
+        jobs[i] = new QPLJob(executionPath);
+        jobs[i].setCompressionLevel(compressionLevel);
+        jobs[i].setRetryCount(retryCount);
+      }
+      prepare(0);
+    }
+
+    void prepare(int index) {
+      jobs[index].setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+      jobs[index].setFlags(QPLUtils.CompressionFlags);
+    }
+
+    // Copies the source of the request into a direct buffer and allocates the destination.
+    void stage(int index, Request request) {
+      QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+      srcs[index] = allocator.allocate(request.srcLength);
+      srcs[index].put(request.src, request.srcOffset, request.srcLength);
+      srcLengths[index] = request.srcLength;
+      dsts[index] = allocator.allocate(dstLengths[index]);
+    }
+
+    // Returns the staging buffers to the allocator.
+    void clear(int count) {
+      QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+      for (int i = 0; i < count; i++) {
+        if (srcs[i] != null) {
+          allocator.release(srcs[i]);
+          srcs[i] = null;
+        }
+        if (dsts[i] != null) {
+          allocator.release(dsts[i]);
+          dsts[i] = null;
+        }
+      }
+    }
+  }
+
+  // A call waiting for its batch.
+  private static class Request {
+    private final byte[] src;
+    private final int srcOffset;
+    private final int srcLength;
+    private final byte[] dst;
+    private final int dstOffset;
+    private final int dstLength;
+    private boolean done = false;
+    private boolean promoted = false;
+    private int bytesWritten;
+    private RuntimeException exception;
+
+    Request(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+      this.src = src;
+      this.srcOffset = srcOffset;
+      this.srcLength = srcLength;
+      this.dst = dst;
+      this.dstOffset = dstOffset;
+      this.dstLength = dstLength;
+    }
+
+    // Waits until the request is completed by a leader, or until it becomes the leader of the next
+    // batch, in which case it returns true.
+    synchronized boolean awaitTurn() {
+      boolean interrupted = false;
+      while (!done && !promoted) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return !done;
+    }
+
+    synchronized void promote() {
+      promoted = true;
+      notify();
+    }
+
+    synchronized void complete(int bytesWritten, RuntimeException exception) {
+      if (done) {
+        return;
+      }
+      this.bytesWritten = bytesWritten;
+      this.exception = exception;
+      done = true;
+      notify();
+    }
+
+    synchronized int getResult() {
+      if (exception != null) {
+        throw exception;
+      }
+      return bytesWritten;
+    }
+  }
+}
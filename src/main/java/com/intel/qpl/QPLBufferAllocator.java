@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates direct buffers suited to the accelerator.
+ *
+ * <p>A page fault taken by the device on shared virtual memory is far more expensive than one taken
+ * by the CPU, so the memory of every buffer is prefaulted when it is mapped. It is placed on the
+ * configured NUMA node, or on the node of the allocating thread with {@link #LOCAL_NODE}, and
+ * buffers of 2MB and more are backed by transparent huge pages when enabled.
+ *
+ * <p>Requested sizes are rounded up to a power-of-two size class of at least 4KB, and released
+ * buffers are kept per size class for reuse, up to the configured number of pooled bytes. Beyond
+ * that, released buffers are unmapped right away. Buffers that are never released are unmapped
+ * once they become unreachable.
+ *
+ * <p>This class is thread safe.
+ */
+public class QPLBufferAllocator {
+  /** Places the memory on the NUMA node of the allocating thread. */
+  public static final int LOCAL_NODE = QPLUtils.CURRENT_NUMA_NODE;
+
+  static final int PAGE_SIZE = 4096;
+  static final int HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+  private static final int MIN_CLASS_SHIFT = 12;
+  private static final int MAX_CLASS_SHIFT = 30;
+
+  private static final Cleaner cleaner = Cleaner.create();
+  private static final QPLBufferAllocator DEFAULT_ALLOCATOR =
+      new QPLBufferAllocator(
+          LOCAL_NODE, QPLUtils.DEFAULT_HUGE_PAGES, QPLUtils.DEFAULT_MAX_POOLED_BYTES);
+
+  private final int numaNode;
+  private final boolean hugePages;
+  private final long maxPooledBytes;
+  private final ConcurrentLinkedQueue<ByteBuffer>[] freeBuffers;
+  private final ConcurrentHashMap<Long, Mapping> mappings = new ConcurrentHashMap<>();
+  private final AtomicLong pooledBytes = new AtomicLong();
+  private final AtomicLong mappedBytes = new AtomicLong();
+
+  /**
+   * Creates a new QPLBufferAllocator with specified parameters.
+   *
+   * @param numaNode the NUMA node of the memory, or {@link #LOCAL_NODE} for the node of the
+   *     allocating thread.
+   * @param hugePages whether buffers of 2MB and more use transparent huge pages.
+   * @param maxPooledBytes the maximum number of bytes of released buffers kept for reuse.
+   * @throws IllegalArgumentException if the NUMA node is less than {@link #LOCAL_NODE} or the
+   *     maximum number of pooled bytes is negative.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public QPLBufferAllocator(int numaNode, boolean hugePages, long maxPooledBytes) {
+    if (numaNode < LOCAL_NODE) {
+      throw new IllegalArgumentException("Invalid NUMA node " + numaNode);
+    }
+    if (maxPooledBytes < 0) {
+      throw new IllegalArgumentException(
+          "Maximum pooled bytes must be >= 0, got " + maxPooledBytes);
+    }
+    this.numaNode = numaNode;
+    this.hugePages = hugePages;
+    this.maxPooledBytes = maxPooledBytes;
+    this.freeBuffers = new ConcurrentLinkedQueue[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+    for (int i = 0; i < freeBuffers.length; i++) {
+      freeBuffers[i] = new ConcurrentLinkedQueue<>();
+    }
+  }
+
+  /**
+   * Returns the shared allocator, which places the memory on the node of the allocating thread and
+   * uses huge pages if {@link QPLUtils#DEFAULT_HUGE_PAGES} is true.
+   *
+   * @return the default allocator.
+   */
+  public static QPLBufferAllocator getDefault() {
+    return DEFAULT_ALLOCATOR;
+  }
+
+  /**
+   * Returns the NUMA node of the memory of this allocator.
+   *
+   * @return NUMA node, or {@link #LOCAL_NODE}.
+   */
+  public int getNumaNode() {
+    return numaNode;
+  }
+
+  /**
+   * Returns whether buffers of 2MB and more use transparent huge pages.
+   *
+   * @return true if huge pages are enabled, otherwise false.
+   */
+  public boolean isHugePagesEnabled() {
+    return hugePages;
+  }
+
+  /**
+   * Returns the maximum number of bytes of released buffers kept for reuse.
+   *
+   * @return maximum pooled bytes.
+   */
+  public long getMaxPooledBytes() {
+    return maxPooledBytes;
+  }
+
+  /**
+   * Returns the number of bytes of released buffers currently kept for reuse.
+   *
+   * @return pooled bytes.
+   */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  /**
+   * Returns the number of bytes currently mapped by this allocator, for both the buffers in use and
+   * the pooled ones.
+   *
+   * @return mapped bytes.
+   */
+  public long getMappedBytes() {
+    return mappedBytes.get();
+  }
+
+  /**
+   * Returns a direct buffer with a capacity of exactly 'size' bytes. The content of a reused buffer
+   * is not cleared.
+   *
+   * @param size the capacity of the buffer in bytes.
+   * @return a direct buffer with position 0 and limit 'size'.
+   * @throws IllegalArgumentException if the size is less than 1.
+   * @throws QPLException if the memory could not be mapped.
+   */
+  public ByteBuffer allocate(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Buffer size must be > 0, got " + size);
+    }
+    int sizeClass = sizeClass(size);
+    ByteBuffer buffer = null;
+    if (sizeClass >= 0) {
+      buffer = freeBuffers[sizeClass].poll();
+      if (buffer != null) {
+        pooledBytes.addAndGet(-buffer.capacity());
+      }
+    }
+    if (buffer == null) {
+      buffer = map(sizeClass, size);
+    }
+    mappings.get(QPLJNI.getBufferAddress(buffer)).released.set(false);
+    ByteBuffer result = buffer.duplicate();
+    result.limit(size);
+    return result.slice();
+  }
+
+  /**
+   * Returns a buffer obtained from {@link #allocate(int)} to this allocator. The caller must not
+   * use the buffer, or any view of it, afterwards.
+   *
+   * @param buffer the buffer to release.
+   * @throws IllegalArgumentException if the buffer was not allocated by this allocator.
+   * @throws IllegalStateException if the buffer was already released.
+   */
+  public void release(ByteBuffer buffer) {
+    if (!buffer.isDirect()) {
+      throw new IllegalArgumentException("The buffer was not allocated by this allocator");
+    }
+    Mapping mapping = mappings.get(QPLJNI.getBufferAddress(buffer));
+    if (mapping == null) {
+      throw new IllegalArgumentException("The buffer was not allocated by this allocator");
+    }
+    if (!mapping.released.compareAndSet(false, true)) {
+      throw new IllegalStateException("The buffer was already released");
+    }
+    ByteBuffer base = mapping.buffer.get();
+    if (mapping.sizeClass >= 0 && base != null) {
+      if (pooledBytes.addAndGet(mapping.length) <= maxPooledBytes) {
+        freeBuffers[mapping.sizeClass].offer(base);
+        return;
+      }
+      pooledBytes.addAndGet(-mapping.length);
+    }
+    mapping.cleanable.clean();
+  }
+
+  private ByteBuffer map(int sizeClass, int size) {
+    long length;
+    if (sizeClass >= 0) {
+      length = 1L << (sizeClass + MIN_CLASS_SHIFT);
+    } else {
+      int alignment = hugePages ? HUGE_PAGE_SIZE : PAGE_SIZE;
+      length = (size + alignment - 1L) / alignment * alignment;
+    }
+    boolean useHugePages = hugePages && length >= HUGE_PAGE_SIZE;
+    long address = QPLJNI.allocateMemory(length, numaNode, useHugePages);
+    ByteBuffer buffer = QPLJNI.wrapMemory(address, (int) Math.min(length, Integer.MAX_VALUE));
+    Mapping mapping = new Mapping(address, length, sizeClass, buffer, mappings, mappedBytes);
+    mapping.cleanable = cleaner.register(buffer, mapping);
+    mappedBytes.addAndGet(length);
+    mappings.put(address, mapping);
+    return buffer;
+  }
+
+  // Returns the index of the size class of 'size', or -1 if it is larger than the largest class.
+  private static int sizeClass(int size) {
+    int shift = Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(size - 1));
+    return shift <= MAX_CLASS_SHIFT ? shift - MIN_CLASS_SHIFT : -1;
+  }
+
+  // Unmaps the memory of a buffer, either on release or once the buffer is unreachable. It must not
+  // hold a strong reference to the buffer, otherwise the buffer would never become unreachable.
+  private static class Mapping implements Runnable {
+    private final long address;
+    private final long length;
+    private final int sizeClass;
+    private final WeakReference<ByteBuffer> buffer;
+    private final ConcurrentHashMap<Long, Mapping> mappings;
+    private final AtomicLong mappedBytes;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private Cleaner.Cleanable cleanable;
+
+    Mapping(
+        long address,
+        long length,
+        int sizeClass,
+        ByteBuffer buffer,
+        ConcurrentHashMap<Long, Mapping> mappings,
+        AtomicLong mappedBytes) {
+      this.address = address;
+      this.length = length;
+      this.sizeClass = sizeClass;
+      this.buffer = new WeakReference<>(buffer);
+      this.mappings = mappings;
+      this.mappedBytes = mappedBytes;
+    }
+
+    @Override
+    public void run() {
+      mappings.remove(address);
+      mappedBytes.addAndGet(-length);
+      QPLJNI.freeMemory(address, length);
+    }
+  }
+}
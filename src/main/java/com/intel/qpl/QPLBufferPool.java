@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed-size direct buffers, used as output segments by {@link
+ * QPLCompressor#compress(ByteBuffer, QPLBufferPool)}.
+ *
+ * <p>Buffers are allocated on demand from a {@link QPLBufferAllocator} and kept for reuse once
+ * released, up to the configured number of pooled buffers. Buffers released beyond that go back to
+ * the allocator.
+ *
+ * <p>This class is thread safe.
+ */
+public class QPLBufferPool {
+  private static final QPLBufferPool DEFAULT_POOL =
+      new QPLBufferPool(QPLUtils.DEFAULT_SEGMENT_SIZE, QPLUtils.DEFAULT_MAX_POOLED_SEGMENTS);
+  // Segments smaller than this would only hold a few hundred bytes of compressed data per call.
+  static final int MIN_BUFFER_SIZE = 4096;
+
+  private final int bufferSize;
+  private final int maxPooled;
+  private final QPLBufferAllocator allocator;
+  private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  /**
+   * Creates a new QPLBufferPool that allocates its buffers from {@link
+   * QPLBufferAllocator#getDefault()}.
+   *
+   * @param bufferSize the capacity of each buffer in bytes.
+   * @param maxPooled the maximum number of released buffers kept for reuse.
+   * @throws IllegalArgumentException if the buffer size is less than 4096 or the maximum number of
+   *     pooled buffers is negative.
+   */
+  public QPLBufferPool(int bufferSize, int maxPooled) {
+    this(bufferSize, maxPooled, QPLBufferAllocator.getDefault());
+  }
+
+  /**
+   * Creates a new QPLBufferPool with specified parameters.
+   *
+   * @param bufferSize the capacity of each buffer in bytes.
+   * @param maxPooled the maximum number of released buffers kept for reuse.
+   * @param allocator the allocator of the buffers.
+   * @throws IllegalArgumentException if the buffer size is less than 4096 or the maximum number of
+   *     pooled buffers is negative.
+   */
+  public QPLBufferPool(int bufferSize, int maxPooled, QPLBufferAllocator allocator) {
+    if (bufferSize < MIN_BUFFER_SIZE) {
+      throw new IllegalArgumentException(
+          "Buffer size must be >= " + MIN_BUFFER_SIZE + ", got " + bufferSize);
+    }
+    if (maxPooled < 0) {
+      throw new IllegalArgumentException("Maximum pooled buffers must be >= 0, got " + maxPooled);
+    }
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+    this.allocator = allocator;
+  }
+
+  /**
+   * Returns the shared pool of {@link QPLUtils#DEFAULT_SEGMENT_SIZE} byte buffers.
+   *
+   * @return the default pool.
+   */
+  public static QPLBufferPool getDefault() {
+    return DEFAULT_POOL;
+  }
+
+  /**
+   * Returns the capacity of the buffers of this pool.
+   *
+   * @return buffer size in bytes.
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Returns the allocator of the buffers of this pool.
+   *
+   * @return the allocator.
+   */
+  public QPLBufferAllocator getAllocator() {
+    return allocator;
+  }
+
+  /**
+   * Returns a cleared buffer, reusing a released one if available.
+   *
+   * @return a direct buffer of {@link #getBufferSize()} bytes.
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = freeBuffers.poll();
+    if (buffer == null) {
+      return allocator.allocate(bufferSize);
+    }
+    pooled.decrementAndGet();
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer obtained from {@link #acquire()} to this pool. The caller must not use the
+   * buffer afterwards.
+   *
+   * @param buffer the buffer to release.
+   * @throws IllegalArgumentException if the buffer does not belong to this pool.
+   * @throws IllegalStateException if the buffer was already released to the allocator.
+   */
+  public void release(ByteBuffer buffer) {
+    if (!buffer.isDirect() || buffer.capacity() != bufferSize) {
+      throw new IllegalArgumentException("The buffer does not belong to this pool");
+    }
+    if (pooled.incrementAndGet() <= maxPooled) {
+      freeBuffers.offer(buffer);
+    } else {
+      pooled.decrementAndGet();
+      allocator.release(buffer);
+    }
+  }
+}
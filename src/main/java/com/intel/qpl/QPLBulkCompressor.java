@@ -0,0 +1,496 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compresses large inputs on the IAA hardware and on CPU cores at the same time, so that the
+ * throughput of a bulk compression is the sum of both rather than the throughput of one of them.
+ *
+ * <p>The input is split into independent blocks of {@link #getBlockSize()} bytes, each compressed
+ * into its own frame (see {@link QPLFrame}); the frames are stored one after the other in block
+ * order. Hardware workers, each with its own hardware job, and software workers, each compressing
+ * on one core, take the next block from a shared cursor as soon as they are done with the previous
+ * one, so the faster side naturally compresses more blocks. The throughput of each side is measured
+ * continuously, and near the end of the input a worker does not take a block if the other side is
+ * expected to finish all the remaining blocks before this worker finishes one, so that a slow
+ * worker does not delay the whole call with the last block. A worker only leaves this way while a
+ * worker of the other side is still active, so every block is always processed.
+ *
+ * <p>The output can be decompressed with {@link #decompress(byte[], int, int, byte[], int, int)},
+ * which spreads the frames over both sides in the same way, or frame by frame with {@link
+ * QPLCompressor#decompressFramed(byte[], int, int, byte[], int, int)}.
+ *
+ * <p>If the hardware path is not available, the hardware workers compress on the software path.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLBulkCompressor {
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "qpl-bulk");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final int blockSize;
+  private final QPLCompressor[] hardwareCompressors;
+  private final QPLCompressor[] softwareCompressors;
+  private final Executor executor;
+  private final Throughput compressThroughput = new Throughput();
+  private final Throughput decompressThroughput = new Throughput();
+  private final AtomicLong hardwareBlockCount = new AtomicLong();
+  private final AtomicLong softwareBlockCount = new AtomicLong();
+
+  /**
+   * Creates a new QPLBulkCompressor that uses {@link QPLUtils#DEFAULT_BULK_BLOCK_SIZE}, {@link
+   * QPLUtils#DEFAULT_BULK_HARDWARE_THREADS}, one software thread per remaining available processor,
+   * {@link QPLUtils#DEFAULT_COMPRESSION_LEVEL}, {@link QPLUtils#DEFAULT_RETRY_COUNT} and a shared
+   * pool of daemon threads.
+   */
+  public QPLBulkCompressor() {
+    this(
+        QPLUtils.DEFAULT_BULK_BLOCK_SIZE,
+        QPLUtils.DEFAULT_BULK_HARDWARE_THREADS,
+        Math.max(
+            1,
+            Runtime.getRuntime().availableProcessors() - QPLUtils.DEFAULT_BULK_HARDWARE_THREADS),
+        QPLUtils.DEFAULT_COMPRESSION_LEVEL,
+        QPLUtils.DEFAULT_RETRY_COUNT,
+        DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Creates a new QPLBulkCompressor with specified parameters.
+   *
+   * @param blockSize the size in bytes of the independently compressed blocks.
+   * @param hardwareThreads the number of blocks compressed on the hardware at a time.
+   * @param softwareThreads the number of blocks compressed on the software path at a time, i.e. the
+   *     number of cores used.
+   * @param compressionLevel the compression level.
+   * @param retryCount the number of attempts to acquire hardware resources.
+   * @param executor the executor the workers run on. It must be able to run 'hardwareThreads' +
+   *     'softwareThreads' tasks concurrently.
+   * @throws IllegalArgumentException if the block size is less than one, a thread count is
+   *     negative, or both are zero.
+   */
+  public QPLBulkCompressor(
+      int blockSize,
+      int hardwareThreads,
+      int softwareThreads,
+      int compressionLevel,
+      int retryCount,
+      Executor executor) {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Block size must be > 0, got " + blockSize);
+    }
+    if (hardwareThreads < 0 || softwareThreads < 0 || hardwareThreads + softwareThreads == 0) {
+      throw new IllegalArgumentException(
+          "Thread counts must be >= 0 and not both 0, got "
+              + hardwareThreads
+              + ", "
+              + softwareThreads);
+    }
+    QPLUtils.ExecutionPaths path =
+        QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE);
+    if (!QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE.equals(path)) {
+      softwareThreads += hardwareThreads;
+      hardwareThreads = 0;
+    }
+    this.blockSize = blockSize;
+    this.executor = executor;
+    this.hardwareCompressors = new QPLCompressor[hardwareThreads];
+    for (int i = 0; i < hardwareThreads; i++) {
+      hardwareCompressors[i] =
+          new QPLCompressor(
+              path, QPLJob.getValidCompressionLevel(path, compressionLevel), retryCount);
+    }
+    this.softwareCompressors = new QPLCompressor[softwareThreads];
+    for (int i = 0; i < softwareThreads; i++) {
+      softwareCompressors[i] =
+          new QPLCompressor(
+              QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE,
+              QPLJob.getValidCompressionLevel(
+                  QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, compressionLevel),
+              retryCount);
+    }
+  }
+
+  /**
+   * Returns the size in bytes of the independently compressed blocks.
+   *
+   * @return block size.
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Returns the number of blocks compressed or decompressed on the hardware at a time.
+   *
+   * @return hardware thread count, 0 if the hardware path is not available.
+   */
+  public int getHardwareThreads() {
+    return hardwareCompressors.length;
+  }
+
+  /**
+   * Returns the number of blocks compressed or decompressed on the software path at a time.
+   *
+   * @return software thread count.
+   */
+  public int getSoftwareThreads() {
+    return softwareCompressors.length;
+  }
+
+  /**
+   * Returns the maximum length of the compressed data for the specified source length, i.e. the
+   * size of the destination {@link #compress(byte[], int, int, byte[], int, int, boolean)} needs.
+   *
+   * @param srcLen the length of the source array.
+   * @return the maximum compressed length.
+   * @throws IllegalArgumentException if the source length is less than one or too large.
+   */
+  public int maxCompressedLength(int srcLen) {
+    if (srcLen <= 0) {
+      throw new IllegalArgumentException("The source length must be > 0, got " + srcLen);
+    }
+    int blocks = (int) ((srcLen + (long) blockSize - 1) / blockSize);
+    int lastLength = srcLen - (blocks - 1) * blockSize;
+    long length =
+        (long) (blocks - 1) * QPLFrame.maxFramedLength(blockSize)
+            + QPLFrame.maxFramedLength(lastLength);
+    if (length > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The source length is too large");
+    }
+    return (int) length;
+  }
+
+  /**
+   * Compresses the source array, starting at the specified offset, into a sequence of frames stored
+   * in the destination array starting at the specified destination offset. Returns the total length
+   * of the frames.
+   *
+   * @param src the source array holding the source data
+   * @param srcOffset the start offset of the source data
+   * @param srcLength the length of source data to compress
+   * @param dst the destination array for the frames
+   * @param dstOffset the destination offset where to start storing the frames
+   * @param dstLength the maximum length that can be written to the destination array
+   * @param checksum whether to record the CRC-32 of each block in its frame header
+   * @return the size of the compressed data in bytes
+   * @throws IllegalStateException if a QPLJob is invalid.
+   * @throws QPLOutputOverflowException if 'dstLength' is less than {@link
+   *     #maxCompressedLength(int)} of 'srcLength'.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int compress(
+      byte[] src,
+      int srcOffset,
+      int srcLength,
+      byte[] dst,
+      int dstOffset,
+      int dstLength,
+      boolean checksum) {
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+    if (dstLength < maxCompressedLength(srcLength)) {
+      throw new QPLOutputOverflowException(
+          "The destination must hold maxCompressedLength(srcLength) bytes");
+    }
+    int blocks = (int) ((srcLength + (long) blockSize - 1) / blockSize);
+    int slotLength = QPLFrame.maxFramedLength(blockSize);
+    int[] frameLengths = new int[blocks];
+    // Each block is compressed into a slot of its maximum framed length, then the frames are moved
+    // next to each other. A frame never moves forward, so the move does not overwrite any frame.
+    run(
+        new Call(blocks, compressThroughput) {
+          @Override
+          long process(QPLCompressor compressor, int block) {
+            int offset = block * blockSize;
+            int length = Math.min(blockSize, srcLength - offset);
+            frameLengths[block] =
+                compressor.compressFramed(
+                    src,
+                    srcOffset + offset,
+                    length,
+                    dst,
+                    dstOffset + block * slotLength,
+                    QPLFrame.maxFramedLength(length),
+                    checksum);
+            return length;
+          }
+        });
+    int position = dstOffset;
+    for (int block = 0; block < blocks; block++) {
+      System.arraycopy(dst, dstOffset + block * slotLength, dst, position, frameLengths[block]);
+      position += frameLengths[block];
+    }
+    return position - dstOffset;
+  }
+
+  /**
+   * Decompresses a sequence of frames, such as the output of {@link #compress(byte[], int, int,
+   * byte[], int, int, boolean)}, and stores the result in the destination array starting at the
+   * specified destination offset. Returns the total number of bytes of decompressed data.
+   *
+   * @param src the source array holding the frames
+   * @param srcOffset the start offset of the first frame
+   * @param srcLength the total length of the frames
+   * @param dst the destination array for the decompressed data
+   * @param dstOffset the destination offset where to start storing the decompressed data
+   * @param dstLength the length that can be written to the destination array
+   * @return the size of the decompressed data in bytes
+   * @throws IllegalStateException if a QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is smaller than the total uncompressed length
+   *     recorded in the frame headers.
+   * @throws QPLException if a frame header is invalid, or the decompressed data does not match the
+   *     length or the checksum recorded in a header.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int decompress(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+    List<QPLFrame.Header> headers = new ArrayList<>();
+    List<Integer> frameOffsets = new ArrayList<>();
+    List<Integer> outputOffsets = new ArrayList<>();
+    int position = srcOffset;
+    long outputLength = 0;
+    while (position < srcOffset + srcLength) {
+      QPLFrame.Header header =
+          QPLFrame.readHeader(src, position, srcOffset + srcLength - position);
+      headers.add(header);
+      frameOffsets.add(position);
+      outputOffsets.add((int) Math.min(outputLength, Integer.MAX_VALUE));
+      position += header.headerLength + header.payloadLength;
+      outputLength += header.uncompressedLength;
+    }
+    if (outputLength > dstLength) {
+      throw new QPLOutputOverflowException(
+          "The destination is too small to hold the uncompressed frames");
+    }
+    run(
+        new Call(headers.size(), decompressThroughput) {
+          @Override
+          long process(QPLCompressor compressor, int block) {
+            QPLFrame.Header header = headers.get(block);
+            return compressor.decompressFramed(
+                src,
+                frameOffsets.get(block),
+                header.headerLength + header.payloadLength,
+                dst,
+                dstOffset + outputOffsets.get(block),
+                header.uncompressedLength);
+          }
+        });
+    return (int) outputLength;
+  }
+
+  /**
+   * Returns the number of blocks compressed or decompressed on the hardware so far.
+   *
+   * @return hardware block count.
+   */
+  public long getHardwareBlockCount() {
+    return hardwareBlockCount.get();
+  }
+
+  /**
+   * Returns the number of blocks compressed or decompressed on the software path so far.
+   *
+   * @return software block count.
+   */
+  public long getSoftwareBlockCount() {
+    return softwareBlockCount.get();
+  }
+
+  /**
+   * Returns the measured compression throughput of all the hardware workers together.
+   *
+   * @return bytes of input per second, 0 until measured.
+   */
+  public double getHardwareThroughput() {
+    return compressThroughput.get(true) * hardwareCompressors.length * 1e9;
+  }
+
+  /**
+   * Returns the measured compression throughput of all the software workers together.
+   *
+   * @return bytes of input per second, 0 until measured.
+   */
+  public double getSoftwareThroughput() {
+    return compressThroughput.get(false) * softwareCompressors.length * 1e9;
+  }
+
+  /**
+   * Releases resources held by this QPLBulkCompressor; consequently this QPLBulkCompressor will no
+   * longer be valid for use.
+   *
+   * @throws IllegalStateException If the user attempts to use this object after releasing the
+   *     resource explicitly.
+   */
+  public void doClear() {
+    for (QPLCompressor compressor : hardwareCompressors) {
+      compressor.doClear();
+    }
+    for (QPLCompressor compressor : softwareCompressors) {
+      compressor.doClear();
+    }
+  }
+
+  private void run(Call call) {
+    if (call.blocks == 0) {
+      return;
+    }
+    CountDownLatch done =
+        new CountDownLatch(hardwareCompressors.length + softwareCompressors.length);
+    call.hardwareActive.set(hardwareCompressors.length);
+    call.softwareActive.set(softwareCompressors.length);
+    for (QPLCompressor compressor : hardwareCompressors) {
+      executor.execute(() -> work(call, compressor, true, done));
+    }
+    for (QPLCompressor compressor : softwareCompressors) {
+      executor.execute(() -> work(call, compressor, false, done));
+    }
+    boolean interrupted = false;
+    while (true) {
+      try {
+        done.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (call.failure != null) {
+      throw call.failure;
+    }
+    if (call.next.get() != call.blocks) {
+      throw new IllegalStateException(
+          "Only " + call.next.get() + " of " + call.blocks + " blocks were processed");
+    }
+  }
+
+  private void work(Call call, QPLCompressor compressor, boolean hardware, CountDownLatch done) {
+    try {
+      int block;
+      while ((block = claim(call, hardware)) >= 0) {
+        long start = System.nanoTime();
+        long length = call.process(compressor, block);
+        call.throughput.record(hardware, length, System.nanoTime() - start);
+        (hardware ? hardwareBlockCount : softwareBlockCount).incrementAndGet();
+      }
+    } catch (RuntimeException e) {
+      call.active(hardware).decrementAndGet();
+      synchronized (call) {
+        if (call.failure == null) {
+          call.failure = e;
+        }
+      }
+    } finally {
+      done.countDown();
+    }
+  }
+
+  // Returns the next block for a worker of the specified side, or -1 if it should stop, in which
+  // case the worker is no longer counted as active.
+  private int claim(Call call, boolean hardware) {
+    AtomicInteger active = call.active(hardware);
+    while (true) {
+      int block = call.next.get();
+      if (block >= call.blocks || call.failure != null) {
+        active.decrementAndGet();
+        return -1;
+      }
+      if (!worthClaiming(call.throughput, hardware, call.blocks - block)) {
+        // The worker leaves only if a worker of the other side is still active to take the
+        // remaining blocks. It stops counting itself before checking, so that of two workers of
+        // both sides leaving at the same time, at least one sees the other gone and stays.
+        active.decrementAndGet();
+        if (call.active(!hardware).get() > 0) {
+          return -1;
+        }
+        active.incrementAndGet();
+      }
+      if (call.next.compareAndSet(block, block + 1)) {
+        return block;
+      }
+    }
+  }
+
+  // A worker takes a block unless the other side is expected to compress all the remaining blocks
+  // before this worker compresses one.
+  private boolean worthClaiming(Throughput throughput, boolean hardware, int remaining) {
+    int otherWorkers = hardware ? softwareCompressors.length : hardwareCompressors.length;
+    double rate = throughput.get(hardware);
+    double otherRate = throughput.get(!hardware);
+    if (otherWorkers == 0 || rate == 0 || otherRate == 0) {
+      return true;
+    }
+    double blockNanos = blockSize / rate;
+    double otherNanos = Math.ceil((double) remaining / otherWorkers) * blockSize / otherRate;
+    return blockNanos <= otherNanos;
+  }
+
+  // The blocks of one call. Workers claim the blocks in order through 'next', and count themselves
+  // as active on their side until they stop claiming.
+  private abstract static class Call {
+    final int blocks;
+    final Throughput throughput;
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger hardwareActive = new AtomicInteger();
+    final AtomicInteger softwareActive = new AtomicInteger();
+    volatile RuntimeException failure;
+
+    Call(int blocks, Throughput throughput) {
+      this.blocks = blocks;
+      this.throughput = throughput;
+    }
+
+    AtomicInteger active(boolean hardware) {
+      return hardware ? hardwareActive : softwareActive;
+    }
+
+    // Processes the block and returns the number of bytes of uncompressed data it covers.
+    abstract long process(QPLCompressor compressor, int block);
+  }
+
+  // Exponentially weighted moving averages of the bytes per nanosecond of one worker of each side.
+  private static class Throughput {
+    private static final double SMOOTHING_FACTOR = 0.25;
+    private double hardwareRate = 0;
+    private double softwareRate = 0;
+
+    synchronized double get(boolean hardware) {
+      return hardware ? hardwareRate : softwareRate;
+    }
+
+    synchronized void record(boolean hardware, long length, long elapsedNanos) {
+      double sample = (double) length / Math.max(elapsedNanos, 1);
+      double rate = hardware ? hardwareRate : softwareRate;
+      rate = rate == 0 ? sample : rate + SMOOTHING_FACTOR * (sample - rate);
+      if (hardware) {
+        hardwareRate = rate;
+      } else {
+        softwareRate = rate;
+      }
+    }
+  }
+}
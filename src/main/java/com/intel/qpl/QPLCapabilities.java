@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A snapshot of what the library and the IAA devices support: the available execution paths, the
+ * compression levels supported by each path, the library version and the device topology.
+ *
+ * <p>Probing an execution path or a compression level runs a trial job, so the snapshot is taken
+ * once, on the first call to {@link #get()}, and then shared. Call {@link #refresh()} to take a new
+ * snapshot, for instance after devices were enabled or disabled. {@link
+ * QPLJob#getValidExecutionPath(QPLUtils.ExecutionPaths)} and {@link
+ * QPLJob#getValidCompressionLevel(QPLUtils.ExecutionPaths, int)} answer from this snapshot.
+ *
+ * <p>Instances of this class are immutable and this class is thread safe.
+ */
+public class QPLCapabilities {
+  // The compression levels probed on each available path, the only ones the library implements.
+  private static final int[] PROBED_COMPRESSION_LEVELS = {1, 3};
+
+  private static volatile QPLCapabilities snapshot;
+
+  private final Map<QPLUtils.ExecutionPaths, Set<Integer>> compressionLevels;
+  private final String libraryVersion;
+  private final QPLDeviceTopology deviceTopology;
+
+  private QPLCapabilities(
+      Map<QPLUtils.ExecutionPaths, Set<Integer>> compressionLevels,
+      String libraryVersion,
+      QPLDeviceTopology deviceTopology) {
+    this.compressionLevels = compressionLevels;
+    this.libraryVersion = libraryVersion;
+    this.deviceTopology = deviceTopology;
+  }
+
+  /**
+   * Returns the current snapshot, probing the library and the devices on the first call.
+   *
+   * @return the current capabilities.
+   */
+  public static QPLCapabilities get() {
+    QPLCapabilities capabilities = snapshot;
+    if (capabilities == null) {
+      synchronized (QPLCapabilities.class) {
+        capabilities = snapshot;
+        if (capabilities == null) {
+          capabilities = probe();
+          snapshot = capabilities;
+        }
+      }
+    }
+    return capabilities;
+  }
+
+  /**
+   * Probes the library and the devices again and makes the result the current snapshot. The chunk
+   * sizes of the hardware jobs keep following the topology discovered at initialization.
+   *
+   * @return the new capabilities.
+   */
+  public static QPLCapabilities refresh() {
+    synchronized (QPLCapabilities.class) {
+      QPLCapabilities capabilities = probe();
+      snapshot = capabilities;
+      return capabilities;
+    }
+  }
+
+  private static QPLCapabilities probe() {
+    Map<QPLUtils.ExecutionPaths, Set<Integer>> compressionLevels =
+        new EnumMap<>(QPLUtils.ExecutionPaths.class);
+    for (QPLUtils.ExecutionPaths path : QPLUtils.ExecutionPaths.values()) {
+      int pathCode = path.getExecutionPathCode();
+      boolean available =
+          path == QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE
+              || QPLJNI.isExecutionPathAvailable(pathCode) == QPLUtils.QPL_SUCCESS_STATUS;
+      if (!available) {
+        continue;
+      }
+      Set<Integer> levels = new TreeSet<>();
+      for (int level : PROBED_COMPRESSION_LEVELS) {
+        if (QPLJNI.isCompressionLevelSupported(pathCode, level) == QPLUtils.QPL_SUCCESS_STATUS) {
+          levels.add(level);
+        }
+      }
+      compressionLevels.put(path, Collections.unmodifiableSet(levels));
+    }
+    return new QPLCapabilities(
+        compressionLevels, QPLJNI.getLibraryVersion(), QPLDeviceTopology.discover());
+  }
+
+  /**
+   * Checks if the specified execution path is available. The software path is always available.
+   *
+   * @param executionPath execution path.
+   * @return true if jobs can be initialized on the path, otherwise false.
+   */
+  public boolean isExecutionPathAvailable(QPLUtils.ExecutionPaths executionPath) {
+    return compressionLevels.containsKey(executionPath);
+  }
+
+  /**
+   * Checks if the specified compression level is supported on the specified execution path.
+   *
+   * @param executionPath execution path.
+   * @param compressionLevel compression level.
+   * @return true if the path is available and supports the level, otherwise false.
+   */
+  public boolean isCompressionLevelSupported(
+      QPLUtils.ExecutionPaths executionPath, int compressionLevel) {
+    return getSupportedCompressionLevels(executionPath).contains(compressionLevel);
+  }
+
+  /**
+   * Returns the compression levels supported on the specified execution path, in ascending order.
+   *
+   * @param executionPath execution path.
+   * @return an unmodifiable set of levels, empty if the path is not available.
+   */
+  public Set<Integer> getSupportedCompressionLevels(QPLUtils.ExecutionPaths executionPath) {
+    return compressionLevels.getOrDefault(executionPath, Collections.emptySet());
+  }
+
+  /**
+   * Returns the version of the native qpl library.
+   *
+   * @return library version.
+   */
+  public String getLibraryVersion() {
+    return libraryVersion;
+  }
+
+  /**
+   * Returns the IAA devices and work queues found when this snapshot was taken.
+   *
+   * @return the device topology.
+   */
+  public QPLDeviceTopology getDeviceTopology() {
+    return deviceTopology;
+  }
+
+  @Override
+  public String toString() {
+    return "QPLCapabilities{version="
+        + libraryVersion
+        + ", compressionLevels="
+        + compressionLevels
+        + ", devices="
+        + deviceTopology.getDevices()
+        + "}";
+  }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds data spread over a chain of pooled segments, as returned by {@link
+ * QPLCompressor#compress(ByteBuffer, QPLBufferPool)}.
+ *
+ * <p>The segments are returned to their pool by {@link #close()}; the data is no longer accessible
+ * afterwards.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLChainedBuffer implements AutoCloseable {
+  private final QPLBufferPool pool;
+  private final List<ByteBuffer> segments = new ArrayList<>();
+  private int length = 0;
+  private boolean released = false;
+
+  QPLChainedBuffer(QPLBufferPool pool) {
+    this.pool = pool;
+  }
+
+  // Appends a new empty segment from the pool and returns it for writing.
+  ByteBuffer nextSegment() {
+    ByteBuffer segment = pool.acquire();
+    segments.add(segment);
+    return segment;
+  }
+
+  // Makes the written part of every segment readable.
+  void complete() {
+    length = 0;
+    for (ByteBuffer segment : segments) {
+      segment.flip();
+      length += segment.remaining();
+    }
+  }
+
+  /**
+   * Returns the number of bytes held by this chain.
+   *
+   * @return length in bytes.
+   */
+  public int length() {
+    checkReleased();
+    return length;
+  }
+
+  /**
+   * Returns the number of segments of this chain.
+   *
+   * @return segment count.
+   */
+  public int getSegmentCount() {
+    checkReleased();
+    return segments.size();
+  }
+
+  /**
+   * Returns a read-only view of the data held by the specified segment, e.g. to write it to a
+   * channel without copying.
+   *
+   * @param index the index of the segment.
+   * @return read-only buffer positioned at the first byte of the segment.
+   * @throws IndexOutOfBoundsException if the index is out of range.
+   */
+  public ByteBuffer getSegment(int index) {
+    checkReleased();
+    return segments.get(index).asReadOnlyBuffer();
+  }
+
+  /**
+   * Copies the data held by this chain to 'dst' and advances its position accordingly.
+   *
+   * @param dst the destination buffer.
+   * @return the number of bytes copied.
+   * @throws BufferOverflowException if 'dst' has less remaining space than {@link #length()}.
+   */
+  public int copyTo(ByteBuffer dst) {
+    checkReleased();
+    QPLUtils.checkReadOnly(dst);
+    if (dst.remaining() < length) {
+      throw new BufferOverflowException();
+    }
+    for (ByteBuffer segment : segments) {
+      dst.put(segment.duplicate());
+    }
+    return length;
+  }
+
+  /**
+   * Returns a copy of the data held by this chain.
+   *
+   * @return byte array of {@link #length()} bytes.
+   */
+  public byte[] toByteArray() {
+    byte[] result = new byte[length()];
+    copyTo(ByteBuffer.wrap(result));
+    return result;
+  }
+
+  /** Returns the segments of this chain to their pool. Calling this method again has no effect. */
+  @Override
+  public void close() {
+    if (released) {
+      return;
+    }
+    released = true;
+    for (ByteBuffer segment : segments) {
+      pool.release(segment);
+    }
+    segments.clear();
+  }
+
+  private void checkReleased() {
+    if (released) {
+      throw new IllegalStateException("QPLChainedBuffer is released.");
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.util.zip.Deflater;
+
+/**
+ * A deflate-based compression format and the settings of its compressors, in the shape of a codec
+ * of a data processing framework: it creates {@link QPLDeflater} compressors, {@link QPLInflater}
+ * decompressors and {@link QPLStreamDecoder} direct decompressors for the format.
+ *
+ * <p>The output is a standard GZIP, ZLIB or raw deflate stream, so the files written with one codec
+ * can be read with another of the same format. The default execution path is {@link
+ * QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE} where it is available and {@link
+ * QPLUtils.ExecutionPaths#QPL_PATH_SOFTWARE} otherwise, so the same configuration runs on hosts
+ * with and without the accelerator.
+ *
+ * <p>This class is thread safe; the objects it creates are not.
+ */
+public class QPLCodec {
+  private final QPLUtils.StreamFormats format;
+  private final QPLUtils.ExecutionPaths executionPath;
+  private final int level;
+  private final int bufferSize;
+
+  /**
+   * Creates a new codec with the default execution path, compression level and buffer size.
+   *
+   * @param format the format of the compressed data.
+   */
+  public QPLCodec(QPLUtils.StreamFormats format) {
+    this(
+        format,
+        QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE),
+        Deflater.DEFAULT_COMPRESSION,
+        QPLUtils.DEFAULT_STREAM_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new codec with specified parameters.
+   *
+   * @param format the format of the compressed data.
+   * @param executionPath the execution path {@link QPLUtils.ExecutionPaths}.
+   * @param level the compression level of the compressors (0-9, or {@link
+   *     Deflater#DEFAULT_COMPRESSION}).
+   * @param bufferSize the number of input bytes a compressor accumulates before it compresses them.
+   * @throws IllegalArgumentException if the compression level is invalid or 'bufferSize' is less
+   *     than 1.
+   */
+  public QPLCodec(
+      QPLUtils.StreamFormats format,
+      QPLUtils.ExecutionPaths executionPath,
+      int level,
+      int bufferSize) {
+    if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("invalid compression level");
+    }
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be > 0, got " + bufferSize);
+    }
+    this.format = format;
+    this.executionPath = executionPath;
+    this.level = level;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Creates a new compressor. It must be released with {@link QPLDeflater#end()}.
+   *
+   * @return the compressor.
+   */
+  public QPLDeflater createCompressor() {
+    return new QPLDeflater(executionPath, level, format, bufferSize);
+  }
+
+  /**
+   * Creates a new decompressor. It must be released with {@link QPLInflater#end()}.
+   *
+   * @return the decompressor.
+   */
+  public QPLInflater createDecompressor() {
+    return new QPLInflater(executionPath, format);
+  }
+
+  /**
+   * Creates a new decompressor that decompresses from a buffer into a buffer, see {@link
+   * QPLStreamDecoder#decode(java.nio.ByteBuffer, java.nio.ByteBuffer)}.
+   *
+   * @param pool the pool of the buffers returned by {@link
+   *     QPLStreamDecoder#decode(java.nio.ByteBuffer)}.
+   * @return the decompressor.
+   */
+  public QPLStreamDecoder createDirectDecompressor(QPLBufferPool pool) {
+    return new QPLStreamDecoder(new QPLJob(executionPath), format, pool);
+  }
+
+  /**
+   * Returns the file name extension of the format: ".gz" for GZIP, ".deflate" for ZLIB and an
+   * empty string for raw deflate.
+   *
+   * @return the file name extension.
+   */
+  public String getDefaultExtension() {
+    switch (format) {
+      case GZIP:
+        return ".gz";
+      case ZLIB:
+        return ".deflate";
+      default:
+        return "";
+    }
+  }
+
+  /**
+   * Returns the format of the compressed data.
+   *
+   * @return the format.
+   */
+  public QPLUtils.StreamFormats getFormat() {
+    return format;
+  }
+
+  /**
+   * Returns the execution path of the compressors and decompressors.
+   *
+   * @return the execution path.
+   */
+  public QPLUtils.ExecutionPaths getExecutionPath() {
+    return executionPath;
+  }
+
+  /**
+   * Returns the compression level of the compressors.
+   *
+   * @return the compression level.
+   */
+  public int getLevel() {
+    return level;
+  }
+}
@@ -7,6 +7,7 @@ package com.intel.qpl;
 
 import java.nio.ByteBuffer;
 import java.nio.ReadOnlyBufferException;
+import java.util.zip.CRC32;
 
 /**
  * Provides methods to compress and decompress data.
@@ -14,7 +15,15 @@ import java.nio.ReadOnlyBufferException;
  * <p>This class is not thread safe.
  */
 public class QPLCompressor {
+  // Below this size, sampling the input costs about as much as compressing it.
+  private static final int MIN_STORED_BYPASS_LENGTH = 256;
   private final QPLJob job;
+  private boolean storedBypass = false;
+  private double storedBypassThreshold = QPLUtils.DEFAULT_STORED_BYPASS_THRESHOLD;
+  private long storedBypassCount = 0;
+  private QPLScheduler scheduler;
+  private QPLUtils.Priorities priority = QPLUtils.DEFAULT_PRIORITY;
+
   /**
    * Creates a new QPLCompressor that uses {@link QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE}, {@link
    * QPLUtils#DEFAULT_COMPRESSION_LEVEL}, {@link QPLUtils#DEFAULT_RETRY_COUNT}.
@@ -95,12 +104,169 @@ public class QPLCompressor {
    * @throws IllegalStateException if the QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
    *     bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
    */
   public int compress(ByteBuffer src, ByteBuffer dst) {
     job.reset();
+    int storedLength = tryStoredBypass(src, dst);
+    if (storedLength >= 0) {
+      return storedLength;
+    }
+    prepareCompress();
+    return execute(src, dst);
+  }
+
+  /**
+   * Compresses the source buffer like {@link #compress(ByteBuffer, ByteBuffer)}, but reports an
+   * overflowing destination, busy work queues and library errors through 'result' instead of
+   * throwing. The positions of both buffers are advanced only if the status is {@link
+   * QPLUtils.Statuses#OK}.
+   *
+   * @param src the source buffer holding the source data
+   * @param dst the destination buffer that will store the compressed data
+   * @param result the object the outcome is stored into
+   * @return 'result'
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   */
+  public QPLResult tryCompress(ByteBuffer src, ByteBuffer dst, QPLResult result) {
+    job.reset();
+    if (tryStoredBypass(src, dst) >= 0) {
+      return job.storeResult(QPLUtils.Statuses.OK, result);
+    }
+    prepareCompress();
+    return tryExecute(src, dst, result);
+  }
+
+  /**
+   * Compresses the remaining bytes of the source buffers, in order, as one deflate stream into the
+   * destination buffer, without copying them into a contiguous buffer first. Returns the number of
+   * bytes of compressed data.
+   *
+   * <p>The positions of the source buffers are advanced by the number of bytes read from each, and
+   * the position of the destination by the number of bytes of compressed data written to it.
+   *
+   * @param srcs the source buffers holding the source data
+   * @param dst the destination buffer that will store the compressed data
+   * @return returns the size of the compressed data in bytes
+   * @throws IllegalArgumentException if 'srcs' is empty.
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int compress(ByteBuffer[] srcs, ByteBuffer dst) {
+    job.reset();
+    prepareCompress();
+    return execute(srcs, new ByteBuffer[] {dst});
+  }
+
+  // Writes the source as stored blocks if the bypass is enabled and the source looks
+  // incompressible. Returns the number of bytes written, or -1 if the source must be compressed.
+  private int tryStoredBypass(ByteBuffer src, ByteBuffer dst) {
+    if (storedBypass
+        && src.remaining() >= MIN_STORED_BYPASS_LENGTH
+        && dst.remaining() >= QPLStoredBlocks.storedLength(src.remaining())
+        && QPLEntropyEstimator.estimate(src) >= storedBypassThreshold) {
+      job.checkValid();
+      QPLUtils.checkReadOnly(dst);
+      int srcLength = src.remaining();
+      int storedLength = QPLStoredBlocks.write(src, dst);
+      job.setResult(srcLength, storedLength);
+      storedBypassCount++;
+      return storedLength;
+    }
+    return -1;
+  }
+
+  // Runs the configured operation on the job, through the scheduler if one is set.
+  private int execute(ByteBuffer src, ByteBuffer dst) {
+    if (scheduler == null) {
+      return job.execute(src, dst);
+    }
+    return scheduler.execute(priority, job, src, dst);
+  }
+
+  private int execute(ByteBuffer[] srcs, ByteBuffer[] dsts) {
+    if (scheduler == null) {
+      return job.execute(srcs, dsts);
+    }
+    scheduler.acquire(priority);
+    try {
+      return job.execute(srcs, dsts);
+    } finally {
+      scheduler.release(priority);
+    }
+  }
+
+  private int execute(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    if (scheduler == null) {
+      return job.execute(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    }
+    boolean isFirstBlock = (job.getFlags() & QPLUtils.Flags.QPL_FLAG_FIRST.getId()) != 0;
+    if (isFirstBlock && srcLength <= 0) {
+      throw new IllegalArgumentException("length must be > 0");
+    }
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+    return scheduler.execute(
+        priority,
+        job,
+        ByteBuffer.wrap(src, srcOffset, srcLength),
+        ByteBuffer.wrap(dst, dstOffset, dstLength));
+  }
+
+  private QPLResult tryExecute(ByteBuffer src, ByteBuffer dst, QPLResult result) {
+    if (scheduler == null) {
+      return job.tryExecute(src, dst, result);
+    }
+    scheduler.acquire(priority);
+    try {
+      return job.tryExecute(src, dst, result);
+    } finally {
+      scheduler.release(priority);
+    }
+  }
+
+  private QPLResult tryExecute(
+      byte[] src,
+      int srcOffset,
+      int srcLength,
+      byte[] dst,
+      int dstOffset,
+      int dstLength,
+      QPLResult result) {
+    if (scheduler == null) {
+      return job.tryExecute(src, srcOffset, srcLength, dst, dstOffset, dstLength, result);
+    }
+    scheduler.acquire(priority);
+    try {
+      return job.tryExecute(src, srcOffset, srcLength, dst, dstOffset, dstLength, result);
+    } finally {
+      scheduler.release(priority);
+    }
+  }
+
+  private byte[] decompressAll(
+      byte[] srcArr, ByteBuffer srcBuf, int srcOffset, int srcLength, int sizeHint) {
+    if (scheduler == null) {
+      return job.decompressAll(srcArr, srcBuf, srcOffset, srcLength, sizeHint);
+    }
+    scheduler.acquire(priority);
+    try {
+      return job.decompressAll(srcArr, srcBuf, srcOffset, srcLength, sizeHint);
+    } finally {
+      scheduler.release(priority);
+    }
+  }
+
+  private void prepareCompress() {
     job.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
     job.setFlags(QPLUtils.CompressionFlags);
-    return job.execute(src, dst);
   }
 
   /**
@@ -114,6 +280,8 @@ public class QPLCompressor {
    * @throws IllegalStateException if the QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
    *     bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
    */
   public int compress(byte[] src, byte[] dst) {
     return compress(src, 0, src.length, dst, 0, dst.length);
@@ -135,13 +303,211 @@ public class QPLCompressor {
    * @throws IllegalStateException if the QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
    *     bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
    */
   public int compress(
       byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
     job.reset();
-    job.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
-    job.setFlags(QPLUtils.CompressionFlags);
-    return job.execute(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    int storedLength = tryStoredBypass(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    if (storedLength >= 0) {
+      return storedLength;
+    }
+    prepareCompress();
+    return execute(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+  }
+
+  /**
+   * Compresses the source array like {@link #compress(byte[], int, int, byte[], int, int)}, but
+   * reports an overflowing destination, busy work queues and library errors through 'result'
+   * instead of throwing.
+   *
+   * @param src the source array holding the source data
+   * @param srcOffset the start offset of the source data
+   * @param srcLength the length of source data to compress
+   * @param dst the destination array for the compressed data
+   * @param dstOffset the destination offset where to start storing the compressed data
+   * @param dstLength the maximum length that can be written to the destination array
+   * @param result the object the outcome is stored into
+   * @return 'result'
+   * @throws IllegalStateException if the QPLJob is invalid.
+   */
+  public QPLResult tryCompress(
+      byte[] src,
+      int srcOffset,
+      int srcLength,
+      byte[] dst,
+      int dstOffset,
+      int dstLength,
+      QPLResult result) {
+    job.reset();
+    if (tryStoredBypass(src, srcOffset, srcLength, dst, dstOffset, dstLength) >= 0) {
+      return job.storeResult(QPLUtils.Statuses.OK, result);
+    }
+    prepareCompress();
+    return tryExecute(src, srcOffset, srcLength, dst, dstOffset, dstLength, result);
+  }
+
+  private int tryStoredBypass(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    if (storedBypass
+        && srcLength >= MIN_STORED_BYPASS_LENGTH
+        && dstLength >= QPLStoredBlocks.storedLength(srcLength)
+        && QPLEntropyEstimator.estimate(src, srcOffset, srcLength) >= storedBypassThreshold) {
+      job.checkValid();
+      QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+      int storedLength = QPLStoredBlocks.write(src, srcOffset, srcLength, dst, dstOffset);
+      job.setResult(srcLength, storedLength);
+      storedBypassCount++;
+      return storedLength;
+    }
+    return -1;
+  }
+
+  /**
+   * Compresses the source buffer into a chain of output segments taken from 'pool'. Segments are
+   * obtained on demand as the compression advances, so the memory used tracks the actual
+   * compressed size rather than {@link #maxCompressedLength(int)}.
+   *
+   * <p>The source is compressed as one deflate stream, fed to the job in pieces of at most one
+   * work queue chunk. A piece whose worst-case compressed size does not fit the remaining space of
+   * the current segment is compressed into a staging buffer, and its output continues in the next
+   * segment. If a later piece finds the work queues busy and the failover policy is {@link
+   * QPLUtils.FailoverPolicies#SOFTWARE}, the compression restarts as a whole on the software path.
+   * The position of the source buffer is advanced by the number of bytes read. The caller must
+   * close the returned chain to give the segments back to the pool.
+   *
+   * @param src the source buffer holding the source data
+   * @param pool the pool providing the output segments
+   * @return the chain of segments holding the compressed data
+   * @throws IllegalArgumentException if the source buffer is empty.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public QPLChainedBuffer compress(ByteBuffer src, QPLBufferPool pool) {
+    if (!src.hasRemaining()) {
+      throw new IllegalArgumentException("length must be > 0");
+    }
+    job.reset();
+    int start = src.position();
+    QPLChainedBuffer result = new QPLChainedBuffer(pool);
+    try {
+      try {
+        compressPieces(src, result, null);
+      } catch (QPLQueuesBusyException e) {
+        if (job.getFailoverPolicy() != QPLUtils.FailoverPolicies.SOFTWARE) {
+          throw e;
+        }
+        // Only the first piece may fail over on its own, but the whole source is still at hand,
+        // so a later piece that found the work queues busy restarts the compression on software.
+        result.close();
+        result = new QPLChainedBuffer(pool);
+        src.position(start);
+        compressPieces(src, result, e);
+      }
+    } catch (RuntimeException e) {
+      result.close();
+      throw e;
+    }
+    result.complete();
+    return result;
+  }
+
+  // Compresses 'src' as one deflate stream into the segments of 'result'. A piece whose worst-case
+  // output fits the current segment is compressed straight into it, any other piece into a staging
+  // buffer whose output is then copied across the segment boundaries. If 'busy' is set, the stream
+  // restarts on the software path.
+  private void compressPieces(
+      ByteBuffer src, QPLChainedBuffer result, QPLQueuesBusyException busy) {
+    // Keep each piece within a single job submission, so the piece boundaries stay the only block
+    // boundaries.
+    int maxPiece = QPLJob.IDXD_WQ_MAX_TRANSFER_BYTES / 2;
+    int flags = QPLUtils.CompressionFlags & ~QPLUtils.Flags.QPL_FLAG_LAST.getId();
+    int totalRead = 0;
+    int totalWritten = 0;
+    QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+    ByteBuffer segment = result.nextSegment();
+    ByteBuffer staging = null;
+    try {
+      while (src.hasRemaining()) {
+        int piece = Math.min(src.remaining(), maxPiece);
+        int bound = QPLJob.maxCompressedLength(piece);
+        boolean last = piece == src.remaining();
+        ByteBuffer in = src.duplicate();
+        in.limit(in.position() + piece);
+        boolean direct = segment.remaining() >= bound;
+        ByteBuffer out;
+        if (direct) {
+          out = segment.duplicate();
+        } else {
+          if (staging == null) {
+            staging = allocator.allocate(QPLJob.maxCompressedLength(maxPiece));
+          }
+          out = staging.duplicate();
+          out.clear();
+        }
+        out.limit(out.position() + bound);
+        job.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+        job.setFlags(last ? flags | QPLUtils.Flags.QPL_FLAG_LAST.getId() : flags);
+        if (busy != null) {
+          totalWritten += job.restartOnFailover(in, out, busy);
+          busy = null;
+        } else {
+          totalWritten += execute(in, out);
+        }
+        totalRead += job.getBytesRead();
+        src.position(in.position());
+        if (direct) {
+          segment.position(out.position());
+        } else {
+          out.flip();
+          while (out.hasRemaining()) {
+            if (!segment.hasRemaining()) {
+              segment = result.nextSegment();
+            }
+            ByteBuffer part = out.duplicate();
+            part.limit(part.position() + Math.min(part.remaining(), segment.remaining()));
+            segment.put(part);
+            out.position(part.position());
+          }
+        }
+        if (!segment.hasRemaining() && src.hasRemaining()) {
+          segment = result.nextSegment();
+        }
+        flags &= ~QPLUtils.Flags.QPL_FLAG_FIRST.getId();
+      }
+    } finally {
+      if (staging != null) {
+        allocator.release(staging);
+      }
+    }
+    job.setResult(totalRead, totalWritten);
+  }
+
+  /**
+   * Compresses 'srcLength' bytes of the source array starting at 'srcOffset' into a chain of
+   * output segments taken from 'pool'.
+   *
+   * @param src the source array holding the source data
+   * @param srcOffset the start offset of the source data
+   * @param srcLength the length of source data to compress
+   * @param pool the pool providing the output segments
+   * @return the chain of segments holding the compressed data
+   * @throws IllegalArgumentException if 'srcLength' is less than 1.
+   * @throws ArrayIndexOutOfBoundsException if 'srcOffset'/'srcLength' do not describe a range of
+   *     'src'.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   * @see #compress(ByteBuffer, QPLBufferPool)
+   */
+  public QPLChainedBuffer compress(byte[] src, int srcOffset, int srcLength, QPLBufferPool pool) {
+    if (srcLength <= 0) {
+      throw new IllegalArgumentException("length must be > 0");
+    }
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    return compress(ByteBuffer.wrap(src, srcOffset, srcLength), pool);
   }
 
   /**
@@ -159,15 +525,64 @@ public class QPLCompressor {
    * @throws IllegalStateException if the QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the
    *     decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
    */
   public int decompress(ByteBuffer src, ByteBuffer dst) {
+    prepareDecompress();
+    return execute(src, dst);
+  }
+
+  /**
+   * Decompresses the source buffer like {@link #decompress(ByteBuffer, ByteBuffer)}, but reports an
+   * overflowing destination, busy work queues and library errors through 'result' instead of
+   * throwing. The positions of both buffers are advanced only if the status is {@link
+   * QPLUtils.Statuses#OK}.
+   *
+   * @param src the source buffer holding the compressed data
+   * @param dst the destination buffer that will store the decompressed data
+   * @param result the object the outcome is stored into
+   * @return 'result'
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   */
+  public QPLResult tryDecompress(ByteBuffer src, ByteBuffer dst, QPLResult result) {
+    prepareDecompress();
+    return tryExecute(src, dst, result);
+  }
+
+  /**
+   * Decompresses the source buffer into the destination buffers, filling them in order, without
+   * decompressing into a contiguous buffer first. Returns the number of bytes of decompressed data.
+   *
+   * <p>The position of the source buffer is advanced by the number of bytes read from it, and the
+   * positions of the destination buffers by the number of bytes of decompressed data written to
+   * each.
+   *
+   * @param src the source buffer holding the compressed data
+   * @param dsts the destination buffers that will store the decompressed data
+   * @return the size of the decompressed data in bytes
+   * @throws IllegalArgumentException if 'dsts' is empty.
+   * @throws ReadOnlyBufferException if one of the 'dsts' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dsts are not large enough to accommodate the
+   *     decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int decompress(ByteBuffer src, ByteBuffer[] dsts) {
+    prepareDecompress();
+    return execute(new ByteBuffer[] {src}, dsts);
+  }
+
+  // A decompression whose destination was insufficient continues the same stream.
+  private void prepareDecompress() {
     job.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
     int decompressflags =
         job.isOutputInsufficient()
             ? QPLUtils.Flags.QPL_FLAG_LAST.getId()
             : QPLUtils.DecompressionFlags;
     job.setFlags(decompressflags);
-    return job.execute(src, dst);
   }
 
   /**
@@ -181,6 +596,8 @@ public class QPLCompressor {
    * @throws IllegalStateException if the QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the
    *     decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
    */
   public int decompress(byte[] src, byte[] dst) {
     return decompress(src, 0, src.length, dst, 0, dst.length);
@@ -202,16 +619,399 @@ public class QPLCompressor {
    * @throws IllegalStateException if the QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the
    *     decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
    */
   public int decompress(
       byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    prepareDecompress();
+    return execute(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+  }
+
+  /**
+   * Decompresses the source array like {@link #decompress(byte[], int, int, byte[], int, int)},
+   * but reports an overflowing destination, busy work queues and library errors through 'result'
+   * instead of throwing.
+   *
+   * @param src the source array holding the compressed data
+   * @param srcOffset the start offset of the source
+   * @param srcLength the length of source data to decompress
+   * @param dst the destination array for the decompressed data
+   * @param dstOffset the destination offset where to start storing the decompressed data
+   * @param dstLength the length that can be written to the destination array
+   * @param result the object the outcome is stored into
+   * @return 'result'
+   * @throws IllegalStateException if the QPLJob is invalid.
+   */
+  public QPLResult tryDecompress(
+      byte[] src,
+      int srcOffset,
+      int srcLength,
+      byte[] dst,
+      int dstOffset,
+      int dstLength,
+      QPLResult result) {
+    prepareDecompress();
+    return tryExecute(src, srcOffset, srcLength, dst, dstOffset, dstLength, result);
+  }
+
+  /**
+   * Decompresses the whole source buffer when the decompressed size is not known in advance.
+   * Returns a new array holding exactly the decompressed data.
+   *
+   * <p>The output starts at 'sizeHint' bytes and continues in further native segments inside a
+   * single native call whenever more space is needed, so there is no need for the {@link
+   * #isOutputInsufficient()} loop and the decompressed data is copied only once, from the segments
+   * into the returned array. The position of the source buffer is advanced by the
+   * number of bytes read.
+   *
+   * @param src the source buffer holding the compressed data
+   * @param sizeHint the expected decompressed size in bytes; if it is less than 1, a size is
+   *     guessed from the source length
+   * @return the decompressed data
+   * @throws IllegalArgumentException if the source buffer is empty.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the decompressed data does not fit in a Java array.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public byte[] decompress(ByteBuffer src, int sizeHint) {
+    if (!src.hasRemaining()) {
+      throw new IllegalArgumentException("length must be > 0");
+    }
+    job.reset();
     job.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
-    int decompressflags =
-        job.isOutputInsufficient()
-            ? QPLUtils.Flags.QPL_FLAG_LAST.getId()
-            : QPLUtils.DecompressionFlags;
-    job.setFlags(decompressflags);
-    return job.execute(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    job.setFlags(QPLUtils.DecompressionFlags);
+    byte[] result;
+    if (src.isDirect()) {
+      result = decompressAll(null, src, src.position(), src.remaining(), sizeHint);
+    } else if (src.hasArray()) {
+      result =
+          decompressAll(
+              src.array(), null, src.arrayOffset() + src.position(), src.remaining(), sizeHint);
+    } else {
+      ByteBuffer srcBuf = QPLBufferAllocator.getDefault().allocate(Math.max(src.remaining(), 1));
+      srcBuf.put(src.duplicate()).flip();
+      try {
+        result = decompressAll(null, srcBuf, 0, srcBuf.remaining(), sizeHint);
+      } finally {
+        QPLBufferAllocator.getDefault().release(srcBuf);
+      }
+    }
+    src.position(src.position() + job.getBytesRead());
+    return result;
+  }
+
+  /**
+   * Decompresses 'srcLength' bytes of the source array starting at 'srcOffset' when the
+   * decompressed size is not known in advance. Returns a new array holding exactly the
+   * decompressed data.
+   *
+   * @param src the source array holding the compressed data
+   * @param srcOffset the start offset of the source
+   * @param srcLength the length of source data to decompress
+   * @param sizeHint the expected decompressed size in bytes; if it is less than 1, a size is
+   *     guessed from the source length
+   * @return the decompressed data
+   * @throws IllegalArgumentException if 'srcLength' is less than 1.
+   * @throws ArrayIndexOutOfBoundsException if 'srcOffset'/'srcLength' do not describe a range of
+   *     'src'.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the decompressed data does not fit in a Java array.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   * @see #decompress(ByteBuffer, int)
+   */
+  public byte[] decompress(byte[] src, int srcOffset, int srcLength, int sizeHint) {
+    if (srcLength <= 0) {
+      throw new IllegalArgumentException("length must be > 0");
+    }
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    job.reset();
+    job.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+    job.setFlags(QPLUtils.DecompressionFlags);
+    return decompressAll(src, null, srcOffset, srcLength, sizeHint);
+  }
+
+  /**
+   * Compresses the source array into a self-describing frame. The frame starts with a header
+   * recording the uncompressed length and, if 'checksum' is true, the CRC-32 of the source data.
+   * See {@link QPLFrame} for the layout. Returns the total length of the frame.
+   *
+   * @param src the source array holding the source data
+   * @param srcOffset the start offset of the source data
+   * @param srcLength the length of source data to compress
+   * @param dst the destination array for the frame
+   * @param dstOffset the destination offset where to start storing the frame
+   * @param dstLength the maximum length that can be written to the destination array
+   * @param checksum whether to record the CRC-32 of the source data in the header
+   * @return the size of the frame in bytes
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the frame; use
+   *     {@link QPLFrame#maxFramedLength(int)} to size it.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int compressFramed(
+      byte[] src,
+      int srcOffset,
+      int srcLength,
+      byte[] dst,
+      int dstOffset,
+      int dstLength,
+      boolean checksum) {
+    QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+    int headerLength = QPLFrame.headerLength(checksum);
+    if (dstLength <= headerLength) {
+      throw new QPLOutputOverflowException("The destination is too small to hold the frame");
+    }
+    long bypassCount = storedBypassCount;
+    int payloadLength =
+        compress(
+            src, srcOffset, srcLength, dst, dstOffset + headerLength, dstLength - headerLength);
+    int crc = 0;
+    if (checksum) {
+      if (storedBypassCount != bypassCount) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(src, srcOffset, srcLength);
+        crc = (int) crc32.getValue();
+      } else {
+        crc = job.getCrc();
+      }
+    }
+    QPLFrame.writeHeader(ByteBuffer.wrap(dst), dstOffset, srcLength, payloadLength, checksum, crc);
+    return headerLength + payloadLength;
+  }
+
+  /**
+   * Compresses the source buffer into a self-describing frame. The frame starts with a header
+   * recording the uncompressed length and, if 'checksum' is true, the CRC-32 of the source data.
+   * See {@link QPLFrame} for the layout. Returns the total length of the frame.
+   *
+   * <p>The positions of both the source and destinations buffers are advanced by the number of
+   * bytes read from the source and the length of the frame written to the destination.
+   *
+   * @param src the source buffer holding the source data
+   * @param dst the destination buffer that will store the frame
+   * @param checksum whether to record the CRC-32 of the source data in the header
+   * @return the size of the frame in bytes
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the frame; use
+   *     {@link QPLFrame#maxFramedLength(int)} to size it.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int compressFramed(ByteBuffer src, ByteBuffer dst, boolean checksum) {
+    QPLUtils.checkReadOnly(dst);
+    int headerLength = QPLFrame.headerLength(checksum);
+    if (dst.remaining() <= headerLength) {
+      throw new QPLOutputOverflowException("The destination is too small to hold the frame");
+    }
+    int srcPosition = src.position();
+    int srcLength = src.remaining();
+    int headerPosition = dst.position();
+    long bypassCount = storedBypassCount;
+    dst.position(headerPosition + headerLength);
+    int payloadLength;
+    try {
+      payloadLength = compress(src, dst);
+    } catch (RuntimeException e) {
+      dst.position(headerPosition);
+      throw e;
+    }
+    int crc = 0;
+    if (checksum) {
+      if (storedBypassCount != bypassCount) {
+        ByteBuffer consumed = src.duplicate();
+        consumed.limit(src.position()).position(srcPosition);
+        CRC32 crc32 = new CRC32();
+        crc32.update(consumed);
+        crc = (int) crc32.getValue();
+      } else {
+        crc = job.getCrc();
+      }
+    }
+    QPLFrame.writeHeader(dst, headerPosition, srcLength, payloadLength, checksum, crc);
+    return headerLength + payloadLength;
+  }
+
+  /**
+   * Decompresses the frame starting at 'srcOffset' of the source array. The destination is sized
+   * from the uncompressed length recorded in the frame header, so the returned array holds exactly
+   * the decompressed data.
+   *
+   * @param src the source array holding the frame
+   * @param srcOffset the start offset of the frame
+   * @param srcLength the number of bytes available from 'srcOffset'
+   * @return the decompressed data
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLException if the frame header is invalid, or the decompressed data does not match
+   *     the length or the checksum recorded in the header.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public byte[] decompressFramed(byte[] src, int srcOffset, int srcLength) {
+    QPLFrame.Header header = QPLFrame.readHeader(src, srcOffset, srcLength);
+    byte[] dst = new byte[header.uncompressedLength];
+    decompressFramed(header, src, srcOffset, dst, 0);
+    return dst;
+  }
+
+  /**
+   * Decompresses the frame starting at 'srcOffset' of the source array into the destination
+   * array. Returns the number of bytes of decompressed data, which is the uncompressed length
+   * recorded in the frame header.
+   *
+   * @param src the source array holding the frame
+   * @param srcOffset the start offset of the frame
+   * @param srcLength the number of bytes available from 'srcOffset'
+   * @param dst the destination array for the decompressed data
+   * @param dstOffset the destination offset where to start storing the decompressed data
+   * @param dstLength the length that can be written to the destination array
+   * @return the size of the decompressed data in bytes
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is smaller than the uncompressed length recorded
+   *     in the frame header.
+   * @throws QPLException if the frame header is invalid, or the decompressed data does not match
+   *     the length or the checksum recorded in the header.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int decompressFramed(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    QPLFrame.Header header = QPLFrame.readHeader(src, srcOffset, srcLength);
+    QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+    if (dstLength < header.uncompressedLength) {
+      throw new QPLOutputOverflowException(
+          "The destination is too small to hold the uncompressed frame");
+    }
+    decompressFramed(header, src, srcOffset, dst, dstOffset);
+    return header.uncompressedLength;
+  }
+
+  /**
+   * Decompresses the frame starting at the position of the source buffer into the destination
+   * buffer. Returns the number of bytes of decompressed data, which is the uncompressed length
+   * recorded in the frame header.
+   *
+   * <p>The position of the source buffer is advanced past the frame, and the position of the
+   * destination buffer by the number of bytes of decompressed data.
+   *
+   * @param src the source buffer holding the frame
+   * @param dst the destination buffer that will store the decompressed data
+   * @return the size of the decompressed data in bytes
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is smaller than the uncompressed length recorded
+   *     in the frame header.
+   * @throws QPLException if the frame header is invalid, or the decompressed data does not match
+   *     the length or the checksum recorded in the header.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int decompressFramed(ByteBuffer src, ByteBuffer dst) {
+    QPLFrame.Header header = QPLFrame.readHeader(src);
+    QPLUtils.checkReadOnly(dst);
+    if (dst.remaining() < header.uncompressedLength) {
+      throw new QPLOutputOverflowException(
+          "The destination is too small to hold the uncompressed frame");
+    }
+    int srcPosition = src.position();
+    int dstPosition = dst.position();
+    ByteBuffer payload = src.duplicate();
+    payload.position(srcPosition + header.headerLength);
+    payload.limit(srcPosition + header.headerLength + header.payloadLength);
+    ByteBuffer output = dst.duplicate();
+    output.limit(dstPosition + header.uncompressedLength);
+    job.reset();
+    int decompressedLength = decompress(payload, output);
+    verifyFrame(header, decompressedLength);
+    src.position(payload.limit());
+    dst.position(output.position());
+    return decompressedLength;
+  }
+
+  private void decompressFramed(
+      QPLFrame.Header header, byte[] src, int srcOffset, byte[] dst, int dstOffset) {
+    job.reset();
+    int decompressedLength =
+        decompress(
+            src,
+            srcOffset + header.headerLength,
+            header.payloadLength,
+            dst,
+            dstOffset,
+            header.uncompressedLength);
+    verifyFrame(header, decompressedLength);
+  }
+
+  private void verifyFrame(QPLFrame.Header header, int decompressedLength) {
+    if (job.isOutputInsufficient() || decompressedLength != header.uncompressedLength) {
+      job.reset();
+      throw new QPLException("The decompressed length does not match the frame header");
+    }
+    if (header.checksum && job.getCrc() != header.crc) {
+      throw new QPLException("The checksum of the decompressed data does not match the frame");
+    }
+  }
+
+  /**
+   * Returns whether the stored block bypass is enabled.
+   *
+   * @return true if the stored block bypass is enabled, otherwise false.
+   */
+  public boolean isStoredBypassEnabled() {
+    return storedBypass;
+  }
+
+  /**
+   * Enables or disables the stored block bypass. Disabled by default.
+   *
+   * <p>When enabled, compress samples the source with {@link QPLEntropyEstimator} first. If the
+   * estimated entropy reaches the stored bypass threshold, the source is not sent to the
+   * compression engine; instead it is copied to the destination as deflate stored blocks. The
+   * result is a valid deflate stream only a few bytes larger than the source, so it decompresses
+   * like any other compressed data. The bypass is skipped for small sources, or if the destination
+   * cannot hold the stored blocks.
+   *
+   * @param storedBypass true to enable the stored block bypass.
+   */
+  public void setStoredBypassEnabled(boolean storedBypass) {
+    this.storedBypass = storedBypass;
+  }
+
+  /**
+   * Returns configured stored bypass threshold.
+   *
+   * @return entropy threshold in bits per byte.
+   */
+  public double getStoredBypassThreshold() {
+    return storedBypassThreshold;
+  }
+
+  /**
+   * Sets the entropy in bits per byte from which the source is considered incompressible. Default
+   * value is {@link QPLUtils#DEFAULT_STORED_BYPASS_THRESHOLD}.
+   *
+   * @param storedBypassThreshold entropy threshold in bits per byte.
+   * @throws IllegalArgumentException if the threshold is not between 0 and 8.
+   */
+  public void setStoredBypassThreshold(double storedBypassThreshold) {
+    if (!(storedBypassThreshold >= 0 && storedBypassThreshold <= 8)) {
+      throw new IllegalArgumentException(
+          "Threshold must be between 0 and 8, got " + storedBypassThreshold);
+    }
+    this.storedBypassThreshold = storedBypassThreshold;
+  }
+
+  /**
+   * Returns the number of compress calls that emitted stored blocks instead of compressing.
+   *
+   * @return stored bypass count.
+   */
+  public long getStoredBypassCount() {
+    return storedBypassCount;
   }
 
   /**
@@ -223,6 +1023,153 @@ public class QPLCompressor {
     return job.getRetryCount();
   }
 
+  /**
+   * Returns configured retry timeout in nanoseconds.
+   *
+   * @return retry timeout in nanoseconds.
+   */
+  public long getRetryTimeoutNanos() {
+    return job.getRetryTimeoutNanos();
+  }
+
+  /**
+   * Sets the time in nanoseconds to keep retrying while the work queues are busy. If the timeout is
+   * greater than 0, retries are bounded by the elapsed time instead of the retry count.
+   *
+   * @param retryTimeoutNanos retry timeout in nanoseconds.
+   */
+  public void setRetryTimeoutNanos(long retryTimeoutNanos) {
+    job.setRetryTimeoutNanos(retryTimeoutNanos);
+  }
+
+  /**
+   * Returns configured backoff policy.
+   *
+   * @return backoff policy.
+   */
+  public QPLUtils.BackoffPolicies getBackoffPolicy() {
+    return job.getBackoffPolicy();
+  }
+
+  /**
+   * Sets how to wait between two attempts while the work queues are busy.
+   *
+   * @param backoffPolicy backoff policy.
+   */
+  public void setBackoffPolicy(QPLUtils.BackoffPolicies backoffPolicy) {
+    job.setBackoffPolicy(backoffPolicy);
+  }
+
+  /**
+   * Returns configured backoff cap in nanoseconds.
+   *
+   * @return backoff cap in nanoseconds.
+   */
+  public long getBackoffCapNanos() {
+    return job.getBackoffCapNanos();
+  }
+
+  /**
+   * Sets the maximum delay in nanoseconds between two attempts of the {@link
+   * QPLUtils.BackoffPolicies#EXPONENTIAL} backoff policy.
+   *
+   * @param backoffCapNanos backoff cap in nanoseconds.
+   * @throws IllegalArgumentException if the backoff cap is less than one.
+   */
+  public void setBackoffCapNanos(long backoffCapNanos) {
+    job.setBackoffCapNanos(backoffCapNanos);
+  }
+
+  /**
+   * Returns configured failover policy.
+   *
+   * @return failover policy.
+   */
+  public QPLUtils.FailoverPolicies getFailoverPolicy() {
+    return job.getFailoverPolicy();
+  }
+
+  /**
+   * Sets what to do once the work queues stay busy for the whole retry budget. With {@link
+   * QPLUtils.FailoverPolicies#SOFTWARE} the operation is transparently re-executed on the software
+   * path.
+   *
+   * @param failoverPolicy failover policy.
+   */
+  public void setFailoverPolicy(QPLUtils.FailoverPolicies failoverPolicy) {
+    job.setFailoverPolicy(failoverPolicy);
+  }
+
+  /**
+   * Returns the number of operations of this QPLCompressor that were re-executed on the software
+   * path because the work queues stayed busy.
+   *
+   * @return failover count.
+   */
+  public long getFailoverCount() {
+    return job.getFailoverCount();
+  }
+
+  /**
+   * Returns configured wait policy.
+   *
+   * @return wait policy.
+   */
+  public QPLUtils.WaitPolicies getWaitPolicy() {
+    return job.getWaitPolicy();
+  }
+
+  /**
+   * Sets how the calling thread waits for the hardware to complete an operation. Use {@link
+   * QPLUtils.WaitPolicies#PARK} when calling from virtual threads.
+   *
+   * @param waitPolicy wait policy.
+   */
+  public void setWaitPolicy(QPLUtils.WaitPolicies waitPolicy) {
+    job.setWaitPolicy(waitPolicy);
+  }
+
+  /**
+   * Returns the maximum time in nanoseconds a parked thread waits between two checks of an
+   * operation.
+   *
+   * @return maximum poll interval in nanoseconds.
+   */
+  public long getMaxPollIntervalNanos() {
+    return job.getMaxPollIntervalNanos();
+  }
+
+  /**
+   * Sets the maximum time in nanoseconds a parked thread waits between two checks of an operation.
+   *
+   * @param maxPollIntervalNanos maximum poll interval in nanoseconds.
+   * @throws IllegalArgumentException if the interval is less than one.
+   */
+  public void setMaxPollIntervalNanos(long maxPollIntervalNanos) {
+    job.setMaxPollIntervalNanos(maxPollIntervalNanos);
+  }
+
+  /**
+   * Returns the NUMA node whose devices this compressor submits to.
+   *
+   * @return NUMA node, or {@link QPLUtils#CURRENT_NUMA_NODE}.
+   */
+  public int getNumaNode() {
+    return job.getNumaNode();
+  }
+
+  /**
+   * Sets the NUMA node whose devices this compressor submits to.
+   *
+   * @param numaNode NUMA node, or {@link QPLUtils#CURRENT_NUMA_NODE} for the node of the calling
+   *     thread at the time of each call.
+   * @throws IllegalArgumentException if the node is less than {@link QPLUtils#CURRENT_NUMA_NODE}.
+   * @see QPLJob#setNumaNode(int)
+   */
+  public void setNumaNode(int numaNode) {
+    job.setNumaNode(numaNode);
+  }
+
   /**
    * Returns configured compression level.
    *
@@ -232,6 +1179,38 @@ public class QPLCompressor {
     return job.getCompressionLevel();
   }
 
+  /**
+   * Returns the scheduler the operations of this compressor go through.
+   *
+   * @return scheduler, or null if the operations are not scheduled.
+   */
+  public QPLScheduler getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Returns the priority class of the operations of this compressor.
+   *
+   * @return priority class.
+   */
+  public QPLUtils.Priorities getPriority() {
+    return priority;
+  }
+
+  /**
+   * Makes the operations of this compressor go through the specified scheduler, in the specified
+   * priority class. Compressors of different workloads share the accelerator fairly by sharing a
+   * scheduler. By default, operations are not scheduled.
+   *
+   * @param scheduler the scheduler, or null to stop scheduling the operations.
+   * @param priority the priority class of the operations.
+   * @see QPLScheduler
+   */
+  public void setScheduler(QPLScheduler scheduler, QPLUtils.Priorities priority) {
+    this.scheduler = scheduler;
+    this.priority = priority;
+  }
+
   /**
    * Checks if the destination buffer provided for the decompressed data was insufficient to
    * accommodate the entire decompressed data.
@@ -264,6 +1243,17 @@ public class QPLCompressor {
     return job.getBytesWritten();
   }
 
+  // The CRC-32 of the uncompressed data of the preceding operation, unless it was stored by the
+  // bypass.
+  int getCrc() {
+    return job.getCrc();
+  }
+
+  // Discards a decompression whose destination was insufficient.
+  void reset() {
+    job.reset();
+  }
+
   /**
    * Releases resources held by this QPLCompressor. Resources held by this object are automatically
    * released on garbage collection. This method can be used to do this explicitly; consequently
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of operations in flight on the accelerator, adapting the limit to the
+ * feedback of the work queues (additive increase, multiplicative decrease).
+ *
+ * <p>Every operation that completes without finding the work queues busy raises the limit by
+ * 1/limit, i.e. by one per limit-worth of operations. An operation that finds them busy, even if a
+ * retry then succeeded, cuts the limit by the configured backoff ratio, at most once per
+ * generation of operations: operations started before the latest cut do not cut it again. The
+ * limit stays between the configured minimum and maximum. Threads over the limit are parked until
+ * an operation completes, rather than spinning on busy work queues.
+ *
+ * <p>Install a limiter with {@link QPLJob#setConcurrencyLimiter(QPLConcurrencyLimiter)}; it then
+ * applies to the operations of all the hardware and auto path jobs. Operations on the software path
+ * are not limited.
+ *
+ * <p>This class is thread safe.
+ */
+public class QPLConcurrencyLimiter {
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition available = lock.newCondition();
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private double limit;
+  private int inFlight = 0;
+  private int waiting = 0;
+  private long generation = 0;
+  private long decreaseCount = 0;
+
+  /**
+   * Creates a new QPLConcurrencyLimiter that uses {@link QPLUtils#DEFAULT_INITIAL_CONCURRENCY},
+   * {@link QPLUtils#DEFAULT_MAX_CONCURRENCY} and {@link
+   * QPLUtils#DEFAULT_CONCURRENCY_BACKOFF_RATIO}, with a minimum limit of 1.
+   */
+  public QPLConcurrencyLimiter() {
+    this(
+        QPLUtils.DEFAULT_INITIAL_CONCURRENCY,
+        1,
+        QPLUtils.DEFAULT_MAX_CONCURRENCY,
+        QPLUtils.DEFAULT_CONCURRENCY_BACKOFF_RATIO);
+  }
+
+  /**
+   * Creates a new QPLConcurrencyLimiter with specified parameters.
+   *
+   * @param initialLimit the limit until feedback is received.
+   * @param minLimit the lowest limit.
+   * @param maxLimit the highest limit.
+   * @param backoffRatio the ratio the limit is multiplied by when the work queues are busy.
+   * @throws IllegalArgumentException if 'minLimit' is less than one, 'initialLimit' is not between
+   *     'minLimit' and 'maxLimit', or 'backoffRatio' is not strictly between 0 and 1.
+   */
+  public QPLConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+    if (minLimit <= 0 || initialLimit < minLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException(
+          "Limits must satisfy 0 < min <= initial <= max, got "
+              + minLimit
+              + ", "
+              + initialLimit
+              + ", "
+              + maxLimit);
+    }
+    if (!(backoffRatio > 0 && backoffRatio < 1)) {
+      throw new IllegalArgumentException(
+          "Backoff ratio must be between 0 and 1, got " + backoffRatio);
+    }
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+  }
+
+  /**
+   * Returns the current limit on the number of operations in flight.
+   *
+   * @return current limit.
+   */
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of operations in flight.
+   *
+   * @return operations in flight.
+   */
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of threads waiting for the number of operations in flight to drop below the
+   * limit.
+   *
+   * @return waiting thread count.
+   */
+  public int getWaitingCount() {
+    lock.lock();
+    try {
+      return waiting;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of times the limit was cut because the work queues were busy.
+   *
+   * @return decrease count.
+   */
+  public long getDecreaseCount() {
+    lock.lock();
+    try {
+      return decreaseCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Waits until 'permits' more operations may be in flight, and returns the generation to pass to
+  // release(). A request for more permits than the limit is admitted once nothing is in flight.
+  // Interrupting the waiting thread does not abort the wait.
+  long acquire(int permits) {
+    lock.lock();
+    try {
+      waiting++;
+      try {
+        while (inFlight > 0 && inFlight + permits > (int) limit) {
+          available.awaitUninterruptibly();
+        }
+      } finally {
+        waiting--;
+      }
+      inFlight += permits;
+      return generation;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void release(int permits, long acquiredGeneration, boolean busy) {
+    lock.lock();
+    try {
+      inFlight -= permits;
+      if (busy) {
+        if (acquiredGeneration == generation) {
+          limit = Math.max(minLimit, limit * backoffRatio);
+          generation++;
+          decreaseCount++;
+        }
+      } else {
+        limit = Math.min(maxLimit, limit + (double) permits / limit);
+      }
+      if (waiting > 0) {
+        available.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    lock.lock();
+    try {
+      return "QPLConcurrencyLimiter{limit="
+          + (int) limit
+          + ", inFlight="
+          + inFlight
+          + ", waiting="
+          + waiting
+          + ", decreases="
+          + decreaseCount
+          + "}";
+    } finally {
+      lock.unlock();
+    }
+  }
+}
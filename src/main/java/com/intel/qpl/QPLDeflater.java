@@ -0,0 +1,516 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A compressor with the method contract of {@link java.util.zip.Deflater}, backed by a stateful
+ * multi-call {@link QPLJob}, so that code written against Deflater gets hardware compression by
+ * changing the constructor call.
+ *
+ * <p>The input is accumulated into an internal buffer and compressed one buffer at a time as part
+ * of a single deflate stream; the compressed data is then handed out as the caller asks for it.
+ * With 'nowrap' the output is a raw deflate stream, otherwise it is wrapped in the ZLIB format,
+ * like Deflater; a {@link QPLUtils.StreamFormats} also selects the GZIP format. {@link
+ * Deflater#SYNC_FLUSH} and {@link Deflater#FULL_FLUSH} compress all the input given so far; the
+ * compression history is kept across a FULL_FLUSH.
+ *
+ * <p>The compression levels map to the levels of the library: {@link Deflater#DEFAULT_COMPRESSION}
+ * to {@link QPLUtils#DEFAULT_COMPRESSION_LEVEL}, 0 to 5 to level 1 and 6 to 9 to level 3 where the
+ * execution path supports it. The strategies are accepted but do not change the output, and preset
+ * dictionaries are not supported.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLDeflater {
+  private static final int GZIP_HEADER_LENGTH = 10;
+  private static final int GZIP_TRAILER_LENGTH = 8;
+  // Deflate, no flags, no modification time, no extra flags, and the OS as written by the JDK.
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+  // A final fixed Huffman block holding only the end of block code.
+  private static final byte[] EMPTY_STREAM = {0x03, 0x00};
+
+  private final QPLJob job;
+  private final QPLUtils.ExecutionPaths executionPath;
+  private final QPLUtils.StreamFormats format;
+  private final Adler32 adler = new Adler32();
+  private final CRC32 crc = new CRC32();
+  private ByteBuffer inBuf;
+  private ByteBuffer outBuf;
+  private ByteBuffer input;
+  private int level;
+  private boolean finish = false;
+  private boolean started = false;
+  private boolean lastDone = false;
+  private long bytesRead = 0;
+  private long bytesWritten = 0;
+
+  /**
+   * Creates a new QPLDeflater that uses {@link QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE} if it is
+   * available, {@link Deflater#DEFAULT_COMPRESSION} and the ZLIB format.
+   */
+  public QPLDeflater() {
+    this(Deflater.DEFAULT_COMPRESSION, false);
+  }
+
+  /**
+   * Creates a new QPLDeflater that uses {@link QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE} if it is
+   * available and the ZLIB format.
+   *
+   * @param level the compression level (0-9).
+   * @throws IllegalArgumentException if the compression level is invalid.
+   */
+  public QPLDeflater(int level) {
+    this(level, false);
+  }
+
+  /**
+   * Creates a new QPLDeflater that uses {@link QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE} if it is
+   * available.
+   *
+   * @param level the compression level (0-9).
+   * @param nowrap if true, the output is a raw deflate stream without the ZLIB header and checksum.
+   * @throws IllegalArgumentException if the compression level is invalid.
+   */
+  public QPLDeflater(int level, boolean nowrap) {
+    this(
+        QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE),
+        level,
+        nowrap,
+        QPLUtils.DEFAULT_STREAM_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new QPLDeflater with specified parameters.
+   *
+   * @param executionPath the execution path {@link QPLUtils.ExecutionPaths}.
+   * @param level the compression level (0-9).
+   * @param nowrap if true, the output is a raw deflate stream without the ZLIB header and checksum.
+   * @param bufferSize the number of input bytes accumulated before they are compressed.
+   * @throws IllegalArgumentException if the compression level is invalid or 'bufferSize' is less
+   *     than 1.
+   */
+  public QPLDeflater(
+      QPLUtils.ExecutionPaths executionPath, int level, boolean nowrap, int bufferSize) {
+    this(
+        executionPath,
+        level,
+        nowrap ? QPLUtils.StreamFormats.RAW : QPLUtils.StreamFormats.ZLIB,
+        bufferSize);
+  }
+
+  /**
+   * Creates a new QPLDeflater with specified parameters.
+   *
+   * @param executionPath the execution path {@link QPLUtils.ExecutionPaths}.
+   * @param level the compression level (0-9).
+   * @param format the framing of the output.
+   * @param bufferSize the number of input bytes accumulated before they are compressed.
+   * @throws IllegalArgumentException if the compression level is invalid or 'bufferSize' is less
+   *     than 1.
+   */
+  public QPLDeflater(
+      QPLUtils.ExecutionPaths executionPath,
+      int level,
+      QPLUtils.StreamFormats format,
+      int bufferSize) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be > 0, got " + bufferSize);
+    }
+    checkLevel(level);
+    this.executionPath = executionPath;
+    this.format = format;
+    this.level = level;
+    this.job = new QPLJob(executionPath);
+    job.setCompressionLevel(qplLevel(level));
+    QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+    inBuf = allocator.allocate(bufferSize);
+    outBuf =
+        allocator.allocate(
+            QPLJob.maxCompressedLength(bufferSize) + GZIP_HEADER_LENGTH + GZIP_TRAILER_LENGTH);
+    outBuf.limit(0);
+  }
+
+  private static void checkLevel(int level) {
+    if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("invalid compression level");
+    }
+  }
+
+  private int qplLevel(int level) {
+    int qplLevel;
+    if (level == Deflater.DEFAULT_COMPRESSION) {
+      qplLevel = QPLUtils.DEFAULT_COMPRESSION_LEVEL;
+    } else {
+      qplLevel = level < 6 ? 1 : 3;
+    }
+    return QPLJob.getValidCompressionLevel(executionPath, qplLevel);
+  }
+
+  /**
+   * Sets input data for compression. The array is not copied, it must not be modified until {@link
+   * #needsInput()} returns true.
+   *
+   * @param input the input data bytes.
+   * @param off the start offset of the data.
+   * @param len the length of the data.
+   * @throws ArrayIndexOutOfBoundsException if 'off' and 'len' are outside of 'input'.
+   */
+  public void setInput(byte[] input, int off, int len) {
+    if (off < 0 || len < 0 || off > input.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    this.input = ByteBuffer.wrap(input, off, len);
+  }
+
+  /**
+   * Sets input data for compression.
+   *
+   * @param input the input data bytes.
+   */
+  public void setInput(byte[] input) {
+    setInput(input, 0, input.length);
+  }
+
+  /**
+   * Sets input data for compression. The remaining bytes of the buffer are compressed, and its
+   * position is advanced as they are consumed.
+   *
+   * @param input the input data bytes.
+   */
+  public void setInput(ByteBuffer input) {
+    this.input = input;
+  }
+
+  /**
+   * Not supported, the library does not take preset dictionaries.
+   *
+   * @param dictionary the dictionary data bytes.
+   * @param off the start offset of the data.
+   * @param len the length of the data.
+   * @throws UnsupportedOperationException always.
+   */
+  public void setDictionary(byte[] dictionary, int off, int len) {
+    throw new UnsupportedOperationException("Preset dictionaries are not supported");
+  }
+
+  /**
+   * Sets the compression strategy. The strategy is validated but does not change the output, the
+   * library selects the Huffman tables itself.
+   *
+   * @param strategy the new compression strategy.
+   * @throws IllegalArgumentException if the compression strategy is invalid.
+   */
+  public void setStrategy(int strategy) {
+    if (strategy != Deflater.DEFAULT_STRATEGY
+        && strategy != Deflater.FILTERED
+        && strategy != Deflater.HUFFMAN_ONLY) {
+      throw new IllegalArgumentException();
+    }
+  }
+
+  /**
+   * Sets the compression level. The new level applies to the input compressed from now on.
+   *
+   * @param level the new compression level (0-9).
+   * @throws IllegalArgumentException if the compression level is invalid.
+   */
+  public void setLevel(int level) {
+    checkLevel(level);
+    this.level = level;
+    job.setCompressionLevel(qplLevel(level));
+  }
+
+  /**
+   * Returns true if no data remains in the input buffer. This can be used to determine if one of
+   * the setInput() methods should be called in order to provide more input.
+   *
+   * @return true if the input data buffer is empty and setInput() should be called in order to
+   *     provide more input.
+   */
+  public boolean needsInput() {
+    return input == null || !input.hasRemaining();
+  }
+
+  /**
+   * When called, indicates that compression should end with the current contents of the input
+   * buffer.
+   */
+  public void finish() {
+    finish = true;
+  }
+
+  /**
+   * Returns true if the end of the compressed data output stream has been reached.
+   *
+   * @return true if the end of the compressed data output stream has been reached.
+   */
+  public boolean finished() {
+    return lastDone && !outBuf.hasRemaining();
+  }
+
+  /**
+   * Compresses the input data and fills the specified buffer with compressed data.
+   *
+   * @param output the buffer for the compressed data.
+   * @param off the start offset of the data.
+   * @param len the maximum number of bytes of compressed data.
+   * @return the actual number of bytes of compressed data written to the output buffer.
+   * @throws ArrayIndexOutOfBoundsException if 'off' and 'len' are outside of 'output'.
+   */
+  public int deflate(byte[] output, int off, int len) {
+    return deflate(output, off, len, Deflater.NO_FLUSH);
+  }
+
+  /**
+   * Compresses the input data and fills the specified buffer with compressed data.
+   *
+   * @param output the buffer for the compressed data.
+   * @return the actual number of bytes of compressed data written to the output buffer.
+   */
+  public int deflate(byte[] output) {
+    return deflate(output, 0, output.length, Deflater.NO_FLUSH);
+  }
+
+  /**
+   * Compresses the input data and fills the specified buffer with compressed data, like {@link
+   * Deflater#deflate(byte[], int, int, int)}. If the return value equals 'len' after a flush, call
+   * the method again with the same flush mode until it returns less.
+   *
+   * @param output the buffer for the compressed data.
+   * @param off the start offset of the data.
+   * @param len the maximum number of bytes of compressed data.
+   * @param flush the compression flush mode.
+   * @return the actual number of bytes of compressed data written to the output buffer.
+   * @throws ArrayIndexOutOfBoundsException if 'off' and 'len' are outside of 'output'.
+   * @throws IllegalArgumentException if the flush mode is invalid.
+   */
+  public int deflate(byte[] output, int off, int len, int flush) {
+    if (off < 0 || len < 0 || off > output.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    return deflate(ByteBuffer.wrap(output, off, len), flush);
+  }
+
+  /**
+   * Compresses the input data and fills the remaining space of the specified buffer with compressed
+   * data. The position of the buffer is advanced by the number of bytes written.
+   *
+   * @param output the buffer for the compressed data.
+   * @return the actual number of bytes of compressed data written to the output buffer.
+   */
+  public int deflate(ByteBuffer output) {
+    return deflate(output, Deflater.NO_FLUSH);
+  }
+
+  /**
+   * Compresses the input data and fills the remaining space of the specified buffer with compressed
+   * data, like {@link Deflater#deflate(ByteBuffer, int)}. The position of the buffer is advanced by
+   * the number of bytes written.
+   *
+   * @param output the buffer for the compressed data.
+   * @param flush the compression flush mode.
+   * @return the actual number of bytes of compressed data written to the output buffer.
+   * @throws IllegalArgumentException if the flush mode is invalid.
+   * @throws QPLException if the library fails to compress the data.
+   */
+  public int deflate(ByteBuffer output, int flush) {
+    ensureOpen();
+    if (flush != Deflater.NO_FLUSH
+        && flush != Deflater.SYNC_FLUSH
+        && flush != Deflater.FULL_FLUSH) {
+      throw new IllegalArgumentException();
+    }
+    QPLUtils.checkReadOnly(output);
+    int start = output.position();
+    while (true) {
+      drain(output);
+      if (!output.hasRemaining() || lastDone) {
+        break;
+      }
+      fillInput();
+      boolean inputConsumed = needsInput();
+      boolean last = finish && inputConsumed;
+      boolean flushing = flush != Deflater.NO_FLUSH && inputConsumed && inBuf.position() > 0;
+      if (!last && !flushing && inBuf.hasRemaining()) {
+        // Wait for more input before compressing.
+        break;
+      }
+      compressPending(last);
+    }
+    return output.position() - start;
+  }
+
+  // Copies as much of the input as fits into the input buffer.
+  private void fillInput() {
+    if (input == null || !input.hasRemaining() || !inBuf.hasRemaining()) {
+      return;
+    }
+    int length = Math.min(input.remaining(), inBuf.remaining());
+    ByteBuffer chunk = input.duplicate();
+    chunk.limit(chunk.position() + length);
+    if (format == QPLUtils.StreamFormats.ZLIB) {
+      adler.update(chunk.duplicate());
+    } else if (format == QPLUtils.StreamFormats.GZIP) {
+      crc.update(chunk.duplicate());
+    }
+    inBuf.put(chunk);
+    input.position(input.position() + length);
+    bytesRead += length;
+  }
+
+  // Compresses the input buffer into the output buffer, which must be drained.
+  private void compressPending(boolean last) {
+    outBuf.clear();
+    if (!started && format == QPLUtils.StreamFormats.ZLIB) {
+      writeZlibHeader();
+    } else if (!started && format == QPLUtils.StreamFormats.GZIP) {
+      outBuf.put(GZIP_HEADER);
+    }
+    inBuf.flip();
+    if (!started && last && !inBuf.hasRemaining()) {
+      outBuf.put(EMPTY_STREAM);
+    } else {
+      int flags = QPLUtils.CompressionFlags;
+      if (started) {
+        flags &= ~QPLUtils.Flags.QPL_FLAG_FIRST.getId();
+      }
+      if (!last) {
+        flags &= ~QPLUtils.Flags.QPL_FLAG_LAST.getId();
+      }
+      job.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+      job.setFlags(flags);
+      job.execute(inBuf, outBuf);
+    }
+    inBuf.clear();
+    started = true;
+    if (last) {
+      if (format == QPLUtils.StreamFormats.ZLIB) {
+        outBuf.putInt((int) adler.getValue());
+      } else if (format == QPLUtils.StreamFormats.GZIP) {
+        outBuf.putInt(Integer.reverseBytes((int) crc.getValue()));
+        outBuf.putInt(Integer.reverseBytes((int) bytesRead));
+      }
+      lastDone = true;
+    }
+    outBuf.flip();
+  }
+
+  private void writeZlibHeader() {
+    int flevel;
+    if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+      flevel = 2;
+    } else if (level < 2) {
+      flevel = 0;
+    } else {
+      flevel = level < 6 ? 1 : 3;
+    }
+    int cmf = 0x78;
+    int flg = flevel << 6;
+    flg += 31 - (cmf * 256 + flg) % 31;
+    outBuf.put((byte) cmf).put((byte) flg);
+  }
+
+  private void drain(ByteBuffer output) {
+    int length = Math.min(output.remaining(), outBuf.remaining());
+    if (length == 0) {
+      return;
+    }
+    ByteBuffer chunk = outBuf.duplicate();
+    chunk.limit(chunk.position() + length);
+    output.put(chunk);
+    outBuf.position(outBuf.position() + length);
+    bytesWritten += length;
+  }
+
+  /**
+   * Returns the ADLER-32 value of the uncompressed data, or 1 if the format is not ZLIB.
+   *
+   * @return the ADLER-32 value of the uncompressed data.
+   */
+  public int getAdler() {
+    return (int) adler.getValue();
+  }
+
+  /**
+   * Returns the total number of uncompressed bytes input so far.
+   *
+   * @return the total number of uncompressed bytes input so far.
+   */
+  public int getTotalIn() {
+    return (int) bytesRead;
+  }
+
+  /**
+   * Returns the total number of uncompressed bytes input so far.
+   *
+   * @return the total number of uncompressed bytes input so far.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Returns the total number of compressed bytes output so far.
+   *
+   * @return the total number of compressed bytes output so far.
+   */
+  public int getTotalOut() {
+    return (int) bytesWritten;
+  }
+
+  /**
+   * Returns the total number of compressed bytes output so far.
+   *
+   * @return the total number of compressed bytes output so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /** Resets deflater so that a new set of input data can be processed. */
+  public void reset() {
+    ensureOpen();
+    job.reset();
+    inBuf.clear();
+    outBuf.clear().limit(0);
+    input = null;
+    finish = false;
+    started = false;
+    lastDone = false;
+    adler.reset();
+    crc.reset();
+    bytesRead = 0;
+    bytesWritten = 0;
+  }
+
+  /**
+   * Closes the compressor and discards any unprocessed input. Once this method is called, the
+   * behavior of the QPLDeflater object is undefined.
+   */
+  public void end() {
+    if (inBuf == null) {
+      return;
+    }
+    QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+    allocator.release(inBuf);
+    allocator.release(outBuf);
+    inBuf = null;
+    outBuf = null;
+    input = null;
+    job.doClear();
+  }
+
+  private void ensureOpen() {
+    if (inBuf == null) {
+      throw new NullPointerException("QPLDeflater has been closed");
+    }
+  }
+}
@@ -0,0 +1,345 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the IAA devices and work queues (WQs) configured in the idxd sysfs tree (refer to <a
+ * href="https://github.com/intel/idxd-config">idxd-config</a> documentation).
+ *
+ * <p>The topology discovered when the library is initialized sets the chunk size of the hardware
+ * jobs: every job is split so that no submission exceeds the smallest maximum transfer size of the
+ * enabled WQs on the NUMA node it is submitted to. The {@code idxd.wqMaxTransferBytes} system
+ * property, if set, overrides the discovered sizes. The {@code idxd.sysfsRoot} system property
+ * changes the root of the tree, which defaults to {@link #DEFAULT_SYSFS_ROOT}.
+ *
+ * <p>Instances of this class are immutable.
+ */
+public class QPLDeviceTopology {
+  /** The directory where the idxd driver lists its devices and work queues. */
+  public static final String DEFAULT_SYSFS_ROOT = "/sys/bus/dsa/devices";
+
+  private static final String IAA_DEVICE_PREFIX = "iax";
+  private static final String WQ_PREFIX = "wq";
+  private static final String ENABLED_STATE = "enabled";
+
+  private final Path root;
+  private final List<Device> devices;
+
+  private QPLDeviceTopology(Path root, List<Device> devices) {
+    this.root = root;
+    this.devices = Collections.unmodifiableList(devices);
+  }
+
+  /**
+   * Discovers the IAA devices under the root given by the {@code idxd.sysfsRoot} system property,
+   * or {@link #DEFAULT_SYSFS_ROOT} if it is not set.
+   *
+   * @return the discovered topology, empty if the tree does not exist.
+   */
+  public static QPLDeviceTopology discover() {
+    String root = System.getProperty("idxd.sysfsRoot");
+    return discover(Paths.get(root == null || root.isEmpty() ? DEFAULT_SYSFS_ROOT : root));
+  }
+
+  /**
+   * Discovers the IAA devices under the specified root. Entries that cannot be read are skipped.
+   *
+   * @param root the directory listing the idxd devices and work queues.
+   * @return the discovered topology, empty if the tree does not exist.
+   */
+  public static QPLDeviceTopology discover(Path root) {
+    List<Device> devices = new ArrayList<>();
+    if (Files.isDirectory(root)) {
+      String devicePattern = IAA_DEVICE_PREFIX + "*";
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, devicePattern)) {
+        for (Path entry : entries) {
+          Device device = readDevice(root, entry);
+          if (device != null) {
+            devices.add(device);
+          }
+        }
+      } catch (IOException e) {
+        // An unreadable tree is reported as an empty topology.
+      }
+    }
+    devices.sort((a, b) -> Integer.compare(a.id, b.id));
+    return new QPLDeviceTopology(root, devices);
+  }
+
+  /**
+   * Returns the root of the sysfs tree this topology was read from.
+   *
+   * @return the sysfs root.
+   */
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * Returns all the IAA devices, enabled or not, ordered by device id.
+   *
+   * @return an unmodifiable list of devices.
+   */
+  public List<Device> getDevices() {
+    return devices;
+  }
+
+  /**
+   * Returns the smallest maximum transfer size of the enabled work queues of the enabled devices.
+   *
+   * @return the maximum transfer size in bytes, or 0 if there is no enabled work queue.
+   */
+  public long getMaxTransferBytes() {
+    return getMaxTransferBytes(-1);
+  }
+
+  /**
+   * Returns the smallest maximum transfer size of the enabled work queues of the enabled devices on
+   * the specified NUMA node.
+   *
+   * @param numaNode the NUMA node, or -1 for all the nodes.
+   * @return the maximum transfer size in bytes, or 0 if there is no enabled work queue.
+   */
+  public long getMaxTransferBytes(int numaNode) {
+    long maxTransferBytes = 0;
+    for (Device device : devices) {
+      if (!device.isEnabled() || (numaNode >= 0 && device.getNumaNode() != numaNode)) {
+        continue;
+      }
+      long deviceMax = device.getMaxTransferBytes();
+      if (deviceMax > 0 && (maxTransferBytes == 0 || deviceMax < maxTransferBytes)) {
+        maxTransferBytes = deviceMax;
+      }
+    }
+    return maxTransferBytes;
+  }
+
+  private static Device readDevice(Path root, Path deviceDir) {
+    String name = deviceDir.getFileName().toString();
+    int id = parseId(name.substring(IAA_DEVICE_PREFIX.length()));
+    if (id < 0 || !Files.isDirectory(deviceDir)) {
+      return null;
+    }
+    List<WorkQueue> workQueues = new ArrayList<>();
+    String wqPattern = WQ_PREFIX + id + ".*";
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, wqPattern)) {
+      for (Path entry : entries) {
+        if (Files.isDirectory(entry)) {
+          workQueues.add(
+              new WorkQueue(
+                  entry.getFileName().toString(),
+                  readString(entry, "mode"),
+                  readString(entry, "state"),
+                  (int) readLong(entry, "size"),
+                  readLong(entry, "max_transfer_size")));
+        }
+      }
+    } catch (IOException e) {
+      // The device is reported without work queues.
+    }
+    workQueues.sort((a, b) -> a.name.compareTo(b.name));
+    return new Device(
+        name,
+        id,
+        (int) readLong(deviceDir, "numa_node"),
+        readString(deviceDir, "state"),
+        Collections.unmodifiableList(workQueues));
+  }
+
+  private static int parseId(String id) {
+    try {
+      return Integer.parseInt(id);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String readString(Path dir, String attribute) {
+    try {
+      return new String(Files.readAllBytes(dir.resolve(attribute)), StandardCharsets.US_ASCII)
+          .trim();
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  private static long readLong(Path dir, String attribute) {
+    try {
+      return Long.parseLong(readString(dir, attribute));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /** Describes an IAA device. */
+  public static class Device {
+    private final String name;
+    private final int id;
+    private final int numaNode;
+    private final String state;
+    private final List<WorkQueue> workQueues;
+
+    Device(String name, int id, int numaNode, String state, List<WorkQueue> workQueues) {
+      this.name = name;
+      this.id = id;
+      this.numaNode = numaNode;
+      this.state = state;
+      this.workQueues = workQueues;
+    }
+
+    /**
+     * Returns the name of this device, e.g. "iax1".
+     *
+     * @return device name.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the id of this device.
+     *
+     * @return device id.
+     */
+    public int getId() {
+      return id;
+    }
+
+    /**
+     * Returns the NUMA node this device is attached to.
+     *
+     * @return NUMA node, or -1 if it is unknown.
+     */
+    public int getNumaNode() {
+      return numaNode;
+    }
+
+    /**
+     * Returns whether this device is enabled.
+     *
+     * @return true if the device is enabled, otherwise false.
+     */
+    public boolean isEnabled() {
+      return ENABLED_STATE.equals(state);
+    }
+
+    /**
+     * Returns all the work queues of this device, enabled or not, ordered by name.
+     *
+     * @return an unmodifiable list of work queues.
+     */
+    public List<WorkQueue> getWorkQueues() {
+      return workQueues;
+    }
+
+    /**
+     * Returns the smallest maximum transfer size of the enabled work queues of this device.
+     *
+     * @return the maximum transfer size in bytes, or 0 if there is no enabled work queue.
+     */
+    public long getMaxTransferBytes() {
+      long maxTransferBytes = 0;
+      for (WorkQueue wq : workQueues) {
+        long wqMax = wq.getMaxTransferBytes();
+        if (wq.isEnabled() && wqMax > 0 && (maxTransferBytes == 0 || wqMax < maxTransferBytes)) {
+          maxTransferBytes = wqMax;
+        }
+      }
+      return maxTransferBytes;
+    }
+
+    @Override
+    public String toString() {
+      return name + "{node=" + numaNode + ", state=" + state + ", wqs=" + workQueues + "}";
+    }
+  }
+
+  /** Describes a work queue of an IAA device. */
+  public static class WorkQueue {
+    private final String name;
+    private final String mode;
+    private final String state;
+    private final int size;
+    private final long maxTransferBytes;
+
+    WorkQueue(String name, String mode, String state, int size, long maxTransferBytes) {
+      this.name = name;
+      this.mode = mode;
+      this.state = state;
+      this.size = size;
+      this.maxTransferBytes = maxTransferBytes;
+    }
+
+    /**
+     * Returns the name of this work queue, e.g. "wq1.0".
+     *
+     * @return work queue name.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns whether this work queue is shared between clients, as opposed to dedicated to one.
+     *
+     * @return true if the mode is "shared", otherwise false.
+     */
+    public boolean isShared() {
+      return "shared".equals(mode);
+    }
+
+    /**
+     * Returns whether this work queue is enabled.
+     *
+     * @return true if the work queue is enabled, otherwise false.
+     */
+    public boolean isEnabled() {
+      return ENABLED_STATE.equals(state);
+    }
+
+    /**
+     * Returns the number of entries of this work queue.
+     *
+     * @return work queue size, or -1 if it is unknown.
+     */
+    public int getSize() {
+      return size;
+    }
+
+    /**
+     * Returns the largest transfer accepted by a single descriptor of this work queue.
+     *
+     * @return the maximum transfer size in bytes, or -1 if it is unknown.
+     */
+    public long getMaxTransferBytes() {
+      return maxTransferBytes;
+    }
+
+    @Override
+    public String toString() {
+      return name
+          + "{mode="
+          + mode
+          + ", state="
+          + state
+          + ", size="
+          + size
+          + ", maxTransferBytes="
+          + maxTransferBytes
+          + "}";
+    }
+  }
+}
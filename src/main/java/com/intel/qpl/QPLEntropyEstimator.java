@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Provides a cheap estimate of how well data compresses.
+ *
+ * <p>The estimate is the order-0 Shannon entropy in bits per byte of a sample of the input. The
+ * sample consists of short runs taken at evenly spaced positions, so the cost does not grow with
+ * the input size. Already compressed media and encrypted data score close to 8 bits per byte,
+ * while text and structured data typically score well below 6.
+ */
+public class QPLEntropyEstimator {
+  private static final int SAMPLE_RUNS = 64;
+  private static final int RUN_LENGTH = 64;
+  private static final int SAMPLE_SIZE = SAMPLE_RUNS * RUN_LENGTH;
+
+  private QPLEntropyEstimator() {}
+
+  /**
+   * Estimates the entropy of 'length' bytes of 'src' starting at 'offset'.
+   *
+   * @param src the source array.
+   * @param offset the start offset of the data.
+   * @param length the length of the data.
+   * @return the estimated entropy in bits per byte, between 0 and 8.
+   * @throws ArrayIndexOutOfBoundsException if 'offset'/'length' do not describe a range of 'src'.
+   */
+  public static double estimate(byte[] src, int offset, int length) {
+    if (length <= 0) {
+      return 0;
+    }
+    QPLUtils.validateByteArray(src, offset, length);
+    int[] histogram = new int[256];
+    int sampled;
+    if (length <= SAMPLE_SIZE) {
+      for (int i = offset; i < offset + length; i++) histogram[src[i] & 0xFF]++;
+      sampled = length;
+    } else {
+      long stride = (long) (length - RUN_LENGTH) / (SAMPLE_RUNS - 1);
+      for (int run = 0; run < SAMPLE_RUNS; run++) {
+        int start = offset + (int) (run * stride);
+        for (int i = start; i < start + RUN_LENGTH; i++) histogram[src[i] & 0xFF]++;
+      }
+      sampled = SAMPLE_SIZE;
+    }
+    return entropy(histogram, sampled);
+  }
+
+  /**
+   * Estimates the entropy of the remaining bytes of 'src'. The position of 'src' is not changed.
+   *
+   * @param src the source buffer.
+   * @return the estimated entropy in bits per byte, between 0 and 8.
+   */
+  public static double estimate(ByteBuffer src) {
+    if (src.hasArray()) {
+      return estimate(src.array(), src.arrayOffset() + src.position(), src.remaining());
+    }
+    int length = src.remaining();
+    if (length <= 0) {
+      return 0;
+    }
+    int offset = src.position();
+    int[] histogram = new int[256];
+    int sampled;
+    if (length <= SAMPLE_SIZE) {
+      for (int i = offset; i < offset + length; i++) histogram[src.get(i) & 0xFF]++;
+      sampled = length;
+    } else {
+      long stride = (long) (length - RUN_LENGTH) / (SAMPLE_RUNS - 1);
+      for (int run = 0; run < SAMPLE_RUNS; run++) {
+        int start = offset + (int) (run * stride);
+        for (int i = start; i < start + RUN_LENGTH; i++) histogram[src.get(i) & 0xFF]++;
+      }
+      sampled = SAMPLE_SIZE;
+    }
+    return entropy(histogram, sampled);
+  }
+
+  private static double entropy(int[] histogram, int total) {
+    double entropy = 0;
+    for (int count : histogram) {
+      if (count > 0) {
+        double p = (double) count / total;
+        entropy -= p * Math.log(p);
+      }
+    }
+    return entropy / Math.log(2);
+  }
+}
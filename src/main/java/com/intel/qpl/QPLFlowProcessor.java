@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Processor} that compresses or decompresses a stream of buffers as a single deflate
+ * stream, through a {@link QPLJob} driven with the FIRST, middle and LAST flags.
+ *
+ * <p>The output is delivered in buffers taken from a {@link QPLBufferPool}, each flipped so that
+ * its remaining bytes are the data. A subscriber may give a buffer back with {@link
+ * #release(ByteBuffer)} once consumed, so that it is reused; buffers that are not released are
+ * freed when garbage collected. The output is only delivered as the subscriber requests it. At
+ * most 'maxInFlight' input buffers are requested ahead from upstream, and no further input is
+ * processed while 'maxInFlight' output buffers are waiting for demand, even in the middle of an
+ * input that expands into many buffers, so the memory held by the processor stays bounded. The
+ * next input is requested while the accelerator works on the current one.
+ *
+ * <p>An input buffer is processed once the next one arrives or the upstream completes, since only
+ * then is it known whether it ends the stream. Empty input buffers are skipped, and an empty stream
+ * produces no output. Input that continues after the end of the deflate stream being decompressed
+ * fails the stream with a {@link QPLException}. The processor uses the job exclusively until the
+ * stream terminates, and runs the job and delivers the signals to the subscriber on the executor,
+ * one at a time.
+ *
+ * <p>A processor supports a single subscriber and a single stream. This class is thread safe.
+ */
+public class QPLFlowProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "qpl-flow");
+            thread.setDaemon(true);
+            return thread;
+          });
+  // Leave at least this much space in an output buffer before taking a new one.
+  private static final int MIN_SEGMENT_SPACE = QPLBufferPool.MIN_BUFFER_SIZE / 4;
+
+  private final boolean compress;
+  private final QPLJob job;
+  private final QPLBufferPool pool;
+  private final int maxInFlight;
+  private final Executor executor;
+
+  private final ConcurrentLinkedQueue<ByteBuffer> inputs = new ConcurrentLinkedQueue<>();
+  // The number of buffers in 'inputs' and the number requested from upstream but not received.
+  private final AtomicInteger queuedInputs = new AtomicInteger();
+  private final AtomicInteger expectedInputs = new AtomicInteger();
+  private final AtomicLong demand = new AtomicLong();
+  private final AtomicInteger wip = new AtomicInteger();
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+  private volatile Flow.Subscription upstream;
+  private volatile Flow.Subscriber<? super ByteBuffer> downstream;
+  private volatile boolean upstreamDone = false;
+  private volatile Throwable error;
+  private volatile boolean cancelled = false;
+
+  // Only accessed by the drain loop. 'current' is the input being processed, with the flags of its
+  // next operation; it is kept across drains while 'maxInFlight' outputs wait for demand.
+  private final ArrayDeque<ByteBuffer> outputs = new ArrayDeque<>();
+  private ByteBuffer segment;
+  private boolean segmentFull = false;
+  private ByteBuffer current;
+  private int currentFlags;
+  private boolean first = true;
+  private boolean terminated = false;
+
+  private QPLFlowProcessor(
+      boolean compress, QPLJob job, QPLBufferPool pool, int maxInFlight, Executor executor) {
+    if (maxInFlight < 2) {
+      throw new IllegalArgumentException("Buffers in flight must be >= 2, got " + maxInFlight);
+    }
+    job.checkValid();
+    this.compress = compress;
+    this.job = job;
+    this.pool = pool;
+    this.maxInFlight = maxInFlight;
+    this.executor = executor;
+  }
+
+  /**
+   * Creates a processor that compresses the stream of input buffers into a single deflate stream,
+   * with {@link QPLUtils#DEFAULT_MAX_BUFFERS_IN_FLIGHT} and a shared pool of daemon threads.
+   *
+   * @param job the job the stream is compressed with.
+   * @param pool the pool providing the output buffers.
+   * @return a new processor.
+   * @throws IllegalStateException if the job is invalid.
+   */
+  public static QPLFlowProcessor compressor(QPLJob job, QPLBufferPool pool) {
+    return compressor(job, pool, QPLUtils.DEFAULT_MAX_BUFFERS_IN_FLIGHT, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Creates a processor that compresses the stream of input buffers into a single deflate stream.
+   * The compression level and the execution path are those of 'job'.
+   *
+   * @param job the job the stream is compressed with.
+   * @param pool the pool providing the output buffers.
+   * @param maxInFlight the maximum number of input buffers requested ahead and of output buffers
+   *     waiting for demand.
+   * @param executor the executor the job runs on.
+   * @return a new processor.
+   * @throws IllegalArgumentException if 'maxInFlight' is less than 2.
+   * @throws IllegalStateException if the job is invalid.
+   */
+  public static QPLFlowProcessor compressor(
+      QPLJob job, QPLBufferPool pool, int maxInFlight, Executor executor) {
+    return new QPLFlowProcessor(true, job, pool, maxInFlight, executor);
+  }
+
+  /**
+   * Creates a processor that decompresses a deflate stream split across the input buffers, with
+   * {@link QPLUtils#DEFAULT_MAX_BUFFERS_IN_FLIGHT} and a shared pool of daemon threads.
+   *
+   * @param job the job the stream is decompressed with.
+   * @param pool the pool providing the output buffers.
+   * @return a new processor.
+   * @throws IllegalStateException if the job is invalid.
+   */
+  public static QPLFlowProcessor decompressor(QPLJob job, QPLBufferPool pool) {
+    return decompressor(job, pool, QPLUtils.DEFAULT_MAX_BUFFERS_IN_FLIGHT, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Creates a processor that decompresses a deflate stream split across the input buffers.
+   *
+   * @param job the job the stream is decompressed with.
+   * @param pool the pool providing the output buffers.
+   * @param maxInFlight the maximum number of input buffers requested ahead and of output buffers
+   *     waiting for demand.
+   * @param executor the executor the job runs on.
+   * @return a new processor.
+   * @throws IllegalArgumentException if 'maxInFlight' is less than 2.
+   * @throws IllegalStateException if the job is invalid.
+   */
+  public static QPLFlowProcessor decompressor(
+      QPLJob job, QPLBufferPool pool, int maxInFlight, Executor executor) {
+    return new QPLFlowProcessor(false, job, pool, maxInFlight, executor);
+  }
+
+  /**
+   * Gives an output buffer back to the pool once the subscriber consumed it. The subscriber must
+   * not use the buffer afterwards.
+   *
+   * @param buffer a buffer delivered by this processor.
+   */
+  public void release(ByteBuffer buffer) {
+    pool.release(buffer);
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(
+          new Flow.Subscription() {
+            @Override
+            public void request(long n) {}
+
+            @Override
+            public void cancel() {}
+          });
+      subscriber.onError(new IllegalStateException("The processor supports a single subscriber"));
+      return;
+    }
+    downstream = subscriber;
+    subscriber.onSubscribe(
+        new Flow.Subscription() {
+          @Override
+          public void request(long n) {
+            if (n <= 0) {
+              error = new IllegalArgumentException("Demand must be > 0, got " + n);
+            } else {
+              demand.getAndAccumulate(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            schedule();
+          }
+
+          @Override
+          public void cancel() {
+            cancelled = true;
+            schedule();
+          }
+        });
+    schedule();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    if (upstream != null) {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    schedule();
+  }
+
+  @Override
+  public void onNext(ByteBuffer item) {
+    expectedInputs.decrementAndGet();
+    if (item.hasRemaining()) {
+      inputs.offer(item);
+      queuedInputs.incrementAndGet();
+    }
+    schedule();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    error = throwable;
+    upstreamDone = true;
+    schedule();
+  }
+
+  @Override
+  public void onComplete() {
+    upstreamDone = true;
+    schedule();
+  }
+
+  private void schedule() {
+    if (wip.getAndIncrement() == 0) {
+      executor.execute(this::drain);
+    }
+  }
+
+  private void drain() {
+    int missed = 1;
+    do {
+      if (!terminated) {
+        try {
+          drainOnce();
+        } catch (RuntimeException e) {
+          fail(e);
+        }
+      }
+      missed = wip.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void drainOnce() {
+    Flow.Subscriber<? super ByteBuffer> subscriber = downstream;
+    while (!terminated) {
+      if (cancelled) {
+        terminate();
+        if (upstream != null) {
+          upstream.cancel();
+        }
+        return;
+      }
+      if (error != null) {
+        fail(error);
+        return;
+      }
+      if (subscriber != null) {
+        while (!outputs.isEmpty() && demand.get() > 0) {
+          demand.decrementAndGet();
+          subscriber.onNext(outputs.poll());
+        }
+      }
+      // Ask for the next inputs before running the job, so they arrive while it works.
+      requestInputs();
+      if (outputs.size() >= maxInFlight) {
+        // Resumed once the subscriber requests more.
+        return;
+      }
+      if (current != null) {
+        step();
+        continue;
+      }
+      boolean done = upstreamDone;
+      int queued = queuedInputs.get();
+      if (queued >= 2 || (done && queued == 1)) {
+        ByteBuffer input = inputs.poll();
+        queuedInputs.decrementAndGet();
+        start(input, done && queued == 1);
+        continue;
+      }
+      if (done && queued == 0) {
+        flushSegment();
+        if (outputs.isEmpty() && subscriber != null) {
+          terminate();
+          subscriber.onComplete();
+        }
+      }
+      return;
+    }
+  }
+
+  // Requests upstream enough inputs to keep 'maxInFlight' in flight.
+  private void requestInputs() {
+    Flow.Subscription subscription = upstream;
+    if (subscription == null || upstreamDone) {
+      return;
+    }
+    int wanted = maxInFlight - queuedInputs.get() - expectedInputs.get();
+    if (wanted > 0) {
+      expectedInputs.addAndGet(wanted);
+      subscription.request(wanted);
+    }
+  }
+
+  private void start(ByteBuffer input, boolean last) {
+    int flags = compress ? QPLUtils.CompressionFlags : QPLUtils.DecompressionFlags;
+    if (!first) {
+      flags &= ~QPLUtils.Flags.QPL_FLAG_FIRST.getId();
+    }
+    if (!last) {
+      flags &= ~QPLUtils.Flags.QPL_FLAG_LAST.getId();
+    }
+    current = input;
+    currentFlags = flags;
+    first = false;
+  }
+
+  // Either hands a full output buffer over or runs the job once on the current input, so that each
+  // step queues at most one output buffer and the drain loop can stop at 'maxInFlight'.
+  private void step() {
+    if (segment != null && (segmentFull || segment.remaining() < MIN_SEGMENT_SPACE)) {
+      flushSegment();
+      return;
+    }
+    if (segment == null) {
+      segment = pool.acquire();
+    }
+    boolean finished = compress ? compressPiece() : decompressPiece();
+    currentFlags &= ~QPLUtils.Flags.QPL_FLAG_FIRST.getId();
+    if (finished) {
+      current = null;
+    }
+  }
+
+  // Compresses a piece of the current input whose worst-case compressed size fits the space left
+  // in the output buffer, as QPLCompressor.compress(ByteBuffer, QPLBufferPool) does. Returns true
+  // once the whole input is compressed.
+  private boolean compressPiece() {
+    int maxTransfer = QPLJob.IDXD_WQ_MAX_TRANSFER_BYTES;
+    int last = currentFlags & QPLUtils.Flags.QPL_FLAG_LAST.getId();
+    ByteBuffer out = segment.duplicate();
+    int space = Math.min(out.remaining(), maxTransfer - 1);
+    int piece =
+        Math.min(current.remaining(), Math.min(space - (space >> 11) - 13, maxTransfer / 2));
+    ByteBuffer in = current.duplicate();
+    in.limit(in.position() + piece);
+    out.limit(out.position() + space);
+    job.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    job.setFlags(piece == current.remaining() ? currentFlags : currentFlags & ~last);
+    job.execute(in, out);
+    current.position(in.position());
+    segment.position(out.position());
+    return !current.hasRemaining();
+  }
+
+  // Decompresses the current input into the space left in the output buffer. Returns true once the
+  // whole input is consumed and no output is pending.
+  private boolean decompressPiece() {
+    ByteBuffer out = segment.duplicate();
+    job.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+    job.setFlags(currentFlags);
+    job.execute(current, out);
+    segment.position(out.position());
+    if (job.isOutputInsufficient()) {
+      // The output buffer is full, continue the stream in a new one.
+      segmentFull = true;
+      return false;
+    }
+    if (current.hasRemaining() && job.getBytesRead() == 0 && job.getBytesWritten() == 0) {
+      throw new QPLException("The input continues after the end of the deflate stream");
+    }
+    return !current.hasRemaining();
+  }
+
+  private void flushSegment() {
+    if (segment == null) {
+      return;
+    }
+    if (segment.position() == 0) {
+      pool.release(segment);
+    } else {
+      segment.flip();
+      outputs.offer(segment);
+    }
+    segment = null;
+    segmentFull = false;
+  }
+
+  private void fail(Throwable throwable) {
+    if (terminated) {
+      return;
+    }
+    terminate();
+    if (upstream != null && !upstreamDone) {
+      upstream.cancel();
+    }
+    Flow.Subscriber<? super ByteBuffer> subscriber = downstream;
+    if (subscriber != null) {
+      subscriber.onError(throwable);
+    }
+  }
+
+  private void terminate() {
+    terminated = true;
+    if (segment != null) {
+      pool.release(segment);
+      segment = null;
+    }
+    while (!outputs.isEmpty()) {
+      pool.release(outputs.poll());
+    }
+    current = null;
+    inputs.clear();
+    job.reset();
+  }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Describes the self-describing frame format written by {@link QPLCompressor#compressFramed(byte[],
+ * int, int, byte[], int, int, boolean)}.
+ *
+ * <p>A frame is a compact header followed by the deflate payload. All the header fields are little
+ * endian:
+ *
+ * <pre>
+ * offset  length  field
+ * 0       4       magic "QPLF"
+ * 4       1       version, currently 1
+ * 5       1       flags, bit 0 set if the checksum field is present
+ * 6       4       uncompressed length
+ * 10      4       payload length
+ * 14      4       CRC-32 of the uncompressed data (optional)
+ * </pre>
+ *
+ * Since the header records the uncompressed length, the decompression side can allocate the exact
+ * destination size and does not need to store the original size out of band.
+ */
+public class QPLFrame {
+  /** The magic number that starts every frame, "QPLF" read as a little endian integer. */
+  public static final int MAGIC = 0x464C5051;
+
+  /** The length in bytes of a frame header without checksum. */
+  public static final int HEADER_LENGTH = 14;
+
+  /** The length in bytes of the optional checksum field. */
+  public static final int CHECKSUM_LENGTH = 4;
+
+  static final int VERSION = 1;
+  static final int FLAG_CHECKSUM = 0x01;
+
+  private QPLFrame() {}
+
+  /**
+   * Returns the maximum frame length for the specified source length. Use this method to size the
+   * destination of a framed compression.
+   *
+   * @param srcLen the length of the source array or buffer.
+   * @return the maximum frame length, including a header with checksum.
+   * @throws IllegalArgumentException if the source length is less than one or too large.
+   */
+  public static int maxFramedLength(int srcLen) {
+    int frameLength = HEADER_LENGTH + CHECKSUM_LENGTH + QPLJob.maxCompressedLength(srcLen);
+    if (frameLength <= 0) {
+      throw new IllegalArgumentException("The source length is too large");
+    }
+    return frameLength;
+  }
+
+  /**
+   * Checks if the remaining bytes of 'src' start with a frame header. The position of 'src' is not
+   * changed.
+   *
+   * @param src the source buffer.
+   * @return true if 'src' starts with the frame magic number and a supported version.
+   */
+  public static boolean isFrame(ByteBuffer src) {
+    if (src.remaining() < HEADER_LENGTH) {
+      return false;
+    }
+    ByteBuffer header = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int pos = header.position();
+    return header.getInt(pos) == MAGIC && header.get(pos + 4) == VERSION;
+  }
+
+  /**
+   * Returns the uncompressed length recorded in the frame starting at the position of 'src'. The
+   * position of 'src' is not changed.
+   *
+   * @param src the source buffer.
+   * @return the uncompressed length in bytes.
+   * @throws QPLException if 'src' does not start with a valid frame header.
+   */
+  public static int getUncompressedLength(ByteBuffer src) {
+    return readHeader(src).uncompressedLength;
+  }
+
+  /**
+   * Returns the uncompressed length recorded in the frame starting at 'offset' of 'src'.
+   *
+   * @param src the source array.
+   * @param offset the start offset of the frame.
+   * @param length the number of bytes available from 'offset'.
+   * @return the uncompressed length in bytes.
+   * @throws QPLException if 'src' does not start with a valid frame header.
+   */
+  public static int getUncompressedLength(byte[] src, int offset, int length) {
+    return readHeader(src, offset, length).uncompressedLength;
+  }
+
+  /**
+   * Returns the total length of the frame starting at the position of 'src', header included. Use
+   * this method to find the next frame in a sequence of frames. The position of 'src' is not
+   * changed.
+   *
+   * @param src the source buffer.
+   * @return the frame length in bytes.
+   * @throws QPLException if 'src' does not start with a valid frame header.
+   */
+  public static int getFrameLength(ByteBuffer src) {
+    Header header = readHeader(src);
+    return header.headerLength + header.payloadLength;
+  }
+
+  static int headerLength(boolean checksum) {
+    return checksum ? HEADER_LENGTH + CHECKSUM_LENGTH : HEADER_LENGTH;
+  }
+
+  static void writeHeader(
+      ByteBuffer dst,
+      int pos,
+      int uncompressedLength,
+      int payloadLength,
+      boolean checksum,
+      int crc) {
+    ByteBuffer header = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(pos, MAGIC);
+    header.put(pos + 4, (byte) VERSION);
+    header.put(pos + 5, (byte) (checksum ? FLAG_CHECKSUM : 0));
+    header.putInt(pos + 6, uncompressedLength);
+    header.putInt(pos + 10, payloadLength);
+    if (checksum) {
+      header.putInt(pos + HEADER_LENGTH, crc);
+    }
+  }
+
+  static Header readHeader(byte[] src, int offset, int length) {
+    QPLUtils.validateByteArray(src, offset, length);
+    return readHeader(ByteBuffer.wrap(src, offset, length));
+  }
+
+  static Header readHeader(ByteBuffer src) {
+    if (!isFrame(src)) {
+      throw new QPLException("The source does not start with a valid frame header");
+    }
+    ByteBuffer header = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int pos = header.position();
+    boolean checksum = (header.get(pos + 5) & FLAG_CHECKSUM) != 0;
+    int headerLength = headerLength(checksum);
+    int uncompressedLength = header.getInt(pos + 6);
+    int payloadLength = header.getInt(pos + 10);
+    if (uncompressedLength <= 0
+        || payloadLength <= 0
+        || (long) headerLength + payloadLength > src.remaining()) {
+      throw new QPLException("The frame header is corrupted or the frame is truncated");
+    }
+    int crc = checksum ? header.getInt(pos + HEADER_LENGTH) : 0;
+    return new Header(headerLength, uncompressedLength, payloadLength, checksum, crc);
+  }
+
+  static class Header {
+    final int headerLength;
+    final int uncompressedLength;
+    final int payloadLength;
+    final boolean checksum;
+    final int crc;
+
+    Header(int headerLength, int uncompressedLength, int payloadLength, boolean checksum, int crc) {
+      this.headerLength = headerLength;
+      this.uncompressedLength = uncompressedLength;
+      this.payloadLength = payloadLength;
+      this.checksum = checksum;
+      this.crc = crc;
+    }
+  }
+}
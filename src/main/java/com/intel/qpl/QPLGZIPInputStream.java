@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A {@link GZIPInputStream} that decompresses with a {@link QPLZipInflater}. This is the class the
+ * {@link QPLAgent} substitutes for GZIPInputStream; it can also be constructed directly.
+ */
+public class QPLGZIPInputStream extends GZIPInputStream {
+  /**
+   * Creates a new input stream with the specified buffer size.
+   *
+   * @param in the input stream.
+   * @param size the input buffer size.
+   * @throws java.util.zip.ZipException if a GZIP format error has occurred.
+   * @throws IOException if an I/O error has occurred.
+   */
+  public QPLGZIPInputStream(InputStream in, int size) throws IOException {
+    super(in, size);
+    // The stream ends its default inflater on close, so it ends the replacement as well.
+    inf.end();
+    inf = new QPLZipInflater(true);
+  }
+
+  /**
+   * Creates a new input stream with a default buffer size.
+   *
+   * @param in the input stream.
+   * @throws java.util.zip.ZipException if a GZIP format error has occurred.
+   * @throws IOException if an I/O error has occurred.
+   */
+  public QPLGZIPInputStream(InputStream in) throws IOException {
+    this(in, 512);
+  }
+}
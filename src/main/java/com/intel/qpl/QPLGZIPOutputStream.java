@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link GZIPOutputStream} that compresses with a {@link QPLZipDeflater}. This is the class the
+ * {@link QPLAgent} substitutes for GZIPOutputStream; it can also be constructed directly.
+ */
+public class QPLGZIPOutputStream extends GZIPOutputStream {
+  /**
+   * Creates a new output stream with the specified buffer size and flush mode.
+   *
+   * @param out the output stream.
+   * @param size the output buffer size.
+   * @param syncFlush if true, flush() flushes the compressor with {@link Deflater#SYNC_FLUSH}.
+   * @throws IOException if an I/O error has occurred.
+   */
+  public QPLGZIPOutputStream(OutputStream out, int size, boolean syncFlush) throws IOException {
+    super(out, size, syncFlush);
+    // The stream ends its default deflater on close, so it ends the replacement as well.
+    def.end();
+    def = new QPLZipDeflater(Deflater.DEFAULT_COMPRESSION, true);
+  }
+
+  /**
+   * Creates a new output stream with the specified buffer size.
+   *
+   * @param out the output stream.
+   * @param size the output buffer size.
+   * @throws IOException if an I/O error has occurred.
+   */
+  public QPLGZIPOutputStream(OutputStream out, int size) throws IOException {
+    this(out, size, false);
+  }
+
+  /**
+   * Creates a new output stream with the specified flush mode.
+   *
+   * @param out the output stream.
+   * @param syncFlush if true, flush() flushes the compressor with {@link Deflater#SYNC_FLUSH}.
+   * @throws IOException if an I/O error has occurred.
+   */
+  public QPLGZIPOutputStream(OutputStream out, boolean syncFlush) throws IOException {
+    this(out, 512, syncFlush);
+  }
+
+  /**
+   * Creates a new output stream with a default buffer size.
+   *
+   * @param out the output stream.
+   * @throws IOException if an I/O error has occurred.
+   */
+  public QPLGZIPOutputStream(OutputStream out) throws IOException {
+    this(out, 512, false);
+  }
+}
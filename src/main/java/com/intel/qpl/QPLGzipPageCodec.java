@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.zip.CRC32;
+
+/**
+ * Compresses and decompresses the pages of a columnar file format whose GZIP codec stores each page
+ * as one GZIP member, backed by a {@link QPLCompressor}.
+ *
+ * <p>The pages are interchangeable with those of the standard GZIP codec: the written members are
+ * read by any GZIP implementation, and members with the optional header fields written by other
+ * implementations are read. A page is compressed in a single operation. Since the page header of
+ * such formats records the uncompressed size of the page, a page is also decompressed in a single
+ * operation, straight into a destination of that size, without growing the output or calling the
+ * library again while {@link QPLCompressor#isOutputInsufficient()}. The CRC-32 and length of the
+ * trailer are verified.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLGzipPageCodec {
+  private static final int GZIP_HEADER_LENGTH = 10;
+  private static final int GZIP_TRAILER_LENGTH = 8;
+  // Deflate, no flags, no modification time, no extra flags, and the OS as written by the JDK.
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0};
+  // A final fixed Huffman block holding only the end of block code.
+  private static final byte[] EMPTY_STREAM = {0x03, 0x00};
+
+  private final QPLCompressor compressor;
+
+  /**
+   * Creates a new codec backed by a QPLCompressor that uses {@link
+   * QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE} where it is available and {@link
+   * QPLUtils.ExecutionPaths#QPL_PATH_SOFTWARE} otherwise, with {@link
+   * QPLUtils#DEFAULT_COMPRESSION_LEVEL} and {@link QPLUtils#DEFAULT_RETRY_COUNT}.
+   */
+  public QPLGzipPageCodec() {
+    this(defaultCompressor());
+  }
+
+  /**
+   * Creates a new codec backed by the given compressor, with its execution path, compression level
+   * and policies.
+   *
+   * @param compressor the compressor of the pages.
+   */
+  public QPLGzipPageCodec(QPLCompressor compressor) {
+    this.compressor = compressor;
+  }
+
+  private static QPLCompressor defaultCompressor() {
+    QPLUtils.ExecutionPaths executionPath =
+        QPLCompressor.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE);
+    return new QPLCompressor(
+        executionPath,
+        QPLCompressor.getValidCompressionLevel(executionPath, QPLUtils.DEFAULT_COMPRESSION_LEVEL),
+        QPLUtils.DEFAULT_RETRY_COUNT);
+  }
+
+  /**
+   * Returns the maximum compressed length of a page of the specified uncompressed length. Use this
+   * method to size the destination of {@link #compress(ByteBuffer, ByteBuffer)}.
+   *
+   * @param srcLength the uncompressed length of the page.
+   * @return the maximum compressed length.
+   * @throws IllegalArgumentException if the length is less than zero or too large.
+   */
+  public static int maxCompressedLength(int srcLength) {
+    if (srcLength < 0) {
+      throw new IllegalArgumentException("length must be >= 0");
+    }
+    return GZIP_HEADER_LENGTH
+        + QPLCompressor.maxCompressedLength(Math.max(srcLength, 1))
+        + GZIP_TRAILER_LENGTH;
+  }
+
+  /**
+   * Compresses the remaining bytes of the source buffer into a page. Returns the compressed length
+   * of the page.
+   *
+   * <p>The positions of both the source and destination buffers are advanced by the number of
+   * bytes read from the source and the length of the page written to the destination.
+   *
+   * @param src the source buffer holding the uncompressed page
+   * @param dst the destination buffer that will store the compressed page
+   * @return the compressed length of the page
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLCompressor is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the page; use
+   *     {@link #maxCompressedLength(int)} to size it.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int compress(ByteBuffer src, ByteBuffer dst) {
+    QPLUtils.checkReadOnly(dst);
+    int srcPosition = src.position();
+    int srcLength = src.remaining();
+    int dstPosition = dst.position();
+    if (dst.remaining() < GZIP_HEADER_LENGTH + EMPTY_STREAM.length + GZIP_TRAILER_LENGTH) {
+      throw new QPLOutputOverflowException("The destination is too small to hold the page");
+    }
+    dst.put(GZIP_HEADER);
+    int crc = 0;
+    if (srcLength == 0) {
+      dst.put(EMPTY_STREAM);
+    } else {
+      ByteBuffer payload = dst.duplicate();
+      payload.limit(dst.limit() - GZIP_TRAILER_LENGTH);
+      long bypassCount = compressor.getStoredBypassCount();
+      try {
+        compressor.compress(src, payload);
+      } catch (RuntimeException e) {
+        dst.position(dstPosition);
+        throw e;
+      }
+      dst.position(payload.position());
+      if (compressor.getStoredBypassCount() != bypassCount) {
+        ByteBuffer consumed = src.duplicate();
+        consumed.limit(src.position()).position(srcPosition);
+        CRC32 crc32 = new CRC32();
+        crc32.update(consumed);
+        crc = (int) crc32.getValue();
+      } else {
+        crc = compressor.getCrc();
+      }
+    }
+    putIntLittleEndian(dst, crc);
+    putIntLittleEndian(dst, srcLength);
+    return dst.position() - dstPosition;
+  }
+
+  /**
+   * Compresses 'srcLength' bytes of the source array starting at 'srcOffset' into a page. Returns
+   * a new array holding exactly the compressed page.
+   *
+   * @param src the source array holding the uncompressed page
+   * @param srcOffset the start offset of the page
+   * @param srcLength the uncompressed length of the page
+   * @return the compressed page
+   * @throws ArrayIndexOutOfBoundsException if 'srcOffset'/'srcLength' do not describe a range of
+   *     'src'.
+   * @throws IllegalStateException if the QPLCompressor is invalid.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public byte[] compress(byte[] src, int srcOffset, int srcLength) {
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    byte[] dst = new byte[maxCompressedLength(srcLength)];
+    int length = compress(ByteBuffer.wrap(src, srcOffset, srcLength), ByteBuffer.wrap(dst));
+    byte[] page = new byte[length];
+    System.arraycopy(dst, 0, page, 0, length);
+    return page;
+  }
+
+  /**
+   * Decompresses the page held by the remaining bytes of the source buffer into the destination
+   * buffer, in a single operation. Returns the uncompressed length of the page, which is
+   * 'uncompressedLength'.
+   *
+   * <p>The position of the source buffer is advanced past the page, and the position of the
+   * destination buffer by the uncompressed length.
+   *
+   * @param src the source buffer holding the compressed page
+   * @param dst the destination buffer that will store the uncompressed page
+   * @param uncompressedLength the uncompressed length of the page, as recorded in the page header
+   * @return the uncompressed length of the page
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLCompressor is invalid.
+   * @throws QPLOutputOverflowException if the dst has less than 'uncompressedLength' bytes of
+   *     space.
+   * @throws QPLException if the page is not a GZIP member, or the decompressed data does not match
+   *     'uncompressedLength' or the trailer.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public int decompress(ByteBuffer src, ByteBuffer dst, int uncompressedLength) {
+    QPLUtils.checkReadOnly(dst);
+    if (uncompressedLength < 0) {
+      throw new IllegalArgumentException("length must be >= 0");
+    }
+    if (dst.remaining() < uncompressedLength) {
+      throw new QPLOutputOverflowException("The destination is too small to hold the page");
+    }
+    int headerLength = QPLStreamDecoder.gzipHeaderLength(src);
+    if (headerLength < 0 || src.remaining() < headerLength + GZIP_TRAILER_LENGTH) {
+      throw new QPLException("The page is truncated");
+    }
+    int trailerPosition = src.limit() - GZIP_TRAILER_LENGTH;
+    int crc = getIntLittleEndian(src, trailerPosition);
+    if (getIntLittleEndian(src, trailerPosition + 4) != uncompressedLength) {
+      throw new QPLException("The length of the page does not match the GZIP trailer");
+    }
+    if (uncompressedLength > 0) {
+      ByteBuffer payload = src.duplicate();
+      payload.position(src.position() + headerLength).limit(trailerPosition);
+      ByteBuffer output = dst.duplicate();
+      output.limit(output.position() + uncompressedLength);
+      compressor.reset();
+      int length = compressor.decompress(payload, output);
+      if (compressor.isOutputInsufficient() || length != uncompressedLength) {
+        compressor.reset();
+        throw new QPLException("The decompressed length does not match the page header");
+      }
+      if (compressor.getCrc() != crc) {
+        throw new QPLException("The checksum of the page does not match the GZIP trailer");
+      }
+      dst.position(output.position());
+    } else if (crc != 0) {
+      throw new QPLException("The checksum of the page does not match the GZIP trailer");
+    }
+    src.position(src.limit());
+    return uncompressedLength;
+  }
+
+  /**
+   * Decompresses the page held by 'srcLength' bytes of the source array starting at 'srcOffset'.
+   * Returns a new array of 'uncompressedLength' bytes holding the uncompressed page.
+   *
+   * @param src the source array holding the compressed page
+   * @param srcOffset the start offset of the page
+   * @param srcLength the compressed length of the page
+   * @param uncompressedLength the uncompressed length of the page, as recorded in the page header
+   * @return the uncompressed page
+   * @throws ArrayIndexOutOfBoundsException if 'srcOffset'/'srcLength' do not describe a range of
+   *     'src'.
+   * @throws IllegalStateException if the QPLCompressor is invalid.
+   * @throws QPLException if the page is not a GZIP member, or the decompressed data does not match
+   *     'uncompressedLength' or the trailer.
+   * @throws QPLQueuesBusyException if the work queues stay busy and the failover policy is {@link
+   *     QPLUtils.FailoverPolicies#NONE}.
+   */
+  public byte[] decompress(byte[] src, int srcOffset, int srcLength, int uncompressedLength) {
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    if (uncompressedLength < 0) {
+      throw new IllegalArgumentException("length must be >= 0");
+    }
+    byte[] dst = new byte[uncompressedLength];
+    decompress(
+        ByteBuffer.wrap(src, srcOffset, srcLength), ByteBuffer.wrap(dst), uncompressedLength);
+    return dst;
+  }
+
+  /**
+   * Returns the compressor that backs this codec.
+   *
+   * @return the compressor.
+   */
+  public QPLCompressor getCompressor() {
+    return compressor;
+  }
+
+  private static void putIntLittleEndian(ByteBuffer dst, int value) {
+    dst.put((byte) value)
+        .put((byte) (value >>> 8))
+        .put((byte) (value >>> 16))
+        .put((byte) (value >>> 24));
+  }
+
+  private static int getIntLittleEndian(ByteBuffer src, int pos) {
+    return (src.get(pos) & 0xff)
+        | (src.get(pos + 1) & 0xff) << 8
+        | (src.get(pos + 2) & 0xff) << 16
+        | (src.get(pos + 3) & 0xff) << 24;
+  }
+}
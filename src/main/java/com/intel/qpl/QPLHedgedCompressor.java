@@ -0,0 +1,552 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compresses data on the IAA hardware, and hedges the calls that take longer than usual by also
+ * compressing the same input on the software path. The first path to complete wins.
+ *
+ * <p>The latency per byte of the recent hardware compressions is recorded, and a call that has not
+ * completed after the configured percentile of that latency, scaled to its input size, starts a
+ * software compression of the same input. The result of whichever compression completes first is
+ * copied to the destination, and the other one is discarded: a software compression that has not
+ * started yet is cancelled, a running compression completes in the background and its result is
+ * dropped. Until enough hardware latencies are recorded, calls are not hedged. A hardware
+ * compression that fails, e.g. because the work queues stay busy, starts the software compression
+ * at once, whatever the deadline.
+ *
+ * <p>Both compressions run on the executor, each on a private copy of the input and into a private
+ * output buffer, so the caller may reuse its buffers as soon as a call returns, even while the
+ * losing compression is still running. This costs a copy of the input and of the output per call
+ * and a thread hand-off, which is small compared to the tail latency it removes.
+ *
+ * <p>If the hardware path is not available, calls run on the software path, in the calling thread,
+ * and are not hedged. The compressed data produced by both paths is a standard deflate stream.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLHedgedCompressor {
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "qpl-hedge");
+            thread.setDaemon(true);
+            return thread;
+          });
+  // The number of recorded hardware latencies the deadline is computed from.
+  private static final int WINDOW_SIZE = 256;
+  // Calls are not hedged until this many hardware latencies are recorded.
+  private static final int MIN_SAMPLES = 32;
+  private static final int SORT_INTERVAL = 16;
+
+  private final QPLUtils.ExecutionPaths hardwarePath;
+  private final int hardwareLevel;
+  private final int softwareLevel;
+  private final int retryCount;
+  private final Executor executor;
+  private final QPLCompressor directCompressor;
+  // Guarded by 'this', since lanes that lose a race are returned from the executor threads.
+  private final ArrayDeque<Lane> idleHardwareLanes = new ArrayDeque<>();
+  private final ArrayDeque<Lane> idleSoftwareLanes = new ArrayDeque<>();
+  private final double[] latencies = new double[WINDOW_SIZE];
+  private final double[] sortedLatencies = new double[WINDOW_SIZE];
+  private int latencyCount = 0;
+  private int nextLatency = 0;
+  // The percentile latency per byte, recomputed every SORT_INTERVAL recorded latencies.
+  private double percentileLatency = -1;
+  private int unsortedCount = 0;
+  private boolean closed = false;
+
+  private double hedgePercentile = QPLUtils.DEFAULT_HEDGE_PERCENTILE;
+  private long minHedgeDelayNanos = QPLUtils.DEFAULT_MIN_HEDGE_DELAY_NANOS;
+  private long compressCount = 0;
+  private long hedgeCount = 0;
+  private long hardwareWinCount = 0;
+  private long softwareWinCount = 0;
+  private int bytesRead = 0;
+  private int bytesWritten = 0;
+
+  /**
+   * Creates a new QPLHedgedCompressor that uses {@link QPLUtils#DEFAULT_COMPRESSION_LEVEL}, {@link
+   * QPLUtils#DEFAULT_RETRY_COUNT} and a shared pool of daemon threads.
+   */
+  public QPLHedgedCompressor() {
+    this(QPLUtils.DEFAULT_COMPRESSION_LEVEL, QPLUtils.DEFAULT_RETRY_COUNT, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Creates a new QPLHedgedCompressor with specified parameters.
+   *
+   * @param compressionLevel the compression level.
+   * @param retryCount the number of attempts to acquire hardware resources.
+   * @param executor the executor both compressions of a call run on. It must be able to run at
+   *     least two tasks concurrently.
+   */
+  public QPLHedgedCompressor(int compressionLevel, int retryCount, Executor executor) {
+    QPLUtils.ExecutionPaths path =
+        QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE);
+    this.hardwarePath = QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE.equals(path) ? path : null;
+    this.hardwareLevel =
+        hardwarePath == null ? 0 : QPLJob.getValidCompressionLevel(path, compressionLevel);
+    this.softwareLevel =
+        QPLJob.getValidCompressionLevel(
+            QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, compressionLevel);
+    this.retryCount = retryCount;
+    this.executor = executor;
+    this.directCompressor =
+        hardwarePath == null
+            ? new QPLCompressor(
+                QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, softwareLevel, retryCount)
+            : null;
+  }
+
+  /**
+   * Returns the percentile of the recent hardware latencies after which a call is hedged.
+   *
+   * @return hedge percentile.
+   */
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  /**
+   * Sets the percentile of the recent hardware latencies after which a call is hedged. For
+   * instance, with 0.95 about 5% of the calls are hedged when the latency is stable, and every call
+   * slower than 95% of the recent ones is.
+   *
+   * @param hedgePercentile the percentile, between 0 and 1.
+   * @throws IllegalArgumentException if 'hedgePercentile' is not strictly between 0 and 1.
+   */
+  public void setHedgePercentile(double hedgePercentile) {
+    if (!(hedgePercentile > 0 && hedgePercentile < 1)) {
+      throw new IllegalArgumentException(
+          "Percentile must be between 0 and 1, got " + hedgePercentile);
+    }
+    synchronized (this) {
+      this.hedgePercentile = hedgePercentile;
+      percentileLatency = -1;
+    }
+  }
+
+  /**
+   * Returns the minimum time in nanoseconds a call waits for the hardware before it is hedged.
+   *
+   * @return minimum hedge delay.
+   */
+  public long getMinHedgeDelayNanos() {
+    return minHedgeDelayNanos;
+  }
+
+  /**
+   * Sets the minimum time in nanoseconds a call waits for the hardware before it is hedged, so that
+   * small inputs, whose latency is dominated by the submission, are not hedged needlessly.
+   *
+   * @param minHedgeDelayNanos the minimum hedge delay.
+   * @throws IllegalArgumentException if 'minHedgeDelayNanos' is negative.
+   */
+  public void setMinHedgeDelayNanos(long minHedgeDelayNanos) {
+    if (minHedgeDelayNanos < 0) {
+      throw new IllegalArgumentException("Delay must be >= 0, got " + minHedgeDelayNanos);
+    }
+    this.minHedgeDelayNanos = minHedgeDelayNanos;
+  }
+
+  /**
+   * Compresses the source buffer and stores the result in the destination buffer. Returns actual
+   * number of bytes of compressed data.
+   *
+   * <p>The positions of both the source and destinations buffers are advanced by the number of
+   * bytes read from the source and the number of bytes of compressed data written to the
+   * destination.
+   *
+   * @param src the source buffer holding the source data
+   * @param dst the destination buffer that will store the compressed data
+   * @return returns the size of the compressed data in bytes
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if this QPLHedgedCompressor was cleared.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   */
+  public int compress(ByteBuffer src, ByteBuffer dst) {
+    if (dst.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+    if (closed) {
+      throw new IllegalStateException("The compressor was cleared");
+    }
+    compressCount++;
+    if (directCompressor != null) {
+      int compressedSize = directCompressor.compress(src, dst);
+      bytesRead = directCompressor.getBytesRead();
+      bytesWritten = compressedSize;
+      return compressedSize;
+    }
+    int length = src.remaining();
+    long deadline = hedgeDelayNanos(length);
+    Race race = new Race();
+    Lane hardware = acquireLane(true, src, dst.remaining());
+    race.start();
+    executor.execute(() -> hardware.run(race));
+    Lane winner = race.awaitWinner(deadline);
+    // An overflowing destination fails on the software path as well, any other hardware failure
+    // starts the software compression at once.
+    if (winner == null
+        && (race.isPending() || !(race.getFailure() instanceof QPLOutputOverflowException))) {
+      hedgeCount++;
+      Lane software = acquireLane(false, src, dst.remaining());
+      race.start();
+      executor.execute(() -> software.run(race));
+      winner = race.awaitWinner(-1);
+    }
+    if (winner == null) {
+      throw race.getFailure();
+    }
+    try {
+      if (winner.hardware) {
+        hardwareWinCount++;
+      } else {
+        softwareWinCount++;
+      }
+      bytesRead = winner.compressor.getBytesRead();
+      bytesWritten = winner.compressedSize;
+      ByteBuffer out = winner.out.duplicate();
+      out.flip();
+      dst.put(out);
+      src.position(src.position() + bytesRead);
+      return bytesWritten;
+    } finally {
+      releaseLane(winner);
+    }
+  }
+
+  /**
+   * Compresses the source array and stores the result in the destination array. Returns the actual
+   * number of bytes of the compressed data.
+   *
+   * @param src the source array holding the source data
+   * @param dst the destination array for the compressed data
+   * @return the size of the compressed data in bytes
+   * @throws IllegalStateException if this QPLHedgedCompressor was cleared.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   */
+  public int compress(byte[] src, byte[] dst) {
+    return compress(src, 0, src.length, dst, 0, dst.length);
+  }
+
+  /**
+   * Compresses the source array, starting at the specified offset, and stores the result in the
+   * destination array starting at the specified destination offset. Returns the actual number of
+   * bytes of data compressed.
+   *
+   * @param src the source array holding the source data
+   * @param srcOffset the start offset of the source data
+   * @param srcLength the length of source data to compress
+   * @param dst the destination array for the compressed data
+   * @param dstOffset the destination offset where to start storing the compressed data
+   * @param dstLength the maximum length that can be written to the destination array
+   * @return the size of the compressed data in bytes
+   * @throws IllegalStateException if this QPLHedgedCompressor was cleared.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   */
+  public int compress(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    return compress(
+        ByteBuffer.wrap(src, srcOffset, srcLength), ByteBuffer.wrap(dst, dstOffset, dstLength));
+  }
+
+  /**
+   * Returns bytes read from the source in the preceding operation.
+   *
+   * @return bytes read from the source in the preceding operation.
+   */
+  public int getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Returns bytes written to the destination in the preceding operation.
+   *
+   * @return bytes written to the destination in the preceding operation.
+   */
+  public int getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Returns the number of compress calls.
+   *
+   * @return compress call count.
+   */
+  public long getCompressCount() {
+    return compressCount;
+  }
+
+  /**
+   * Returns the number of compress calls that started a software compression because the hardware
+   * had not completed in time or failed.
+   *
+   * @return hedged call count.
+   */
+  public long getHedgeCount() {
+    return hedgeCount;
+  }
+
+  /**
+   * Returns the fraction of the compress calls that were hedged.
+   *
+   * @return hedge rate, 0 if no call was made.
+   */
+  public double getHedgeRate() {
+    return compressCount == 0 ? 0 : (double) hedgeCount / compressCount;
+  }
+
+  /**
+   * Returns the number of hedged or unhedged compress calls whose result came from the hardware.
+   *
+   * @return hardware win count.
+   */
+  public long getHardwareWinCount() {
+    return hardwareWinCount;
+  }
+
+  /**
+   * Returns the number of compress calls whose result came from the software path, including the
+   * calls made while the hardware path is not available.
+   *
+   * @return software win count.
+   */
+  public long getSoftwareWinCount() {
+    return directCompressor != null ? compressCount : softwareWinCount;
+  }
+
+  /**
+   * Returns the time in nanoseconds after which a compress call of 'length' bytes is hedged, from
+   * the recent hardware latencies. Returns -1 if calls are not hedged yet.
+   *
+   * @param length the input size in bytes.
+   * @return hedge delay, or -1.
+   */
+  public long getHedgeDelayNanos(int length) {
+    return hedgeDelayNanos(length);
+  }
+
+  /**
+   * Releases resources held by this QPLHedgedCompressor. The resources of a compression that is
+   * still running are released when it completes; consequently this QPLHedgedCompressor will no
+   * longer be valid for use.
+   *
+   * @throws IllegalStateException If the user attempts to use this object after releasing the
+   *     resource explicitly.
+   */
+  public void doClear() {
+    if (directCompressor != null) {
+      directCompressor.doClear();
+    }
+    ArrayDeque<Lane> lanes = new ArrayDeque<>();
+    synchronized (this) {
+      closed = true;
+      lanes.addAll(idleHardwareLanes);
+      lanes.addAll(idleSoftwareLanes);
+      idleHardwareLanes.clear();
+      idleSoftwareLanes.clear();
+    }
+    for (Lane lane : lanes) {
+      lane.clear();
+    }
+  }
+
+  private synchronized long hedgeDelayNanos(int length) {
+    if (directCompressor != null || latencyCount < MIN_SAMPLES) {
+      return -1;
+    }
+    if (percentileLatency < 0 || unsortedCount >= SORT_INTERVAL) {
+      System.arraycopy(latencies, 0, sortedLatencies, 0, latencyCount);
+      Arrays.sort(sortedLatencies, 0, latencyCount);
+      int index = Math.min(latencyCount - 1, (int) (hedgePercentile * latencyCount));
+      percentileLatency = sortedLatencies[index];
+      unsortedCount = 0;
+    }
+    long delay = (long) (percentileLatency * Math.max(length, 1));
+    return Math.max(minHedgeDelayNanos, delay);
+  }
+
+  private synchronized void recordLatency(int length, long elapsedNanos) {
+    latencies[nextLatency] = (double) elapsedNanos / Math.max(length, 1);
+    nextLatency = (nextLatency + 1) % WINDOW_SIZE;
+    latencyCount = Math.min(latencyCount + 1, WINDOW_SIZE);
+    unsortedCount++;
+  }
+
+  private Lane acquireLane(boolean hardware, ByteBuffer src, int dstLength) {
+    Lane lane;
+    synchronized (this) {
+      lane = (hardware ? idleHardwareLanes : idleSoftwareLanes).poll();
+    }
+    if (lane == null) {
+      lane =
+          hardware
+              ? new Lane(true, new QPLCompressor(hardwarePath, hardwareLevel, retryCount))
+              : new Lane(
+                  false,
+                  new QPLCompressor(
+                      QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, softwareLevel, retryCount));
+    }
+    lane.prepare(src, dstLength);
+    return lane;
+  }
+
+  private void releaseLane(Lane lane) {
+    synchronized (this) {
+      if (!closed) {
+        (lane.hardware ? idleHardwareLanes : idleSoftwareLanes).push(lane);
+        return;
+      }
+    }
+    lane.clear();
+  }
+
+  // A compressor with private input and output buffers.
+  private class Lane {
+    final boolean hardware;
+    final QPLCompressor compressor;
+    ByteBuffer in;
+    ByteBuffer out;
+    int compressedSize;
+
+    Lane(boolean hardware, QPLCompressor compressor) {
+      this.hardware = hardware;
+      this.compressor = compressor;
+    }
+
+    void prepare(ByteBuffer src, int dstLength) {
+      in = ensureCapacity(in, Math.max(src.remaining(), 1));
+      out = ensureCapacity(out, Math.max(dstLength, 1));
+      in.clear();
+      in.put(src.duplicate());
+      in.flip();
+      out.clear();
+      out.limit(dstLength);
+    }
+
+    private ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+      if (buffer != null && buffer.capacity() >= size) {
+        return buffer;
+      }
+      if (buffer != null) {
+        QPLBufferAllocator.getDefault().release(buffer);
+      }
+      return QPLBufferAllocator.getDefault().allocate(size);
+    }
+
+    void run(Race race) {
+      if (race.isDecided()) {
+        // The other compression already won, this one is cancelled.
+        race.complete(this, false, null);
+        releaseLane(this);
+        return;
+      }
+      int length = in.remaining();
+      long start = System.nanoTime();
+      RuntimeException failure = null;
+      try {
+        compressedSize = compressor.compress(in, out);
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+      if (hardware && failure == null) {
+        recordLatency(length, System.nanoTime() - start);
+      }
+      if (!race.complete(this, failure == null, failure)) {
+        releaseLane(this);
+      }
+    }
+
+    void clear() {
+      compressor.doClear();
+      if (in != null) {
+        QPLBufferAllocator.getDefault().release(in);
+      }
+      if (out != null) {
+        QPLBufferAllocator.getDefault().release(out);
+      }
+      in = null;
+      out = null;
+    }
+  }
+
+  // The compressions of one call. The first one to succeed wins and is released by the caller, the
+  // others release themselves.
+  private static class Race {
+    private Lane winner;
+    private int pending = 0;
+    private RuntimeException failure;
+
+    synchronized void start() {
+      pending++;
+    }
+
+    synchronized boolean isDecided() {
+      return winner != null;
+    }
+
+    synchronized boolean isPending() {
+      return pending > 0;
+    }
+
+    synchronized RuntimeException getFailure() {
+      return failure;
+    }
+
+    synchronized boolean complete(Lane lane, boolean succeeded, RuntimeException error) {
+      pending--;
+      boolean won = succeeded && winner == null;
+      if (won) {
+        winner = lane;
+      } else if (error != null && failure == null) {
+        failure = error;
+      }
+      notifyAll();
+      return won;
+    }
+
+    // Waits until a compression succeeds, all failed, or 'timeoutNanos' elapsed if it is not
+    // negative. Interrupting the waiting thread does not abort the wait.
+    synchronized Lane awaitWinner(long timeoutNanos) {
+      long deadline = System.nanoTime() + timeoutNanos;
+      boolean interrupted = false;
+      while (winner == null && pending > 0) {
+        long remaining = deadline - System.nanoTime();
+        if (timeoutNanos >= 0 && remaining <= 0) {
+          break;
+        }
+        try {
+          if (timeoutNanos < 0) {
+            wait();
+          } else {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          }
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return winner;
+    }
+  }
+}
@@ -0,0 +1,483 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+
+/**
+ * A decompressor with the method contract of {@link java.util.zip.Inflater}, backed by a stateful
+ * multi-call {@link QPLJob}, so that code written against Inflater gets hardware decompression by
+ * changing the constructor call.
+ *
+ * <p>The input may be given in pieces of any size, and the output taken in buffers of any size: a
+ * decompression that fills the output buffer continues with the next call. With 'nowrap' the input
+ * is a raw deflate stream, otherwise it is expected in the ZLIB format and its checksum is
+ * verified, like Inflater; a {@link QPLUtils.StreamFormats} also selects the GZIP format. After the
+ * end of a GZIP member, the last {@link #getRemaining()} bytes of the input begin the next member,
+ * to be given again after {@link #reset()}. The end of a raw deflate stream is only detected once
+ * input past it is given, so as with Inflater, provide an extra "dummy" byte after a raw stream
+ * that is not followed by other data. Preset dictionaries are not supported.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLInflater {
+  private static final int ZLIB_HEADER_LENGTH = 2;
+  private static final int ZLIB_TRAILER_LENGTH = 4;
+  private static final int GZIP_HEADER_LENGTH = 10;
+  private static final int GZIP_TRAILER_LENGTH = 8;
+  private static final int GZIP_FHCRC = 0x02;
+  private static final int GZIP_FEXTRA = 0x04;
+  private static final int GZIP_FNAME = 0x08;
+  private static final int GZIP_FCOMMENT = 0x10;
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private final QPLJob job;
+  private final QPLUtils.StreamFormats format;
+  private final Adler32 adler = new Adler32();
+  private final CRC32 crc = new CRC32();
+  // The header or trailer bytes read so far.
+  private final byte[] wrapper = new byte[GZIP_HEADER_LENGTH];
+  private int wrapperLength = 0;
+  // The GZIP header fields left to read, -1 before the fixed part is read.
+  private int gzipFlags = -1;
+  private int gzipExtraLength = -1;
+  private ByteBuffer input;
+  private boolean headerDone;
+  private boolean started = false;
+  private boolean streamDone = false;
+  private boolean finished = false;
+  private boolean closed = false;
+  private long bytesRead = 0;
+  private long bytesWritten = 0;
+
+  /**
+   * Creates a new QPLInflater that uses {@link QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE} if it is
+   * available and the ZLIB format.
+   */
+  public QPLInflater() {
+    this(false);
+  }
+
+  /**
+   * Creates a new QPLInflater that uses {@link QPLUtils.ExecutionPaths#QPL_PATH_HARDWARE} if it is
+   * available.
+   *
+   * @param nowrap if true, the input is a raw deflate stream without the ZLIB header and checksum.
+   */
+  public QPLInflater(boolean nowrap) {
+    this(QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE), nowrap);
+  }
+
+  /**
+   * Creates a new QPLInflater with specified parameters.
+   *
+   * @param executionPath the execution path {@link QPLUtils.ExecutionPaths}.
+   * @param nowrap if true, the input is a raw deflate stream without the ZLIB header and checksum.
+   */
+  public QPLInflater(QPLUtils.ExecutionPaths executionPath, boolean nowrap) {
+    this(executionPath, nowrap ? QPLUtils.StreamFormats.RAW : QPLUtils.StreamFormats.ZLIB);
+  }
+
+  /**
+   * Creates a new QPLInflater with specified parameters.
+   *
+   * @param executionPath the execution path {@link QPLUtils.ExecutionPaths}.
+   * @param format the framing of the input.
+   */
+  public QPLInflater(QPLUtils.ExecutionPaths executionPath, QPLUtils.StreamFormats format) {
+    this.job = new QPLJob(executionPath);
+    this.format = format;
+    this.headerDone = format == QPLUtils.StreamFormats.RAW;
+  }
+
+  /**
+   * Sets input data for decompression. The array is not copied, it must not be modified until
+   * {@link #needsInput()} returns true.
+   *
+   * @param input the input data bytes.
+   * @param off the start offset of the input data.
+   * @param len the length of the input data.
+   * @throws ArrayIndexOutOfBoundsException if 'off' and 'len' are outside of 'input'.
+   */
+  public void setInput(byte[] input, int off, int len) {
+    if (off < 0 || len < 0 || off > input.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    this.input = ByteBuffer.wrap(input, off, len);
+  }
+
+  /**
+   * Sets input data for decompression.
+   *
+   * @param input the input data bytes.
+   */
+  public void setInput(byte[] input) {
+    setInput(input, 0, input.length);
+  }
+
+  /**
+   * Sets input data for decompression. The remaining bytes of the buffer are decompressed, and its
+   * position is advanced as they are consumed.
+   *
+   * @param input the input data bytes.
+   */
+  public void setInput(ByteBuffer input) {
+    this.input = input;
+  }
+
+  /**
+   * Not supported, the library does not take preset dictionaries.
+   *
+   * @param dictionary the dictionary data bytes.
+   * @param off the start offset of the data.
+   * @param len the length of the data.
+   * @throws UnsupportedOperationException always.
+   */
+  public void setDictionary(byte[] dictionary, int off, int len) {
+    throw new UnsupportedOperationException("Preset dictionaries are not supported");
+  }
+
+  /**
+   * Returns the total number of bytes remaining in the input buffer. This can be used to find out
+   * what bytes still remain in the input buffer after decompression has finished.
+   *
+   * @return the total number of bytes remaining in the input buffer.
+   */
+  public int getRemaining() {
+    return input == null ? 0 : input.remaining();
+  }
+
+  /**
+   * Returns true if no data remains in the input buffer. This can be used to determine if one of
+   * the setInput() methods should be called in order to provide more input.
+   *
+   * @return true if no data remains in the input buffer.
+   */
+  public boolean needsInput() {
+    return input == null || !input.hasRemaining();
+  }
+
+  /**
+   * Returns false, preset dictionaries are not supported.
+   *
+   * @return false.
+   */
+  public boolean needsDictionary() {
+    return false;
+  }
+
+  /**
+   * Returns true if the end of the compressed data stream has been reached.
+   *
+   * @return true if the end of the compressed data stream has been reached.
+   */
+  public boolean finished() {
+    return finished;
+  }
+
+  /**
+   * Uncompresses bytes into specified buffer. Returns actual number of bytes uncompressed. A return
+   * value of 0 indicates that needsInput() should be called in order to determine if more input
+   * data is required.
+   *
+   * @param output the buffer for the uncompressed data.
+   * @param off the start offset of the data.
+   * @param len the maximum number of uncompressed bytes.
+   * @return the actual number of uncompressed bytes.
+   * @throws ArrayIndexOutOfBoundsException if 'off' and 'len' are outside of 'output'.
+   * @throws DataFormatException if the compressed data format is invalid.
+   */
+  public int inflate(byte[] output, int off, int len) throws DataFormatException {
+    if (off < 0 || len < 0 || off > output.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    return inflate(ByteBuffer.wrap(output, off, len));
+  }
+
+  /**
+   * Uncompresses bytes into specified buffer. Returns actual number of bytes uncompressed.
+   *
+   * @param output the buffer for the uncompressed data.
+   * @return the actual number of uncompressed bytes.
+   * @throws DataFormatException if the compressed data format is invalid.
+   */
+  public int inflate(byte[] output) throws DataFormatException {
+    return inflate(output, 0, output.length);
+  }
+
+  /**
+   * Uncompresses bytes into the remaining space of the specified buffer. The position of the buffer
+   * is advanced by the number of bytes written.
+   *
+   * @param output the buffer for the uncompressed data.
+   * @return the actual number of uncompressed bytes.
+   * @throws DataFormatException if the compressed data format is invalid.
+   */
+  public int inflate(ByteBuffer output) throws DataFormatException {
+    ensureOpen();
+    QPLUtils.checkReadOnly(output);
+    if (!headerDone) {
+      if (format == QPLUtils.StreamFormats.GZIP) {
+        readGzipHeader();
+      } else {
+        readHeader();
+      }
+      if (!headerDone) {
+        return 0;
+      }
+    }
+    int start = output.position();
+    boolean pendingOutput = job.isOutputInsufficient();
+    if (!streamDone && output.hasRemaining() && (!needsInput() || pendingOutput)) {
+      ByteBuffer in = input == null ? EMPTY : input;
+      int inStart = in.position();
+      int flags = started ? 0 : QPLUtils.Flags.QPL_FLAG_FIRST.getId();
+      job.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+      job.setFlags(flags);
+      try {
+        job.execute(in, output);
+      } catch (QPLException e) {
+        throw new DataFormatException(e.getMessage());
+      } finally {
+        started = true;
+        bytesRead += in.position() - inStart;
+      }
+      if (format != QPLUtils.StreamFormats.RAW) {
+        ByteBuffer written = output.duplicate();
+        written.limit(written.position()).position(start);
+        if (format == QPLUtils.StreamFormats.ZLIB) {
+          adler.update(written);
+        } else {
+          crc.update(written);
+        }
+      }
+      // The decompression stops at the end of the stream, before the rest of the input.
+      if (!job.isOutputInsufficient() && in.hasRemaining()) {
+        streamDone = true;
+      }
+    }
+    int length = output.position() - start;
+    bytesWritten += length;
+    if (streamDone && !finished) {
+      if (format == QPLUtils.StreamFormats.RAW) {
+        finished = true;
+      } else if (format == QPLUtils.StreamFormats.ZLIB) {
+        readTrailer();
+      } else {
+        readGzipTrailer();
+      }
+    }
+    return length;
+  }
+
+  // Reads the ZLIB header, which may be split across several inputs.
+  private void readHeader() throws DataFormatException {
+    readWrapper(ZLIB_HEADER_LENGTH);
+    if (wrapperLength < ZLIB_HEADER_LENGTH) {
+      return;
+    }
+    int cmf = wrapper[0] & 0xff;
+    int flg = wrapper[1] & 0xff;
+    if ((cmf & 0x0f) != 8 || (cmf * 256 + flg) % 31 != 0) {
+      throw new DataFormatException("incorrect header check");
+    }
+    if ((flg & 0x20) != 0) {
+      throw new DataFormatException("Preset dictionaries are not supported");
+    }
+    wrapperLength = 0;
+    headerDone = true;
+  }
+
+  private void readTrailer() throws DataFormatException {
+    readWrapper(ZLIB_TRAILER_LENGTH);
+    if (wrapperLength < ZLIB_TRAILER_LENGTH) {
+      return;
+    }
+    int expected =
+        ((wrapper[0] & 0xff) << 24)
+            | ((wrapper[1] & 0xff) << 16)
+            | ((wrapper[2] & 0xff) << 8)
+            | (wrapper[3] & 0xff);
+    if (expected != (int) adler.getValue()) {
+      throw new DataFormatException("incorrect data check");
+    }
+    finished = true;
+  }
+
+  // Reads the GZIP header and its optional fields, which may be split across several inputs.
+  private void readGzipHeader() throws DataFormatException {
+    if (gzipFlags < 0) {
+      readWrapper(GZIP_HEADER_LENGTH);
+      if (wrapperLength < GZIP_HEADER_LENGTH) {
+        return;
+      }
+      if ((wrapper[0] & 0xff) != 0x1f || (wrapper[1] & 0xff) != 0x8b || wrapper[2] != 8) {
+        throw new DataFormatException("Not in GZIP format");
+      }
+      gzipFlags = wrapper[3] & 0xff;
+      wrapperLength = 0;
+    }
+    if ((gzipFlags & GZIP_FEXTRA) != 0) {
+      if (gzipExtraLength < 0) {
+        readWrapper(2);
+        if (wrapperLength < 2) {
+          return;
+        }
+        gzipExtraLength = (wrapper[0] & 0xff) | (wrapper[1] & 0xff) << 8;
+        wrapperLength = 0;
+      }
+      int skipped = Math.min(gzipExtraLength, getRemaining());
+      if (skipped > 0) {
+        input.position(input.position() + skipped);
+        bytesRead += skipped;
+        gzipExtraLength -= skipped;
+      }
+      if (gzipExtraLength > 0) {
+        return;
+      }
+      gzipFlags &= ~GZIP_FEXTRA;
+    }
+    if ((gzipFlags & GZIP_FNAME) != 0 && skipZeroTerminated()) {
+      gzipFlags &= ~GZIP_FNAME;
+    }
+    if ((gzipFlags & (GZIP_FNAME | GZIP_FCOMMENT)) == GZIP_FCOMMENT && skipZeroTerminated()) {
+      gzipFlags &= ~GZIP_FCOMMENT;
+    }
+    if ((gzipFlags & (GZIP_FNAME | GZIP_FCOMMENT | GZIP_FHCRC)) == GZIP_FHCRC) {
+      readWrapper(2);
+      if (wrapperLength < 2) {
+        return;
+      }
+      wrapperLength = 0;
+      gzipFlags &= ~GZIP_FHCRC;
+    }
+    headerDone = (gzipFlags & (GZIP_FNAME | GZIP_FCOMMENT | GZIP_FHCRC)) == 0;
+  }
+
+  // Skips the input up to and including a zero byte, returns false if none was found.
+  private boolean skipZeroTerminated() {
+    while (!needsInput()) {
+      bytesRead++;
+      if (input.get() == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void readGzipTrailer() throws DataFormatException {
+    readWrapper(GZIP_TRAILER_LENGTH);
+    if (wrapperLength < GZIP_TRAILER_LENGTH) {
+      return;
+    }
+    if (littleEndianInt(0) != (int) crc.getValue()) {
+      throw new DataFormatException("Corrupt GZIP trailer");
+    }
+    if (littleEndianInt(4) != (int) bytesWritten) {
+      throw new DataFormatException("Corrupt GZIP trailer");
+    }
+    finished = true;
+  }
+
+  private int littleEndianInt(int offset) {
+    return (wrapper[offset] & 0xff)
+        | (wrapper[offset + 1] & 0xff) << 8
+        | (wrapper[offset + 2] & 0xff) << 16
+        | (wrapper[offset + 3] & 0xff) << 24;
+  }
+
+  private void readWrapper(int length) {
+    while (wrapperLength < length && !needsInput()) {
+      wrapper[wrapperLength++] = input.get();
+      bytesRead++;
+    }
+  }
+
+  /**
+   * Returns the ADLER-32 value of the uncompressed data, or 1 if the format is not ZLIB.
+   *
+   * @return the ADLER-32 value of the uncompressed data.
+   */
+  public int getAdler() {
+    return (int) adler.getValue();
+  }
+
+  /**
+   * Returns the total number of compressed bytes input so far.
+   *
+   * @return the total number of compressed bytes input so far.
+   */
+  public int getTotalIn() {
+    return (int) bytesRead;
+  }
+
+  /**
+   * Returns the total number of compressed bytes input so far.
+   *
+   * @return the total number of compressed bytes input so far.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Returns the total number of uncompressed bytes output so far.
+   *
+   * @return the total number of uncompressed bytes output so far.
+   */
+  public int getTotalOut() {
+    return (int) bytesWritten;
+  }
+
+  /**
+   * Returns the total number of uncompressed bytes output so far.
+   *
+   * @return the total number of uncompressed bytes output so far.
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /** Resets inflater so that a new set of input data can be processed. */
+  public void reset() {
+    ensureOpen();
+    job.reset();
+    input = null;
+    wrapperLength = 0;
+    headerDone = format == QPLUtils.StreamFormats.RAW;
+    gzipFlags = -1;
+    gzipExtraLength = -1;
+    started = false;
+    streamDone = false;
+    finished = false;
+    adler.reset();
+    crc.reset();
+    bytesRead = 0;
+    bytesWritten = 0;
+  }
+
+  /**
+   * Closes the decompressor and discards any unprocessed input. Once this method is called, the
+   * behavior of the QPLInflater object is undefined.
+   */
+  public void end() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    input = null;
+    job.doClear();
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new NullPointerException("QPLInflater has been closed");
+    }
+  }
+}
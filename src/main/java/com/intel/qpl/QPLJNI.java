@@ -20,6 +20,9 @@ class QPLJNI {
 
   static native void initValuesAndIDs(int idxdWqMaxTransferBytes, int estimatedDstChunkLength);
 
+  static native void setNumaMaxTransferBytes(
+      int numaNode, int maxTransferBytes, int estimatedDstChunkLength);
+
   static native int getQPLJobSize(int exePathCode);
 
   static native void initQPLJob(int exePathCode, ByteBuffer jobBuffer);
@@ -35,9 +38,68 @@ class QPLJNI {
       int dstOff,
       int maxDestLen);
 
+  static native int tryExecute(
+      QPLJob job,
+      byte[] srcArray,
+      ByteBuffer srcBuffer,
+      int srcOff,
+      int srcLen,
+      byte[] dstArray,
+      ByteBuffer dstBuffer,
+      int dstOff,
+      int maxDestLen);
+
+  static native void executeBatch(
+      QPLJob[] jobs,
+      ByteBuffer[] srcBuffers,
+      int[] srcOffs,
+      int[] srcLens,
+      ByteBuffer[] dstBuffers,
+      int[] dstOffs,
+      int[] maxDestLens,
+      int count,
+      int[] statuses);
+
+  static native int executeVectored(
+      QPLJob job,
+      byte[][] srcArrays,
+      ByteBuffer[] srcBuffers,
+      int[] srcOffs,
+      int[] srcLens,
+      byte[][] dstArrays,
+      ByteBuffer[] dstBuffers,
+      int[] dstOffs,
+      int[] maxDestLens,
+      int[] bytesRead,
+      int[] bytesWritten);
+
+  static native int submit(
+      QPLJob job,
+      ByteBuffer srcBuffer,
+      int srcOff,
+      int srcLen,
+      ByteBuffer dstBuffer,
+      int dstOff,
+      int maxDestLen);
+
+  static native int poll(QPLJob job);
+
+  static native byte[] decompressAll(
+      QPLJob job, byte[] srcArray, ByteBuffer srcBuffer, int srcOff, int srcLen, int sizeHint);
+
   static native void finish(ByteBuffer jobBuffer);
 
   static native int isExecutionPathAvailable(int exePathCode);
 
   static native int isCompressionLevelSupported(int exePathCode, int cl);
+
+  static native String getLibraryVersion();
+
+  static native long allocateMemory(long length, int numaNode, boolean hugePages);
+
+  static native ByteBuffer wrapMemory(long address, int capacity);
+
+  static native long getBufferAddress(ByteBuffer buffer);
+
+  static native void freeMemory(long address, long length);
 }
@@ -7,8 +7,12 @@
 package com.intel.qpl;
 
 import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
 import java.nio.ByteBuffer;
 import java.nio.ReadOnlyBufferException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Defines general qpl wrapper functions.
@@ -19,14 +23,52 @@ public class QPLJob {
   private int executionPathCode;
   private int compressionLevel = 1;
   private int retryCount = 0;
+  private long retryTimeoutNanos = QPLUtils.DEFAULT_RETRY_TIMEOUT_NANOS;
+  private QPLUtils.BackoffPolicies backoffPolicy = QPLUtils.DEFAULT_BACKOFF_POLICY;
+  private int backoffPolicyCode = backoffPolicy.getBackoffPolicyCode();
+  private long backoffCapNanos = QPLUtils.DEFAULT_BACKOFF_CAP_NANOS;
+  private QPLUtils.FailoverPolicies failoverPolicy = QPLUtils.DEFAULT_FAILOVER_POLICY;
+  private QPLUtils.WaitPolicies waitPolicy = QPLUtils.DEFAULT_WAIT_POLICY;
+  private long maxPollIntervalNanos = QPLUtils.DEFAULT_MAX_POLL_INTERVAL_NANOS;
+  // Returned by QPLJNI.poll() while the submitted operation is being processed.
+  private static final int STATUS_PENDING = -1;
+  // The qpl status of an operation that does not fit in a single submission.
+  private static final int QPL_STS_SIZE_ERR = 57;
+  private static final long MIN_POLL_INTERVAL_NANOS = 1000;
+  private static final String EXECUTE_JOB_ERROR = "Error occurred while executing job";
+  private QPLJob failoverJob;
+  private boolean failedOver = false;
+  private long failoverCount = 0;
+  private static final AtomicLong TOTAL_FAILOVER_COUNT = new AtomicLong();
+  // Matches the size of the node mask used by the native library.
+  static final int MAX_NUMA_NODES = 1024;
+  private static final AtomicLongArray NUMA_SUBMISSIONS = new AtomicLongArray(MAX_NUMA_NODES);
+  private int numaNode = QPLUtils.DEFAULT_NUMA_NODE;
+  // Set by the native library to the node of the last submission, reset once recorded.
+  private int submittedNumaNode = -1;
+  private int lastNumaNode = -1;
   private final ByteBuffer jobBuffer;
   private int operationType = 0;
   private int flags = 0;
   private boolean isJobValid = true;
   static int IDXD_WQ_MAX_TRANSFER_BYTES;
+  private static QPLDeviceTopology deviceTopology;
+  // Bounds of a discovered max transfer size; the upper one keeps the chunk bounds in int range.
+  private static final long MIN_DISCOVERED_MAX_TRANSFER_BYTES = 4096;
+  private static final long MAX_DISCOVERED_MAX_TRANSFER_BYTES = 1 << 30;
+  private static boolean maxTransferBytesConfigured;
   private int bytesRead = 0;
   private int bytesWritten = 0;
   private boolean outputInsufficient = false;
+  private int crc = 0;
+  private int statusCode = QPLUtils.QPL_SUCCESS_STATUS;
+  // The number of attempts of the preceding native call that found the work queues busy.
+  private int busyCount = 0;
+  // Test hook: after 'injectedBusySkips' more operations, the next 'injectedBusyOperations'
+  // operations on the accelerator find the work queues busy without reaching the device.
+  int injectedBusySkips = 0;
+  int injectedBusyOperations = 0;
+  private static volatile QPLConcurrencyLimiter concurrencyLimiter;
   /** Cleaner instance associated with this object. */
   private static Cleaner cleaner;
 
@@ -73,11 +115,9 @@ public class QPLJob {
     int chunks = (int) Math.ceil((double) srcLen / chunkLength);
     int dstLen;
     if (chunks <= 1) {
-      dstLen = srcLen + (srcLen >> 12) + (srcLen >> 14) + (srcLen >> 25) + 13;
+      dstLen = chunkBound(srcLen);
     } else {
-      dstLen =
-          (chunkLength + (chunkLength >> 12) + (chunkLength >> 14) + (chunkLength >> 25) + 13)
-              * chunks;
+      dstLen = chunkBound(chunkLength) * chunks;
     }
 
     if (dstLen <= 0) {
@@ -86,6 +126,11 @@ public class QPLJob {
     return dstLen;
   }
 
+  // Worst-case compressed length of a chunk compressed in a single submission.
+  private static int chunkBound(int srcLen) {
+    return srcLen + (srcLen >> 12) + (srcLen >> 14) + (srcLen >> 25) + 13;
+  }
+
   /**
    * This method forms corresponding processing functions pipeline based on specified operation
    * type.
@@ -103,6 +148,8 @@ public class QPLJob {
    * @throws IllegalStateException if this QPLJob is invalid .
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
    *     or decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy for the whole retry budget and the
+   *     operation could not fail over.
    */
   public int execute(ByteBuffer src, ByteBuffer dst) {
     if (!isJobValid) {
@@ -110,15 +157,61 @@ public class QPLJob {
     }
     QPLUtils.checkReadOnly(dst);
     int outputSize;
+    QPLJob target = executionTarget();
     try {
-      outputSize = executeOperation(src, dst);
+      try {
+        outputSize = target.executeOperation(src, dst, false);
+      } catch (QPLQueuesBusyException e) {
+        target = failover(e);
+        outputSize = target.executeOperation(src, dst, false);
+      }
     } finally {
+      recordSubmission(target);
+      copyResults(target);
       advanceByteBuffer(src, dst);
     }
     return outputSize;
   }
 
-  private int executeOperation(ByteBuffer src, ByteBuffer dst) {
+  /**
+   * Executes the configured operation like {@link #execute(ByteBuffer, ByteBuffer)}, but reports
+   * an overflowing destination, busy work queues and library errors through 'result' instead of
+   * throwing. The positions of 'src' and 'dst' are advanced only if the status is {@link
+   * QPLUtils.Statuses#OK}, so that an operation can be retried from the same positions, e.g. with
+   * a larger destination.
+   *
+   * @param src the source buffer.
+   * @param dst the destination buffer.
+   * @param result the object the outcome is stored into.
+   * @return 'result'.
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if this QPLJob is invalid.
+   */
+  public QPLResult tryExecute(ByteBuffer src, ByteBuffer dst, QPLResult result) {
+    checkValid();
+    QPLUtils.checkReadOnly(dst);
+    int code;
+    QPLJob target = executionTarget();
+    try {
+      code = target.executeOperation(src, dst, true);
+      if (code == QPLUtils.Statuses.QUEUES_BUSY.getStatusCode() && canFailover()) {
+        target = startFailover();
+        code = target.executeOperation(src, dst, true);
+      }
+    } finally {
+      recordSubmission(target);
+      copyResults(target);
+    }
+    QPLUtils.Statuses status = QPLUtils.Statuses.fromStatusCode(code);
+    if (status == QPLUtils.Statuses.OK) {
+      advanceByteBuffer(src, dst);
+    }
+    return storeResult(status, result);
+  }
+
+  // Executes the operation natively. Returns the number of bytes written, or the status code of the
+  // operation without throwing if 'tryOnly' is true.
+  private int executeOperation(ByteBuffer src, ByteBuffer dst, boolean tryOnly) {
     if ((src.hasArray() || src.isDirect()) && (dst.hasArray() || dst.isDirect())) {
       ByteBuffer srcBuf = null, dstBuf = null;
       byte[] srcArr = null, dstArr = null;
@@ -136,8 +229,8 @@ public class QPLJob {
       } else {
         dstBuf = dst;
       }
-      return QPLJNI.execute(
-          this,
+      return executeNative(
+          tryOnly,
           srcArr,
           srcBuf,
           srcOffset,
@@ -147,15 +240,12 @@ public class QPLJob {
           dstOffset,
           dst.remaining());
     } else {
-      ByteBuffer srcBuf = null, dstBuf = null;
+      // The source is a read-only heap buffer, stage it in a direct buffer from the allocator.
+      ByteBuffer dstBuf = null;
       byte[] dstArr = null;
-      int srcOffset = src.position();
       int dstOffset = dst.position();
-      byte[] srcArr = new byte[src.remaining()];
-      src.get(srcArr);
-      // since the src.get method advance the src position, flip the src to
-      // its initial position.
-      src.flip().position(srcOffset);
+      ByteBuffer srcBuf = QPLBufferAllocator.getDefault().allocate(Math.max(src.remaining(), 1));
+      srcBuf.put(src.duplicate()).flip();
 
       if (dst.hasArray()) {
         dstArr = dst.array();
@@ -163,19 +253,490 @@ public class QPLJob {
       } else {
         dstBuf = dst;
       }
+      try {
+        return executeNative(
+            tryOnly,
+            null,
+            srcBuf,
+            0,
+            srcBuf.remaining(),
+            dstArr,
+            dstBuf,
+            dstOffset,
+            dst.remaining());
+      } finally {
+        QPLBufferAllocator.getDefault().release(srcBuf);
+      }
+    }
+  }
+
+  /**
+   * Executes the configured operation over several buffers in a single native call, as if the
+   * buffers of each side were contiguous. The remaining bytes of 'srcs' are read in order as one
+   * input, and the output is written in order into the remaining space of 'dsts', moving to the
+   * next destination once one is full. The FIRST flag applies to the first source buffer and the
+   * LAST flag to the last one, so that a header and body fragments can be compressed as one stream,
+   * or a stream decompressed into several buffers, without an intermediate copy.
+   *
+   * <p>A compressed block cannot be split across destinations: with several destinations, the
+   * compressed data of each source buffer has to fit in the space left in the current one. Upon
+   * return, the position of each buffer is advanced by the number of bytes read from or written
+   * into it. The operation blocks in the native library whatever the wait policy.
+   *
+   * @param srcs the source buffers.
+   * @param dsts the destination buffers.
+   * @return the total number of bytes written into 'dsts'.
+   * @throws IllegalArgumentException if 'srcs' or 'dsts' is empty.
+   * @throws ReadOnlyBufferException if one of 'dsts' is readonly.
+   * @throws IllegalStateException if this QPLJob is invalid.
+   * @throws QPLOutputOverflowException if 'dsts' are not large enough to accommodate the compressed
+   *     or decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy for the whole retry budget and the
+   *     operation could not fail over.
+   */
+  public int execute(ByteBuffer[] srcs, ByteBuffer[] dsts) {
+    checkValid();
+    if (srcs.length == 0 || dsts.length == 0) {
+      throw new IllegalArgumentException("At least one source and one destination are required");
+    }
+    byte[][] srcArrs = new byte[srcs.length][];
+    ByteBuffer[] srcBufs = new ByteBuffer[srcs.length];
+    int[] srcOffsets = new int[srcs.length];
+    int[] srcLengths = new int[srcs.length];
+    byte[][] dstArrs = new byte[dsts.length][];
+    ByteBuffer[] dstBufs = new ByteBuffer[dsts.length];
+    int[] dstOffsets = new int[dsts.length];
+    int[] dstLengths = new int[dsts.length];
+    for (int i = 0; i < dsts.length; i++) {
+      ByteBuffer dst = dsts[i];
+      QPLUtils.checkReadOnly(dst);
+      dstLengths[i] = dst.remaining();
+      if (dst.hasArray()) {
+        dstArrs[i] = dst.array();
+        dstOffsets[i] = dst.arrayOffset() + dst.position();
+      } else {
+        dstBufs[i] = dst;
+        dstOffsets[i] = dst.position();
+      }
+    }
+    int[] bytesReadFrom = new int[srcs.length];
+    int[] bytesWrittenTo = new int[dsts.length];
+    boolean[] staged = new boolean[srcs.length];
+    QPLJob target = executionTarget();
+    try {
+      for (int i = 0; i < srcs.length; i++) {
+        ByteBuffer src = srcs[i];
+        srcLengths[i] = src.remaining();
+        if (src.hasArray()) {
+          srcArrs[i] = src.array();
+          srcOffsets[i] = src.arrayOffset() + src.position();
+        } else if (src.isDirect()) {
+          srcBufs[i] = src;
+          srcOffsets[i] = src.position();
+        } else {
+          // A read-only heap buffer, stage it in a direct buffer from the allocator.
+          srcBufs[i] = QPLBufferAllocator.getDefault().allocate(Math.max(src.remaining(), 1));
+          srcBufs[i].put(src.duplicate()).flip();
+          staged[i] = true;
+        }
+      }
+      try {
+        return target.executeVectoredNative(
+            srcArrs,
+            srcBufs,
+            srcOffsets,
+            srcLengths,
+            dstArrs,
+            dstBufs,
+            dstOffsets,
+            dstLengths,
+            bytesReadFrom,
+            bytesWrittenTo);
+      } catch (QPLQueuesBusyException e) {
+        target = failover(e);
+        return target.executeVectoredNative(
+            srcArrs,
+            srcBufs,
+            srcOffsets,
+            srcLengths,
+            dstArrs,
+            dstBufs,
+            dstOffsets,
+            dstLengths,
+            bytesReadFrom,
+            bytesWrittenTo);
+      }
+    } finally {
+      recordSubmission(target);
+      copyResults(target);
+      for (int i = 0; i < srcs.length; i++) {
+        srcs[i].position(srcs[i].position() + bytesReadFrom[i]);
+        if (staged[i]) {
+          QPLBufferAllocator.getDefault().release(srcBufs[i]);
+        }
+      }
+      for (int i = 0; i < dsts.length; i++) {
+        dsts[i].position(dsts[i].position() + bytesWrittenTo[i]);
+      }
+    }
+  }
+
+  private int executeVectoredNative(
+      byte[][] srcArrs,
+      ByteBuffer[] srcBufs,
+      int[] srcOffsets,
+      int[] srcLengths,
+      byte[][] dstArrs,
+      ByteBuffer[] dstBufs,
+      int[] dstOffsets,
+      int[] dstLengths,
+      int[] bytesReadFrom,
+      int[] bytesWrittenTo) {
+    QPLConcurrencyLimiter limiter = activeLimiter();
+    long generation = limiter != null ? limiter.acquire(1) : 0;
+    busyCount = 0;
+    try {
+      return resultOrThrow(
+          QPLJNI.executeVectored(
+              this,
+              srcArrs,
+              srcBufs,
+              srcOffsets,
+              srcLengths,
+              dstArrs,
+              dstBufs,
+              dstOffsets,
+              dstLengths,
+              bytesReadFrom,
+              bytesWrittenTo));
+    } finally {
+      if (limiter != null) {
+        limiter.release(1, generation, busyCount > 0);
+      }
+    }
+  }
+
+  // Calls the native library, through the concurrency limiter if one is installed and this job runs
+  // on the accelerator.
+  private int executeNative(
+      boolean tryOnly,
+      byte[] srcArr,
+      ByteBuffer srcBuf,
+      int srcOffset,
+      int srcLength,
+      byte[] dstArr,
+      ByteBuffer dstBuf,
+      int dstOffset,
+      int dstLength) {
+    QPLConcurrencyLimiter limiter = activeLimiter();
+    long generation = limiter != null ? limiter.acquire(1) : 0;
+    busyCount = 0;
+    try {
+      if (injectBusy()) {
+        int code = QPLUtils.Statuses.QUEUES_BUSY.getStatusCode();
+        return tryOnly ? code : resultOrThrow(code);
+      }
+      int submissionLength = parkingSubmissionLength(srcLength, dstLength);
+      if (submissionLength >= 0) {
+        int code =
+            executeParking(
+                srcArr, srcBuf, srcOffset, srcLength, dstArr, dstBuf, dstOffset, submissionLength);
+        if (code != QPLUtils.Statuses.ERROR.getStatusCode() || statusCode != QPL_STS_SIZE_ERR) {
+          return tryOnly ? code : resultOrThrow(code);
+        }
+        // The devices of the selected node take smaller transfers, block on the chunked path.
+      }
+      if ((srcArr != null || dstArr != null) && backoffBlocks()) {
+        int code = QPLUtils.Statuses.QUEUES_BUSY.getStatusCode();
+        int busyAttempts = 0;
+        if (srcLength < IDXD_WQ_MAX_TRANSFER_BYTES && dstLength < IDXD_WQ_MAX_TRANSFER_BYTES) {
+          // A single submission leaves nothing behind when it finds the work queues busy, so it is
+          // tried once on the pinned arrays, and staged only to back off while the queues are busy.
+          code =
+              executeOnce(
+                  srcArr, srcBuf, srcOffset, srcLength, dstArr, dstBuf, dstOffset, dstLength);
+          busyAttempts = busyCount;
+        }
+        if (code == QPLUtils.Statuses.QUEUES_BUSY.getStatusCode()) {
+          code =
+              executeStaged(
+                  srcArr, srcBuf, srcOffset, srcLength, dstArr, dstBuf, dstOffset, dstLength);
+          busyCount += busyAttempts;
+        }
+        return tryOnly ? code : resultOrThrow(code);
+      }
+      if (tryOnly) {
+        return QPLJNI.tryExecute(
+            this, srcArr, srcBuf, srcOffset, srcLength, dstArr, dstBuf, dstOffset, dstLength);
+      }
       return QPLJNI.execute(
-          this,
-          srcArr,
-          srcBuf,
-          srcOffset,
-          src.remaining(),
-          dstArr,
-          dstBuf,
-          dstOffset,
-          dst.remaining());
+          this, srcArr, srcBuf, srcOffset, srcLength, dstArr, dstBuf, dstOffset, dstLength);
+    } finally {
+      if (limiter != null) {
+        limiter.release(1, generation, busyCount > 0);
+      }
+    }
+  }
+
+  // Returns true if the test hook reports busy work queues for this operation.
+  private boolean injectBusy() {
+    if (injectedBusyOperations == 0
+        || executionPathCode == QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE.getExecutionPathCode()) {
+      return false;
+    }
+    if (injectedBusySkips > 0) {
+      injectedBusySkips--;
+      return false;
+    }
+    injectedBusyOperations--;
+    busyCount = 1;
+    bytesRead = 0;
+    bytesWritten = 0;
+    return true;
+  }
+
+  // Returns true if the native library may block between two attempts while the work queues are
+  // busy, which it must not do while arrays are pinned.
+  private boolean backoffBlocks() {
+    return backoffPolicy != QPLUtils.BackoffPolicies.SPIN
+        && executionPathCode != QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE.getExecutionPathCode()
+        && (retryCount > 1 || retryTimeoutNanos > 0);
+  }
+
+  // Executes the operation with a single attempt, without any retry or backoff while the work
+  // queues are busy.
+  private int executeOnce(
+      byte[] srcArr,
+      ByteBuffer srcBuf,
+      int srcOffset,
+      int srcLength,
+      byte[] dstArr,
+      ByteBuffer dstBuf,
+      int dstOffset,
+      int dstLength) {
+    int savedRetryCount = retryCount;
+    long savedRetryTimeoutNanos = retryTimeoutNanos;
+    retryCount = 1;
+    retryTimeoutNanos = 0;
+    try {
+      return QPLJNI.tryExecute(
+          this, srcArr, srcBuf, srcOffset, srcLength, dstArr, dstBuf, dstOffset, dstLength);
+    } finally {
+      retryCount = savedRetryCount;
+      retryTimeoutNanos = savedRetryTimeoutNanos;
+    }
+  }
+
+  // Executes the operation over arrays staged in direct buffers, so that the native library calls
+  // it without pinning them and may yield or sleep between the attempts.
+  private int executeStaged(
+      byte[] srcArr,
+      ByteBuffer srcBuf,
+      int srcOffset,
+      int srcLength,
+      byte[] dstArr,
+      ByteBuffer dstBuf,
+      int dstOffset,
+      int dstLength) {
+    QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+    ByteBuffer in = srcBuf;
+    ByteBuffer out = dstBuf;
+    try {
+      if (srcArr != null) {
+        in = allocator.allocate(Math.max(srcLength, 1));
+        in.put(srcArr, srcOffset, srcLength);
+        srcOffset = 0;
+      }
+      if (dstArr != null) {
+        out = allocator.allocate(Math.max(dstLength, 1));
+      }
+      int code =
+          QPLJNI.tryExecute(
+              this,
+              null,
+              in,
+              srcOffset,
+              srcLength,
+              null,
+              out,
+              dstArr != null ? 0 : dstOffset,
+              dstLength);
+      if (dstArr != null && code == QPLUtils.Statuses.OK.getStatusCode()) {
+        out.duplicate().get(dstArr, dstOffset, bytesWritten);
+      }
+      return code;
+    } finally {
+      if (srcArr != null && in != null) {
+        allocator.release(in);
+      }
+      if (dstArr != null && out != null) {
+        allocator.release(out);
+      }
+    }
+  }
+
+  // Returns the destination length of an operation submitted in a single submission with the PARK
+  // wait policy, or -1 if the operation blocks in the native library.
+  private int parkingSubmissionLength(int srcLength, int dstLength) {
+    if (waitPolicy != QPLUtils.WaitPolicies.PARK
+        || executionPathCode == QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE.getExecutionPathCode()
+        || srcLength >= IDXD_WQ_MAX_TRANSFER_BYTES) {
+      return -1;
+    }
+    if (dstLength < IDXD_WQ_MAX_TRANSFER_BYTES) {
+      return dstLength;
+    }
+    // The compressed data of half a maximum transfer always fits in less than a maximum transfer.
+    if (operationType == QPLUtils.Operations.QPL_OP_COMPRESS.getOperationCode()
+        && srcLength <= IDXD_WQ_MAX_TRANSFER_BYTES / 2) {
+      return IDXD_WQ_MAX_TRANSFER_BYTES - 1;
+    }
+    return -1;
+  }
+
+  // Submits the operation and parks the calling thread until it completes, so that a virtual
+  // thread releases its carrier thread instead of blocking it in the native library. Arrays are
+  // staged in direct buffers, since the device accesses the data after the native call returned.
+  private int executeParking(
+      byte[] srcArr,
+      ByteBuffer srcBuf,
+      int srcOffset,
+      int srcLength,
+      byte[] dstArr,
+      ByteBuffer dstBuf,
+      int dstOffset,
+      int dstLength) {
+    QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+    ByteBuffer in = srcBuf;
+    ByteBuffer out = dstBuf;
+    try {
+      if (srcArr != null) {
+        in = allocator.allocate(Math.max(srcLength, 1));
+        in.put(srcArr, srcOffset, srcLength);
+        srcOffset = 0;
+      }
+      if (dstArr != null) {
+        out = allocator.allocate(Math.max(dstLength, 1));
+      }
+      int code =
+          submitAndPark(in, srcOffset, srcLength, out, dstArr != null ? 0 : dstOffset, dstLength);
+      if (dstArr != null && code == QPLUtils.Statuses.OK.getStatusCode()) {
+        out.duplicate().get(dstArr, dstOffset, bytesWritten);
+      }
+      return code;
+    } finally {
+      if (srcArr != null && in != null) {
+        allocator.release(in);
+      }
+      if (dstArr != null && out != null) {
+        allocator.release(out);
+      }
+    }
+  }
+
+  // Parks while the work queues are busy and while the operation is pending. An interrupt does not
+  // abort the operation: the interrupt status is cleared before each park, since parkNanos returns
+  // at once while it is set, and restored on return.
+  private int submitAndPark(
+      ByteBuffer in, int srcOffset, int srcLength, ByteBuffer out, int dstOffset, int dstLength) {
+    boolean interrupted = false;
+    try {
+      long start = System.nanoTime();
+      long backoffNanos = Math.min(MIN_POLL_INTERVAL_NANOS, backoffCapNanos);
+      int attempts = retryCount;
+      int code;
+      while (true) {
+        code = QPLJNI.submit(this, in, srcOffset, srcLength, out, dstOffset, dstLength);
+        if (code != QPLUtils.Statuses.QUEUES_BUSY.getStatusCode()) {
+          break;
+        }
+        busyCount++;
+        boolean canRetry =
+            retryTimeoutNanos > 0 ? System.nanoTime() - start < retryTimeoutNanos : --attempts > 0;
+        if (!canRetry) {
+          return code;
+        }
+        interrupted |= Thread.interrupted();
+        LockSupport.parkNanos(backoffNanos);
+        backoffNanos = Math.min(backoffNanos * 2, backoffCapNanos);
+      }
+      if (code != QPLUtils.Statuses.OK.getStatusCode()) {
+        return code;
+      }
+      // The device owns the buffers until the operation completes, even if the thread is
+      // interrupted.
+      long pollNanos = Math.min(MIN_POLL_INTERVAL_NANOS, maxPollIntervalNanos);
+      while ((code = QPLJNI.poll(this)) == STATUS_PENDING) {
+        interrupted |= Thread.interrupted();
+        LockSupport.parkNanos(pollNanos);
+        pollNanos = Math.min(pollNanos * 2, maxPollIntervalNanos);
+      }
+      Reference.reachabilityFence(in);
+      Reference.reachabilityFence(out);
+      return code;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  // Returns the bytes written by a completed operation, or throws the exception the native library
+  // raises for its outcome.
+  private int resultOrThrow(int code) {
+    String message = EXECUTE_JOB_ERROR + ". Status code is - " + statusCode;
+    switch (QPLUtils.Statuses.fromStatusCode(code)) {
+      case OK:
+        return bytesWritten;
+      case OUTPUT_OVERFLOW:
+        throw new QPLOutputOverflowException(message);
+      case QUEUES_BUSY:
+        throw new QPLQueuesBusyException(message);
+      default:
+        throw new QPLException(message);
+    }
+  }
+
+  private byte[] decompressAllNative(
+      byte[] srcArr, ByteBuffer srcBuf, int srcOffset, int srcLength, int sizeHint) {
+    QPLConcurrencyLimiter limiter = activeLimiter();
+    long generation = limiter != null ? limiter.acquire(1) : 0;
+    busyCount = 0;
+    try {
+      return QPLJNI.decompressAll(this, srcArr, srcBuf, srcOffset, srcLength, sizeHint);
+    } finally {
+      if (limiter != null) {
+        limiter.release(1, generation, busyCount > 0);
+      }
+    }
+  }
+
+  private QPLConcurrencyLimiter activeLimiter() {
+    return executionPathCode == QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE.getExecutionPathCode()
+        ? null
+        : concurrencyLimiter;
+  }
+
+  void checkValid() {
+    if (!isJobValid) {
+      throw new IllegalStateException(QPLUtils.QPL_JOB_INVALID);
     }
   }
 
+  // Records the outcome of an operation that was completed without the native library.
+  void setResult(int bytesRead, int bytesWritten) {
+    this.bytesRead = bytesRead;
+    this.bytesWritten = bytesWritten;
+    this.outputInsufficient = false;
+    this.statusCode = QPLUtils.QPL_SUCCESS_STATUS;
+  }
+
+  // Stores the outcome of the preceding operation into 'result'.
+  QPLResult storeResult(QPLUtils.Statuses status, QPLResult result) {
+    result.set(status, statusCode, bytesRead, bytesWritten, outputInsufficient);
+    return result;
+  }
+
   private void advanceByteBuffer(ByteBuffer src, ByteBuffer dst) {
     src.position(src.position() + bytesRead);
     dst.position(dst.position() + bytesWritten);
@@ -198,6 +759,8 @@ public class QPLJob {
    * @throws IllegalStateException if this QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
    *     or decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy for the whole retry budget and the
+   *     operation could not fail over.
    */
   public int execute(byte[] src, byte[] dst) {
     return execute(src, 0, src.length, dst, 0, dst.length);
@@ -225,6 +788,8 @@ public class QPLJob {
    * @throws IllegalStateException if this QPLJob is invalid.
    * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
    *     or decompressed bytes.
+   * @throws QPLQueuesBusyException if the work queues stay busy for the whole retry budget and the
+   *     operation could not fail over.
    */
   public int execute(
       byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
@@ -237,7 +802,243 @@ public class QPLJob {
     }
     QPLUtils.validateByteArray(src, srcOffset, srcLength);
     QPLUtils.validateByteArray(dst, dstOffset, dstLength);
-    return QPLJNI.execute(this, src, null, srcOffset, srcLength, dst, null, dstOffset, dstLength);
+    QPLJob target = executionTarget();
+    try {
+      try {
+        return target.executeNative(
+            false, src, null, srcOffset, srcLength, dst, null, dstOffset, dstLength);
+      } catch (QPLQueuesBusyException e) {
+        target = failover(e);
+        return target.executeNative(
+            false, src, null, srcOffset, srcLength, dst, null, dstOffset, dstLength);
+      }
+    } finally {
+      recordSubmission(target);
+      copyResults(target);
+    }
+  }
+
+  /**
+   * Executes the configured operation like {@link #execute(byte[], byte[])}, but reports an
+   * overflowing destination, busy work queues and library errors through 'result' instead of
+   * throwing.
+   *
+   * @param src the source byte array.
+   * @param dst the destination byte array.
+   * @param result the object the outcome is stored into.
+   * @return 'result'.
+   * @throws IllegalArgumentException if 'src' and 'dst' length is less than 0.
+   * @throws ArrayIndexOutOfBoundsException if 'src'/'dst' offset is less than 0 or, it's greater
+   *     than 'src'/'dst' length.
+   * @throws IllegalStateException if this QPLJob is invalid.
+   */
+  public QPLResult tryExecute(byte[] src, byte[] dst, QPLResult result) {
+    return tryExecute(src, 0, src.length, dst, 0, dst.length, result);
+  }
+
+  /**
+   * Executes the configured operation like {@link #execute(byte[], int, int, byte[], int, int)},
+   * but reports an overflowing destination, busy work queues and library errors through 'result'
+   * instead of throwing.
+   *
+   * @param src the source byte array.
+   * @param srcOffset source start offset.
+   * @param srcLength source length.
+   * @param dst the destination byte array.
+   * @param dstOffset destination offset.
+   * @param dstLength available space in the destination buffer after the offset.
+   * @param result the object the outcome is stored into.
+   * @return 'result'.
+   * @throws IllegalArgumentException if 'src' and 'dst' length is less than 0.
+   * @throws ArrayIndexOutOfBoundsException if 'src'/'dst' offset is less than 0 or, it's greater
+   *     than 'src'/'dst' length.
+   * @throws IllegalStateException if this QPLJob is invalid.
+   */
+  public QPLResult tryExecute(
+      byte[] src,
+      int srcOffset,
+      int srcLength,
+      byte[] dst,
+      int dstOffset,
+      int dstLength,
+      QPLResult result) {
+    checkValid();
+    boolean isFirstBlock = (getFlags() & QPLUtils.Flags.QPL_FLAG_FIRST.getId()) != 0;
+    if (isFirstBlock && srcLength <= 0) {
+      throw new IllegalArgumentException("length must be > 0");
+    }
+    QPLUtils.validateByteArray(src, srcOffset, srcLength);
+    QPLUtils.validateByteArray(dst, dstOffset, dstLength);
+    int code;
+    QPLJob target = executionTarget();
+    try {
+      code =
+          target.executeNative(
+              true, src, null, srcOffset, srcLength, dst, null, dstOffset, dstLength);
+      if (code == QPLUtils.Statuses.QUEUES_BUSY.getStatusCode() && canFailover()) {
+        target = startFailover();
+        code =
+            target.executeNative(
+                true, src, null, srcOffset, srcLength, dst, null, dstOffset, dstLength);
+      }
+    } finally {
+      recordSubmission(target);
+      copyResults(target);
+    }
+    return storeResult(QPLUtils.Statuses.fromStatusCode(code), result);
+  }
+
+  // Submits the operations configured on the first 'count' jobs together, one per source, and
+  // waits for all of them. The sources and destinations are direct buffers, so that no Java array
+  // is pinned while the batch waits. Stores the outcome of each operation in 'statuses' as a
+  // QPLUtils.Statuses code and its results in its job. Operations are neither retried nor failed
+  // over, the caller re-executes the ones that did not complete.
+  static void executeBatch(
+      QPLJob[] jobs,
+      ByteBuffer[] srcs,
+      int[] srcOffsets,
+      int[] srcLengths,
+      ByteBuffer[] dsts,
+      int[] dstOffsets,
+      int[] dstLengths,
+      int count,
+      int[] statuses) {
+    for (int i = 0; i < count; i++) {
+      jobs[i].checkValid();
+      jobs[i].busyCount = 0;
+    }
+    QPLConcurrencyLimiter limiter = count > 0 ? jobs[0].activeLimiter() : null;
+    long generation = limiter != null ? limiter.acquire(count) : 0;
+    try {
+      QPLJNI.executeBatch(
+          jobs, srcs, srcOffsets, srcLengths, dsts, dstOffsets, dstLengths, count, statuses);
+    } finally {
+      boolean busy = false;
+      for (int i = 0; i < count; i++) {
+        jobs[i].recordSubmission(jobs[i]);
+        busy |= jobs[i].busyCount > 0;
+      }
+      if (limiter != null) {
+        limiter.release(count, generation, busy);
+      }
+    }
+  }
+
+  // Decompresses the whole source in one native call, growing the output as needed.
+  byte[] decompressAll(
+      byte[] srcArr, ByteBuffer srcBuf, int srcOffset, int srcLength, int sizeHint) {
+    checkValid();
+    QPLJob target = executionTarget();
+    try {
+      try {
+        return target.decompressAllNative(srcArr, srcBuf, srcOffset, srcLength, sizeHint);
+      } catch (QPLQueuesBusyException e) {
+        target = failover(e);
+        return target.decompressAllNative(srcArr, srcBuf, srcOffset, srcLength, sizeHint);
+      }
+    } finally {
+      recordSubmission(target);
+      copyResults(target);
+    }
+  }
+
+  // A stream that failed over to the software path stays on it until a new stream is started with
+  // QPL_FLAG_FIRST, since the hardware job holds no state for it.
+  private QPLJob executionTarget() {
+    if ((flags & QPLUtils.Flags.QPL_FLAG_FIRST.getId()) != 0) {
+      failedOver = false;
+    }
+    return failedOver ? prepareFailoverJob() : this;
+  }
+
+  // Runs the operation configured on this job as a whole on the software path, after a later block
+  // of it, split off by the caller, found the work queues busy. The caller restores the flags of
+  // the first block and the positions of 'src' and 'dst'. Rethrows 'e' if the operation may not
+  // fail over.
+  int restartOnFailover(ByteBuffer src, ByteBuffer dst, QPLQueuesBusyException e) {
+    QPLJob target = failover(e);
+    try {
+      return target.executeOperation(src, dst, false);
+    } finally {
+      recordSubmission(target);
+      copyResults(target);
+      advanceByteBuffer(src, dst);
+    }
+  }
+
+  private QPLJob failover(QPLQueuesBusyException e) {
+    if (!canFailover()) {
+      throw e;
+    }
+    return startFailover();
+  }
+
+  private boolean canFailover() {
+    boolean isFirstBlock = (flags & QPLUtils.Flags.QPL_FLAG_FIRST.getId()) != 0;
+    return failoverPolicy == QPLUtils.FailoverPolicies.SOFTWARE
+        && executionPathCode != QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE.getExecutionPathCode()
+        && isFirstBlock;
+  }
+
+  private QPLJob startFailover() {
+    failedOver = true;
+    failoverCount++;
+    TOTAL_FAILOVER_COUNT.incrementAndGet();
+    return prepareFailoverJob();
+  }
+
+  private QPLJob prepareFailoverJob() {
+    if (failoverJob == null) {
+      failoverJob = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    }
+    failoverJob.compressionLevel = compressionLevel;
+    failoverJob.operationType = operationType;
+    failoverJob.flags = flags;
+    return failoverJob;
+  }
+
+  private void recordSubmission(QPLJob target) {
+    int node = target.submittedNumaNode;
+    target.submittedNumaNode = -1;
+    if (node < 0
+        || target.executionPathCode
+            == QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE.getExecutionPathCode()) {
+      return;
+    }
+    lastNumaNode = node;
+    if (node < MAX_NUMA_NODES) {
+      NUMA_SUBMISSIONS.incrementAndGet(node);
+    }
+  }
+
+  private void copyResults(QPLJob target) {
+    if (target != this) {
+      bytesRead = target.bytesRead;
+      bytesWritten = target.bytesWritten;
+      outputInsufficient = target.outputInsufficient;
+      crc = target.crc;
+      statusCode = target.statusCode;
+    }
+  }
+
+  /**
+   * Returns the concurrency limiter the operations of the hardware and auto path jobs go through.
+   *
+   * @return the installed limiter, or null if the operations are not limited.
+   */
+  public static QPLConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  /**
+   * Installs a concurrency limiter for the operations of all the hardware and auto path jobs of the
+   * process. Operations already admitted by a previous limiter complete through it. By default, no
+   * limiter is installed.
+   *
+   * @param limiter the limiter, or null to stop limiting the operations.
+   */
+  public static void setConcurrencyLimiter(QPLConcurrencyLimiter limiter) {
+    concurrencyLimiter = limiter;
   }
 
   /**
@@ -276,6 +1077,206 @@ public class QPLJob {
     this.retryCount = retryCount;
   }
 
+  /**
+   * Returns configured retry timeout in nanoseconds.
+   *
+   * @return retry timeout in nanoseconds.
+   */
+  public long getRetryTimeoutNanos() {
+    return retryTimeoutNanos;
+  }
+
+  /**
+   * Sets the time in nanoseconds the job keeps retrying while the work queues are busy. If the
+   * timeout is greater than 0, retries are bounded by the elapsed time instead of the retry count.
+   * Default value is 0.
+   *
+   * @param retryTimeoutNanos retry timeout in nanoseconds.
+   */
+  public void setRetryTimeoutNanos(long retryTimeoutNanos) {
+    this.retryTimeoutNanos = retryTimeoutNanos;
+  }
+
+  /**
+   * Returns configured backoff policy.
+   *
+   * @return backoff policy.
+   */
+  public QPLUtils.BackoffPolicies getBackoffPolicy() {
+    return backoffPolicy;
+  }
+
+  /**
+   * Sets how the job waits between two attempts while the work queues are busy. Default value is
+   * {@link QPLUtils.BackoffPolicies#SPIN}.
+   *
+   * @param backoffPolicy backoff policy.
+   */
+  public void setBackoffPolicy(QPLUtils.BackoffPolicies backoffPolicy) {
+    this.backoffPolicy = backoffPolicy;
+    this.backoffPolicyCode = backoffPolicy.getBackoffPolicyCode();
+  }
+
+  /**
+   * Returns configured backoff cap in nanoseconds.
+   *
+   * @return backoff cap in nanoseconds.
+   */
+  public long getBackoffCapNanos() {
+    return backoffCapNanos;
+  }
+
+  /**
+   * Sets the maximum delay in nanoseconds between two attempts of the {@link
+   * QPLUtils.BackoffPolicies#EXPONENTIAL} backoff policy. Default value is {@link
+   * QPLUtils#DEFAULT_BACKOFF_CAP_NANOS}.
+   *
+   * @param backoffCapNanos backoff cap in nanoseconds.
+   * @throws IllegalArgumentException if the backoff cap is less than one.
+   */
+  public void setBackoffCapNanos(long backoffCapNanos) {
+    if (backoffCapNanos <= 0) {
+      throw new IllegalArgumentException("Backoff cap must be > 0, got " + backoffCapNanos);
+    }
+    this.backoffCapNanos = backoffCapNanos;
+  }
+
+  /**
+   * Returns configured failover policy.
+   *
+   * @return failover policy.
+   */
+  public QPLUtils.FailoverPolicies getFailoverPolicy() {
+    return failoverPolicy;
+  }
+
+  /**
+   * Sets what the job does once the work queues stay busy for the whole retry budget. Default value
+   * is {@link QPLUtils.FailoverPolicies#NONE}.
+   *
+   * <p>Failover only applies to operations that start a new stream, i.e. with {@link
+   * QPLUtils.Flags#QPL_FLAG_FIRST} set. Once an operation failed over, its continuations (see
+   * {@link #isOutputInsufficient()}) also run on the software path.
+   *
+   * @param failoverPolicy failover policy.
+   */
+  public void setFailoverPolicy(QPLUtils.FailoverPolicies failoverPolicy) {
+    this.failoverPolicy = failoverPolicy;
+  }
+
+  /**
+   * Returns configured wait policy.
+   *
+   * @return wait policy.
+   */
+  public QPLUtils.WaitPolicies getWaitPolicy() {
+    return waitPolicy;
+  }
+
+  /**
+   * Sets how the calling thread waits for the hardware to complete an operation. Default value is
+   * {@link QPLUtils.WaitPolicies#BLOCK}.
+   *
+   * @param waitPolicy wait policy.
+   */
+  public void setWaitPolicy(QPLUtils.WaitPolicies waitPolicy) {
+    this.waitPolicy = waitPolicy;
+  }
+
+  /**
+   * Returns the maximum time in nanoseconds the {@link QPLUtils.WaitPolicies#PARK} wait policy
+   * parks between two checks of an operation.
+   *
+   * @return maximum poll interval in nanoseconds.
+   */
+  public long getMaxPollIntervalNanos() {
+    return maxPollIntervalNanos;
+  }
+
+  /**
+   * Sets the maximum time in nanoseconds the {@link QPLUtils.WaitPolicies#PARK} wait policy parks
+   * between two checks of an operation. The interval starts at one microsecond and doubles after
+   * each check up to this maximum, which bounds the latency added to a long operation. Default
+   * value is {@link QPLUtils#DEFAULT_MAX_POLL_INTERVAL_NANOS}.
+   *
+   * @param maxPollIntervalNanos maximum poll interval in nanoseconds.
+   * @throws IllegalArgumentException if the interval is less than one.
+   */
+  public void setMaxPollIntervalNanos(long maxPollIntervalNanos) {
+    if (maxPollIntervalNanos <= 0) {
+      throw new IllegalArgumentException("Poll interval must be > 0, got " + maxPollIntervalNanos);
+    }
+    this.maxPollIntervalNanos = maxPollIntervalNanos;
+  }
+
+  /**
+   * Returns the NUMA node whose devices this QPLJob is submitted to.
+   *
+   * @return NUMA node, or {@link QPLUtils#CURRENT_NUMA_NODE}.
+   */
+  public int getNumaNode() {
+    return numaNode;
+  }
+
+  /**
+   * Sets the NUMA node whose devices this QPLJob is submitted to. With {@link
+   * QPLUtils#CURRENT_NUMA_NODE}, the node is the one of the CPU the calling thread runs on at the
+   * time of each submission, so the data does not cross the socket interconnect. If the device
+   * topology is unknown or shows no device on that node, the library picks the devices.
+   *
+   * @param numaNode NUMA node, or {@link QPLUtils#CURRENT_NUMA_NODE}.
+   * @throws IllegalArgumentException if the node is less than {@link QPLUtils#CURRENT_NUMA_NODE}.
+   */
+  public void setNumaNode(int numaNode) {
+    if (numaNode < QPLUtils.CURRENT_NUMA_NODE) {
+      throw new IllegalArgumentException("Invalid NUMA node " + numaNode);
+    }
+    this.numaNode = numaNode;
+  }
+
+  /**
+   * Returns the NUMA node the last operation of this QPLJob was submitted to on the hardware path.
+   *
+   * @return NUMA node, or -1 if this QPLJob was never submitted to the hardware.
+   */
+  public int getLastNumaNode() {
+    return lastNumaNode;
+  }
+
+  /**
+   * Returns the number of hardware submissions made by all QPLJobs in this process to the devices
+   * of the specified NUMA node. Compare the counts of the nodes to verify the locality of the jobs.
+   *
+   * @param numaNode NUMA node.
+   * @return process wide submission count of the node, 0 for an unknown node.
+   */
+  public static long getNumaSubmissionCount(int numaNode) {
+    if (numaNode < 0 || numaNode >= MAX_NUMA_NODES) {
+      return 0;
+    }
+    return NUMA_SUBMISSIONS.get(numaNode);
+  }
+
+  /**
+   * Returns the number of operations of this QPLJob that were re-executed on the software path
+   * because the work queues stayed busy.
+   *
+   * @return failover count of this QPLJob.
+   */
+  public long getFailoverCount() {
+    return failoverCount;
+  }
+
+  /**
+   * Returns the number of operations of all QPLJobs in this process that were re-executed on the
+   * software path because the work queues stayed busy.
+   *
+   * @return process wide failover count.
+   */
+  public static long getTotalFailoverCount() {
+    return TOTAL_FAILOVER_COUNT.get();
+  }
+
   /**
    * Returns configured operation type.
    *
@@ -329,34 +1330,24 @@ public class QPLJob {
    * Validates and returns valid execution path.
    *
    * <p>while validating, if execution path is not available then it is set to QPL_PATH_SOFTWARE
-   * path.
+   * path. The availability is taken from {@link QPLCapabilities#get()}, so only the first call
+   * runs a trial job.
    *
    * @param executionPath execution path.
    * @return valid execution path.
    */
   public static QPLUtils.ExecutionPaths getValidExecutionPath(
       QPLUtils.ExecutionPaths executionPath) {
-    if (QPLUtils.ExecutionPaths.QPL_PATH_AUTO.equals(executionPath)
-        || QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE.equals(executionPath)) {
-      // Currently we don't have built in qpl api function to fetch the details
-      // of IAA hardware availability, hence using the workaround to find the
-      // hardware availability.
-      // TODO: Remove the workaround once qpl api supports function to return
-      // IAA availability .
-      int status =
-          QPLJNI.isExecutionPathAvailable(
-              QPLUtils.ExecutionPaths.valueOf(executionPath.name()).getExecutionPathCode());
-      return status == QPLUtils.QPL_SUCCESS_STATUS
-          ? executionPath
-          : QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE;
-    }
-    return QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE;
+    return QPLCapabilities.get().isExecutionPathAvailable(executionPath)
+        ? executionPath
+        : QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE;
   }
 
   /**
    * Validates and returns valid compression level.
    *
    * <p>while validating, if compression level is not supported then it is set to default level 1.
+   * The supported levels are taken from {@link QPLCapabilities#get()}.
    *
    * @param executionPath execution path.
    * @param compressionLevel compression level.
@@ -364,12 +1355,7 @@ public class QPLJob {
    */
   public static int getValidCompressionLevel(
       QPLUtils.ExecutionPaths executionPath, int compressionLevel) {
-    // Its a workaround to check if the compression level is supported or not.
-    int status =
-        QPLJNI.isCompressionLevelSupported(
-            QPLUtils.ExecutionPaths.valueOf(executionPath.name()).getExecutionPathCode(),
-            compressionLevel);
-    return status == QPLUtils.QPL_SUCCESS_STATUS
+    return QPLCapabilities.get().isCompressionLevelSupported(executionPath, compressionLevel)
         ? compressionLevel
         : QPLUtils.DEFAULT_COMPRESSION_LEVEL;
   }
@@ -393,8 +1379,11 @@ public class QPLJob {
     this.outputInsufficient = false;
     this.bytesWritten = 0;
     this.bytesRead = 0;
+    this.crc = 0;
+    this.statusCode = QPLUtils.QPL_SUCCESS_STATUS;
     this.flags = 0;
     this.operationType = 0;
+    this.failedOver = false;
   }
 
   /**
@@ -411,6 +1400,10 @@ public class QPLJob {
     }
     QPLJNI.finish(jobBuffer);
     isJobValid = false;
+    if (failoverJob != null) {
+      failoverJob.doClear();
+      failoverJob = null;
+    }
   }
 
   private static void doClear(ByteBuffer jobBuffer) {
@@ -435,6 +1428,17 @@ public class QPLJob {
     return bytesWritten;
   }
 
+  /**
+   * Returns the CRC-32 of the uncompressed data of the preceding operation, i.e. of the source of a
+   * compression or of the destination of a decompression. For a stream split across several
+   * operations, the CRC covers the stream from its first operation.
+   *
+   * @return CRC-32 computed by the preceding operation.
+   */
+  public int getCrc() {
+    return crc;
+  }
+
   @SuppressWarnings({"deprecation", "removal"})
   private static void loadConfig() {
 
@@ -442,6 +1446,7 @@ public class QPLJob {
         new java.security.PrivilegedAction<Void>() {
           public Void run() {
             try {
+              deviceTopology = QPLDeviceTopology.discover();
               String chunkLengthValue = System.getProperty("idxd.wqMaxTransferBytes");
               if (chunkLengthValue != null && !chunkLengthValue.isEmpty()) {
                 int value = Integer.parseInt(chunkLengthValue);
@@ -449,9 +1454,10 @@ public class QPLJob {
                   throw new IllegalArgumentException(QPLUtils.IDXD_WQ_MAX_TRANSFER_MESSAGE);
                 }
                 IDXD_WQ_MAX_TRANSFER_BYTES = value;
-
+                maxTransferBytesConfigured = true;
               } else {
-                IDXD_WQ_MAX_TRANSFER_BYTES = QPLUtils.DEFAULT_IDXD_WQ_MAX_TRANSFER_BYTES;
+                IDXD_WQ_MAX_TRANSFER_BYTES =
+                    discoveredMaxTransferBytes(deviceTopology.getMaxTransferBytes());
               }
             } catch (NumberFormatException e) {
               throw new IllegalArgumentException(QPLUtils.IDXD_WQ_MAX_TRANSFER_MESSAGE);
@@ -461,9 +1467,38 @@ public class QPLJob {
         });
     QPLJNI.initValuesAndIDs(
         IDXD_WQ_MAX_TRANSFER_BYTES, QPLJob.maxCompressedLength(IDXD_WQ_MAX_TRANSFER_BYTES / 2));
+    if (!maxTransferBytesConfigured) {
+      for (QPLDeviceTopology.Device device : deviceTopology.getDevices()) {
+        int node = device.getNumaNode();
+        if (node >= 0 && device.isEnabled() && device.getMaxTransferBytes() > 0) {
+          int maxTransferBytes =
+              discoveredMaxTransferBytes(deviceTopology.getMaxTransferBytes(node));
+          QPLJNI.setNumaMaxTransferBytes(node, maxTransferBytes, chunkBound(maxTransferBytes / 2));
+        }
+      }
+    }
     createCleaner();
   }
 
+  // The discovered size applies if it is usable, otherwise the driver default does.
+  private static int discoveredMaxTransferBytes(long maxTransferBytes) {
+    if (maxTransferBytes < MIN_DISCOVERED_MAX_TRANSFER_BYTES) {
+      return QPLUtils.DEFAULT_IDXD_WQ_MAX_TRANSFER_BYTES;
+    }
+    return (int) Math.min(maxTransferBytes, MAX_DISCOVERED_MAX_TRANSFER_BYTES);
+  }
+
+  /**
+   * Returns the IAA device topology discovered when the library was initialized. Unless the {@code
+   * idxd.wqMaxTransferBytes} system property is set, it determines the chunk size of the hardware
+   * jobs for the devices of each NUMA node.
+   *
+   * @return the device topology.
+   */
+  public static QPLDeviceTopology getDeviceTopology() {
+    return deviceTopology;
+  }
+
   private static void createCleaner() {
     SecurityManager sm = System.getSecurityManager();
     if (sm == null) {
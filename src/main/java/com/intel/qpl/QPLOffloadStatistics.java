@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts, for each call site that created a {@link QPLZipDeflater} or {@link QPLZipInflater},
+ * directly or through one of the stream classes the {@link QPLAgent} substitutes, how many of its
+ * calls ran on the accelerator and how many fell back to the JDK implementation.
+ *
+ * <p>A call site is the first frame outside of this package on the stack of the constructor, as
+ * "class.method(file:line)".
+ *
+ * <p>This class is thread safe.
+ */
+public final class QPLOffloadStatistics {
+  private static final ConcurrentHashMap<String, Site> SITES = new ConcurrentHashMap<>();
+  private static final StackWalker WALKER =
+      StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+  private static final String PACKAGE = QPLOffloadStatistics.class.getPackageName();
+
+  private QPLOffloadStatistics() {}
+
+  /** The offload counters of one call site. */
+  public static final class Site {
+    private final String name;
+    private final LongAdder offloadedCalls = new LongAdder();
+    private final LongAdder fallbackCalls = new LongAdder();
+    private final LongAdder offloadedBytes = new LongAdder();
+    private final LongAdder fallbackBytes = new LongAdder();
+
+    private Site(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Returns the call site, as "class.method(file:line)".
+     *
+     * @return call site.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the number of calls that ran on the accelerator.
+     *
+     * @return offloaded call count.
+     */
+    public long getOffloadedCalls() {
+      return offloadedCalls.sum();
+    }
+
+    /**
+     * Returns the number of calls that ran on the JDK implementation.
+     *
+     * @return fallback call count.
+     */
+    public long getFallbackCalls() {
+      return fallbackCalls.sum();
+    }
+
+    /**
+     * Returns the number of uncompressed bytes processed on the accelerator.
+     *
+     * @return offloaded byte count.
+     */
+    public long getOffloadedBytes() {
+      return offloadedBytes.sum();
+    }
+
+    /**
+     * Returns the number of uncompressed bytes processed on the JDK implementation.
+     *
+     * @return fallback byte count.
+     */
+    public long getFallbackBytes() {
+      return fallbackBytes.sum();
+    }
+
+    void record(boolean offloaded, long bytes) {
+      if (offloaded) {
+        offloadedCalls.increment();
+        offloadedBytes.add(bytes);
+      } else {
+        fallbackCalls.increment();
+        fallbackBytes.add(bytes);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return name
+          + ": offloaded "
+          + getOffloadedCalls()
+          + " calls/"
+          + getOffloadedBytes()
+          + " bytes, fallback "
+          + getFallbackCalls()
+          + " calls/"
+          + getFallbackBytes()
+          + " bytes";
+    }
+  }
+
+  // Returns the counters of the caller of the constructor that is running.
+  static Site callSite() {
+    String name =
+        WALKER.walk(
+            frames ->
+                frames
+                    .filter(f -> !f.getDeclaringClass().getPackageName().equals(PACKAGE))
+                    .filter(f -> !f.getClassName().startsWith("java.util.zip."))
+                    .findFirst()
+                    .map(
+                        f ->
+                            f.getClassName()
+                                + "."
+                                + f.getMethodName()
+                                + "("
+                                + f.getFileName()
+                                + ":"
+                                + f.getLineNumber()
+                                + ")")
+                    .orElse("unknown"));
+    return SITES.computeIfAbsent(name, Site::new);
+  }
+
+  /**
+   * Returns the counters of all the call sites seen so far, sorted by call site.
+   *
+   * @return the counters by call site.
+   */
+  public static Map<String, Site> getSites() {
+    return Collections.unmodifiableMap(new TreeMap<>(SITES));
+  }
+
+  /**
+   * Returns a report of the counters, one line per call site.
+   *
+   * @return the report.
+   */
+  public static String report() {
+    StringBuilder report = new StringBuilder("QPL offload statistics:");
+    for (Site site : getSites().values()) {
+      report.append(System.lineSeparator()).append("  ").append(site);
+    }
+    return report.toString();
+  }
+
+  /** Forgets all the call sites. */
+  public static void clear() {
+    SITES.clear();
+  }
+}
@@ -0,0 +1,21 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+/**
+ * Thrown to indicate that the qpl operation could not be submitted because the accelerator work
+ * queues stayed busy for the whole retry budget.
+ */
+public class QPLQueuesBusyException extends QPLException {
+  /**
+   * Constructs a new QPLQueuesBusyException with the specified message.
+   *
+   * @param message error message
+   */
+  public QPLQueuesBusyException(String message) {
+    super(message);
+  }
+}
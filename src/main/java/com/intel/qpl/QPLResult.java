@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+/**
+ * Holds the outcome of an operation executed through the status-returning API: the status, the qpl
+ * status code and the number of bytes read and written.
+ *
+ * <p>The status-returning API reports an overflowing destination or busy work queues through this
+ * object instead of throwing, which suits callers that expect these outcomes, e.g. when trying a
+ * small destination first. A QPLResult is meant to be reused across operations, each operation
+ * overwrites the previous outcome.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLResult {
+  private QPLUtils.Statuses status = QPLUtils.Statuses.OK;
+  private int statusCode = QPLUtils.QPL_SUCCESS_STATUS;
+  private int bytesRead = 0;
+  private int bytesWritten = 0;
+  private boolean outputInsufficient = false;
+
+  /** Creates a new QPLResult with an OK status and no bytes read or written. */
+  public QPLResult() {}
+
+  void set(
+      QPLUtils.Statuses status,
+      int statusCode,
+      int bytesRead,
+      int bytesWritten,
+      boolean outputInsufficient) {
+    this.status = status;
+    this.statusCode = statusCode;
+    this.bytesRead = bytesRead;
+    this.bytesWritten = bytesWritten;
+    this.outputInsufficient = outputInsufficient;
+  }
+
+  /**
+   * Returns the status of the preceding operation.
+   *
+   * @return status.
+   */
+  public QPLUtils.Statuses getStatus() {
+    return status;
+  }
+
+  /**
+   * Returns whether the preceding operation completed.
+   *
+   * @return true if the status is {@link QPLUtils.Statuses#OK}, otherwise false.
+   */
+  public boolean isOk() {
+    return status == QPLUtils.Statuses.OK;
+  }
+
+  /**
+   * Returns the status code reported by the qpl library for the preceding operation, 0 on success.
+   *
+   * @return qpl status code.
+   */
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * Returns bytes read from the source in the preceding operation.
+   *
+   * @return bytes read from the source.
+   */
+  public int getBytesRead() {
+    return bytesRead;
+  }
+
+  /**
+   * Returns bytes written to the destination in the preceding operation.
+   *
+   * @return bytes written to the destination.
+   */
+  public int getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Returns whether the destination of the preceding decompression was too small for the entire
+   * decompressed data. The status is OK in that case, since the part that fits was decompressed.
+   *
+   * @return true if the destination was insufficient, otherwise false.
+   */
+  public boolean isOutputInsufficient() {
+    return outputInsufficient;
+  }
+
+  @Override
+  public String toString() {
+    return "QPLResult{status="
+        + status
+        + ", statusCode="
+        + statusCode
+        + ", bytesRead="
+        + bytesRead
+        + ", bytesWritten="
+        + bytesWritten
+        + ", outputInsufficient="
+        + outputInsufficient
+        + "}";
+  }
+}
@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+/**
+ * Provides methods to compress and decompress data, routing each call either to the IAA hardware or
+ * to the software path depending on the input size.
+ *
+ * <p>Small inputs are often faster on the software path than a hardware round trip, while large
+ * inputs are faster on the hardware. The size at which the hardware starts to win is learned
+ * continuously from the measured latency of both paths, so each host finds its own break-even
+ * point. A small fraction of the calls with sizes close to that point is deliberately routed to the
+ * other path to keep both measurements up to date; sizes far from it always run on the faster path.
+ * If the hardware path is not available, all calls run on the software path.
+ *
+ * <p>The compressed data produced by both paths is a standard deflate stream, so data compressed on
+ * one path can be decompressed on the other one.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLRoutingCompressor {
+  private final QPLCompressor hardwareCompressor;
+  private final QPLCompressor softwareCompressor;
+  private final PathTuner compressTuner;
+  private final PathTuner decompressTuner;
+  private QPLCompressor lastCompressor;
+
+  /**
+   * Creates a new QPLRoutingCompressor that uses {@link QPLUtils#DEFAULT_COMPRESSION_LEVEL}, {@link
+   * QPLUtils#DEFAULT_RETRY_COUNT} and {@link QPLUtils#DEFAULT_ROUTING_THRESHOLD}.
+   */
+  public QPLRoutingCompressor() {
+    this(
+        QPLUtils.DEFAULT_COMPRESSION_LEVEL,
+        QPLUtils.DEFAULT_RETRY_COUNT,
+        QPLUtils.DEFAULT_ROUTING_THRESHOLD);
+  }
+
+  /**
+   * Creates a new QPLRoutingCompressor with specified parameters.
+   *
+   * @param compressionLevel the compression level.
+   * @param retryCount the number of attempts to acquire hardware resources.
+   * @param initialThreshold the input size in bytes from which calls are routed to the hardware
+   *     until enough latency has been measured.
+   * @throws IllegalArgumentException if the initial threshold is less than one.
+   */
+  public QPLRoutingCompressor(int compressionLevel, int retryCount, int initialThreshold) {
+    if (initialThreshold <= 0) {
+      throw new IllegalArgumentException("Threshold must be > 0, got " + initialThreshold);
+    }
+    QPLUtils.ExecutionPaths path =
+        QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE);
+    this.softwareCompressor =
+        new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, compressionLevel, retryCount);
+    this.hardwareCompressor =
+        QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE.equals(path)
+            ? new QPLCompressor(
+                path, QPLJob.getValidCompressionLevel(path, compressionLevel), retryCount)
+            : null;
+    this.compressTuner = new PathTuner(initialThreshold);
+    this.decompressTuner = new PathTuner(initialThreshold);
+  }
+
+  /**
+   * Compresses the source buffer and stores the result in the destination buffer. Returns actual
+   * number of bytes of compressed data.
+   *
+   * <p>The positions of both the source and destinations buffers are advanced by the number of
+   * bytes read from the source and the number of bytes of compressed data written to the
+   * destination.
+   *
+   * @param src the source buffer holding the source data
+   * @param dst the destination buffer that will store the compressed data
+   * @return returns the size of the compressed data in bytes
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   */
+  public int compress(ByteBuffer src, ByteBuffer dst) {
+    int length = src.remaining();
+    QPLCompressor compressor = route(compressTuner, length);
+    long start = System.nanoTime();
+    int compressedSize = compressor.compress(src, dst);
+    record(compressTuner, compressor, length, start);
+    return compressedSize;
+  }
+
+  /**
+   * Compresses the source array and stores the result in the destination array. Returns the actual
+   * number of bytes of the compressed data.
+   *
+   * @param src the source array holding the source data
+   * @param dst the destination array for the compressed data
+   * @return the size of the compressed data in bytes
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   */
+  public int compress(byte[] src, byte[] dst) {
+    return compress(src, 0, src.length, dst, 0, dst.length);
+  }
+
+  /**
+   * Compresses the source array, starting at the specified offset, and stores the result in the
+   * destination array starting at the specified destination offset. Returns the actual number of
+   * bytes of data compressed.
+   *
+   * @param src the source array holding the source data
+   * @param srcOffset the start offset of the source data
+   * @param srcLength the length of source data to compress
+   * @param dst the destination array for the compressed data
+   * @param dstOffset the destination offset where to start storing the compressed data
+   * @param dstLength the maximum length that can be written to the destination array
+   * @return the size of the compressed data in bytes
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the compressed
+   *     bytes.
+   */
+  public int compress(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    QPLCompressor compressor = route(compressTuner, srcLength);
+    long start = System.nanoTime();
+    int compressedSize = compressor.compress(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    record(compressTuner, compressor, srcLength, start);
+    return compressedSize;
+  }
+
+  /**
+   * Decompresses the source buffer and stores the result in the destination buffer. Returns actual
+   * number of bytes of decompressed data.
+   *
+   * <p>The positions of both the source and destinations buffers are advanced by the number of
+   * bytes read from the source and the number of bytes of decompressed data written to the
+   * destination.
+   *
+   * @param src the source buffer holding the compressed data
+   * @param dst the destination buffer that will store the decompressed data
+   * @return the size of the decompressed data in bytes
+   * @throws ReadOnlyBufferException if the 'dst' is readonly.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the
+   *     decompressed bytes.
+   */
+  public int decompress(ByteBuffer src, ByteBuffer dst) {
+    int length = src.remaining();
+    QPLCompressor compressor = routeDecompress(length);
+    long start = System.nanoTime();
+    int decompressedSize = compressor.decompress(src, dst);
+    record(decompressTuner, compressor, length, start);
+    return decompressedSize;
+  }
+
+  /**
+   * Decompresses the source array and stores the result in the destination array. Returns the
+   * actual number of bytes of the decompressed data.
+   *
+   * @param src the source array holding the compressed data
+   * @param dst the destination array for the decompressed data
+   * @return the size of the decompressed data in bytes
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the
+   *     decompressed bytes.
+   */
+  public int decompress(byte[] src, byte[] dst) {
+    return decompress(src, 0, src.length, dst, 0, dst.length);
+  }
+
+  /**
+   * Decompresses the source array, starting at the specified offset, and stores the result in the
+   * destination array starting at the specified destination offset. Returns the actual number of
+   * bytes of data decompressed.
+   *
+   * @param src the source array holding the compressed data
+   * @param srcOffset the start offset of the source
+   * @param srcLength the length of source data to decompress
+   * @param dst the destination array for the decompressed data
+   * @param dstOffset the destination offset where to start storing the decompressed data
+   * @param dstLength the length that can be written to the destination array
+   * @return the size of the decompressed data in bytes
+   * @throws IllegalStateException if the QPLJob is invalid.
+   * @throws QPLOutputOverflowException if the dst is not large enough to accommodate the
+   *     decompressed bytes.
+   */
+  public int decompress(
+      byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+    QPLCompressor compressor = routeDecompress(srcLength);
+    long start = System.nanoTime();
+    int decompressedSize =
+        compressor.decompress(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+    record(decompressTuner, compressor, srcLength, start);
+    return decompressedSize;
+  }
+
+  /**
+   * Returns the input size in bytes from which compress calls are currently routed to the hardware.
+   * Returns {@link Integer#MAX_VALUE} if the hardware path is not available.
+   *
+   * @return the learned compression threshold.
+   */
+  public int getCompressThreshold() {
+    return hardwareCompressor == null ? Integer.MAX_VALUE : compressTuner.getThreshold();
+  }
+
+  /**
+   * Returns the input size in bytes from which decompress calls are currently routed to the
+   * hardware. Returns {@link Integer#MAX_VALUE} if the hardware path is not available.
+   *
+   * @return the learned decompression threshold.
+   */
+  public int getDecompressThreshold() {
+    return hardwareCompressor == null ? Integer.MAX_VALUE : decompressTuner.getThreshold();
+  }
+
+  /**
+   * Checks if the destination buffer provided for the decompressed data was insufficient to
+   * accommodate the entire decompressed data.
+   *
+   * <p>The next decompress call continues on the same execution path.
+   *
+   * @return true if the destination size of the preceding decompress operation was insufficient ,
+   *     otherwise false.
+   */
+  public boolean isOutputInsufficient() {
+    return lastCompressor != null && lastCompressor.isOutputInsufficient();
+  }
+
+  /**
+   * Returns bytes read from the source in the preceding operation.
+   *
+   * @return bytes read from the source in the preceding operation.
+   */
+  public int getBytesRead() {
+    return lastCompressor == null ? 0 : lastCompressor.getBytesRead();
+  }
+
+  /**
+   * Returns bytes written to the destination in the preceding operation.
+   *
+   * @return bytes written to the destination in the preceding operation.
+   */
+  public int getBytesWritten() {
+    return lastCompressor == null ? 0 : lastCompressor.getBytesWritten();
+  }
+
+  /**
+   * Releases resources held by this QPLRoutingCompressor. Resources held by this object are
+   * automatically released on garbage collection. This method can be used to do this explicitly;
+   * consequently this QPLRoutingCompressor will no longer be valid for use.
+   *
+   * @throws IllegalStateException If the user attempts to use this object after releasing the
+   *     resource explicitly.
+   */
+  public void doClear() {
+    softwareCompressor.doClear();
+    if (hardwareCompressor != null) {
+      hardwareCompressor.doClear();
+    }
+  }
+
+  private QPLCompressor routeDecompress(int length) {
+    if (isOutputInsufficient()) {
+      // The stream state of a partial decompression lives in the job that started it.
+      return lastCompressor;
+    }
+    return route(decompressTuner, length);
+  }
+
+  private QPLCompressor route(PathTuner tuner, int length) {
+    if (hardwareCompressor == null) {
+      lastCompressor = softwareCompressor;
+    } else {
+      lastCompressor = tuner.useHardware(length) ? hardwareCompressor : softwareCompressor;
+    }
+    return lastCompressor;
+  }
+
+  private void record(PathTuner tuner, QPLCompressor compressor, int length, long start) {
+    if (hardwareCompressor != null) {
+      tuner.record(compressor == hardwareCompressor, length, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Learns the input size from which the hardware path is faster than the software path.
+   *
+   * <p>Inputs are grouped in power of two size buckets, and each bucket keeps an exponentially
+   * weighted moving average of the latency per byte for both paths. The threshold is the smallest
+   * bucket from which the hardware is at least as fast as the software for every larger measured
+   * bucket.
+   */
+  private static class PathTuner {
+    private static final int BUCKETS = 32;
+    // Every EXPLORATION_INTERVAL-th call within EXPLORATION_RADIUS buckets of the break-even point
+    // is routed to the other path to keep it measured. Sizes far from it are never explored.
+    private static final int EXPLORATION_INTERVAL = 64;
+    private static final int EXPLORATION_RADIUS = 1;
+    private static final double SMOOTHING_FACTOR = 0.125;
+
+    private final double[] hardwareCost = new double[BUCKETS];
+    private final double[] softwareCost = new double[BUCKETS];
+    private final int initialBucket;
+    private int thresholdBucket;
+    // The bucket at which the paths break even, which differs from thresholdBucket only when the
+    // hardware lost every measured bucket.
+    private int boundaryBucket;
+    private long calls;
+
+    PathTuner(int initialThreshold) {
+      this.initialBucket = bucket(initialThreshold);
+      this.thresholdBucket = initialBucket;
+      this.boundaryBucket = initialBucket;
+    }
+
+    private static int bucket(int length) {
+      return 32 - Integer.numberOfLeadingZeros(Math.max(length, 1));
+    }
+
+    int getThreshold() {
+      return thresholdBucket >= BUCKETS ? Integer.MAX_VALUE : 1 << (thresholdBucket - 1);
+    }
+
+    boolean useHardware(int length) {
+      int b = bucket(length);
+      boolean preferHardware = b >= thresholdBucket;
+      if (Math.abs(b - boundaryBucket) > EXPLORATION_RADIUS) {
+        return preferHardware;
+      }
+      return ++calls % EXPLORATION_INTERVAL == 0 ? !preferHardware : preferHardware;
+    }
+
+    void record(boolean hardware, int length, long elapsedNanos) {
+      int b = bucket(length);
+      double[] cost = hardware ? hardwareCost : softwareCost;
+      double sample = (double) elapsedNanos / Math.max(length, 1);
+      cost[b] = cost[b] == 0 ? sample : cost[b] + SMOOTHING_FACTOR * (sample - cost[b]);
+      updateThreshold();
+    }
+
+    private void updateThreshold() {
+      int threshold = -1;
+      int slower = -1;
+      for (int b = BUCKETS - 1; b > 0; b--) {
+        if (hardwareCost[b] == 0 || softwareCost[b] == 0) {
+          continue;
+        }
+        if (hardwareCost[b] > softwareCost[b]) {
+          slower = b;
+          break;
+        }
+        threshold = b;
+      }
+      if (threshold != -1) {
+        thresholdBucket = threshold;
+        boundaryBucket = threshold;
+      } else if (slower != -1) {
+        thresholdBucket = BUCKETS;
+        boundaryBucket = slower + 1;
+      } else {
+        thresholdBucket = initialBucket;
+        boundaryBucket = initialBucket;
+      }
+    }
+  }
+}
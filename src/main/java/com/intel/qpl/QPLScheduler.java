@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules the operations of several workloads that share the accelerator, e.g. the
+ * latency-sensitive decompressions of a read path and the bulk compressions of a background
+ * compaction.
+ *
+ * <p>At most {@link #getMaxConcurrency()} operations run at a time. Each operation belongs to a
+ * priority class ({@link QPLUtils.Priorities}), and a class may be limited to fewer concurrent
+ * operations. When an operation completes, the next one is taken from the classes that have
+ * waiting operations and are below their limit, in proportion to the weights of these classes
+ * (start-time fair queuing): a class with weight 8 is granted 8 operations for every operation
+ * of a class with weight 1, and a class that was idle does not build up credit.
+ *
+ * <p>A one-shot compression larger than a work queue chunk is split into a stream of chunks, each
+ * scheduled on its own, so that operations of other classes can run between the chunks of a bulk
+ * compression instead of queueing behind all of them. If a later chunk finds the work queues busy
+ * and the failover policy is {@link QPLUtils.FailoverPolicies#SOFTWARE}, the compression restarts
+ * as a whole on the software path. Other operations are scheduled as a whole.
+ *
+ * <p>Use a scheduler through {@link QPLCompressor#setScheduler(QPLScheduler,
+ * QPLUtils.Priorities)}. This class is thread safe.
+ */
+public class QPLScheduler {
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition[] turns;
+  private final int[] weights;
+  private final int[] limits;
+  private final int[] waiting;
+  private final int[] running;
+  private final long[] executedCounts;
+  // The start tag of each class, advanced by 1/weight for each operation granted to the class.
+  private final double[] virtualTimes;
+  // The start tag of the last granted operation.
+  private double virtualClock = 0;
+  private int maxConcurrency;
+  private int inFlight = 0;
+
+  /**
+   * Creates a new QPLScheduler that runs at most 'maxConcurrency' operations at a time. Each class
+   * starts with its default weight and no limit of its own.
+   *
+   * @param maxConcurrency the maximum number of operations running at a time.
+   * @throws IllegalArgumentException if 'maxConcurrency' is less than one.
+   */
+  public QPLScheduler(int maxConcurrency) {
+    checkPositive(maxConcurrency, "Concurrency");
+    this.maxConcurrency = maxConcurrency;
+    int classes = QPLUtils.Priorities.values().length;
+    this.turns = new Condition[classes];
+    this.weights = new int[classes];
+    this.limits = new int[classes];
+    this.waiting = new int[classes];
+    this.running = new int[classes];
+    this.executedCounts = new long[classes];
+    this.virtualTimes = new double[classes];
+    for (QPLUtils.Priorities priority : QPLUtils.Priorities.values()) {
+      int c = priority.ordinal();
+      turns[c] = lock.newCondition();
+      weights[c] = priority.getDefaultWeight();
+      limits[c] = Integer.MAX_VALUE;
+    }
+  }
+
+  private static void checkPositive(int value, String name) {
+    if (value <= 0) {
+      throw new IllegalArgumentException(name + " must be > 0, got " + value);
+    }
+  }
+
+  /**
+   * Returns the maximum number of operations running at a time.
+   *
+   * @return maximum concurrency.
+   */
+  public int getMaxConcurrency() {
+    lock.lock();
+    try {
+      return maxConcurrency;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the maximum number of operations running at a time. Lowering it does not abort the
+   * running operations, new ones start once fewer than 'maxConcurrency' are running.
+   *
+   * @param maxConcurrency the maximum number of operations running at a time.
+   * @throws IllegalArgumentException if 'maxConcurrency' is less than one.
+   */
+  public void setMaxConcurrency(int maxConcurrency) {
+    checkPositive(maxConcurrency, "Concurrency");
+    lock.lock();
+    try {
+      this.maxConcurrency = maxConcurrency;
+      signalNext();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the weight of the specified class.
+   *
+   * @param priority the priority class.
+   * @return weight.
+   */
+  public int getWeight(QPLUtils.Priorities priority) {
+    lock.lock();
+    try {
+      return weights[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the weight of the specified class, i.e. its share of the operations relative to the other
+   * classes that have waiting operations.
+   *
+   * @param priority the priority class.
+   * @param weight the weight of the class.
+   * @throws IllegalArgumentException if 'weight' is less than one.
+   */
+  public void setWeight(QPLUtils.Priorities priority, int weight) {
+    checkPositive(weight, "Weight");
+    lock.lock();
+    try {
+      weights[priority.ordinal()] = weight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the maximum number of operations of the specified class running at a time.
+   *
+   * @param priority the priority class.
+   * @return concurrency limit of the class, {@link Integer#MAX_VALUE} if it has no limit of its
+   *     own.
+   */
+  public int getConcurrencyLimit(QPLUtils.Priorities priority) {
+    lock.lock();
+    try {
+      return limits[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the maximum number of operations of the specified class running at a time, e.g. to keep
+   * some capacity free for the other classes.
+   *
+   * @param priority the priority class.
+   * @param limit the concurrency limit of the class.
+   * @throws IllegalArgumentException if 'limit' is less than one.
+   */
+  public void setConcurrencyLimit(QPLUtils.Priorities priority, int limit) {
+    checkPositive(limit, "Limit");
+    lock.lock();
+    try {
+      limits[priority.ordinal()] = limit;
+      signalNext();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of operations of the specified class started so far. A compression split
+   * into chunks counts once per chunk.
+   *
+   * @param priority the priority class.
+   * @return executed operation count.
+   */
+  public long getExecutedCount(QPLUtils.Priorities priority) {
+    lock.lock();
+    try {
+      return executedCounts[priority.ordinal()];
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of operations currently running.
+   *
+   * @return running operation count.
+   */
+  public int getRunningCount() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Waits until an operation of the class may start. Interrupting the waiting thread does not
+  // abort the wait.
+  void acquire(QPLUtils.Priorities priority) {
+    int c = priority.ordinal();
+    lock.lock();
+    try {
+      if (waiting[c] == 0 && running[c] == 0) {
+        // A class that was idle starts from the current virtual time.
+        virtualTimes[c] = Math.max(virtualTimes[c], virtualClock);
+      }
+      waiting[c]++;
+      try {
+        while (next() != c) {
+          turns[c].awaitUninterruptibly();
+        }
+      } finally {
+        waiting[c]--;
+      }
+      running[c]++;
+      inFlight++;
+      executedCounts[c]++;
+      virtualClock = virtualTimes[c];
+      virtualTimes[c] += 1.0 / weights[c];
+      signalNext();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void release(QPLUtils.Priorities priority) {
+    lock.lock();
+    try {
+      running[priority.ordinal()]--;
+      inFlight--;
+      signalNext();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Returns the class whose operation starts next, or -1 if none may start now. Ties go to the
+  // higher priority.
+  private int next() {
+    if (inFlight >= maxConcurrency) {
+      return -1;
+    }
+    int selected = -1;
+    for (int c = 0; c < waiting.length; c++) {
+      if (waiting[c] > 0
+          && running[c] < limits[c]
+          && (selected < 0 || virtualTimes[c] < virtualTimes[selected])) {
+        selected = c;
+      }
+    }
+    return selected;
+  }
+
+  private void signalNext() {
+    int c = next();
+    if (c >= 0) {
+      turns[c].signal();
+    }
+  }
+
+  // Runs the operation configured on 'job'. A one-shot compression larger than a chunk is split
+  // into chunks, each scheduled on its own, otherwise the operation is scheduled as a whole.
+  int execute(QPLUtils.Priorities priority, QPLJob job, ByteBuffer src, ByteBuffer dst) {
+    int flags = job.getFlags();
+    int first = QPLUtils.Flags.QPL_FLAG_FIRST.getId();
+    int last = QPLUtils.Flags.QPL_FLAG_LAST.getId();
+    int chunkLength = QPLJob.IDXD_WQ_MAX_TRANSFER_BYTES / 2;
+    if (job.getOperationType() != QPLUtils.Operations.QPL_OP_COMPRESS.getOperationCode()
+        || (flags & (first | last)) != (first | last)
+        || src.remaining() <= chunkLength) {
+      acquire(priority);
+      try {
+        return job.execute(src, dst);
+      } finally {
+        release(priority);
+      }
+    }
+    // Keep each chunk and its output below the maximum transfer size, so the native library
+    // submits each chunk as it is and the chunk boundaries stay the only block boundaries.
+    int maxOutput = QPLJob.IDXD_WQ_MAX_TRANSFER_BYTES - 1;
+    int chunkFlags = flags & ~last;
+    int srcStart = src.position();
+    int dstStart = dst.position();
+    int totalRead = 0;
+    int totalWritten = 0;
+    try {
+      while (src.hasRemaining()) {
+        int length = Math.min(src.remaining(), chunkLength);
+        boolean isLast = length == src.remaining();
+        ByteBuffer in = src.duplicate();
+        in.limit(in.position() + length);
+        ByteBuffer out = dst.duplicate();
+        out.limit(out.position() + Math.min(out.remaining(), maxOutput));
+        job.setFlags(isLast ? chunkFlags | last : chunkFlags);
+        QPLQueuesBusyException busy = null;
+        acquire(priority);
+        try {
+          totalWritten += job.execute(in, out);
+        } catch (QPLQueuesBusyException e) {
+          if ((chunkFlags & first) != 0) {
+            throw e;
+          }
+          busy = e;
+        } finally {
+          release(priority);
+        }
+        if (busy != null) {
+          // Only the first chunk may fail over on its own, but the whole source is still at hand,
+          // so the compression restarts on the software path, which takes no scheduling slot.
+          src.position(srcStart);
+          dst.position(dstStart);
+          job.setFlags(flags);
+          return job.restartOnFailover(src, dst, busy);
+        }
+        totalRead += job.getBytesRead();
+        src.position(in.position());
+        dst.position(out.position());
+        chunkFlags &= ~first;
+      }
+    } finally {
+      job.setFlags(flags);
+    }
+    job.setResult(totalRead, totalWritten);
+    return totalWritten;
+  }
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Writes data as a sequence of deflate stored (uncompressed) blocks, see RFC 1951 section 3.2.4.
+ * The result is a valid deflate stream that any inflater, including QPL, can decompress.
+ */
+class QPLStoredBlocks {
+  private static final int MAX_BLOCK_LENGTH = 65535;
+  private static final int BLOCK_HEADER_LENGTH = 5;
+
+  private QPLStoredBlocks() {}
+
+  static int storedLength(int length) {
+    int blocks = Math.max(1, (length + MAX_BLOCK_LENGTH - 1) / MAX_BLOCK_LENGTH);
+    return length + blocks * BLOCK_HEADER_LENGTH;
+  }
+
+  static int write(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset) {
+    int written = 0;
+    int remaining = srcLength;
+    do {
+      int blockLength = Math.min(remaining, MAX_BLOCK_LENGTH);
+      int pos = dstOffset + written;
+      writeHeader(dst, pos, blockLength, remaining == blockLength);
+      System.arraycopy(
+          src, srcOffset + srcLength - remaining, dst, pos + BLOCK_HEADER_LENGTH, blockLength);
+      written += BLOCK_HEADER_LENGTH + blockLength;
+      remaining -= blockLength;
+    } while (remaining > 0);
+    return written;
+  }
+
+  static int write(ByteBuffer src, ByteBuffer dst) {
+    byte[] header = new byte[BLOCK_HEADER_LENGTH];
+    int written = 0;
+    do {
+      int blockLength = Math.min(src.remaining(), MAX_BLOCK_LENGTH);
+      writeHeader(header, 0, blockLength, src.remaining() == blockLength);
+      dst.put(header);
+      ByteBuffer block = src.duplicate();
+      block.limit(block.position() + blockLength);
+      dst.put(block);
+      src.position(src.position() + blockLength);
+      written += BLOCK_HEADER_LENGTH + blockLength;
+    } while (src.hasRemaining());
+    return written;
+  }
+
+  private static void writeHeader(byte[] dst, int pos, int blockLength, boolean last) {
+    // BFINAL bit followed by BTYPE 00, padded to the byte boundary.
+    dst[pos] = (byte) (last ? 1 : 0);
+    dst[pos + 1] = (byte) blockLength;
+    dst[pos + 2] = (byte) (blockLength >>> 8);
+    dst[pos + 3] = (byte) ~blockLength;
+    dst[pos + 4] = (byte) (~blockLength >>> 8);
+  }
+}
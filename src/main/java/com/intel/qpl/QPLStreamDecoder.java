@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.Adler32;
+
+/**
+ * Decompresses a deflate stream that arrives in pieces of any size, the building block of a
+ * channel decoder in an event-driven network framework.
+ *
+ * <p>The compressed data is decompressed straight from the source buffer into the destination
+ * buffer by the {@link QPLJob}, without an intermediate copy. Like a cumulating decoder, the
+ * methods leave the bytes of an incomplete header or trailer in the source buffer, to be given
+ * again with the bytes that follow them. The stream is framed as given by {@link
+ * QPLUtils.StreamFormats}; the checksum of the ZLIB and GZIP formats is verified. As with {@link
+ * QPLInflater}, the end of the compressed data is detected once the bytes after it are given, so
+ * the end of a raw stream that is not followed by other data is not detected.
+ *
+ * <p>The asynchronous method runs the decompressions on an executor, e.g. to keep them off an
+ * event loop thread, in the order of the calls. A failed decompression fails the ones queued after
+ * it.
+ *
+ * <p>This class is not thread safe: the methods must be called from one thread at a time, and the
+ * synchronous methods must not be called while asynchronous ones are pending.
+ */
+public class QPLStreamDecoder {
+  private static final int ZLIB_HEADER_LENGTH = 2;
+  private static final int ZLIB_TRAILER_LENGTH = 4;
+  private static final int GZIP_HEADER_LENGTH = 10;
+  private static final int GZIP_TRAILER_LENGTH = 8;
+  private static final int GZIP_FHCRC = 0x02;
+  private static final int GZIP_FEXTRA = 0x04;
+  private static final int GZIP_FNAME = 0x08;
+  private static final int GZIP_FCOMMENT = 0x10;
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private enum State {
+    HEADER,
+    DATA,
+    TRAILER,
+    DONE
+  }
+
+  private final QPLJob job;
+  private final QPLUtils.StreamFormats format;
+  private final QPLBufferPool pool;
+  private final Adler32 adler = new Adler32();
+  private State state;
+  private boolean started = false;
+  private long length = 0;
+  private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+  /**
+   * Creates a new decoder that decompresses with the given job.
+   *
+   * @param job the job used for all the decompressions of the stream.
+   * @param format the framing of the stream.
+   * @param pool the pool of the buffers returned by {@link #decode(ByteBuffer)}.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   */
+  public QPLStreamDecoder(QPLJob job, QPLUtils.StreamFormats format, QPLBufferPool pool) {
+    job.checkValid();
+    this.job = job;
+    this.format = format;
+    this.pool = pool;
+    this.state = format == QPLUtils.StreamFormats.RAW ? State.DATA : State.HEADER;
+  }
+
+  /**
+   * Decompresses the remaining bytes of 'src' into the remaining space of 'dst'. The positions of
+   * both buffers are advanced. Call the method again with more space while it fills 'dst'.
+   *
+   * @param src the compressed data.
+   * @param dst the buffer for the decompressed data.
+   * @return the number of bytes written to 'dst'.
+   * @throws ReadOnlyBufferException if 'dst' is read-only.
+   * @throws QPLException if the compressed data or its framing is invalid.
+   */
+  public int decode(ByteBuffer src, ByteBuffer dst) {
+    QPLUtils.checkReadOnly(dst);
+    int start = dst.position();
+    if (state == State.HEADER && readHeader(src)) {
+      state = State.DATA;
+    }
+    if (state == State.DATA) {
+      decompress(src, dst);
+    }
+    if (state == State.TRAILER && readTrailer(src)) {
+      state = State.DONE;
+    }
+    return dst.position() - start;
+  }
+
+  /**
+   * Decompresses the remaining bytes of 'src' into buffers of the pool. The position of 'src' is
+   * advanced. The returned buffers are ready to be read, and should be given back with {@link
+   * #release(ByteBuffer)} once consumed.
+   *
+   * @param src the compressed data.
+   * @return the buffers of decompressed data, possibly none.
+   * @throws QPLException if the compressed data or its framing is invalid.
+   */
+  public List<ByteBuffer> decode(ByteBuffer src) {
+    List<ByteBuffer> out = new ArrayList<>();
+    while (true) {
+      ByteBuffer buffer = pool.acquire();
+      try {
+        decode(src, buffer);
+      } catch (RuntimeException e) {
+        pool.release(buffer);
+        out.forEach(pool::release);
+        throw e;
+      }
+      boolean full = !buffer.hasRemaining();
+      buffer.flip();
+      if (buffer.hasRemaining()) {
+        out.add(buffer);
+      } else {
+        pool.release(buffer);
+      }
+      if (!full) {
+        return out;
+      }
+    }
+  }
+
+  /**
+   * Runs {@link #decode(ByteBuffer)} on the executor, after the pending asynchronous calls. The
+   * source buffer must not be used until the returned future completes.
+   *
+   * @param src the compressed data.
+   * @param executor the executor that runs the decompression.
+   * @return a future completed with the buffers of decompressed data.
+   */
+  public CompletableFuture<List<ByteBuffer>> decodeAsync(ByteBuffer src, Executor executor) {
+    CompletableFuture<List<ByteBuffer>> result =
+        tail.thenApplyAsync(ignored -> decode(src), executor);
+    tail = result;
+    return result;
+  }
+
+  /**
+   * Gives a buffer returned by {@link #decode(ByteBuffer)} back to the pool.
+   *
+   * @param buffer the buffer to release.
+   */
+  public void release(ByteBuffer buffer) {
+    pool.release(buffer);
+  }
+
+  /**
+   * Returns true if the end of the stream, and of its trailer, has been reached.
+   *
+   * @return true if the stream is finished.
+   */
+  public boolean isFinished() {
+    return state == State.DONE;
+  }
+
+  /**
+   * Returns the total number of decompressed bytes output so far.
+   *
+   * @return the total number of decompressed bytes.
+   */
+  public long getBytesWritten() {
+    return length;
+  }
+
+  /** Starts a new stream. Must not be called while asynchronous calls are pending. */
+  public void reset() {
+    job.reset();
+    adler.reset();
+    state = format == QPLUtils.StreamFormats.RAW ? State.DATA : State.HEADER;
+    started = false;
+    length = 0;
+    tail = CompletableFuture.completedFuture(null);
+  }
+
+  private void decompress(ByteBuffer src, ByteBuffer dst) {
+    while (dst.hasRemaining() && (src.hasRemaining() || job.isOutputInsufficient())) {
+      ByteBuffer in = src.hasRemaining() ? src : EMPTY;
+      int start = dst.position();
+      job.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+      job.setFlags(started ? 0 : QPLUtils.Flags.QPL_FLAG_FIRST.getId());
+      job.execute(in, dst);
+      started = true;
+      length += dst.position() - start;
+      if (format == QPLUtils.StreamFormats.ZLIB) {
+        ByteBuffer written = dst.duplicate();
+        written.limit(written.position()).position(start);
+        adler.update(written);
+      }
+      // The decompression stops at the end of the stream, before the rest of the input.
+      if (!job.isOutputInsufficient() && in.hasRemaining()) {
+        state = format == QPLUtils.StreamFormats.RAW ? State.DONE : State.TRAILER;
+        return;
+      }
+    }
+  }
+
+  // Reads the header if all of it is available, otherwise leaves it in 'src'.
+  private boolean readHeader(ByteBuffer src) {
+    int pos = src.position();
+    if (format == QPLUtils.StreamFormats.ZLIB) {
+      if (src.remaining() < ZLIB_HEADER_LENGTH) {
+        return false;
+      }
+      int cmf = src.get(pos) & 0xff;
+      int flg = src.get(pos + 1) & 0xff;
+      if ((cmf & 0x0f) != 8 || (cmf * 256 + flg) % 31 != 0) {
+        throw new QPLException("Incorrect ZLIB header check");
+      }
+      if ((flg & 0x20) != 0) {
+        throw new QPLException("Preset dictionaries are not supported");
+      }
+      src.position(pos + ZLIB_HEADER_LENGTH);
+      return true;
+    }
+    int length = gzipHeaderLength(src);
+    if (length < 0) {
+      return false;
+    }
+    src.position(pos + length);
+    return true;
+  }
+
+  // Returns the length of the GZIP header at the position of 'src', or -1 if part of it is missing.
+  static int gzipHeaderLength(ByteBuffer src) {
+    int pos = src.position();
+    if (src.remaining() < GZIP_HEADER_LENGTH) {
+      return -1;
+    }
+    if ((src.get(pos) & 0xff) != 0x1f
+        || (src.get(pos + 1) & 0xff) != 0x8b
+        || src.get(pos + 2) != 8) {
+      throw new QPLException("Not in GZIP format");
+    }
+    int flags = src.get(pos + 3) & 0xff;
+    int end = pos + GZIP_HEADER_LENGTH;
+    if ((flags & GZIP_FEXTRA) != 0) {
+      if (src.limit() < end + 2) {
+        return -1;
+      }
+      end += 2 + ((src.get(end) & 0xff) | (src.get(end + 1) & 0xff) << 8);
+    }
+    if ((flags & GZIP_FNAME) != 0) {
+      end = skipZeroTerminated(src, end);
+    }
+    if ((flags & GZIP_FCOMMENT) != 0) {
+      end = skipZeroTerminated(src, end);
+    }
+    if ((flags & GZIP_FHCRC) != 0 && end >= 0) {
+      end += 2;
+    }
+    if (end < 0 || src.limit() < end) {
+      return -1;
+    }
+    return end - pos;
+  }
+
+  // Returns the position after the terminating zero byte, or -1 if it is not available.
+  private static int skipZeroTerminated(ByteBuffer src, int pos) {
+    if (pos < 0) {
+      return -1;
+    }
+    for (int i = pos; i < src.limit(); i++) {
+      if (src.get(i) == 0) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+  // Reads and verifies the trailer if all of it is available, otherwise leaves it in 'src'.
+  private boolean readTrailer(ByteBuffer src) {
+    int pos = src.position();
+    if (format == QPLUtils.StreamFormats.ZLIB) {
+      if (src.remaining() < ZLIB_TRAILER_LENGTH) {
+        return false;
+      }
+      if (getIntBigEndian(src, pos) != (int) adler.getValue()) {
+        throw new QPLException("Incorrect ZLIB data check");
+      }
+      src.position(pos + ZLIB_TRAILER_LENGTH);
+      return true;
+    }
+    if (src.remaining() < GZIP_TRAILER_LENGTH) {
+      return false;
+    }
+    if (Integer.reverseBytes(getIntBigEndian(src, pos)) != job.getCrc()) {
+      throw new QPLException("Incorrect GZIP data check");
+    }
+    if (Integer.reverseBytes(getIntBigEndian(src, pos + 4)) != (int) length) {
+      throw new QPLException("Incorrect GZIP length check");
+    }
+    src.position(pos + GZIP_TRAILER_LENGTH);
+    return true;
+  }
+
+  private static int getIntBigEndian(ByteBuffer src, int pos) {
+    return (src.get(pos) & 0xff) << 24
+        | (src.get(pos + 1) & 0xff) << 16
+        | (src.get(pos + 2) & 0xff) << 8
+        | (src.get(pos + 3) & 0xff);
+  }
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.Adler32;
+
+/**
+ * Compresses a sequence of messages into one deflate stream, the building block of a channel
+ * encoder in an event-driven network framework.
+ *
+ * <p>Each message is compressed straight from its buffer into the destination buffer by the
+ * {@link QPLJob}, without an intermediate copy; with direct buffers, the device reads and writes
+ * the memory of the buffers. The output of each message is complete, so that the peer can
+ * decompress it before the next one arrives. The stream is framed as given by {@link
+ * QPLUtils.StreamFormats}, and ended by {@link #finish(ByteBuffer)}.
+ *
+ * <p>The asynchronous methods run the compressions on an executor, e.g. to keep them off an event
+ * loop thread, in the order of the calls. A failed compression fails the ones queued after it.
+ *
+ * <p>This class is not thread safe: the methods must be called from one thread at a time, and the
+ * synchronous methods must not be called while asynchronous ones are pending.
+ */
+public class QPLStreamEncoder {
+  private static final int GZIP_HEADER_LENGTH = 10;
+  private static final int GZIP_TRAILER_LENGTH = 8;
+  // A final fixed Huffman block holding only the end of block code.
+  private static final byte[] EMPTY_STREAM = {0x03, 0x00};
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private final QPLJob job;
+  private final QPLUtils.StreamFormats format;
+  private final Adler32 adler = new Adler32();
+  private boolean started = false;
+  private boolean finished = false;
+  private long length = 0;
+  private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+  /**
+   * Creates a new encoder that compresses with the given job, at its compression level.
+   *
+   * @param job the job used for all the compressions of the stream.
+   * @param format the framing of the stream.
+   * @throws IllegalStateException if the QPLJob is invalid.
+   */
+  public QPLStreamEncoder(QPLJob job, QPLUtils.StreamFormats format) {
+    job.checkValid();
+    this.job = job;
+    this.format = format;
+  }
+
+  /**
+   * Returns the maximum number of bytes written by {@link #encode(ByteBuffer, ByteBuffer)} for a
+   * message of the given length, or by {@link #finish(ByteBuffer)} for a length of 0. Use it to
+   * size the destination buffers.
+   *
+   * @param srcLength the length of the message.
+   * @return the maximum encoded length.
+   */
+  public static int maxEncodedLength(int srcLength) {
+    return GZIP_HEADER_LENGTH
+        + QPLJob.maxCompressedLength(Math.max(srcLength, 1))
+        + GZIP_TRAILER_LENGTH;
+  }
+
+  /**
+   * Compresses the remaining bytes of 'src' into 'dst', preceded by the header of the stream for
+   * the first message. The positions of both buffers are advanced.
+   *
+   * @param src the message.
+   * @param dst the buffer for the compressed data.
+   * @return the number of bytes written to 'dst'.
+   * @throws ReadOnlyBufferException if 'dst' is read-only.
+   * @throws IllegalStateException if the stream is finished.
+   * @throws QPLOutputOverflowException if 'dst' has less space than {@link
+   *     #maxEncodedLength(int)}.
+   */
+  public int encode(ByteBuffer src, ByteBuffer dst) {
+    QPLUtils.checkReadOnly(dst);
+    checkNotFinished();
+    if (!src.hasRemaining()) {
+      return 0;
+    }
+    checkSpace(src.remaining(), dst);
+    int start = dst.position();
+    if (!started) {
+      writeHeader(dst);
+    }
+    ByteBuffer consumed = src.duplicate();
+    compress(src, dst, false);
+    if (format == QPLUtils.StreamFormats.ZLIB) {
+      consumed.limit(src.position());
+      adler.update(consumed);
+    }
+    return dst.position() - start;
+  }
+
+  /**
+   * Ends the stream: writes its final block and trailer into 'dst', and the header if no message
+   * was encoded. The position of the buffer is advanced.
+   *
+   * @param dst the buffer for the compressed data.
+   * @return the number of bytes written to 'dst'.
+   * @throws ReadOnlyBufferException if 'dst' is read-only.
+   * @throws IllegalStateException if the stream is finished.
+   * @throws QPLOutputOverflowException if 'dst' has less space than {@link
+   *     #maxEncodedLength(int)} of 0.
+   */
+  public int finish(ByteBuffer dst) {
+    QPLUtils.checkReadOnly(dst);
+    checkNotFinished();
+    checkSpace(0, dst);
+    int start = dst.position();
+    if (!started) {
+      writeHeader(dst);
+      dst.put(EMPTY_STREAM);
+    } else {
+      compress(EMPTY, dst, true);
+    }
+    finished = true;
+    if (format == QPLUtils.StreamFormats.ZLIB) {
+      putIntBigEndian(dst, (int) adler.getValue());
+    } else if (format == QPLUtils.StreamFormats.GZIP) {
+      putIntLittleEndian(dst, started ? job.getCrc() : 0);
+      putIntLittleEndian(dst, (int) length);
+    }
+    return dst.position() - start;
+  }
+
+  /**
+   * Runs {@link #encode(ByteBuffer, ByteBuffer)} on the executor, after the pending asynchronous
+   * calls. The buffers must not be used until the returned future completes.
+   *
+   * @param src the message.
+   * @param dst the buffer for the compressed data.
+   * @param executor the executor that runs the compression.
+   * @return a future completed with the number of bytes written to 'dst'.
+   */
+  public CompletableFuture<Integer> encodeAsync(ByteBuffer src, ByteBuffer dst, Executor executor) {
+    CompletableFuture<Integer> result = tail.thenApplyAsync(ignored -> encode(src, dst), executor);
+    tail = result;
+    return result;
+  }
+
+  /**
+   * Runs {@link #finish(ByteBuffer)} on the executor, after the pending asynchronous calls. The
+   * buffer must not be used until the returned future completes.
+   *
+   * @param dst the buffer for the compressed data.
+   * @param executor the executor that runs the compression.
+   * @return a future completed with the number of bytes written to 'dst'.
+   */
+  public CompletableFuture<Integer> finishAsync(ByteBuffer dst, Executor executor) {
+    CompletableFuture<Integer> result = tail.thenApplyAsync(ignored -> finish(dst), executor);
+    tail = result;
+    return result;
+  }
+
+  /**
+   * Returns true if {@link #finish(ByteBuffer)} was called.
+   *
+   * @return true if the stream is finished.
+   */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * Returns the total number of uncompressed bytes encoded so far.
+   *
+   * @return the total number of uncompressed bytes.
+   */
+  public long getBytesRead() {
+    return length;
+  }
+
+  /** Starts a new stream. Must not be called while asynchronous calls are pending. */
+  public void reset() {
+    job.reset();
+    adler.reset();
+    started = false;
+    finished = false;
+    length = 0;
+    tail = CompletableFuture.completedFuture(null);
+  }
+
+  private void compress(ByteBuffer src, ByteBuffer dst, boolean last) {
+    int flags = QPLUtils.CompressionFlags;
+    if (started) {
+      flags &= ~QPLUtils.Flags.QPL_FLAG_FIRST.getId();
+    }
+    if (!last) {
+      flags &= ~QPLUtils.Flags.QPL_FLAG_LAST.getId();
+    }
+    int srcLength = src.remaining();
+    job.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    job.setFlags(flags);
+    job.execute(src, dst);
+    started = true;
+    length += srcLength;
+  }
+
+  private void writeHeader(ByteBuffer dst) {
+    if (format == QPLUtils.StreamFormats.ZLIB) {
+      // Deflate with a 32K window, the fastest algorithm and no preset dictionary.
+      dst.put((byte) 0x78).put((byte) 0x01);
+    } else if (format == QPLUtils.StreamFormats.GZIP) {
+      // Deflate, no flags, no modification time, no extra flags, and the OS as written by the JDK.
+      dst.put(new byte[] {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0});
+    }
+  }
+
+  private void checkNotFinished() {
+    if (finished) {
+      throw new IllegalStateException("The stream is finished");
+    }
+  }
+
+  private static void checkSpace(int srcLength, ByteBuffer dst) {
+    if (dst.remaining() < maxEncodedLength(srcLength)) {
+      throw new QPLOutputOverflowException(
+          "The destination must have " + maxEncodedLength(srcLength) + " bytes of space");
+    }
+  }
+
+  private static void putIntBigEndian(ByteBuffer dst, int value) {
+    dst.put((byte) (value >>> 24))
+        .put((byte) (value >>> 16))
+        .put((byte) (value >>> 8))
+        .put((byte) value);
+  }
+
+  private static void putIntLittleEndian(ByteBuffer dst, int value) {
+    putIntBigEndian(dst, Integer.reverseBytes(value));
+  }
+}
@@ -14,13 +14,12 @@ import java.nio.ReadOnlyBufferException;
  *
  * <p>DEFAULT_IDXD_WQ_MAX_TRANSFER_BYTES is the workqueue maximum transfer size (refer to <a
  * href="https://github.com/intel/idxd-config">idxd-config</a> documentation). Currently, the idxd
- * driver sets this limit at 2MB. This library expects workqueues to be configured with a 2MB
- * maximum transfer size. If the user provides source and destination buffer sizes surpassing this
- * limit, the library will process the buffers in chunks.
+ * driver sets this limit at 2MB. This library reads the maximum transfer size of the enabled
+ * workqueues from the idxd sysfs tree (see {@link QPLDeviceTopology}), and falls back to 2MB if it
+ * finds none. If the user provides source and destination buffer sizes surpassing this limit, the
+ * library will process the buffers in chunks.
  *
- * <p>Note: In future, if the idxd driver permits an increase in the workqueue maximum transfer
- * size,users should also configure the following system property to ensure that the library
- * utilizes the set workqueue maximum transfer size.
+ * <p>Note: The following system property overrides the discovered workqueue maximum transfer size.
  *
  * <p>Example:
  *
@@ -133,6 +132,162 @@ public class QPLUtils {
     }
   }
 
+  /**
+   * Determines what a hardware QPLJob does once the accelerator work queues stay busy for the whole
+   * retry budget (see {@link QPLJob#setRetryCount(int)} and {@link
+   * QPLJob#setRetryTimeoutNanos(long)}).
+   */
+  public enum FailoverPolicies {
+    /** The busy status is surfaced as a {@link QPLQueuesBusyException}. */
+    NONE,
+    /**
+     * The job is transparently re-executed on a {@link ExecutionPaths#QPL_PATH_SOFTWARE} job. The
+     * software path produces a standard deflate stream, so the output stays compatible.
+     */
+    SOFTWARE
+  }
+
+  /**
+   * Determines how a QPLJob waits between two attempts while the accelerator work queues are busy.
+   * The number of attempts is bounded by the retry count, or by the retry timeout if one is set.
+   *
+   * <p>The native library must not block while it holds Java arrays, which would stall the garbage
+   * collector. With {@link #YIELD} and {@link #EXPONENTIAL}, a single-buffer operation over arrays
+   * or heap buffers is therefore tried once on the pinned arrays, and staged in direct buffers only
+   * after it found the work queues busy; operations over several buffers and decompressions of an
+   * unknown size that hold arrays spin instead.
+   */
+  public enum BackoffPolicies {
+    /** Retries immediately, issuing a pause instruction between the attempts. */
+    SPIN(0),
+    /** Yields the processor to other threads between the attempts. */
+    YIELD(1),
+    /**
+     * Sleeps between the attempts, doubling the delay after each attempt up to the configured cap
+     * (see {@link QPLJob#setBackoffCapNanos(long)}).
+     */
+    EXPONENTIAL(2);
+    private final int backoffPolicyCode;
+
+    BackoffPolicies(int code) {
+      this.backoffPolicyCode = code;
+    }
+
+    /**
+     * Returns backoff policy code.
+     *
+     * @return backoff policy code.
+     */
+    public int getBackoffPolicyCode() {
+      return backoffPolicyCode;
+    }
+  }
+
+  /**
+   * Determines how a thread waits for the hardware to complete an operation of a QPLJob (see {@link
+   * QPLJob#setWaitPolicy(WaitPolicies)}).
+   */
+  public enum WaitPolicies {
+    /** The thread blocks in the native library until the operation completes. */
+    BLOCK,
+    /**
+     * The operation is submitted, and the thread parks between checks of its completion. A virtual
+     * thread then releases its carrier thread while the device works, so that blocking-style code
+     * on virtual threads scales to many concurrent operations. While the work queues are busy, the
+     * thread also parks between the attempts, with a delay doubling up to the backoff cap. Applies
+     * to hardware operations that fit in a single submission; larger operations and the software
+     * path block. Interrupting the thread does not abort the operation; the interrupt status is
+     * kept.
+     */
+    PARK
+  }
+
+  /**
+   * The priority classes of {@link QPLScheduler}. Each class has a default weight, its share of
+   * the operations relative to the other classes that have waiting operations.
+   */
+  public enum Priorities {
+    /** Latency-sensitive operations, e.g. the decompressions of an interactive read path. */
+    HIGH(8),
+    /** Regular operations. */
+    NORMAL(4),
+    /** Bulk operations, e.g. the compressions of a background compaction. */
+    LOW(1);
+    private final int defaultWeight;
+
+    Priorities(int weight) {
+      this.defaultWeight = weight;
+    }
+
+    /**
+     * Returns the default weight of the class.
+     *
+     * @return default weight.
+     */
+    public int getDefaultWeight() {
+      return defaultWeight;
+    }
+  }
+
+  /** The framing of the deflate stream of {@link QPLStreamEncoder} and {@link QPLStreamDecoder}. */
+  public enum StreamFormats {
+    /** A raw deflate stream (RFC 1951). */
+    RAW,
+    /** A deflate stream with the ZLIB header and ADLER-32 trailer (RFC 1950). */
+    ZLIB,
+    /** A deflate stream with the GZIP header and CRC-32 and length trailer (RFC 1952). */
+    GZIP
+  }
+
+  /**
+   * The outcome of an operation executed through the status-returning API, see {@link
+   * QPLJob#tryExecute(ByteBuffer, ByteBuffer, QPLResult)}. Each status other than OK corresponds to
+   * the exception the throwing API would raise.
+   */
+  public enum Statuses {
+    /** The operation completed. */
+    OK(0),
+    /**
+     * The destination is not large enough to accommodate the output, see {@link
+     * QPLOutputOverflowException}.
+     */
+    OUTPUT_OVERFLOW(1),
+    /**
+     * The work queues stayed busy for the whole retry budget and the operation could not fail over,
+     * see {@link QPLQueuesBusyException}.
+     */
+    QUEUES_BUSY(2),
+    /** The library reported an error, see {@link QPLException}. */
+    ERROR(3);
+    private final int statusCode;
+
+    Statuses(int code) {
+      this.statusCode = code;
+    }
+
+    /**
+     * Returns status code.
+     *
+     * @return status code.
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    static Statuses fromStatusCode(int code) {
+      switch (code) {
+        case 0:
+          return OK;
+        case 1:
+          return OUTPUT_OVERFLOW;
+        case 2:
+          return QUEUES_BUSY;
+        default:
+          return ERROR;
+      }
+    }
+  }
+
   /** The default compression level is set to 1. */
   public static final int DEFAULT_COMPRESSION_LEVEL = 1;
 
@@ -152,6 +307,101 @@ public class QPLUtils {
    */
   public static final int DEFAULT_RETRY_COUNT = 0;
 
+  /**
+   * Represents the time in nanoseconds a QPLJob keeps retrying busy work queues. A default value
+   * <code>0</code> means the retries are bounded by the retry count only.
+   */
+  public static final long DEFAULT_RETRY_TIMEOUT_NANOS = 0;
+
+  /**
+   * The input size in bytes from which {@link QPLRoutingCompressor} routes calls to the hardware
+   * until it has measured the actual break-even point.
+   */
+  public static final int DEFAULT_ROUTING_THRESHOLD = 4096;
+
+  /**
+   * The default entropy in bits per byte from which {@link QPLCompressor} considers data
+   * incompressible when the stored block bypass is enabled.
+   */
+  public static final double DEFAULT_STORED_BYPASS_THRESHOLD = 7.5;
+
+  /** The size in bytes of the buffers of {@link QPLBufferPool#getDefault()}. */
+  public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024;
+
+  /** The number of released buffers {@link QPLBufferPool#getDefault()} keeps for reuse. */
+  public static final int DEFAULT_MAX_POOLED_SEGMENTS = 64;
+
+  /** The default maximum number of calls {@link QPLBatchCompressor} submits together. */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
+  /**
+   * The default time in nanoseconds {@link QPLBatchCompressor} waits for concurrent calls to join a
+   * batch is 20us.
+   */
+  public static final long DEFAULT_BATCH_WINDOW_NANOS = 20_000;
+
+  /**
+   * By default, {@link QPLBufferAllocator#getDefault()} backs buffers of 2MB and more with
+   * transparent huge pages.
+   */
+  public static final boolean DEFAULT_HUGE_PAGES = true;
+
+  /** The number of bytes of released buffers {@link QPLBufferAllocator#getDefault()} keeps. */
+  public static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+
+  /** Selects the NUMA node of the CPU the calling thread runs on at the time of the call. */
+  public static final int CURRENT_NUMA_NODE = -1;
+
+  /** By default, a QPLJob is submitted to the devices of the calling thread's NUMA node. */
+  public static final int DEFAULT_NUMA_NODE = CURRENT_NUMA_NODE;
+
+  /** By default, the operations of a scheduled QPLCompressor are of normal priority. */
+  public static final Priorities DEFAULT_PRIORITY = Priorities.NORMAL;
+
+  /** The number of operations {@link QPLConcurrencyLimiter} admits before receiving feedback. */
+  public static final int DEFAULT_INITIAL_CONCURRENCY = 32;
+
+  /** The highest limit of {@link QPLConcurrencyLimiter}. */
+  public static final int DEFAULT_MAX_CONCURRENCY = 1024;
+
+  /**
+   * By default, {@link QPLConcurrencyLimiter} cuts its limit by 10% when the work queues are busy.
+   */
+  public static final double DEFAULT_CONCURRENCY_BACKOFF_RATIO = 0.9;
+
+  /** By default, a hedged call is hedged once it is slower than 95% of the recent ones. */
+  public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+
+  /** By default, a hedged call waits at least 50 microseconds for the hardware. */
+  public static final long DEFAULT_MIN_HEDGE_DELAY_NANOS = 50_000;
+
+  /** The size of the blocks a bulk compression is split into. */
+  public static final int DEFAULT_BULK_BLOCK_SIZE = 256 * 1024;
+
+  /** The number of blocks a bulk compression keeps in flight on the hardware. */
+  public static final int DEFAULT_BULK_HARDWARE_THREADS = 8;
+
+  /** By default, threads block in the native library while the hardware works. */
+  public static final WaitPolicies DEFAULT_WAIT_POLICY = WaitPolicies.BLOCK;
+
+  /** By default, a parked thread checks the operation at least every 50 microseconds. */
+  public static final long DEFAULT_MAX_POLL_INTERVAL_NANOS = 50_000;
+
+  /** By default, busy work queues are retried immediately. */
+  public static final BackoffPolicies DEFAULT_BACKOFF_POLICY = BackoffPolicies.SPIN;
+
+  /** The default upper bound of the {@link BackoffPolicies#EXPONENTIAL} delay is 1ms. */
+  public static final long DEFAULT_BACKOFF_CAP_NANOS = 1_000_000;
+
+  /** By default, a busy status is surfaced to the caller. */
+  public static final FailoverPolicies DEFAULT_FAILOVER_POLICY = FailoverPolicies.NONE;
+
+  /** By default, a flow processor keeps up to 4 input and 4 output buffers in flight. */
+  public static final int DEFAULT_MAX_BUFFERS_IN_FLIGHT = 4;
+
+  /** The number of input bytes a {@link QPLDeflater} accumulates before compressing them. */
+  public static final int DEFAULT_STREAM_BUFFER_SIZE = 64 * 1024;
+
   static final int CompressionFlags =
       QPLUtils.Flags.QPL_FLAG_FIRST.getId()
           | QPLUtils.Flags.QPL_FLAG_LAST.getId()
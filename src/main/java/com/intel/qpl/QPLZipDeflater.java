@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * A {@link Deflater} that compresses with a {@link QPLDeflater} when the accelerator is available,
+ * and with the JDK implementation otherwise. This is the class the {@link QPLAgent} substitutes for
+ * Deflater; it can also be constructed directly.
+ *
+ * <p>The implementation is chosen at the first call to deflate(): the JDK implementation is used
+ * if the execution path of the agent is not available, or if a preset dictionary, {@link
+ * Deflater#NO_COMPRESSION} or {@link Deflater#HUFFMAN_ONLY} was set, since their output depends on
+ * zlib. The calls are counted in {@link QPLOffloadStatistics} under the call site of the
+ * constructor.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLZipDeflater extends Deflater {
+  private final boolean nowrap;
+  private final QPLOffloadStatistics.Site site;
+  private int level;
+  private int strategy = DEFAULT_STRATEGY;
+  private boolean dictionary = false;
+  private boolean finish = false;
+  // The input given before the implementation is chosen.
+  private ByteBuffer input;
+  private boolean decided = false;
+  private QPLDeflater qpl;
+
+  /** Creates a new compressor with the default compression level and the ZLIB format. */
+  public QPLZipDeflater() {
+    this(DEFAULT_COMPRESSION, false);
+  }
+
+  /**
+   * Creates a new compressor with the ZLIB format.
+   *
+   * @param level the compression level (0-9).
+   */
+  public QPLZipDeflater(int level) {
+    this(level, false);
+  }
+
+  /**
+   * Creates a new compressor.
+   *
+   * @param level the compression level (0-9).
+   * @param nowrap if true, the output is a raw deflate stream without the ZLIB header and checksum.
+   */
+  public QPLZipDeflater(int level, boolean nowrap) {
+    super(level, nowrap);
+    this.level = level;
+    this.nowrap = nowrap;
+    this.site = QPLOffloadStatistics.callSite();
+  }
+
+  /**
+   * Returns true if the data is compressed with a {@link QPLDeflater}. The implementation is chosen
+   * at the first call to deflate(), this returns false before.
+   *
+   * @return true if the data is compressed on the accelerator.
+   */
+  public boolean isOffloaded() {
+    return qpl != null;
+  }
+
+  private void decide() {
+    if (decided) {
+      return;
+    }
+    decided = true;
+    QPLUtils.ExecutionPaths path = QPLAgent.executionPath();
+    if (path != null && !dictionary && level != NO_COMPRESSION && strategy != HUFFMAN_ONLY) {
+      try {
+        qpl = new QPLDeflater(path, level, nowrap, QPLUtils.DEFAULT_STREAM_BUFFER_SIZE);
+      } catch (QPLException e) {
+        qpl = null;
+      }
+    }
+    if (qpl != null) {
+      // Frees the zlib stream, the flag read by ZipOutputStream is still kept.
+      super.end();
+      if (input != null) {
+        qpl.setInput(input);
+      }
+      if (finish) {
+        qpl.finish();
+      }
+    } else if (input != null) {
+      super.setInput(input);
+    }
+    input = null;
+  }
+
+  @Override
+  public void setInput(byte[] input, int off, int len) {
+    if (off < 0 || len < 0 || off > input.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    setInput(ByteBuffer.wrap(input, off, len));
+  }
+
+  @Override
+  public void setInput(byte[] input) {
+    setInput(input, 0, input.length);
+  }
+
+  @Override
+  public void setInput(ByteBuffer input) {
+    if (!decided) {
+      this.input = input;
+    } else if (qpl != null) {
+      qpl.setInput(input);
+    } else {
+      super.setInput(input);
+    }
+  }
+
+  @Override
+  public void setDictionary(byte[] dictionary, int off, int len) {
+    checkDictionary();
+    super.setDictionary(dictionary, off, len);
+    this.dictionary = true;
+  }
+
+  @Override
+  public void setDictionary(byte[] dictionary) {
+    setDictionary(dictionary, 0, dictionary.length);
+  }
+
+  @Override
+  public void setDictionary(ByteBuffer dictionary) {
+    checkDictionary();
+    super.setDictionary(dictionary);
+    this.dictionary = true;
+  }
+
+  private void checkDictionary() {
+    if (qpl != null) {
+      throw new UnsupportedOperationException(
+          "Preset dictionaries are not supported once the compression is offloaded");
+    }
+  }
+
+  @Override
+  public void setStrategy(int strategy) {
+    if (qpl != null) {
+      qpl.setStrategy(strategy);
+    } else {
+      super.setStrategy(strategy);
+    }
+    this.strategy = strategy;
+  }
+
+  @Override
+  public void setLevel(int level) {
+    if (qpl != null) {
+      qpl.setLevel(level);
+    } else {
+      super.setLevel(level);
+    }
+    this.level = level;
+  }
+
+  @Override
+  public boolean needsInput() {
+    if (!decided) {
+      return input == null || !input.hasRemaining();
+    }
+    return qpl != null ? qpl.needsInput() : super.needsInput();
+  }
+
+  @Override
+  public void finish() {
+    super.finish();
+    if (qpl != null) {
+      qpl.finish();
+    }
+    finish = true;
+  }
+
+  @Override
+  public boolean finished() {
+    if (!decided) {
+      return false;
+    }
+    return qpl != null ? qpl.finished() : super.finished();
+  }
+
+  @Override
+  public int deflate(byte[] output, int off, int len) {
+    return deflate(output, off, len, NO_FLUSH);
+  }
+
+  @Override
+  public int deflate(byte[] output) {
+    return deflate(output, 0, output.length, NO_FLUSH);
+  }
+
+  @Override
+  public int deflate(byte[] output, int off, int len, int flush) {
+    if (off < 0 || len < 0 || off > output.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    return deflate(ByteBuffer.wrap(output, off, len), flush);
+  }
+
+  @Override
+  public int deflate(ByteBuffer output) {
+    return deflate(output, NO_FLUSH);
+  }
+
+  @Override
+  public int deflate(ByteBuffer output, int flush) {
+    decide();
+    long read = getBytesRead();
+    int length;
+    if (qpl != null) {
+      length = qpl.deflate(output, flush);
+    } else {
+      length = super.deflate(output, flush);
+    }
+    site.record(qpl != null, getBytesRead() - read);
+    return length;
+  }
+
+  @Override
+  public int getAdler() {
+    if (!decided) {
+      return 1;
+    }
+    return qpl != null ? qpl.getAdler() : super.getAdler();
+  }
+
+  @Override
+  public int getTotalIn() {
+    return (int) getBytesRead();
+  }
+
+  @Override
+  public long getBytesRead() {
+    if (!decided) {
+      return 0;
+    }
+    return qpl != null ? qpl.getBytesRead() : super.getBytesRead();
+  }
+
+  @Override
+  public int getTotalOut() {
+    return (int) getBytesWritten();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    if (!decided) {
+      return 0;
+    }
+    return qpl != null ? qpl.getBytesWritten() : super.getBytesWritten();
+  }
+
+  @Override
+  public void reset() {
+    if (qpl != null) {
+      qpl.reset();
+    } else {
+      super.reset();
+    }
+    input = null;
+    finish = false;
+  }
+
+  @Override
+  public void end() {
+    if (qpl != null) {
+      qpl.end();
+    }
+    // The calls after end() go to the JDK implementation, which throws.
+    decided = true;
+    input = null;
+    super.end();
+  }
+}
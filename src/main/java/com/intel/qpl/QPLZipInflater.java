@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An {@link Inflater} that decompresses with a {@link QPLInflater} when the accelerator is
+ * available, and with the JDK implementation otherwise. This is the class the {@link QPLAgent}
+ * substitutes for Inflater; it can also be constructed directly.
+ *
+ * <p>The implementation is chosen at the first call to inflate(). If the accelerator rejects the
+ * first input before producing any output, for instance because the stream needs a preset
+ * dictionary, the decompression starts over with the JDK implementation. The calls are counted in
+ * {@link QPLOffloadStatistics} under the call site of the constructor.
+ *
+ * <p>This class is not thread safe.
+ */
+public class QPLZipInflater extends Inflater {
+  private final boolean nowrap;
+  private final QPLOffloadStatistics.Site site;
+  private ByteBuffer input;
+  // The position of the input at the first call, while the JDK implementation can still take over.
+  private int retryPosition = -1;
+  private boolean decided = false;
+  private boolean committed = false;
+  private QPLInflater qpl;
+
+  /** Creates a new decompressor for the ZLIB format. */
+  public QPLZipInflater() {
+    this(false);
+  }
+
+  /**
+   * Creates a new decompressor.
+   *
+   * @param nowrap if true, the input is a raw deflate stream without the ZLIB header and checksum.
+   */
+  public QPLZipInflater(boolean nowrap) {
+    super(nowrap);
+    this.nowrap = nowrap;
+    this.site = QPLOffloadStatistics.callSite();
+  }
+
+  /**
+   * Returns true if the data is decompressed with a {@link QPLInflater}. The implementation is
+   * chosen at the first call to inflate(), this returns false before.
+   *
+   * @return true if the data is decompressed on the accelerator.
+   */
+  public boolean isOffloaded() {
+    return qpl != null;
+  }
+
+  private void decide() {
+    if (decided) {
+      return;
+    }
+    decided = true;
+    QPLUtils.ExecutionPaths path = QPLAgent.executionPath();
+    if (path != null) {
+      try {
+        qpl = new QPLInflater(path, nowrap);
+      } catch (QPLException e) {
+        qpl = null;
+      }
+    }
+    if (qpl != null) {
+      if (input != null) {
+        qpl.setInput(input);
+        retryPosition = input.position();
+      } else {
+        commit();
+      }
+    } else {
+      fallback();
+    }
+  }
+
+  // Hands the input over to the JDK implementation.
+  private void fallback() {
+    if (qpl != null) {
+      qpl.end();
+      qpl = null;
+    }
+    if (input != null) {
+      if (retryPosition >= 0) {
+        input.position(retryPosition);
+      }
+      super.setInput(input);
+    }
+    input = null;
+    retryPosition = -1;
+  }
+
+  // Keeps the accelerator once the JDK implementation can no longer take over, and frees zlib.
+  private void commit() {
+    if (!committed) {
+      committed = true;
+      input = null;
+      retryPosition = -1;
+      super.end();
+    }
+  }
+
+  @Override
+  public void setInput(byte[] input, int off, int len) {
+    if (off < 0 || len < 0 || off > input.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    setInput(ByteBuffer.wrap(input, off, len));
+  }
+
+  @Override
+  public void setInput(byte[] input) {
+    setInput(input, 0, input.length);
+  }
+
+  @Override
+  public void setInput(ByteBuffer input) {
+    if (!decided) {
+      this.input = input;
+    } else if (qpl != null) {
+      qpl.setInput(input);
+      commit();
+    } else {
+      super.setInput(input);
+    }
+  }
+
+  @Override
+  public void setDictionary(byte[] dictionary, int off, int len) {
+    if (qpl != null) {
+      qpl.setDictionary(dictionary, off, len);
+    } else {
+      super.setDictionary(dictionary, off, len);
+    }
+  }
+
+  @Override
+  public void setDictionary(byte[] dictionary) {
+    setDictionary(dictionary, 0, dictionary.length);
+  }
+
+  @Override
+  public void setDictionary(ByteBuffer dictionary) {
+    if (qpl != null) {
+      throw new UnsupportedOperationException("Preset dictionaries are not supported");
+    }
+    super.setDictionary(dictionary);
+  }
+
+  @Override
+  public int getRemaining() {
+    if (!decided) {
+      return input == null ? 0 : input.remaining();
+    }
+    return qpl != null ? qpl.getRemaining() : super.getRemaining();
+  }
+
+  @Override
+  public boolean needsInput() {
+    if (!decided) {
+      return input == null || !input.hasRemaining();
+    }
+    return qpl != null ? qpl.needsInput() : super.needsInput();
+  }
+
+  @Override
+  public boolean needsDictionary() {
+    return decided && qpl == null && super.needsDictionary();
+  }
+
+  @Override
+  public boolean finished() {
+    if (!decided) {
+      return false;
+    }
+    return qpl != null ? qpl.finished() : super.finished();
+  }
+
+  @Override
+  public int inflate(byte[] output, int off, int len) throws DataFormatException {
+    if (off < 0 || len < 0 || off > output.length - len) {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    return inflate(ByteBuffer.wrap(output, off, len));
+  }
+
+  @Override
+  public int inflate(byte[] output) throws DataFormatException {
+    return inflate(output, 0, output.length);
+  }
+
+  @Override
+  public int inflate(ByteBuffer output) throws DataFormatException {
+    decide();
+    int length;
+    if (qpl != null) {
+      try {
+        length = qpl.inflate(output);
+      } catch (DataFormatException e) {
+        if (committed || qpl.getBytesWritten() > 0) {
+          throw e;
+        }
+        fallback();
+        length = super.inflate(output);
+      }
+      if (qpl != null && length > 0) {
+        commit();
+      }
+    } else {
+      length = super.inflate(output);
+    }
+    site.record(qpl != null, length);
+    return length;
+  }
+
+  @Override
+  public int getAdler() {
+    if (!decided) {
+      return 1;
+    }
+    return qpl != null ? qpl.getAdler() : super.getAdler();
+  }
+
+  @Override
+  public int getTotalIn() {
+    return (int) getBytesRead();
+  }
+
+  @Override
+  public long getBytesRead() {
+    if (!decided) {
+      return 0;
+    }
+    return qpl != null ? qpl.getBytesRead() : super.getBytesRead();
+  }
+
+  @Override
+  public int getTotalOut() {
+    return (int) getBytesWritten();
+  }
+
+  @Override
+  public long getBytesWritten() {
+    if (!decided) {
+      return 0;
+    }
+    return qpl != null ? qpl.getBytesWritten() : super.getBytesWritten();
+  }
+
+  @Override
+  public void reset() {
+    if (qpl != null) {
+      commit();
+      qpl.reset();
+    } else {
+      super.reset();
+    }
+    input = null;
+    retryPosition = -1;
+  }
+
+  @Override
+  public void end() {
+    if (qpl != null) {
+      qpl.end();
+    }
+    // The calls after end() go to the JDK implementation, which throws.
+    decided = true;
+    input = null;
+    super.end();
+  }
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A {@link ZipInputStream} that decompresses the entries with a {@link QPLZipInflater}. This is the
+ * class the {@link QPLAgent} substitutes for ZipInputStream; it can also be constructed directly.
+ */
+public class QPLZipInputStream extends ZipInputStream {
+  /**
+   * Creates a new ZIP input stream.
+   *
+   * @param in the actual input stream.
+   * @param charset the charset used to decode the entry names and comments.
+   */
+  public QPLZipInputStream(InputStream in, Charset charset) {
+    super(in, charset);
+    // The stream ends its default inflater on close, so it ends the replacement as well.
+    inf.end();
+    inf = new QPLZipInflater(true);
+  }
+
+  /**
+   * Creates a new ZIP input stream that decodes the entry names and comments in UTF-8.
+   *
+   * @param in the actual input stream.
+   */
+  public QPLZipInputStream(InputStream in) {
+    this(in, StandardCharsets.UTF_8);
+  }
+}
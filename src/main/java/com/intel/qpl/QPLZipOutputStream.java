@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A {@link ZipOutputStream} that compresses the entries with a {@link QPLZipDeflater}. This is the
+ * class the {@link QPLAgent} substitutes for ZipOutputStream; it can also be constructed directly.
+ */
+public class QPLZipOutputStream extends ZipOutputStream {
+  /**
+   * Creates a new ZIP output stream.
+   *
+   * @param out the actual output stream.
+   * @param charset the charset to be used to encode the entry names and comments.
+   */
+  public QPLZipOutputStream(OutputStream out, Charset charset) {
+    super(out, charset);
+    // The stream ends its default deflater on close, so it ends the replacement as well.
+    def.end();
+    def = new QPLZipDeflater(Deflater.DEFAULT_COMPRESSION, true);
+  }
+
+  /**
+   * Creates a new ZIP output stream that encodes the entry names and comments in UTF-8.
+   *
+   * @param out the actual output stream.
+   */
+  public QPLZipOutputStream(OutputStream out) {
+    this(out, StandardCharsets.UTF_8);
+  }
+}
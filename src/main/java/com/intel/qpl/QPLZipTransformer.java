@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Rewrites the constructor calls of {@link Deflater}, {@link Inflater}, {@link GZIPOutputStream},
+ * {@link GZIPInputStream}, {@link ZipOutputStream} and {@link ZipInputStream} in a class file into
+ * constructor calls of their QPL subclasses, see {@link QPLAgent}.
+ *
+ * <p>Only the operands of the 'new' and 'invokespecial' instructions and of the constructor method
+ * handles are changed, to constant pool entries appended for the subclasses, so the code keeps its
+ * layout and its stack map frames. Since the subclasses are assignable to the JDK classes, the rest
+ * of the code is unchanged. The classes of the JDK and of this library, the subclasses of the JDK
+ * classes, and the classes whose class loader does not see this library are left as they are.
+ *
+ * <p>This class is thread safe.
+ */
+public class QPLZipTransformer implements ClassFileTransformer {
+  private static final Class<?>[][] REPLACEMENTS = {
+    {Deflater.class, QPLZipDeflater.class},
+    {Inflater.class, QPLZipInflater.class},
+    {GZIPOutputStream.class, QPLGZIPOutputStream.class},
+    {GZIPInputStream.class, QPLGZIPInputStream.class},
+    {ZipOutputStream.class, QPLZipOutputStream.class},
+    {ZipInputStream.class, QPLZipInputStream.class}
+  };
+  private static final String[] SKIPPED_PACKAGES = {"java/", "javax/", "jdk/", "sun/", "com/sun/"};
+  private static final String LIBRARY_PACKAGE = "com/intel/qpl/";
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int REF_NEW_INVOKE_SPECIAL = 8;
+  private static final int OP_NEW = 0xbb;
+  private static final int OP_INVOKESPECIAL = 0xb7;
+
+  // The length of each instruction, 0 for the variable length ones and -1 for the invalid ones.
+  private static final int[] INSTRUCTION_LENGTHS = new int[256];
+
+  static {
+    Arrays.fill(INSTRUCTION_LENGTHS, 1);
+    Arrays.fill(INSTRUCTION_LENGTHS, 0xca, 256, -1);
+    for (int op : new int[] {0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39}) {
+      INSTRUCTION_LENGTHS[op] = 2;
+    }
+    INSTRUCTION_LENGTHS[0x3a] = 2; // astore
+    INSTRUCTION_LENGTHS[0xa9] = 2; // ret
+    INSTRUCTION_LENGTHS[0xbc] = 2; // newarray
+    for (int op : new int[] {0x11, 0x13, 0x14, 0x84, 0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7}) {
+      INSTRUCTION_LENGTHS[op] = 3;
+    }
+    Arrays.fill(INSTRUCTION_LENGTHS, 0x99, 0xa9, 3); // branches
+    Arrays.fill(INSTRUCTION_LENGTHS, 0xb2, 0xb9, 3); // fields and invocations
+    INSTRUCTION_LENGTHS[0xc5] = 4; // multianewarray
+    for (int op : new int[] {0xb9, 0xba, 0xc8, 0xc9}) {
+      INSTRUCTION_LENGTHS[op] = 5;
+    }
+    INSTRUCTION_LENGTHS[0xaa] = 0; // tableswitch
+    INSTRUCTION_LENGTHS[0xab] = 0; // lookupswitch
+    INSTRUCTION_LENGTHS[0xc4] = 0; // wide
+  }
+
+  // The internal names of the JDK classes, of their replacements, and the constructor descriptors
+  // of the replacements.
+  private static final String[] TARGETS = new String[REPLACEMENTS.length];
+  private static final String[] SUBSTITUTES = new String[REPLACEMENTS.length];
+  private static final List<Set<String>> CONSTRUCTORS = new ArrayList<>();
+
+  static {
+    for (int i = 0; i < REPLACEMENTS.length; i++) {
+      TARGETS[i] = internalName(REPLACEMENTS[i][0]);
+      SUBSTITUTES[i] = internalName(REPLACEMENTS[i][1]);
+      Set<String> descriptors = new HashSet<>();
+      for (Constructor<?> constructor : REPLACEMENTS[i][1].getConstructors()) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> type : constructor.getParameterTypes()) {
+          descriptor.append(descriptor(type));
+        }
+        descriptors.add(descriptor.append(")V").toString());
+      }
+      CONSTRUCTORS.add(descriptors);
+    }
+  }
+
+  private final Map<ClassLoader, Boolean> visibleLoaders = new WeakHashMap<>();
+
+  /** Creates a new transformer. */
+  public QPLZipTransformer() {}
+
+  private static String internalName(Class<?> type) {
+    return type.getName().replace('.', '/');
+  }
+
+  private static String descriptor(Class<?> type) {
+    if (type.isArray()) {
+      return internalName(type);
+    }
+    if (!type.isPrimitive()) {
+      return "L" + internalName(type) + ";";
+    }
+    switch (type.getName()) {
+      case "boolean":
+        return "Z";
+      case "byte":
+        return "B";
+      case "char":
+        return "C";
+      case "short":
+        return "S";
+      case "int":
+        return "I";
+      case "long":
+        return "J";
+      case "float":
+        return "F";
+      case "double":
+        return "D";
+      default:
+        return "V";
+    }
+  }
+
+  @Override
+  public byte[] transform(
+      ClassLoader loader,
+      String className,
+      Class<?> classBeingRedefined,
+      ProtectionDomain protectionDomain,
+      byte[] classfileBuffer) {
+    if (loader == null || className == null || classBeingRedefined != null) {
+      return null;
+    }
+    for (String prefix : SKIPPED_PACKAGES) {
+      if (className.startsWith(prefix)) {
+        return null;
+      }
+    }
+    if (className.startsWith(LIBRARY_PACKAGE)
+        && className.indexOf('/', LIBRARY_PACKAGE.length()) < 0) {
+      return null;
+    }
+    byte[] rewritten;
+    try {
+      rewritten = rewrite(classfileBuffer);
+    } catch (RuntimeException e) {
+      // A class file this parser does not understand is left as it is.
+      return null;
+    }
+    return rewritten != null && isVisible(loader) ? rewritten : null;
+  }
+
+  private boolean isVisible(ClassLoader loader) {
+    synchronized (visibleLoaders) {
+      return visibleLoaders.computeIfAbsent(loader, QPLZipTransformer::loadsReplacements);
+    }
+  }
+
+  private static boolean loadsReplacements(ClassLoader loader) {
+    try {
+      for (Class<?>[] replacement : REPLACEMENTS) {
+        if (Class.forName(replacement[1].getName(), false, loader) != replacement[1]) {
+          return false;
+        }
+      }
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  private static int u2(byte[] b, int pos) {
+    return ((b[pos] & 0xff) << 8) | (b[pos + 1] & 0xff);
+  }
+
+  private static int u4(byte[] b, int pos) {
+    return (u2(b, pos) << 16) | u2(b, pos + 2);
+  }
+
+  private static void putU2(byte[] b, int pos, int value) {
+    b[pos] = (byte) (value >>> 8);
+    b[pos + 1] = (byte) value;
+  }
+
+  private static boolean utf8Equals(byte[] b, int[] offsets, int index, String value) {
+    int pos = offsets[index];
+    if ((b[pos] & 0xff) != CONSTANT_UTF8 || u2(b, pos + 1) != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (b[pos + 3 + i] != (byte) value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the class file with the constructor calls of the JDK classes rewritten, or null if it
+   * has none.
+   *
+   * @param b the class file.
+   * @return the rewritten class file, or null.
+   * @throws IndexOutOfBoundsException if the class file is truncated.
+   */
+  static byte[] rewrite(byte[] b) {
+    if (u4(b, 0) != 0xcafebabe) {
+      return null;
+    }
+    int count = u2(b, 8);
+    int[] offsets = new int[count];
+    int pos = 10;
+    for (int i = 1; i < count; i++) {
+      offsets[i] = pos;
+      switch (b[pos] & 0xff) {
+        case CONSTANT_UTF8:
+          pos += 3 + u2(b, pos + 1);
+          break;
+        case 3: // Integer
+        case 4: // Float
+        case 9: // Fieldref
+        case CONSTANT_METHODREF:
+        case 11: // InterfaceMethodref
+        case CONSTANT_NAME_AND_TYPE:
+        case 17: // Dynamic
+        case 18: // InvokeDynamic
+          pos += 5;
+          break;
+        case 5: // Long
+        case 6: // Double
+          pos += 9;
+          i++;
+          break;
+        case CONSTANT_CLASS:
+        case 8: // String
+        case 16: // MethodType
+        case 19: // Module
+        case 20: // Package
+          pos += 3;
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          pos += 4;
+          break;
+        default:
+          return null;
+      }
+    }
+    int constantsEnd = pos;
+
+    // The Class entries of the JDK classes, by constant pool index.
+    Map<Integer, Integer> targetClasses = new HashMap<>();
+    for (int i = 1; i < count; i++) {
+      if ((b[offsets[i]] & 0xff) == CONSTANT_CLASS) {
+        int name = u2(b, offsets[i] + 1);
+        for (int t = 0; t < TARGETS.length; t++) {
+          if (utf8Equals(b, offsets, name, TARGETS[t])) {
+            targetClasses.put(i, t);
+          }
+        }
+      }
+    }
+    if (targetClasses.isEmpty() || targetClasses.containsKey(u2(b, constantsEnd + 4))) {
+      // A subclass calls the constructor of its JDK superclass, which must not be replaced.
+      return null;
+    }
+
+    // The constructor Methodref entries of the JDK classes, and the classes that have a
+    // constructor the replacement does not declare.
+    Map<Integer, Integer> targetConstructors = new HashMap<>();
+    Set<Integer> unsupported = new HashSet<>();
+    for (int i = 1; i < count; i++) {
+      int entry = offsets[i];
+      if ((b[entry] & 0xff) != CONSTANT_METHODREF) {
+        continue;
+      }
+      Integer t = targetClasses.get(u2(b, entry + 1));
+      int nameAndType = offsets[u2(b, entry + 3)];
+      if (t == null || !utf8Equals(b, offsets, u2(b, nameAndType + 1), "<init>")) {
+        continue;
+      }
+      int descriptor = offsets[u2(b, nameAndType + 3)];
+      String value =
+          new String(b, descriptor + 3, u2(b, descriptor + 1), StandardCharsets.ISO_8859_1);
+      if (CONSTRUCTORS.get(t).contains(value)) {
+        targetConstructors.put(i, t);
+      } else {
+        unsupported.add(t);
+      }
+    }
+    targetClasses.values().removeAll(unsupported);
+    targetConstructors.values().removeAll(unsupported);
+    if (targetClasses.isEmpty()) {
+      return null;
+    }
+
+    // Appends the Utf8 and Class entries of the replacements, and their constructor Methodrefs.
+    ByteArrayOutputStream added = new ByteArrayOutputStream();
+    int next = count;
+    Map<Integer, Integer> classIndexes = new HashMap<>();
+    Map<Integer, Integer> newClasses = new HashMap<>();
+    for (Map.Entry<Integer, Integer> target : targetClasses.entrySet()) {
+      Integer index = classIndexes.get(target.getValue());
+      if (index == null) {
+        byte[] name = SUBSTITUTES[target.getValue()].getBytes(StandardCharsets.ISO_8859_1);
+        added.write(CONSTANT_UTF8);
+        added.write(name.length >>> 8);
+        added.write(name.length);
+        added.write(name, 0, name.length);
+        added.write(CONSTANT_CLASS);
+        added.write(next >>> 8);
+        added.write(next);
+        index = next + 1;
+        next += 2;
+        classIndexes.put(target.getValue(), index);
+      }
+      newClasses.put(target.getKey(), index);
+    }
+    Map<Integer, Integer> newConstructors = new HashMap<>();
+    for (Map.Entry<Integer, Integer> constructor : targetConstructors.entrySet()) {
+      int classIndex = classIndexes.get(constructor.getValue());
+      int nameAndType = u2(b, offsets[constructor.getKey()] + 3);
+      added.write(CONSTANT_METHODREF);
+      added.write(classIndex >>> 8);
+      added.write(classIndex);
+      added.write(nameAndType >>> 8);
+      added.write(nameAndType);
+      newConstructors.put(constructor.getKey(), next++);
+    }
+    if (next > 0xffff) {
+      return null;
+    }
+
+    byte[] patched = b.clone();
+    boolean changed = false;
+    for (int i = 1; i < count; i++) {
+      int entry = offsets[i];
+      if ((b[entry] & 0xff) == CONSTANT_METHOD_HANDLE
+          && b[entry + 1] == REF_NEW_INVOKE_SPECIAL
+          && newConstructors.containsKey(u2(b, entry + 2))) {
+        putU2(patched, entry + 2, newConstructors.get(u2(b, entry + 2)));
+        changed = true;
+      }
+    }
+
+    // Skips the class header, the interfaces and the fields.
+    pos = constantsEnd + 6;
+    pos += 2 + 2 * u2(b, pos);
+    int fields = u2(b, pos);
+    pos += 2;
+    for (int i = 0; i < fields; i++) {
+      pos = skipAttributes(b, pos + 6);
+    }
+    int methods = u2(b, pos);
+    pos += 2;
+    for (int i = 0; i < methods; i++) {
+      int attributes = u2(b, pos + 6);
+      pos += 8;
+      for (int a = 0; a < attributes; a++) {
+        int length = u4(b, pos + 2);
+        if (utf8Equals(b, offsets, u2(b, pos), "Code")) {
+          changed |= patchCode(b, patched, pos + 14, u4(b, pos + 10), newClasses, newConstructors);
+        }
+        pos += 6 + length;
+      }
+    }
+    if (!changed) {
+      return null;
+    }
+
+    byte[] result = new byte[b.length + added.size()];
+    System.arraycopy(patched, 0, result, 0, constantsEnd);
+    putU2(result, 8, next);
+    byte[] entries = added.toByteArray();
+    System.arraycopy(entries, 0, result, constantsEnd, entries.length);
+    System.arraycopy(
+        patched, constantsEnd, result, constantsEnd + entries.length, b.length - constantsEnd);
+    return result;
+  }
+
+  private static int skipAttributes(byte[] b, int pos) {
+    int attributes = u2(b, pos);
+    pos += 2;
+    for (int i = 0; i < attributes; i++) {
+      pos += 6 + u4(b, pos + 2);
+    }
+    return pos;
+  }
+
+  // Patches the 'new' and 'invokespecial' instructions of one method, returns true if any changed.
+  private static boolean patchCode(
+      byte[] b,
+      byte[] patched,
+      int start,
+      int length,
+      Map<Integer, Integer> newClasses,
+      Map<Integer, Integer> newConstructors) {
+    boolean changed = false;
+    int end = start + length;
+    int pc = start;
+    while (pc < end) {
+      int op = b[pc] & 0xff;
+      int size = INSTRUCTION_LENGTHS[op];
+      if (op == OP_NEW || op == OP_INVOKESPECIAL) {
+        Map<Integer, Integer> replacements = op == OP_NEW ? newClasses : newConstructors;
+        Integer replacement = replacements.get(u2(b, pc + 1));
+        if (replacement != null) {
+          putU2(patched, pc + 1, replacement);
+          changed = true;
+        }
+      } else if (op == 0xaa || op == 0xab) {
+        // The operands of the switches are aligned on 4 bytes from the start of the code.
+        int operands = pc + 1 + ((4 - ((pc + 1 - start) & 3)) & 3);
+        if (op == 0xaa) {
+          size = operands + 12 + 4 * (u4(b, operands + 8) - u4(b, operands + 4) + 1) - pc;
+        } else {
+          size = operands + 8 + 8 * u4(b, operands + 4) - pc;
+        }
+      } else if (op == 0xc4) {
+        size = (b[pc + 1] & 0xff) == 0x84 ? 6 : 4;
+      } else if (size < 0) {
+        throw new IllegalArgumentException("Invalid opcode " + op);
+      }
+      pc += size;
+    }
+    return changed;
+  }
+}
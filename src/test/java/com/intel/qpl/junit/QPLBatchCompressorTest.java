@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import com.intel.qpl.QPLBatchCompressor;
+import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLOutputOverflowException;
+import com.intel.qpl.QPLUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class QPLBatchCompressorTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.ExecutionPaths.class)
+  public void testConcurrentCompress(QPLUtils.ExecutionPaths ePath) throws Exception {
+    assumeFalse(QPLCompressorTest.shouldSkip(ePath));
+    int threads = 16;
+    int calls = 200;
+    QPLBatchCompressor batchCompressor = new QPLBatchCompressor(ePath, 1, 0, 8, 1_000_000);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  QPLCompressor decompressor =
+                      new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+                  for (int i = 0; i < calls; i++) {
+                    byte[] src = getSrcArray(100 + RANDOM.nextInt(8192));
+                    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(src.length)];
+                    int compressedSize = batchCompressor.compress(src, compressed);
+                    byte[] result = new byte[src.length];
+                    decompressor.decompress(compressed, 0, compressedSize, result, 0, src.length);
+                    assertArrayEquals(src, result);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(threads * calls, batchCompressor.getBatchedRequestCount());
+    assertTrue(batchCompressor.getBatchCount() <= threads * calls);
+    batchCompressor.doClear();
+  }
+
+  @Test
+  public void testOverflowAndLargeSource() {
+    QPLBatchCompressor batchCompressor =
+        new QPLBatchCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0, 4, 0);
+    byte[] src = getSrcArray(4096);
+    assertThrows(
+        QPLOutputOverflowException.class, () -> batchCompressor.compress(src, new byte[16]));
+
+    byte[] large = getSrcArray(4 * 1024 * 1024);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(large.length)];
+    int compressedSize = batchCompressor.compress(large, compressed);
+    byte[] result = new byte[large.length];
+    new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0)
+        .decompress(compressed, 0, compressedSize, result, 0, result.length);
+    assertArrayEquals(large, result);
+  }
+
+  @Test
+  public void testWrongParameters() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new QPLBatchCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0, 0, 0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new QPLBatchCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0, 1, -1));
+  }
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLBufferAllocator;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class QPLBufferAllocatorTest {
+  @ParameterizedTest
+  @ValueSource(ints = {1, 1000, 4096, 65537, 4 * 1024 * 1024})
+  public void testAllocate(int size) {
+    QPLBufferAllocator allocator = new QPLBufferAllocator(QPLBufferAllocator.LOCAL_NODE, true, 0);
+    ByteBuffer buffer = allocator.allocate(size);
+    assertTrue(buffer.isDirect());
+    assertEquals(0, buffer.position());
+    assertEquals(size, buffer.capacity());
+    assertEquals(size, buffer.limit());
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) 7);
+    }
+    assertEquals(7, buffer.get(size - 1));
+    assertTrue(allocator.getMappedBytes() >= size);
+
+    allocator.release(buffer);
+    assertEquals(0, allocator.getMappedBytes());
+  }
+
+  @Test
+  public void testReuseSizeClass() {
+    QPLBufferAllocator allocator = new QPLBufferAllocator(0, false, 1024 * 1024);
+    ByteBuffer buffer = allocator.allocate(3000);
+    allocator.release(buffer);
+    assertEquals(4096, allocator.getPooledBytes());
+
+    ByteBuffer reused = allocator.allocate(4000);
+    assertEquals(4000, reused.capacity());
+    assertEquals(0, allocator.getPooledBytes());
+    assertEquals(4096, allocator.getMappedBytes());
+    allocator.release(reused);
+  }
+
+  @Test
+  public void testWrongRelease() {
+    QPLBufferAllocator allocator = QPLBufferAllocator.getDefault();
+    ByteBuffer buffer = allocator.allocate(100);
+    allocator.release(buffer);
+    assertThrows(IllegalStateException.class, () -> allocator.release(buffer));
+    assertThrows(IllegalArgumentException.class, () -> allocator.release(ByteBuffer.allocate(100)));
+    assertThrows(
+        IllegalArgumentException.class, () -> allocator.release(ByteBuffer.allocateDirect(100)));
+  }
+
+  @Test
+  public void testWrongParameters() {
+    assertThrows(IllegalArgumentException.class, () -> new QPLBufferAllocator(-2, false, 0));
+    assertThrows(IllegalArgumentException.class, () -> new QPLBufferAllocator(0, false, -1));
+    assertThrows(IllegalArgumentException.class, () -> QPLBufferAllocator.getDefault().allocate(0));
+  }
+}
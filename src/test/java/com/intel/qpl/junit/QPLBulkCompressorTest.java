@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.intel.qpl.QPLBulkCompressor;
+import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLFrame;
+import com.intel.qpl.QPLOutputOverflowException;
+import com.intel.qpl.QPLUtils;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+public class QPLBulkCompressorTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    QPLBulkCompressor bulk = new QPLBulkCompressor(64 * 1024, 2, 2, 1, 0, executor);
+    try {
+      for (int len : new int[] {1, 64 * 1024, 64 * 1024 + 1, 3 * 1024 * 1024 + 17}) {
+        byte[] src = getSrcArray(len);
+        byte[] compressed = new byte[bulk.maxCompressedLength(len) + 10];
+        int compressedSize =
+            bulk.compress(src, 0, len, compressed, 10, compressed.length - 10, true);
+        assertTrue(compressedSize <= bulk.maxCompressedLength(len));
+        byte[] result = new byte[len];
+        assertEquals(len, bulk.decompress(compressed, 10, compressedSize, result, 0, len));
+        assertArrayEquals(src, result);
+      }
+      assertTrue(bulk.getHardwareBlockCount() + bulk.getSoftwareBlockCount() > 0);
+      assertEquals(4, bulk.getHardwareThreads() + bulk.getSoftwareThreads());
+    } finally {
+      bulk.doClear();
+      executor.shutdown();
+    }
+  }
+
+  // Sets the measured compression rates of one worker of each side, in bytes per nanosecond.
+  private static void setRates(QPLBulkCompressor bulk, double hardwareRate, double softwareRate)
+      throws ReflectiveOperationException {
+    Field field = QPLBulkCompressor.class.getDeclaredField("compressThroughput");
+    field.setAccessible(true);
+    Object throughput = field.get(bulk);
+    Field hardware = throughput.getClass().getDeclaredField("hardwareRate");
+    Field software = throughput.getClass().getDeclaredField("softwareRate");
+    hardware.setAccessible(true);
+    software.setAccessible(true);
+    synchronized (throughput) {
+      hardware.setDouble(throughput, hardwareRate);
+      software.setDouble(throughput, softwareRate);
+    }
+  }
+
+  private static void runAll(List<Runnable> tasks) throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (Runnable task : tasks) {
+      Thread thread = new Thread(task);
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  @Test
+  public void testSkewedRates() throws ReflectiveOperationException {
+    int blockSize = 64 * 1024;
+    int hardwareThreads = 2;
+    int softwareThreads = 2;
+    List<Runnable> tasks = new ArrayList<>();
+    QPLBulkCompressor[] holder = new QPLBulkCompressor[1];
+    // Runs the software workers first, then, once they are gone, the hardware workers with the
+    // rates reversed, so that each side expects the other one to compress the remaining blocks.
+    Executor executor =
+        task -> {
+          tasks.add(task);
+          if (tasks.size() < hardwareThreads + softwareThreads) {
+            return;
+          }
+          List<Runnable> hardwareTasks = new ArrayList<>(tasks.subList(0, hardwareThreads));
+          List<Runnable> softwareTasks =
+              new ArrayList<>(tasks.subList(hardwareThreads, tasks.size()));
+          tasks.clear();
+          new Thread(
+                  () -> {
+                    try {
+                      runAll(softwareTasks);
+                      setRates(holder[0], 1e-6, 1e6);
+                    } catch (ReflectiveOperationException | InterruptedException e) {
+                      throw new AssertionError(e);
+                    } finally {
+                      hardwareTasks.forEach(t -> new Thread(t).start());
+                    }
+                  })
+              .start();
+        };
+    QPLBulkCompressor bulk =
+        new QPLBulkCompressor(blockSize, hardwareThreads, softwareThreads, 1, 0, executor);
+    holder[0] = bulk;
+    assumeTrue(bulk.getHardwareThreads() == hardwareThreads);
+    try {
+      byte[] src = getSrcArray(8 * blockSize);
+      byte[] compressed = new byte[bulk.maxCompressedLength(src.length)];
+      setRates(bulk, 1e6, 1e-6);
+      int compressedSize =
+          bulk.compress(src, 0, src.length, compressed, 0, compressed.length, true);
+      assertEquals(0, bulk.getSoftwareBlockCount());
+      assertEquals(8, bulk.getHardwareBlockCount());
+
+      byte[] result = new byte[src.length];
+      assertEquals(
+          src.length, bulk.decompress(compressed, 0, compressedSize, result, 0, result.length));
+      assertArrayEquals(src, result);
+    } finally {
+      bulk.doClear();
+    }
+  }
+
+  @Test
+  public void testFramesDecompressIndividually() {
+    QPLBulkCompressor bulk = new QPLBulkCompressor();
+    byte[] src = getSrcArray(QPLUtils.DEFAULT_BULK_BLOCK_SIZE * 3 + 5);
+    byte[] compressed = new byte[bulk.maxCompressedLength(src.length)];
+    int compressedSize = bulk.compress(src, 0, src.length, compressed, 0, compressed.length, false);
+
+    QPLCompressor compressor = new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+    byte[] result = new byte[src.length];
+    int srcOffset = 0;
+    int dstOffset = 0;
+    int frames = 0;
+    while (srcOffset < compressedSize) {
+      int frameLength =
+          QPLFrame.getFrameLength(
+              ByteBuffer.wrap(compressed, srcOffset, compressedSize - srcOffset));
+      dstOffset +=
+          compressor.decompressFramed(
+              compressed, srcOffset, frameLength, result, dstOffset, result.length - dstOffset);
+      srcOffset += frameLength;
+      frames++;
+    }
+    assertEquals(4, frames);
+    assertArrayEquals(src, result);
+    compressor.doClear();
+    bulk.doClear();
+  }
+
+  @Test
+  public void testOutputOverflow() {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    QPLBulkCompressor bulk = new QPLBulkCompressor(4096, 0, 1, 1, 0, executor);
+    byte[] src = getSrcArray(10000);
+    byte[] compressed = new byte[bulk.maxCompressedLength(src.length) - 1];
+    assertThrows(
+        QPLOutputOverflowException.class,
+        () -> bulk.compress(src, 0, src.length, compressed, 0, compressed.length, false));
+    byte[] frames = new byte[bulk.maxCompressedLength(src.length)];
+    int compressedSize = bulk.compress(src, 0, src.length, frames, 0, frames.length, false);
+    byte[] result = new byte[src.length - 1];
+    assertThrows(
+        QPLOutputOverflowException.class,
+        () -> bulk.decompress(frames, 0, compressedSize, result, 0, result.length));
+    bulk.doClear();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testWrongParameters() {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    assertThrows(
+        IllegalArgumentException.class, () -> new QPLBulkCompressor(0, 1, 1, 1, 0, executor));
+    assertThrows(
+        IllegalArgumentException.class, () -> new QPLBulkCompressor(4096, -1, 1, 1, 0, executor));
+    assertThrows(
+        IllegalArgumentException.class, () -> new QPLBulkCompressor(4096, 0, 0, 1, 0, executor));
+    executor.shutdown();
+  }
+}
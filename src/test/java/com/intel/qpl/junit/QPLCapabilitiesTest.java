@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLCapabilities;
+import com.intel.qpl.QPLUtils;
+import org.junit.jupiter.api.Test;
+
+public class QPLCapabilitiesTest {
+  @Test
+  public void testSnapshotIsCached() {
+    QPLCapabilities capabilities = QPLCapabilities.get();
+    assertSame(capabilities, QPLCapabilities.get());
+
+    QPLCapabilities refreshed = QPLCapabilities.refresh();
+    assertNotSame(capabilities, refreshed);
+    assertSame(refreshed, QPLCapabilities.get());
+    assertEquals(
+        capabilities.getSupportedCompressionLevels(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE),
+        refreshed.getSupportedCompressionLevels(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE));
+  }
+
+  @Test
+  public void testSoftwarePath() {
+    QPLCapabilities capabilities = QPLCapabilities.get();
+    QPLUtils.ExecutionPaths software = QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE;
+    assertTrue(capabilities.isExecutionPathAvailable(software));
+    assertTrue(capabilities.isCompressionLevelSupported(software, 1));
+    assertTrue(capabilities.isCompressionLevelSupported(software, 3));
+    assertFalse(capabilities.isCompressionLevelSupported(software, 2));
+    assertFalse(capabilities.isCompressionLevelSupported(software, 100));
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> capabilities.getSupportedCompressionLevels(software).add(2));
+    assertNotNull(capabilities.getLibraryVersion());
+    assertNotNull(capabilities.getDeviceTopology());
+  }
+
+  @Test
+  public void testHardwarePath() {
+    QPLCapabilities capabilities = QPLCapabilities.get();
+    QPLUtils.ExecutionPaths hardware = QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE;
+    assertEquals(QPLTestSuite.FORCE_HARDWARE, capabilities.isExecutionPathAvailable(hardware));
+    if (!QPLTestSuite.FORCE_HARDWARE) {
+      assertTrue(capabilities.getSupportedCompressionLevels(hardware).isEmpty());
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLBufferPool;
+import com.intel.qpl.QPLCodec;
+import com.intel.qpl.QPLDeflater;
+import com.intel.qpl.QPLInflater;
+import com.intel.qpl.QPLJob;
+import com.intel.qpl.QPLStreamDecoder;
+import com.intel.qpl.QPLUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class QPLCodecTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  private static QPLCodec codec(QPLUtils.StreamFormats format) {
+    return new QPLCodec(
+        format, QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, Deflater.DEFAULT_COMPRESSION, 64 * 1024);
+  }
+
+  // Writes 'src' in pieces and finishes, like the compressor stream of a data processing framework.
+  private static byte[] compress(QPLDeflater compressor, byte[] src) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    for (int offset = 0; offset < src.length; ) {
+      int length = Math.min(1 + RANDOM.nextInt(20000), src.length - offset);
+      compressor.setInput(src, offset, length);
+      offset += length;
+      while (!compressor.needsInput()) {
+        out.write(buf, 0, compressor.deflate(buf));
+      }
+    }
+    compressor.finish();
+    while (!compressor.finished()) {
+      out.write(buf, 0, compressor.deflate(buf));
+    }
+    return out.toByteArray();
+  }
+
+  // Reads 'compressed' in pieces and resets at the end of each member, like the decompressor
+  // stream of a data processing framework.
+  private static byte[] decompress(QPLInflater decompressor, byte[] compressed)
+      throws DataFormatException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    int offset = 0;
+    while (true) {
+      int n = decompressor.inflate(buf);
+      out.write(buf, 0, n);
+      if (decompressor.finished()) {
+        int remaining = decompressor.getRemaining();
+        if (remaining == 0 && offset == compressed.length) {
+          return out.toByteArray();
+        }
+        decompressor.reset();
+        offset -= remaining;
+      }
+      if (n == 0 && decompressor.needsInput()) {
+        assertTrue(offset < compressed.length);
+        int length = Math.min(1 + RANDOM.nextInt(3000), compressed.length - offset);
+        decompressor.setInput(compressed, offset, length);
+        offset += length;
+      }
+    }
+  }
+
+  private static byte[] gzip(byte[] src) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(src);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testDefaults() {
+    QPLCodec codec = new QPLCodec(QPLUtils.StreamFormats.GZIP);
+    assertEquals(
+        QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE),
+        codec.getExecutionPath());
+    assertEquals(Deflater.DEFAULT_COMPRESSION, codec.getLevel());
+    assertEquals(".gz", codec.getDefaultExtension());
+    assertEquals(".deflate", codec(QPLUtils.StreamFormats.ZLIB).getDefaultExtension());
+    assertEquals("", codec(QPLUtils.StreamFormats.RAW).getDefaultExtension());
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new QPLCodec(
+                QPLUtils.StreamFormats.GZIP, QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 10, 1024));
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new QPLCodec(
+                QPLUtils.StreamFormats.GZIP, QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0));
+  }
+
+  @Test
+  public void testGzipReadByJdk() throws IOException {
+    byte[] src = getSrcArray(300 * 1024);
+    QPLDeflater compressor = codec(QPLUtils.StreamFormats.GZIP).createCompressor();
+    byte[] compressed = compress(compressor, src);
+    compressor.end();
+
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      assertArrayEquals(src, in.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testZlibReadByJdk() throws IOException {
+    byte[] src = getSrcArray(300 * 1024);
+    QPLDeflater compressor = codec(QPLUtils.StreamFormats.ZLIB).createCompressor();
+    byte[] compressed = compress(compressor, src);
+    compressor.end();
+
+    try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+      assertArrayEquals(src, in.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testReadJdkGzipMembers() throws IOException, DataFormatException {
+    // A file appended to, as a concatenation of GZIP members.
+    byte[] first = getSrcArray(100 * 1024);
+    byte[] second = getSrcArray(50 * 1024);
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.write(gzip(first));
+    file.write(gzip(second));
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    expected.write(first);
+    expected.write(second);
+
+    QPLInflater decompressor = codec(QPLUtils.StreamFormats.GZIP).createDecompressor();
+    assertArrayEquals(expected.toByteArray(), decompress(decompressor, file.toByteArray()));
+    decompressor.end();
+  }
+
+  @Test
+  public void testReadGzipOptionalFields() throws DataFormatException {
+    byte[] src = getSrcArray(10 * 1024);
+    QPLDeflater compressor = codec(QPLUtils.StreamFormats.GZIP).createCompressor();
+    byte[] compressed = compress(compressor, src);
+    compressor.end();
+    // FEXTRA, FNAME, FCOMMENT and FHCRC after the fixed part of the header.
+    ByteArrayOutputStream file = new ByteArrayOutputStream();
+    file.write(compressed, 0, 10);
+    file.write(new byte[] {3, 0, 'a', 'b', 'c', 'f', 0, 'c', 0, 0x12, 0x34}, 0, 11);
+    file.write(compressed, 10, compressed.length - 10);
+    byte[] withFields = file.toByteArray();
+    withFields[3] = 0x02 | 0x04 | 0x08 | 0x10;
+
+    QPLInflater decompressor = codec(QPLUtils.StreamFormats.GZIP).createDecompressor();
+    assertArrayEquals(src, decompress(decompressor, withFields));
+    decompressor.end();
+  }
+
+  @Test
+  public void testCorruptGzipTrailer() {
+    byte[] src = getSrcArray(10 * 1024);
+    QPLDeflater compressor = codec(QPLUtils.StreamFormats.GZIP).createCompressor();
+    byte[] compressed = compress(compressor, src);
+    compressor.end();
+    compressed[compressed.length - 1] ^= 1;
+
+    QPLInflater decompressor = codec(QPLUtils.StreamFormats.GZIP).createDecompressor();
+    assertThrows(DataFormatException.class, () -> decompress(decompressor, compressed));
+    decompressor.end();
+  }
+
+  @Test
+  public void testDirectDecompressor() {
+    byte[] src = getSrcArray(200 * 1024);
+    QPLCodec codec = codec(QPLUtils.StreamFormats.GZIP);
+    QPLDeflater compressor = codec.createCompressor();
+    byte[] compressed = compress(compressor, src);
+    compressor.end();
+
+    ByteBuffer in = ByteBuffer.allocateDirect(compressed.length);
+    in.put(compressed).flip();
+    ByteBuffer out = ByteBuffer.allocateDirect(src.length);
+    QPLStreamDecoder decompressor = codec.createDirectDecompressor(new QPLBufferPool(4096, 4));
+    decompressor.decode(in, out);
+    assertTrue(decompressor.isFinished());
+    assertEquals(0, in.remaining());
+    out.flip();
+    byte[] result = new byte[out.remaining()];
+    out.get(result);
+    assertArrayEquals(src, result);
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.StreamFormats.class)
+  public void testRoundTrip(QPLUtils.StreamFormats format) throws DataFormatException {
+    byte[] src = getSrcArray(150 * 1024);
+    QPLCodec codec = codec(format);
+    QPLDeflater compressor = codec.createCompressor();
+    byte[] compressed = compress(compressor, src);
+    compressor.end();
+
+    QPLInflater decompressor = codec.createDecompressor();
+    if (format == QPLUtils.StreamFormats.RAW) {
+      // A trailing byte so that the end of the raw stream is detected.
+      byte[] padded = Arrays.copyOf(compressed, compressed.length + 1);
+      byte[] result = new byte[src.length];
+      decompressor.setInput(padded);
+      int length = 0;
+      while (!decompressor.finished()) {
+        length += decompressor.inflate(result, length, result.length - length);
+      }
+      assertEquals(src.length, length);
+      assertArrayEquals(src, result);
+    } else {
+      assertArrayEquals(src, decompress(decompressor, compressed));
+    }
+    decompressor.end();
+  }
+}
@@ -7,21 +7,33 @@ package com.intel.qpl.junit;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import com.intel.qpl.QPLBufferPool;
+import com.intel.qpl.QPLChainedBuffer;
 import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLEntropyEstimator;
 import com.intel.qpl.QPLException;
+import com.intel.qpl.QPLFrame;
+import com.intel.qpl.QPLJob;
 import com.intel.qpl.QPLOutputOverflowException;
+import com.intel.qpl.QPLResult;
 import com.intel.qpl.QPLUtils;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -681,4 +693,279 @@ public class QPLCompressorTest {
             assert srcBB.get(i) == mergeBB.get(i) : "Failed comparison on index: " + i;
         });
   }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.ExecutionPaths.class)
+  public void testStoredBypass(QPLUtils.ExecutionPaths ePath) throws DataFormatException {
+    assumeFalse(shouldSkip(ePath));
+    int n = 200000;
+    byte[] src = getRandomSrcArray(n);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(n)];
+    byte[] result = new byte[n];
+
+    QPLCompressor compressor = new QPLCompressor(ePath, 1, 0);
+    compressor.setStoredBypassEnabled(true);
+    int compressedSize = compressor.compress(src, compressed);
+    assertEquals(1, compressor.getStoredBypassCount());
+    assertEquals(n, compressor.getBytesRead());
+    assertEquals(compressedSize, compressor.getBytesWritten());
+    assertTrue(compressedSize > n);
+
+    int decompressedSize = compressor.decompress(compressed, 0, compressedSize, result, 0, n);
+    assertEquals(n, decompressedSize);
+    assertArrayEquals(src, result);
+
+    Inflater inflater = new Inflater(true);
+    inflater.setInput(compressed, 0, compressedSize);
+    byte[] inflated = new byte[n];
+    assertEquals(n, inflater.inflate(inflated));
+    assertTrue(inflater.finished());
+    assertArrayEquals(src, inflated);
+
+    ByteBuffer srcBB = getSourceDirectBB(src);
+    ByteBuffer compressedBB = ByteBuffer.allocateDirect(QPLCompressor.maxCompressedLength(n));
+    compressor.compress(srcBB, compressedBB);
+    assertEquals(2, compressor.getStoredBypassCount());
+    assertEquals(n, srcBB.position());
+    assertEquals(compressedSize, compressedBB.position());
+  }
+
+  @Test
+  public void testStoredBypassSkipsCompressibleData() {
+    int n = 200000;
+    byte[] src = getSrcArray(n);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(n)];
+
+    QPLCompressor compressor = new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+    compressor.setStoredBypassEnabled(true);
+    int compressedSize = compressor.compress(src, compressed);
+    assertEquals(0, compressor.getStoredBypassCount());
+    assertTrue(compressedSize < n);
+    assertTrue(QPLEntropyEstimator.estimate(src, 0, n) < 1);
+    assertTrue(QPLEntropyEstimator.estimate(ByteBuffer.wrap(getRandomSrcArray(n))) > 7.5);
+    assertThrows(IllegalArgumentException.class, () -> compressor.setStoredBypassThreshold(9));
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideParamsLength")
+  public void testChainedCompress(
+      QPLUtils.ExecutionPaths ePath, int cl, int rt, int n, byte[] src) {
+    assumeFalse(shouldSkip(ePath));
+    QPLBufferPool pool = new QPLBufferPool(4096, 16);
+    QPLCompressor compressor = new QPLCompressor(ePath, cl, rt);
+    byte[] result = new byte[n];
+    try (QPLChainedBuffer compressed = compressor.compress(src, 0, n, pool)) {
+      assertEquals(n, compressor.getBytesRead());
+      assertEquals(compressed.length(), compressor.getBytesWritten());
+      assertEquals((compressed.length() + 4095) / 4096, compressed.getSegmentCount());
+
+      byte[] compressedBytes = compressed.toByteArray();
+      int decompressedSize =
+          compressor.decompress(compressedBytes, 0, compressedBytes.length, result, 0, n);
+      assertEquals(n, decompressedSize);
+      assertArrayEquals(src, result);
+    }
+  }
+
+  @Test
+  public void testChainedCompressFailover() throws Exception {
+    assumeTrue(QPLTestSuite.FORCE_HARDWARE);
+    QPLBufferPool pool = new QPLBufferPool(64 * 1024, 16);
+    QPLCompressor compressor = new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE, 1, 0);
+    compressor.setFailoverPolicy(QPLUtils.FailoverPolicies.SOFTWARE);
+    Field jobField = QPLCompressor.class.getDeclaredField("job");
+    jobField.setAccessible(true);
+    QPLTestSuite.injectBusyQueues((QPLJob) jobField.get(compressor), 1, 1);
+    byte[] src = getSrcArray(5 * 1024 * 1024 + 17);
+    byte[] result = new byte[src.length];
+    try (QPLChainedBuffer compressed = compressor.compress(src, 0, src.length, pool)) {
+      assertEquals(1, compressor.getFailoverCount());
+      assertEquals(src.length, compressor.getBytesRead());
+      assertEquals(compressed.length(), compressor.getBytesWritten());
+      assertEquals(
+          (compressed.length() + pool.getBufferSize() - 1) / pool.getBufferSize(),
+          compressed.getSegmentCount());
+
+      byte[] compressedBytes = compressed.toByteArray();
+      int decompressedSize =
+          compressor.decompress(compressedBytes, 0, compressedBytes.length, result, 0, src.length);
+      assertEquals(src.length, decompressedSize);
+      assertArrayEquals(src, result);
+    }
+  }
+
+  @Test
+  public void testChainedCompressReleasedBuffer() {
+    byte[] src = getSrcArray(100000);
+    ByteBuffer srcBB = getSourceDirectBB(src);
+    QPLCompressor compressor = new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+    QPLChainedBuffer compressed = compressor.compress(srcBB, QPLBufferPool.getDefault());
+    assertEquals(src.length, srcBB.position());
+    ByteBuffer compressedBB = ByteBuffer.allocateDirect(compressed.length());
+    assertEquals(compressed.length(), compressed.copyTo(compressedBB));
+    compressed.close();
+    compressed.close();
+    assertThrows(IllegalStateException.class, compressed::length);
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideParamsLength")
+  public void testDecompressUnknownSize(
+      QPLUtils.ExecutionPaths ePath, int cl, int rt, int n, byte[] src) {
+    assumeFalse(shouldSkip(ePath));
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(n)];
+    QPLCompressor compressor = new QPLCompressor(ePath, cl, rt);
+    int compressedSize = compressor.compress(src, compressed);
+
+    byte[] result = compressor.decompress(compressed, 0, compressedSize, 16);
+    assertArrayEquals(src, result);
+    assertEquals(compressedSize, compressor.getBytesRead());
+    assertEquals(n, compressor.getBytesWritten());
+
+    ByteBuffer compressedBB = ByteBuffer.allocateDirect(compressedSize);
+    compressedBB.put(compressed, 0, compressedSize).flip();
+    assertArrayEquals(src, compressor.decompress(compressedBB, n));
+    assertEquals(compressedSize, compressedBB.position());
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideParamsLength")
+  public void testFramedRoundTrip(
+      QPLUtils.ExecutionPaths ePath, int cl, int rt, int n, byte[] src) {
+    assumeFalse(shouldSkip(ePath));
+    QPLCompressor compressor = new QPLCompressor(ePath, cl, rt);
+    byte[] frame = new byte[QPLFrame.maxFramedLength(n)];
+    int frameLength = compressor.compressFramed(src, 0, n, frame, 0, frame.length, true);
+    assertEquals(n, QPLFrame.getUncompressedLength(frame, 0, frameLength));
+    assertArrayEquals(src, compressor.decompressFramed(frame, 0, frameLength));
+
+    ByteBuffer srcBB = getSourceDirectBB(src);
+    ByteBuffer frameBB = ByteBuffer.allocateDirect(QPLFrame.maxFramedLength(n));
+    assertEquals(frameLength, compressor.compressFramed(srcBB, frameBB, true));
+    frameBB.flip();
+    assertTrue(QPLFrame.isFrame(frameBB));
+    assertEquals(frameLength, QPLFrame.getFrameLength(frameBB));
+    ByteBuffer resultBB = ByteBuffer.allocateDirect(n);
+    assertEquals(n, compressor.decompressFramed(frameBB, resultBB));
+    assertEquals(frameLength, frameBB.position());
+    resultBB.flip();
+    byte[] result = new byte[n];
+    resultBB.get(result);
+    assertArrayEquals(src, result);
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = QPLUtils.ExecutionPaths.class)
+  public void testFramedChecksumMismatch(QPLUtils.ExecutionPaths ePath) {
+    assumeFalse(shouldSkip(ePath));
+    byte[] src = getSrcArray(4096);
+    QPLCompressor compressor = new QPLCompressor(ePath, 1, 0);
+    byte[] frame = new byte[QPLFrame.maxFramedLength(src.length)];
+    int frameLength = compressor.compressFramed(src, 0, src.length, frame, 0, frame.length, true);
+    frame[QPLFrame.HEADER_LENGTH] ^= 1;
+    assertThrows(QPLException.class, () -> compressor.decompressFramed(frame, 0, frameLength));
+    assertThrows(QPLException.class, () -> compressor.decompressFramed(frame, 1, frameLength - 1));
+    assertThrows(
+        QPLOutputOverflowException.class,
+        () -> compressor.decompressFramed(frame, 0, frameLength, new byte[1], 0, 1));
+  }
+
+  @Test
+  public void testFramedStoredBypassChecksum() {
+    byte[] src = getRandomSrcArray(64 * 1024);
+    QPLCompressor compressor = new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+    compressor.setStoredBypassEnabled(true);
+    byte[] frame = new byte[QPLFrame.maxFramedLength(src.length)];
+    int frameLength = compressor.compressFramed(src, 0, src.length, frame, 0, frame.length, true);
+    assertEquals(1, compressor.getStoredBypassCount());
+    assertArrayEquals(src, compressor.decompressFramed(frame, 0, frameLength));
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = QPLUtils.ExecutionPaths.class)
+  public void testTryCompressRoundTrip(QPLUtils.ExecutionPaths ePath) {
+    assumeFalse(shouldSkip(ePath));
+    byte[] src = getSrcArray(64 * 1024);
+    QPLCompressor compressor = new QPLCompressor(ePath, 1, 0);
+    QPLResult result = new QPLResult();
+
+    byte[] small = new byte[16];
+    compressor.tryCompress(src, 0, src.length, small, 0, small.length, result);
+    assertFalse(result.isOk());
+    assertEquals(QPLUtils.Statuses.OUTPUT_OVERFLOW, result.getStatus());
+    assertTrue(result.getStatusCode() != 0);
+
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(src.length)];
+    compressor.tryCompress(src, 0, src.length, compressed, 0, compressed.length, result);
+    assertTrue(result.isOk());
+    assertEquals(0, result.getStatusCode());
+    assertEquals(src.length, result.getBytesRead());
+    int compressedLength = result.getBytesWritten();
+
+    ByteBuffer compressedBB = ByteBuffer.wrap(compressed, 0, compressedLength);
+    ByteBuffer resultBB = ByteBuffer.allocateDirect(src.length);
+    compressor.tryDecompress(compressedBB, resultBB, result);
+    assertTrue(result.isOk());
+    assertFalse(result.isOutputInsufficient());
+    assertEquals(src.length, result.getBytesWritten());
+    assertEquals(compressedLength, compressedBB.position());
+    assertEquals(src.length, resultBB.position());
+    resultBB.flip();
+    byte[] decompressed = new byte[src.length];
+    resultBB.get(decompressed);
+    assertArrayEquals(src, decompressed);
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = QPLUtils.ExecutionPaths.class)
+  public void testTryCompressOverflowKeepsPositions(QPLUtils.ExecutionPaths ePath) {
+    assumeFalse(shouldSkip(ePath));
+    ByteBuffer srcBB = getSourceDirectBB(getSrcArray(64 * 1024));
+    ByteBuffer dstBB = ByteBuffer.allocateDirect(16);
+    QPLCompressor compressor = new QPLCompressor(ePath, 1, 0);
+    QPLResult result = compressor.tryCompress(srcBB, dstBB, new QPLResult());
+    assertEquals(QPLUtils.Statuses.OUTPUT_OVERFLOW, result.getStatus());
+    assertEquals(0, srcBB.position());
+    assertEquals(0, dstBB.position());
+  }
+
+  @ParameterizedTest
+  @EnumSource(value = QPLUtils.ExecutionPaths.class)
+  public void testGatherScatter(QPLUtils.ExecutionPaths ePath) {
+    assumeFalse(shouldSkip(ePath));
+    byte[] src = getSrcArray(200000);
+    // A heap header, a direct fragment, an empty one and a read-only heap tail.
+    ByteBuffer[] srcs = {
+      ByteBuffer.wrap(src, 0, 100),
+      getSourceDirectBB(Arrays.copyOfRange(src, 100, 150000)),
+      ByteBuffer.allocate(0),
+      ByteBuffer.wrap(src, 150000, 50000).slice().asReadOnlyBuffer()
+    };
+    QPLCompressor compressor = new QPLCompressor(ePath, 1, 0);
+    ByteBuffer compressedBB =
+        ByteBuffer.allocateDirect(QPLCompressor.maxCompressedLength(src.length));
+    int compressedSize = compressor.compress(srcs, compressedBB);
+    assertEquals(src.length, compressor.getBytesRead());
+    assertEquals(compressedSize, compressedBB.position());
+    for (ByteBuffer fragment : srcs) {
+      assertFalse(fragment.hasRemaining());
+    }
+
+    compressedBB.flip();
+    ByteBuffer[] dsts = {
+      ByteBuffer.allocate(1000), ByteBuffer.allocateDirect(100000), ByteBuffer.allocate(99000)
+    };
+    assertEquals(src.length, compressor.decompress(compressedBB, dsts));
+    assertEquals(compressedSize, compressedBB.position());
+    byte[] result = new byte[src.length];
+    int offset = 0;
+    for (ByteBuffer fragment : dsts) {
+      assertFalse(fragment.hasRemaining());
+      fragment.flip();
+      int length = fragment.remaining();
+      fragment.get(result, offset, length);
+      offset += length;
+    }
+    assertArrayEquals(src, result);
+  }
 }
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLConcurrencyLimiter;
+import com.intel.qpl.QPLJob;
+import com.intel.qpl.QPLUtils;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class QPLConcurrencyLimiterTest {
+  private static final Random RANDOM = new Random();
+
+  @Test
+  public void testDefaults() {
+    QPLConcurrencyLimiter limiter = new QPLConcurrencyLimiter();
+    assertEquals(QPLUtils.DEFAULT_INITIAL_CONCURRENCY, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(0, limiter.getWaitingCount());
+    assertEquals(0, limiter.getDecreaseCount());
+  }
+
+  @Test
+  public void testWrongParameters() {
+    assertThrows(IllegalArgumentException.class, () -> new QPLConcurrencyLimiter(1, 0, 8, 0.5));
+    assertThrows(IllegalArgumentException.class, () -> new QPLConcurrencyLimiter(1, 2, 8, 0.5));
+    assertThrows(IllegalArgumentException.class, () -> new QPLConcurrencyLimiter(9, 1, 8, 0.5));
+    assertThrows(IllegalArgumentException.class, () -> new QPLConcurrencyLimiter(4, 1, 8, 0));
+    assertThrows(IllegalArgumentException.class, () -> new QPLConcurrencyLimiter(4, 1, 8, 1));
+  }
+
+  @Test
+  public void testSoftwarePathNotLimited() {
+    QPLConcurrencyLimiter limiter = new QPLConcurrencyLimiter(1, 1, 1, 0.5);
+    QPLJob.setConcurrencyLimiter(limiter);
+    try {
+      assertSame(limiter, QPLJob.getConcurrencyLimiter());
+      QPLCompressor compressor =
+          new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+      byte[] src = new byte[64 * 1024];
+      for (int i = 0; i < src.length; i++) src[i] = (byte) RANDOM.nextInt(8);
+      byte[] compressed = new byte[QPLCompressor.maxCompressedLength(src.length)];
+      int compressedSize = compressor.compress(src, compressed);
+      byte[] result = new byte[src.length];
+      compressor.decompress(compressed, 0, compressedSize, result, 0, result.length);
+      assertArrayEquals(src, result);
+      assertEquals(1, limiter.getLimit());
+      assertEquals(0, limiter.getInFlight());
+      compressor.doClear();
+    } finally {
+      QPLJob.setConcurrencyLimiter(null);
+    }
+  }
+}
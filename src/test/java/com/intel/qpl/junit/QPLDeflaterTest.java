@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLDeflater;
+import com.intel.qpl.QPLUtils;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class QPLDeflaterTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  // Feeds 'src' in small pieces and reads the output in small pieces, like DeflaterOutputStream.
+  private static byte[] deflate(QPLDeflater deflater, byte[] src) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[512];
+    for (int offset = 0; offset < src.length; ) {
+      int length = Math.min(1000 + RANDOM.nextInt(5000), src.length - offset);
+      deflater.setInput(src, offset, length);
+      offset += length;
+      while (!deflater.needsInput()) {
+        out.write(buf, 0, deflater.deflate(buf));
+      }
+    }
+    deflater.finish();
+    while (!deflater.finished()) {
+      out.write(buf, 0, deflater.deflate(buf));
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] inflate(byte[] compressed, int length, boolean nowrap)
+      throws DataFormatException {
+    Inflater inflater = new Inflater(nowrap);
+    inflater.setInput(compressed);
+    byte[] result = new byte[length];
+    assertEquals(length, inflater.inflate(result));
+    assertTrue(inflater.finished());
+    inflater.end();
+    return result;
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void testDeflate(boolean nowrap) throws DataFormatException {
+    byte[] src = getSrcArray(300000);
+    QPLDeflater deflater =
+        new QPLDeflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, nowrap, 64 * 1024);
+    try {
+      byte[] compressed = deflate(deflater, src);
+      assertEquals(src.length, deflater.getBytesRead());
+      assertEquals(compressed.length, deflater.getBytesWritten());
+      assertArrayEquals(src, inflate(compressed, src.length, nowrap));
+      if (!nowrap) {
+        Adler32 adler = new Adler32();
+        adler.update(src);
+        assertEquals((int) adler.getValue(), deflater.getAdler());
+      }
+
+      deflater.reset();
+      byte[] other = getSrcArray(1000);
+      assertArrayEquals(other, inflate(deflate(deflater, other), other.length, nowrap));
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Test
+  public void testEmptyStream() throws DataFormatException {
+    QPLDeflater deflater =
+        new QPLDeflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, false, 4096);
+    try {
+      byte[] compressed = deflate(deflater, new byte[0]);
+      assertEquals(0, inflate(compressed, 0, false).length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Test
+  public void testSyncFlush() throws DataFormatException {
+    byte[] src = getSrcArray(10000);
+    QPLDeflater deflater =
+        new QPLDeflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, true, 64 * 1024);
+    try {
+      deflater.setInput(src);
+      byte[] buf = new byte[QPLUtils.DEFAULT_STREAM_BUFFER_SIZE];
+      // Without a flush the input waits for the buffer to fill.
+      assertEquals(0, deflater.deflate(buf));
+      int length = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+      assertTrue(length > 0);
+      assertEquals(0, deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH));
+
+      Inflater inflater = new Inflater(true);
+      inflater.setInput(buf, 0, length);
+      byte[] result = new byte[src.length];
+      assertEquals(src.length, inflater.inflate(result));
+      inflater.end();
+      assertArrayEquals(src, result);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  @Test
+  public void testWrongParameters() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new QPLDeflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 10, false, 4096));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new QPLDeflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, false, 0));
+    QPLDeflater deflater =
+        new QPLDeflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, false, 4096);
+    assertThrows(IllegalArgumentException.class, () -> deflater.setStrategy(5));
+    assertThrows(IllegalArgumentException.class, () -> deflater.deflate(new byte[16], 0, 16, 7));
+    assertThrows(ArrayIndexOutOfBoundsException.class, () -> deflater.setInput(new byte[4], 2, 3));
+    deflater.end();
+    assertThrows(NullPointerException.class, () -> deflater.deflate(new byte[16]));
+  }
+}
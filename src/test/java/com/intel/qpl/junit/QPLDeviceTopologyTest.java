@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLDeviceTopology;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class QPLDeviceTopologyTest {
+  @TempDir Path root;
+
+  private void writeAttribute(String dir, String attribute, String value) throws IOException {
+    Path path = root.resolve(dir);
+    Files.createDirectories(path);
+    Files.write(path.resolve(attribute), (value + "\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private void createDevice(String name, int node, String state) throws IOException {
+    writeAttribute(name, "numa_node", Integer.toString(node));
+    writeAttribute(name, "state", state);
+  }
+
+  private void createWorkQueue(String name, String mode, String state, long maxTransfer)
+      throws IOException {
+    writeAttribute(name, "mode", mode);
+    writeAttribute(name, "state", state);
+    writeAttribute(name, "size", "128");
+    writeAttribute(name, "max_transfer_size", Long.toString(maxTransfer));
+  }
+
+  @Test
+  public void testDiscover() throws IOException {
+    createDevice("iax1", 0, "enabled");
+    createWorkQueue("wq1.0", "shared", "enabled", 2097152);
+    createWorkQueue("wq1.1", "dedicated", "enabled", 1048576);
+    createDevice("iax3", 1, "enabled");
+    createWorkQueue("wq3.0", "shared", "enabled", 4194304);
+    createWorkQueue("wq3.1", "shared", "disabled", 65536);
+    createDevice("iax5", 1, "disabled");
+    createWorkQueue("wq5.0", "shared", "disabled", 65536);
+    createDevice("dsa0", 0, "enabled");
+    createWorkQueue("wq0.0", "shared", "enabled", 65536);
+
+    QPLDeviceTopology topology = QPLDeviceTopology.discover(root);
+    List<QPLDeviceTopology.Device> devices = topology.getDevices();
+    assertEquals(3, devices.size());
+    QPLDeviceTopology.Device iax1 = devices.get(0);
+    assertEquals("iax1", iax1.getName());
+    assertEquals(1, iax1.getId());
+    assertEquals(0, iax1.getNumaNode());
+    assertTrue(iax1.isEnabled());
+    assertEquals(2, iax1.getWorkQueues().size());
+    QPLDeviceTopology.WorkQueue wq = iax1.getWorkQueues().get(0);
+    assertEquals("wq1.0", wq.getName());
+    assertTrue(wq.isShared());
+    assertTrue(wq.isEnabled());
+    assertEquals(128, wq.getSize());
+    assertEquals(2097152, wq.getMaxTransferBytes());
+    assertFalse(iax1.getWorkQueues().get(1).isShared());
+    assertFalse(devices.get(2).isEnabled());
+
+    assertEquals(1048576, topology.getMaxTransferBytes());
+    assertEquals(1048576, topology.getMaxTransferBytes(0));
+    assertEquals(4194304, topology.getMaxTransferBytes(1));
+    assertEquals(0, topology.getMaxTransferBytes(2));
+  }
+
+  @Test
+  public void testDiscoverMissingTree() {
+    QPLDeviceTopology topology = QPLDeviceTopology.discover(root.resolve("missing"));
+    assertTrue(topology.getDevices().isEmpty());
+    assertEquals(0, topology.getMaxTransferBytes());
+  }
+
+  @Test
+  public void testDiscoverIncompleteDevice() throws IOException {
+    Files.createDirectories(root.resolve("iax2"));
+    createWorkQueue("wq2.0", "shared", "enabled", 2097152);
+
+    QPLDeviceTopology topology = QPLDeviceTopology.discover(root);
+    assertEquals(1, topology.getDevices().size());
+    assertEquals(-1, topology.getDevices().get(0).getNumaNode());
+    assertFalse(topology.getDevices().get(0).isEnabled());
+    assertEquals(0, topology.getMaxTransferBytes());
+  }
+}
@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLBufferPool;
+import com.intel.qpl.QPLException;
+import com.intel.qpl.QPLFlowProcessor;
+import com.intel.qpl.QPLJob;
+import com.intel.qpl.QPLUtils;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+
+public class QPLFlowProcessorTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  // Collects the buffers of a processor, requesting them one at a time.
+  private static class Collector implements Flow.Subscriber<ByteBuffer> {
+    private final QPLFlowProcessor processor;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicInteger received = new AtomicInteger();
+    private volatile Flow.Subscription subscription;
+    private volatile Throwable error;
+
+    Collector(QPLFlowProcessor processor) {
+      this.processor = processor;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+      received.incrementAndGet();
+      byte[] chunk = new byte[item.remaining()];
+      item.get(chunk);
+      bytes.write(chunk, 0, chunk.length);
+      processor.release(item);
+      subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      done.countDown();
+    }
+
+    byte[] await() throws InterruptedException {
+      assertTrue(done.await(60, TimeUnit.SECONDS));
+      assertNull(error);
+      return bytes.toByteArray();
+    }
+  }
+
+  private static byte[] run(QPLFlowProcessor processor, byte[] src, int chunkSize)
+      throws InterruptedException {
+    Collector collector = new Collector(processor);
+    processor.subscribe(collector);
+    collector.subscription.request(1);
+    try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+      publisher.subscribe(processor);
+      for (int offset = 0; offset < src.length; offset += chunkSize) {
+        int length = Math.min(chunkSize, src.length - offset);
+        publisher.submit(ByteBuffer.wrap(src, offset, length).slice());
+      }
+    }
+    return collector.await();
+  }
+
+  @Test
+  public void testCompress() throws InterruptedException, DataFormatException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    QPLBufferPool pool = new QPLBufferPool(16 * 1024, 8);
+    try {
+      byte[] src = getSrcArray(1024 * 1024);
+      byte[] compressed =
+          run(QPLFlowProcessor.compressor(job, pool, 4, executor), src, 64 * 1024 + 17);
+
+      Inflater inflater = new Inflater(true);
+      inflater.setInput(compressed);
+      byte[] result = new byte[src.length];
+      assertEquals(src.length, inflater.inflate(result));
+      assertTrue(inflater.finished());
+      inflater.end();
+      assertArrayEquals(src, result);
+    } finally {
+      job.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    QPLJob compressJob = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    QPLJob decompressJob = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    QPLBufferPool pool = new QPLBufferPool(8 * 1024, 8);
+    try {
+      byte[] src = getSrcArray(512 * 1024 + 3);
+      byte[] compressed =
+          run(QPLFlowProcessor.compressor(compressJob, pool, 2, executor), src, 32 * 1024);
+      byte[] result =
+          run(QPLFlowProcessor.decompressor(decompressJob, pool, 3, executor), compressed, 5000);
+      assertArrayEquals(src, result);
+    } finally {
+      compressJob.doClear();
+      decompressJob.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testBackpressure() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    QPLBufferPool pool = new QPLBufferPool(4096, 8);
+    try {
+      QPLFlowProcessor processor = QPLFlowProcessor.compressor(job, pool, 2, executor);
+      Collector collector = new Collector(processor);
+      processor.subscribe(collector);
+      SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+      publisher.subscribe(processor);
+      for (int i = 0; i < 64; i++) {
+        publisher.submit(ByteBuffer.wrap(getSrcArray(16 * 1024)));
+      }
+      // Nothing is delivered without demand, and the processor stops requesting input.
+      Thread.sleep(200);
+      assertEquals(0, collector.received.get());
+      assertTrue(publisher.estimateMaximumLag() > 0);
+
+      collector.subscription.request(1);
+      publisher.close();
+      collector.await();
+      assertTrue(collector.received.get() > 0);
+    } finally {
+      job.doClear();
+      executor.shutdown();
+    }
+  }
+
+  // Counts the buffers acquired and not released yet.
+  private static class CountingPool extends QPLBufferPool {
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger maxOutstanding = new AtomicInteger();
+
+    CountingPool(int bufferSize, int maxPooled) {
+      super(bufferSize, maxPooled);
+    }
+
+    @Override
+    public ByteBuffer acquire() {
+      maxOutstanding.accumulateAndGet(outstanding.incrementAndGet(), Math::max);
+      return super.acquire();
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+      outstanding.decrementAndGet();
+      super.release(buffer);
+    }
+  }
+
+  private static byte[] deflate(byte[] src) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(src);
+    deflater.finish();
+    byte[] buf = new byte[src.length + 1024];
+    int length = deflater.deflate(buf);
+    deflater.end();
+    byte[] compressed = new byte[length];
+    System.arraycopy(buf, 0, compressed, 0, length);
+    return compressed;
+  }
+
+  @Test
+  public void testBoundedOutputWithinInput() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    CountingPool pool = new CountingPool(4096, 8);
+    int maxInFlight = 2;
+    try {
+      // A single input that expands into thousands of output buffers.
+      byte[] src = new byte[16 * 1024 * 1024];
+      byte[] compressed = deflate(src);
+      QPLFlowProcessor processor = QPLFlowProcessor.decompressor(job, pool, maxInFlight, executor);
+      Collector collector = new Collector(processor);
+      processor.subscribe(collector);
+      SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>();
+      publisher.subscribe(processor);
+      publisher.submit(ByteBuffer.wrap(compressed));
+      publisher.close();
+      // The collector requests one buffer at a time, so each delivered buffer is released before
+      // the next one is requested. Beyond the queued outputs, only the buffer being filled and the
+      // one being consumed are held.
+      collector.subscription.request(1);
+      assertArrayEquals(src, collector.await());
+      assertTrue(pool.maxOutstanding.get() <= maxInFlight + 2);
+      assertEquals(0, pool.outstanding.get());
+    } finally {
+      job.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTrailingInput() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    QPLBufferPool pool = new QPLBufferPool(4096, 8);
+    try {
+      byte[] compressed = deflate(getSrcArray(10000));
+      byte[] trailing = new byte[compressed.length + 100];
+      System.arraycopy(compressed, 0, trailing, 0, compressed.length);
+      QPLFlowProcessor processor = QPLFlowProcessor.decompressor(job, pool, 2, executor);
+      Collector collector = new Collector(processor);
+      processor.subscribe(collector);
+      collector.subscription.request(1);
+      try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+        publisher.subscribe(processor);
+        publisher.submit(ByteBuffer.wrap(trailing));
+      }
+      assertTrue(collector.done.await(60, TimeUnit.SECONDS));
+      assertTrue(collector.error instanceof QPLException);
+    } finally {
+      job.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testEmptyStream() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    QPLBufferPool pool = new QPLBufferPool(4096, 8);
+    try {
+      byte[] result = run(QPLFlowProcessor.compressor(job, pool, 2, executor), new byte[0], 1);
+      assertEquals(0, result.length);
+    } finally {
+      job.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testWrongParameters() {
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    QPLBufferPool pool = new QPLBufferPool(4096, 8);
+    try {
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> QPLFlowProcessor.compressor(job, pool, 1, Runnable::run));
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> QPLFlowProcessor.decompressor(job, pool, 0, Runnable::run));
+    } finally {
+      job.doClear();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLException;
+import com.intel.qpl.QPLGzipPageCodec;
+import com.intel.qpl.QPLOutputOverflowException;
+import com.intel.qpl.QPLUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class QPLGzipPageCodecTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  private static QPLGzipPageCodec codec() {
+    return new QPLGzipPageCodec(
+        new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0));
+  }
+
+  private static byte[] gzip(byte[] src) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(src);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] gunzip(byte[] page) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(page))) {
+      return in.readAllBytes();
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 100, 64 * 1024, 1024 * 1024})
+  public void testPageReadByJdk(int length) throws IOException {
+    byte[] src = getSrcArray(length);
+    byte[] page = codec().compress(src, 0, src.length);
+    assertArrayEquals(src, gunzip(page));
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 100, 64 * 1024, 1024 * 1024})
+  public void testReadJdkPage(int length) throws IOException {
+    byte[] src = getSrcArray(length);
+    byte[] page = gzip(src);
+    assertArrayEquals(src, codec().decompress(page, 0, page.length, src.length));
+  }
+
+  @Test
+  public void testDirectBuffers() {
+    byte[] src = getSrcArray(256 * 1024);
+    QPLGzipPageCodec codec = codec();
+    ByteBuffer in = ByteBuffer.allocateDirect(src.length);
+    in.put(src).flip();
+    ByteBuffer page = ByteBuffer.allocateDirect(QPLGzipPageCodec.maxCompressedLength(src.length));
+    int compressedLength = codec.compress(in, page);
+    assertEquals(0, in.remaining());
+    assertEquals(compressedLength, page.position());
+
+    page.flip();
+    // The page buffer of a reader, sized from the page header.
+    ByteBuffer out = ByteBuffer.allocateDirect(src.length);
+    assertEquals(src.length, codec.decompress(page, out, src.length));
+    assertEquals(0, page.remaining());
+    assertEquals(0, out.remaining());
+    out.flip();
+    byte[] result = new byte[src.length];
+    out.get(result);
+    assertArrayEquals(src, result);
+  }
+
+  @Test
+  public void testEmptyPage() throws IOException {
+    QPLGzipPageCodec codec = codec();
+    ByteBuffer page = ByteBuffer.allocate(QPLGzipPageCodec.maxCompressedLength(0));
+    codec.compress(ByteBuffer.allocate(0), page);
+    page.flip();
+    byte[] bytes = new byte[page.remaining()];
+    page.duplicate().get(bytes);
+    assertEquals(0, gunzip(bytes).length);
+    assertEquals(0, codec.decompress(page, ByteBuffer.allocate(0), 0));
+  }
+
+  @Test
+  public void testInvalidPages() throws IOException {
+    byte[] src = getSrcArray(10 * 1024);
+    byte[] page = gzip(src);
+    QPLGzipPageCodec codec = codec();
+
+    assertThrows(QPLException.class, () -> codec.decompress(page, 0, page.length, src.length - 1));
+    assertThrows(
+        QPLOutputOverflowException.class,
+        () -> codec.decompress(ByteBuffer.wrap(page), ByteBuffer.allocate(10), src.length));
+    assertThrows(QPLException.class, () -> codec.decompress(page, 0, 9, src.length));
+    page[page.length - 8] ^= 1;
+    assertThrows(QPLException.class, () -> codec.decompress(page, 0, page.length, src.length));
+    page[page.length - 8] ^= 1;
+    page[0] = 0;
+    assertThrows(QPLException.class, () -> codec.decompress(page, 0, page.length, src.length));
+
+    // The codec is still usable after a failed page.
+    byte[] other = gzip(src);
+    assertArrayEquals(src, codec.decompress(other, 0, other.length, src.length));
+  }
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLHedgedCompressor;
+import com.intel.qpl.QPLJob;
+import com.intel.qpl.QPLOutputOverflowException;
+import com.intel.qpl.QPLUtils;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+
+public class QPLHedgedCompressorTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  private static byte[] inflate(byte[] compressed, int length, int uncompressedLength)
+      throws DataFormatException {
+    Inflater inflater = new Inflater(true);
+    inflater.setInput(compressed, 0, length);
+    byte[] result = new byte[uncompressedLength];
+    int n = inflater.inflate(result);
+    assertEquals(uncompressedLength, n);
+    assertTrue(inflater.finished());
+    inflater.end();
+    return result;
+  }
+
+  @Test
+  public void testCompress() throws DataFormatException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    QPLHedgedCompressor compressor = new QPLHedgedCompressor(1, 0, executor);
+    try {
+      for (int i = 0; i < 100; i++) {
+        byte[] src = getSrcArray(1 + RANDOM.nextInt(256 * 1024));
+        byte[] compressed = new byte[QPLCompressor.maxCompressedLength(src.length)];
+        int compressedSize = compressor.compress(src, compressed);
+        assertEquals(src.length, compressor.getBytesRead());
+        assertEquals(compressedSize, compressor.getBytesWritten());
+        assertArrayEquals(src, inflate(compressed, compressedSize, src.length));
+      }
+      assertEquals(100, compressor.getCompressCount());
+      assertEquals(100, compressor.getHardwareWinCount() + compressor.getSoftwareWinCount());
+      assertTrue(compressor.getHedgeCount() <= 100);
+    } finally {
+      compressor.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testHardwareFailure() throws Exception {
+    assumeTrue(QPLTestSuite.FORCE_HARDWARE);
+    QPLHedgedCompressor compressor = new QPLHedgedCompressor();
+    byte[] src = getSrcArray(64 * 1024);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(src.length)];
+    try {
+      compressor.compress(src, compressed);
+      assertEquals(1, compressor.getHardwareWinCount());
+
+      // Make the idle hardware lane find the work queues busy on its next compression.
+      Field lanesField = QPLHedgedCompressor.class.getDeclaredField("idleHardwareLanes");
+      lanesField.setAccessible(true);
+      Object lane = ((ArrayDeque<?>) lanesField.get(compressor)).peek();
+      Field laneCompressorField = lane.getClass().getDeclaredField("compressor");
+      laneCompressorField.setAccessible(true);
+      Field jobField = QPLCompressor.class.getDeclaredField("job");
+      jobField.setAccessible(true);
+      QPLTestSuite.injectBusyQueues((QPLJob) jobField.get(laneCompressorField.get(lane)), 0, 1);
+
+      int compressedSize = compressor.compress(src, compressed);
+      assertEquals(1, compressor.getHedgeCount());
+      assertEquals(1, compressor.getSoftwareWinCount());
+      assertEquals(src.length, compressor.getBytesRead());
+      assertArrayEquals(src, inflate(compressed, compressedSize, src.length));
+    } finally {
+      compressor.doClear();
+    }
+  }
+
+  @Test
+  public void testCompressByteBuffer() throws DataFormatException {
+    QPLHedgedCompressor compressor = new QPLHedgedCompressor();
+    byte[] bytes = getSrcArray(64 * 1024);
+    ByteBuffer src = ByteBuffer.allocateDirect(bytes.length);
+    src.put(bytes).flip();
+    ByteBuffer dst = ByteBuffer.allocate(QPLCompressor.maxCompressedLength(bytes.length));
+    int compressedSize = compressor.compress(src, dst);
+    assertEquals(bytes.length, src.position());
+    assertEquals(compressedSize, dst.position());
+    assertArrayEquals(bytes, inflate(dst.array(), compressedSize, bytes.length));
+    compressor.doClear();
+    assertThrows(IllegalStateException.class, () -> compressor.compress(bytes, new byte[16]));
+  }
+
+  @Test
+  public void testOutputOverflow() {
+    QPLHedgedCompressor compressor = new QPLHedgedCompressor();
+    byte[] src = new byte[64 * 1024];
+    RANDOM.nextBytes(src);
+    assertThrows(QPLOutputOverflowException.class, () -> compressor.compress(src, new byte[64]));
+    compressor.doClear();
+  }
+
+  @Test
+  public void testWrongParameters() {
+    QPLHedgedCompressor compressor = new QPLHedgedCompressor();
+    assertThrows(IllegalArgumentException.class, () -> compressor.setHedgePercentile(0));
+    assertThrows(IllegalArgumentException.class, () -> compressor.setHedgePercentile(1));
+    assertThrows(IllegalArgumentException.class, () -> compressor.setMinHedgeDelayNanos(-1));
+    compressor.setHedgePercentile(0.99);
+    assertEquals(0.99, compressor.getHedgePercentile());
+    assertEquals(QPLUtils.DEFAULT_MIN_HEDGE_DELAY_NANOS, compressor.getMinHedgeDelayNanos());
+    compressor.doClear();
+  }
+}
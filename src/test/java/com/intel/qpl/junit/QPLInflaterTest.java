@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLInflater;
+import com.intel.qpl.QPLUtils;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class QPLInflaterTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  private static byte[] deflate(byte[] src, boolean nowrap) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+    deflater.setInput(src);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    while (!deflater.finished()) {
+      out.write(buf, 0, deflater.deflate(buf));
+    }
+    deflater.end();
+    return out.toByteArray();
+  }
+
+  // Feeds 'compressed' in small pieces and reads the output in small pieces, like
+  // InflaterInputStream.
+  private static byte[] inflate(QPLInflater inflater, byte[] compressed)
+      throws DataFormatException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    int offset = 0;
+    while (!inflater.finished()) {
+      int n = inflater.inflate(buf);
+      out.write(buf, 0, n);
+      if (n == 0 && inflater.needsInput()) {
+        assertTrue(offset < compressed.length);
+        int length = Math.min(1 + RANDOM.nextInt(3000), compressed.length - offset);
+        inflater.setInput(compressed, offset, length);
+        offset += length;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void testInflate(boolean nowrap) throws DataFormatException {
+    byte[] src = getSrcArray(200000);
+    byte[] compressed = deflate(src, nowrap);
+    if (nowrap) {
+      // The end of a raw stream is detected on the input that follows it.
+      compressed = Arrays.copyOf(compressed, compressed.length + 1);
+    }
+    QPLInflater inflater = new QPLInflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, nowrap);
+    try {
+      assertArrayEquals(src, inflate(inflater, compressed));
+      assertEquals(src.length, inflater.getBytesWritten());
+      assertEquals(nowrap ? 1 : 0, inflater.getRemaining());
+
+      inflater.reset();
+      byte[] other = getSrcArray(5000);
+      byte[] otherCompressed = deflate(other, nowrap);
+      if (nowrap) {
+        otherCompressed = Arrays.copyOf(otherCompressed, otherCompressed.length + 1);
+      }
+      assertArrayEquals(other, inflate(inflater, otherCompressed));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  @Test
+  public void testChecksumMismatch() {
+    byte[] compressed = deflate(getSrcArray(10000), false);
+    compressed[compressed.length - 1] ^= 1;
+    QPLInflater inflater = new QPLInflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, false);
+    try {
+      inflater.setInput(compressed);
+      assertThrows(DataFormatException.class, () -> inflater.inflate(new byte[10000]));
+    } finally {
+      inflater.end();
+    }
+  }
+
+  @Test
+  public void testWrongHeader() {
+    QPLInflater inflater = new QPLInflater(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, false);
+    try {
+      inflater.setInput(new byte[] {0x12, 0x34, 0x56});
+      assertThrows(DataFormatException.class, () -> inflater.inflate(new byte[16]));
+    } finally {
+      inflater.end();
+    }
+  }
+}
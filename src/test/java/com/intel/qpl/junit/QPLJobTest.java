@@ -18,6 +18,7 @@ import static org.junit.jupiter.api.Assumptions.assumeFalse;
 import com.intel.qpl.QPLException;
 import com.intel.qpl.QPLJob;
 import com.intel.qpl.QPLOutputOverflowException;
+import com.intel.qpl.QPLQueuesBusyException;
 import com.intel.qpl.QPLUtils;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
@@ -1608,6 +1609,207 @@ public class QPLJobTest {
     assertEquals(qplJob.getFlags(), 0);
   }
 
+  @ParameterizedTest
+  @EnumSource(QPLUtils.ExecutionPaths.class)
+  public void testFailoverPolicy(QPLUtils.ExecutionPaths ePath) throws IOException {
+    assumeFalse(shouldSkip(ePath));
+    byte[] src = readAllBytes(FILE_PATH);
+    byte[] dst = new byte[QPLJob.maxCompressedLength(src.length)];
+    byte[] dec = new byte[src.length];
+
+    QPLJob qplJob = new QPLJob(ePath);
+    assertEquals(QPLUtils.FailoverPolicies.NONE, qplJob.getFailoverPolicy());
+    assertEquals(0, qplJob.getRetryTimeoutNanos());
+    qplJob.setFailoverPolicy(QPLUtils.FailoverPolicies.SOFTWARE);
+    qplJob.setRetryTimeoutNanos(1_000_000);
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    qplJob.setFlags(compressionFlags);
+    int compressedSize = qplJob.execute(src, dst);
+
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+    qplJob.setFlags(decompressionFlags);
+    int decompressedSize = qplJob.execute(dst, 0, compressedSize, dec, 0, dec.length);
+
+    assertEquals(QPLUtils.FailoverPolicies.SOFTWARE, qplJob.getFailoverPolicy());
+    assertEquals(1_000_000, qplJob.getRetryTimeoutNanos());
+    assertTrue(qplJob.getFailoverCount() <= 2);
+    assertTrue(QPLJob.getTotalFailoverCount() >= qplJob.getFailoverCount());
+    assertEquals(src.length, decompressedSize);
+    assertArrayEquals(src, dec);
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.ExecutionPaths.class)
+  public void testFailoverOnBusyQueues(QPLUtils.ExecutionPaths ePath) throws Exception {
+    assumeFalse(shouldSkip(ePath));
+    assumeFalse(ePath == QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    byte[] src = readAllBytes(FILE_PATH);
+    byte[] dst = new byte[QPLJob.maxCompressedLength(src.length)];
+    byte[] dec = new byte[src.length];
+
+    QPLJob qplJob = new QPLJob(ePath);
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    qplJob.setFlags(compressionFlags);
+    QPLTestSuite.injectBusyQueues(qplJob, 0, 1);
+    assertThrows(QPLQueuesBusyException.class, () -> qplJob.execute(src, dst));
+    assertEquals(0, qplJob.getFailoverCount());
+
+    long totalFailoverCount = QPLJob.getTotalFailoverCount();
+    qplJob.setFailoverPolicy(QPLUtils.FailoverPolicies.SOFTWARE);
+    QPLTestSuite.injectBusyQueues(qplJob, 0, 1);
+    int compressedSize = qplJob.execute(src, dst);
+    assertEquals(1, qplJob.getFailoverCount());
+    assertTrue(QPLJob.getTotalFailoverCount() > totalFailoverCount);
+    assertEquals(src.length, qplJob.getBytesRead());
+    assertEquals(compressedSize, qplJob.getBytesWritten());
+
+    QPLJob decompressor = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    decompressor.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+    decompressor.setFlags(decompressionFlags);
+    int decompressedSize = decompressor.execute(dst, 0, compressedSize, dec, 0, dec.length);
+    assertEquals(src.length, decompressedSize);
+    assertArrayEquals(src, dec);
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.ExecutionPaths.class)
+  public void testNumaNode(QPLUtils.ExecutionPaths ePath) throws IOException {
+    assumeFalse(shouldSkip(ePath));
+    byte[] src = readAllBytes(FILE_PATH);
+    byte[] dst = new byte[QPLJob.maxCompressedLength(src.length)];
+
+    QPLJob qplJob = new QPLJob(ePath);
+    assertEquals(QPLUtils.CURRENT_NUMA_NODE, qplJob.getNumaNode());
+    assertThrows(IllegalArgumentException.class, () -> qplJob.setNumaNode(-2));
+    qplJob.setNumaNode(0);
+    assertEquals(0, qplJob.getNumaNode());
+    long submissions = QPLJob.getNumaSubmissionCount(0);
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    qplJob.setFlags(compressionFlags);
+    qplJob.execute(src, dst);
+
+    if (ePath == QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE) {
+      assertEquals(-1, qplJob.getLastNumaNode());
+    } else {
+      assertEquals(0, qplJob.getLastNumaNode());
+      assertTrue(QPLJob.getNumaSubmissionCount(0) > submissions);
+    }
+    assertEquals(0, QPLJob.getNumaSubmissionCount(-1));
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.ExecutionPaths.class)
+  public void testParkWaitPolicy(QPLUtils.ExecutionPaths ePath) throws IOException {
+    assumeFalse(shouldSkip(ePath));
+    byte[] src = readAllBytes(FILE_PATH);
+    byte[] dst = new byte[QPLJob.maxCompressedLength(src.length)];
+    byte[] dec = new byte[src.length];
+
+    QPLJob qplJob = new QPLJob(ePath);
+    assertEquals(QPLUtils.WaitPolicies.BLOCK, qplJob.getWaitPolicy());
+    assertEquals(QPLUtils.DEFAULT_MAX_POLL_INTERVAL_NANOS, qplJob.getMaxPollIntervalNanos());
+    assertThrows(IllegalArgumentException.class, () -> qplJob.setMaxPollIntervalNanos(0));
+    qplJob.setWaitPolicy(QPLUtils.WaitPolicies.PARK);
+    qplJob.setMaxPollIntervalNanos(10_000);
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    qplJob.setFlags(compressionFlags);
+    int compressedSize = qplJob.execute(src, dst);
+
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+    qplJob.setFlags(decompressionFlags);
+    ByteBuffer compressedBB = ByteBuffer.allocateDirect(compressedSize);
+    compressedBB.put(dst, 0, compressedSize).flip();
+    ByteBuffer resultBB = ByteBuffer.allocateDirect(src.length);
+    int decompressedSize = qplJob.execute(compressedBB, resultBB);
+    resultBB.flip().get(dec);
+
+    assertEquals(QPLUtils.WaitPolicies.PARK, qplJob.getWaitPolicy());
+    assertEquals(10_000, qplJob.getMaxPollIntervalNanos());
+    assertEquals(src.length, decompressedSize);
+    assertArrayEquals(src, dec);
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.ExecutionPaths.class)
+  public void testParkWaitPolicyInterrupted(QPLUtils.ExecutionPaths ePath) throws IOException {
+    assumeFalse(shouldSkip(ePath));
+    byte[] src = readAllBytes(FILE_PATH);
+    ByteBuffer srcBB = ByteBuffer.allocateDirect(src.length);
+    srcBB.put(src).flip();
+    ByteBuffer compressedBB = ByteBuffer.allocateDirect(QPLJob.maxCompressedLength(src.length));
+
+    QPLJob qplJob = new QPLJob(ePath);
+    qplJob.setWaitPolicy(QPLUtils.WaitPolicies.PARK);
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    qplJob.setFlags(compressionFlags);
+    Thread.currentThread().interrupt();
+    try {
+      qplJob.execute(srcBB, compressedBB);
+      // The operation completes and the interrupt status is kept.
+      assertTrue(Thread.currentThread().isInterrupted());
+    } finally {
+      Thread.interrupted();
+    }
+    compressedBB.flip();
+
+    ByteBuffer resultBB = ByteBuffer.allocate(src.length);
+    executeDecompress(qplJob, compressedBB, resultBB, 1);
+    assertArrayEquals(src, resultBB.array());
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.BackoffPolicies.class)
+  public void testBackoffPolicyWithArrays(QPLUtils.BackoffPolicies backoffPolicy)
+      throws IOException {
+    QPLUtils.ExecutionPaths ePath =
+        QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE);
+    byte[] src = readAllBytes(FILE_PATH);
+    byte[] dst = new byte[QPLJob.maxCompressedLength(src.length)];
+
+    QPLJob qplJob = new QPLJob(ePath);
+    qplJob.setBackoffPolicy(backoffPolicy);
+    qplJob.setRetryTimeoutNanos(1_000_000);
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    qplJob.setFlags(compressionFlags);
+    int compressedSize = qplJob.execute(src, 0, src.length, dst, 0, dst.length);
+
+    // Decompress into a heap buffer too small for the whole output, then finish the stream.
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_DECOMPRESS);
+    qplJob.setFlags(decompressionFlags);
+    ByteBuffer compressedBB = ByteBuffer.wrap(dst, 0, compressedSize);
+    ByteBuffer resultBB = ByteBuffer.allocate(src.length);
+    resultBB.limit(src.length / 2);
+    qplJob.execute(compressedBB, resultBB);
+    assertTrue(qplJob.isOutputInsufficient());
+    resultBB.limit(src.length);
+    qplJob.setFlags(QPLUtils.Flags.QPL_FLAG_LAST.getId());
+    qplJob.execute(compressedBB, resultBB);
+
+    assertEquals(src.length, resultBB.position());
+    assertArrayEquals(src, resultBB.array());
+  }
+
+  @Test
+  public void testFinishWithEmptyReadOnlySrc() throws IOException {
+    byte[] src = readAllBytes(FILE_PATH);
+    ByteBuffer compressedBB = ByteBuffer.allocate(QPLJob.maxCompressedLength(src.length));
+
+    QPLJob qplJob = new QPLJob(executionPath);
+    qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
+    qplJob.setFlags(
+        QPLUtils.Flags.QPL_FLAG_FIRST.getId() | QPLUtils.Flags.QPL_FLAG_DYNAMIC_HUFFMAN.getId());
+    qplJob.execute(ByteBuffer.wrap(src).asReadOnlyBuffer(), compressedBB);
+    // The stream is finished by a call without input, which is staged like any read-only source.
+    qplJob.setFlags(QPLUtils.Flags.QPL_FLAG_LAST.getId());
+    qplJob.execute(ByteBuffer.allocate(0).asReadOnlyBuffer(), compressedBB);
+    compressedBB.flip();
+
+    ByteBuffer resultBB = ByteBuffer.allocate(src.length);
+    executeDecompress(qplJob, compressedBB, resultBB, 1);
+    assertEquals(src.length, resultBB.position());
+    assertArrayEquals(src, resultBB.array());
+  }
+
   private void executeCompress(
       QPLJob qplJob, ByteBuffer srcBB, ByteBuffer compressedBB, int cl, int rt) {
     qplJob.setOperationType(QPLUtils.Operations.QPL_OP_COMPRESS);
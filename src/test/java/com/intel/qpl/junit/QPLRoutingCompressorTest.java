@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLRoutingCompressor;
+import com.intel.qpl.QPLUtils;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class QPLRoutingCompressorTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {100, 4096, 65536, 1048576})
+  public void testBACompressDecompress(int n) {
+    byte[] src = getSrcArray(n);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(n)];
+    byte[] result = new byte[n];
+
+    QPLRoutingCompressor compressor = new QPLRoutingCompressor();
+    for (int i = 0; i < 100; i++) {
+      int compressedSize = compressor.compress(src, compressed);
+      int decompressedSize = compressor.decompress(compressed, 0, compressedSize, result, 0, n);
+      assertEquals(n, decompressedSize);
+      assertArrayEquals(src, result);
+    }
+    assertTrue(compressor.getCompressThreshold() > 0);
+    assertTrue(compressor.getDecompressThreshold() > 0);
+    compressor.doClear();
+  }
+
+  @Test
+  public void testThresholdLearning() throws Exception {
+    Class<?> tunerClass = Class.forName("com.intel.qpl.QPLRoutingCompressor$PathTuner");
+    Constructor<?> constructor = tunerClass.getDeclaredConstructor(int.class);
+    Method record = tunerClass.getDeclaredMethod("record", boolean.class, int.class, long.class);
+    Method useHardware = tunerClass.getDeclaredMethod("useHardware", int.class);
+    Method getThreshold = tunerClass.getDeclaredMethod("getThreshold");
+    constructor.setAccessible(true);
+    record.setAccessible(true);
+    useHardware.setAccessible(true);
+    getThreshold.setAccessible(true);
+    Object tuner = constructor.newInstance(1 << 20);
+    assertEquals(1 << 20, getThreshold.invoke(tuner));
+
+    // The software path costs 1ns per byte, the hardware path 8192ns plus 0.1ns per byte, so they
+    // break even at about 9100 bytes: the hardware loses at 8192 bytes and wins from 16384 bytes.
+    for (int length = 64; length <= 1 << 20; length *= 2) {
+      record.invoke(tuner, false, length, (long) length);
+      record.invoke(tuner, true, length, 8192L + length / 10);
+    }
+    assertEquals(16384, getThreshold.invoke(tuner));
+
+    // Sizes far from the break-even point always run on the faster path.
+    for (int i = 0; i < 1024; i++) {
+      assertFalse((boolean) useHardware.invoke(tuner, 1024));
+      assertTrue((boolean) useHardware.invoke(tuner, 1 << 20));
+    }
+    // Every 64th call close to it is routed to the other path.
+    int explored = 0;
+    for (int i = 0; i < 64 * 16; i++) {
+      if (!(boolean) useHardware.invoke(tuner, 16384)) {
+        explored++;
+      }
+    }
+    assertEquals(16, explored);
+    explored = 0;
+    for (int i = 0; i < 64 * 16; i++) {
+      if ((boolean) useHardware.invoke(tuner, 8192)) {
+        explored++;
+      }
+    }
+    assertEquals(16, explored);
+
+    // A slower hardware path, e.g. under contention, moves the break-even point to about 73000
+    // bytes, once the new latencies outweigh the old ones.
+    for (int i = 0; i < 64; i++) {
+      for (int length = 64; length <= 1 << 20; length *= 2) {
+        record.invoke(tuner, true, length, 65536L + length / 10);
+      }
+    }
+    assertEquals(131072, getThreshold.invoke(tuner));
+  }
+
+  @Test
+  public void testDBBCompressDecompress() {
+    int n = 65536;
+    byte[] src = getSrcArray(n);
+    ByteBuffer srcBB = ByteBuffer.allocateDirect(n);
+    srcBB.put(src).flip();
+    ByteBuffer compressedBB = ByteBuffer.allocateDirect(QPLCompressor.maxCompressedLength(n));
+    ByteBuffer resultBB = ByteBuffer.allocateDirect(n);
+
+    QPLRoutingCompressor compressor = new QPLRoutingCompressor();
+    int compressedSize = compressor.compress(srcBB, compressedBB);
+    compressedBB.flip();
+    int decompressedSize = compressor.decompress(compressedBB, resultBB);
+    resultBB.flip();
+    byte[] result = new byte[n];
+    resultBB.get(result);
+
+    assertEquals(compressedSize, compressedBB.position());
+    assertEquals(n, decompressedSize);
+    assertArrayEquals(src, result);
+  }
+
+  @Test
+  public void testDecompressionOverflow() {
+    int n = 65536;
+    byte[] src = getSrcArray(n);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(n)];
+    byte[] result = new byte[n / 4];
+    byte[] merged = new byte[n];
+
+    QPLRoutingCompressor compressor = new QPLRoutingCompressor();
+    int compressedSize = compressor.compress(src, compressed);
+    int compressedOffset = 0;
+    int resultOffset = 0;
+    compressor.decompress(compressed, 0, compressedSize, result, 0, result.length);
+    while (compressor.isOutputInsufficient()) {
+      System.arraycopy(result, 0, merged, resultOffset, compressor.getBytesWritten());
+      compressedOffset += compressor.getBytesRead();
+      resultOffset += compressor.getBytesWritten();
+      compressor.decompress(
+          compressed,
+          compressedOffset,
+          compressedSize - compressedOffset,
+          result,
+          0,
+          result.length);
+    }
+    System.arraycopy(result, 0, merged, resultOffset, compressor.getBytesWritten());
+    assertArrayEquals(src, merged);
+  }
+
+  @Test
+  public void testWrongThreshold() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new QPLRoutingCompressor(
+                QPLUtils.DEFAULT_COMPRESSION_LEVEL, QPLUtils.DEFAULT_RETRY_COUNT, 0));
+  }
+}
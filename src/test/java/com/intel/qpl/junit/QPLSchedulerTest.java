@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.intel.qpl.QPLCompressor;
+import com.intel.qpl.QPLJob;
+import com.intel.qpl.QPLQueuesBusyException;
+import com.intel.qpl.QPLScheduler;
+import com.intel.qpl.QPLUtils;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+
+public class QPLSchedulerTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  private static byte[] inflate(byte[] compressed, int length, int uncompressedLength)
+      throws DataFormatException {
+    Inflater inflater = new Inflater(true);
+    inflater.setInput(compressed, 0, length);
+    byte[] result = new byte[uncompressedLength];
+    int n = inflater.inflate(result);
+    assertEquals(uncompressedLength, n);
+    assertTrue(inflater.finished());
+    inflater.end();
+    return result;
+  }
+
+  @Test
+  public void testSplitBulkCompression() throws DataFormatException {
+    QPLScheduler scheduler = new QPLScheduler(2);
+    QPLCompressor compressor = new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+    compressor.setScheduler(scheduler, QPLUtils.Priorities.LOW);
+    byte[] src = getSrcArray(5 * 1024 * 1024 + 17);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(src.length)];
+
+    int compressedSize = compressor.compress(src, compressed);
+    assertTrue(scheduler.getExecutedCount(QPLUtils.Priorities.LOW) > 1);
+    assertEquals(src.length, compressor.getBytesRead());
+    assertEquals(compressedSize, compressor.getBytesWritten());
+    assertArrayEquals(src, inflate(compressed, compressedSize, src.length));
+
+    ByteBuffer srcBB = ByteBuffer.allocateDirect(src.length);
+    srcBB.put(src).flip();
+    ByteBuffer compressedBB = ByteBuffer.allocateDirect(compressed.length);
+    compressedSize = compressor.compress(srcBB, compressedBB);
+    assertEquals(src.length, srcBB.position());
+    assertEquals(compressedSize, compressedBB.position());
+    compressedBB.flip();
+    compressedBB.get(compressed, 0, compressedSize);
+    assertArrayEquals(src, inflate(compressed, compressedSize, src.length));
+
+    byte[] result = new byte[src.length];
+    int decompressedSize =
+        compressor.decompress(compressed, 0, compressedSize, result, 0, result.length);
+    assertEquals(src.length, decompressedSize);
+    assertArrayEquals(src, result);
+    assertEquals(0, scheduler.getRunningCount());
+  }
+
+  @Test
+  public void testFailoverOfLaterChunk() throws Exception {
+    assumeTrue(QPLTestSuite.FORCE_HARDWARE);
+    QPLScheduler scheduler = new QPLScheduler(2);
+    QPLCompressor compressor = new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE, 1, 0);
+    compressor.setScheduler(scheduler, QPLUtils.Priorities.LOW);
+    Field jobField = QPLCompressor.class.getDeclaredField("job");
+    jobField.setAccessible(true);
+    QPLJob job = (QPLJob) jobField.get(compressor);
+    byte[] src = getSrcArray(5 * 1024 * 1024 + 17);
+    byte[] compressed = new byte[QPLCompressor.maxCompressedLength(src.length)];
+
+    QPLTestSuite.injectBusyQueues(job, 1, 1);
+    assertThrows(QPLQueuesBusyException.class, () -> compressor.compress(src, compressed));
+    assertEquals(0, compressor.getFailoverCount());
+
+    compressor.setFailoverPolicy(QPLUtils.FailoverPolicies.SOFTWARE);
+    QPLTestSuite.injectBusyQueues(job, 1, 1);
+    int compressedSize = compressor.compress(src, compressed);
+    assertEquals(1, compressor.getFailoverCount());
+    assertEquals(src.length, compressor.getBytesRead());
+    assertEquals(compressedSize, compressor.getBytesWritten());
+    assertArrayEquals(src, inflate(compressed, compressedSize, src.length));
+    assertEquals(0, scheduler.getRunningCount());
+  }
+
+  @Test
+  public void testConcurrentClasses() throws Exception {
+    QPLScheduler scheduler = new QPLScheduler(1);
+    scheduler.setConcurrencyLimit(QPLUtils.Priorities.LOW, 1);
+    scheduler.setWeight(QPLUtils.Priorities.HIGH, 16);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        QPLUtils.Priorities priority =
+            t % 2 == 0 ? QPLUtils.Priorities.HIGH : QPLUtils.Priorities.LOW;
+        int length = priority == QPLUtils.Priorities.HIGH ? 4096 : 3 * 1024 * 1024;
+        futures.add(
+            executor.submit(
+                () -> {
+                  QPLCompressor compressor =
+                      new QPLCompressor(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE, 1, 0);
+                  compressor.setScheduler(scheduler, priority);
+                  byte[] src = getSrcArray(length);
+                  byte[] compressed = new byte[QPLCompressor.maxCompressedLength(length)];
+                  byte[] result = new byte[length];
+                  for (int i = 0; i < 5; i++) {
+                    int compressedSize = compressor.compress(src, compressed);
+                    compressor.decompress(compressed, 0, compressedSize, result, 0, length);
+                    assertArrayEquals(src, result);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(0, scheduler.getRunningCount());
+    assertEquals(40, scheduler.getExecutedCount(QPLUtils.Priorities.HIGH));
+    assertTrue(scheduler.getExecutedCount(QPLUtils.Priorities.LOW) > 40);
+  }
+
+  @Test
+  public void testWrongParameters() {
+    assertThrows(IllegalArgumentException.class, () -> new QPLScheduler(0));
+    QPLScheduler scheduler = new QPLScheduler(4);
+    assertEquals(4, scheduler.getMaxConcurrency());
+    assertEquals(
+        QPLUtils.Priorities.HIGH.getDefaultWeight(),
+        scheduler.getWeight(QPLUtils.Priorities.HIGH));
+    assertEquals(Integer.MAX_VALUE, scheduler.getConcurrencyLimit(QPLUtils.Priorities.LOW));
+    assertThrows(
+        IllegalArgumentException.class, () -> scheduler.setWeight(QPLUtils.Priorities.LOW, 0));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> scheduler.setConcurrencyLimit(QPLUtils.Priorities.LOW, 0));
+    assertThrows(IllegalArgumentException.class, () -> scheduler.setMaxConcurrency(-1));
+  }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLBufferPool;
+import com.intel.qpl.QPLException;
+import com.intel.qpl.QPLJob;
+import com.intel.qpl.QPLStreamDecoder;
+import com.intel.qpl.QPLUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+public class QPLStreamDecoderTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  private static byte[] zlib(byte[] src) {
+    Deflater deflater = new Deflater();
+    deflater.setInput(src);
+    deflater.finish();
+    byte[] compressed = new byte[src.length + 1024];
+    int length = deflater.deflate(compressed);
+    deflater.end();
+    return Arrays.copyOf(compressed, length);
+  }
+
+  private static byte[] gzip(byte[] src) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(src);
+    }
+    return out.toByteArray();
+  }
+
+  // Decodes the stream given in pieces of 'chunkSize' bytes, keeping the bytes left unconsumed.
+  private static byte[] decode(QPLStreamDecoder decoder, byte[] compressed, int chunkSize) {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    ByteBuffer cumulation = ByteBuffer.allocateDirect(compressed.length);
+    cumulation.flip();
+    for (int offset = 0; offset < compressed.length; offset += chunkSize) {
+      int length = Math.min(chunkSize, compressed.length - offset);
+      cumulation.compact().put(compressed, offset, length).flip();
+      for (ByteBuffer buffer : decoder.decode(cumulation)) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        result.write(bytes, 0, bytes.length);
+        decoder.release(buffer);
+      }
+    }
+    assertEquals(0, cumulation.remaining());
+    return result.toByteArray();
+  }
+
+  @Test
+  public void testDecodeZlib() {
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      QPLStreamDecoder decoder =
+          new QPLStreamDecoder(job, QPLUtils.StreamFormats.ZLIB, new QPLBufferPool(8192, 4));
+      byte[] src = getSrcArray(100_000);
+      assertArrayEquals(src, decode(decoder, zlib(src), 1));
+      assertTrue(decoder.isFinished());
+      assertEquals(src.length, decoder.getBytesWritten());
+
+      decoder.reset();
+      assertFalse(decoder.isFinished());
+      assertArrayEquals(src, decode(decoder, zlib(src), 3000));
+      assertTrue(decoder.isFinished());
+    } finally {
+      job.doClear();
+    }
+  }
+
+  @Test
+  public void testDecodeGzip() throws IOException {
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      QPLStreamDecoder decoder =
+          new QPLStreamDecoder(job, QPLUtils.StreamFormats.GZIP, new QPLBufferPool(8192, 4));
+      byte[] src = getSrcArray(100_000);
+      byte[] compressed = gzip(src);
+      // Adds a file name to the header.
+      byte[] named = new byte[compressed.length + 5];
+      System.arraycopy(compressed, 0, named, 0, 10);
+      named[3] = 0x08;
+      System.arraycopy("name\0".getBytes(StandardCharsets.US_ASCII), 0, named, 10, 5);
+      System.arraycopy(compressed, 10, named, 15, compressed.length - 10);
+
+      assertArrayEquals(src, decode(decoder, named, 7));
+      assertTrue(decoder.isFinished());
+    } finally {
+      job.doClear();
+    }
+  }
+
+  @Test
+  public void testDecodeAsync() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      QPLStreamDecoder decoder =
+          new QPLStreamDecoder(job, QPLUtils.StreamFormats.GZIP, new QPLBufferPool(65536, 4));
+      byte[] src = getSrcArray(50_000);
+      List<ByteBuffer> buffers = decoder.decodeAsync(ByteBuffer.wrap(gzip(src)), executor).get();
+      assertEquals(1, buffers.size());
+      byte[] result = new byte[buffers.get(0).remaining()];
+      buffers.get(0).get(result);
+      assertArrayEquals(src, result);
+      assertTrue(decoder.isFinished());
+    } finally {
+      job.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCorruptedTrailer() throws IOException {
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      QPLStreamDecoder decoder =
+          new QPLStreamDecoder(job, QPLUtils.StreamFormats.GZIP, new QPLBufferPool(65536, 4));
+      byte[] compressed = gzip(getSrcArray(1000));
+      compressed[compressed.length - 5] ^= 1;
+      assertThrows(QPLException.class, () -> decoder.decode(ByteBuffer.wrap(compressed)));
+      assertThrows(
+          QPLException.class,
+          () ->
+              new QPLStreamDecoder(job, QPLUtils.StreamFormats.ZLIB, new QPLBufferPool(4096, 1))
+                  .decode(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+    } finally {
+      job.doClear();
+    }
+  }
+}
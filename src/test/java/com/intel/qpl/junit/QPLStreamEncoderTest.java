@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLJob;
+import com.intel.qpl.QPLOutputOverflowException;
+import com.intel.qpl.QPLStreamEncoder;
+import com.intel.qpl.QPLUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class QPLStreamEncoderTest {
+  private static final Random RANDOM = new Random();
+  private static final int MESSAGE_LENGTH = 10_000;
+  private static final int MESSAGES = 8;
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    buffer.flip();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static byte[] decompress(QPLUtils.StreamFormats format, byte[] compressed, int length)
+      throws IOException, DataFormatException {
+    if (format == QPLUtils.StreamFormats.GZIP) {
+      try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+        return in.readAllBytes();
+      }
+    }
+    Inflater inflater = new Inflater(format == QPLUtils.StreamFormats.RAW);
+    inflater.setInput(compressed);
+    byte[] result = new byte[length];
+    assertEquals(length, inflater.inflate(result));
+    assertTrue(inflater.finished());
+    inflater.end();
+    return result;
+  }
+
+  @ParameterizedTest
+  @EnumSource(QPLUtils.StreamFormats.class)
+  public void testEncode(QPLUtils.StreamFormats format) throws IOException, DataFormatException {
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      QPLStreamEncoder encoder = new QPLStreamEncoder(job, format);
+      byte[] src = getSrcArray(MESSAGE_LENGTH * MESSAGES);
+      ByteBuffer dst =
+          ByteBuffer.allocateDirect(
+              MESSAGES * QPLStreamEncoder.maxEncodedLength(MESSAGE_LENGTH)
+                  + QPLStreamEncoder.maxEncodedLength(0));
+      for (int i = 0; i < MESSAGES; i++) {
+        ByteBuffer message = ByteBuffer.allocateDirect(MESSAGE_LENGTH);
+        message.put(src, i * MESSAGE_LENGTH, MESSAGE_LENGTH).flip();
+        assertTrue(encoder.encode(message, dst) > 0);
+        assertEquals(0, message.remaining());
+      }
+      encoder.finish(dst);
+      assertTrue(encoder.isFinished());
+      assertEquals(src.length, encoder.getBytesRead());
+      assertArrayEquals(src, decompress(format, toArray(dst), src.length));
+    } finally {
+      job.doClear();
+    }
+  }
+
+  @Test
+  public void testEncodeAsync() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      QPLStreamEncoder encoder = new QPLStreamEncoder(job, QPLUtils.StreamFormats.GZIP);
+      byte[] src = getSrcArray(MESSAGE_LENGTH * MESSAGES);
+      ByteBuffer[] outputs = new ByteBuffer[MESSAGES + 1];
+      CompletableFuture<?>[] futures = new CompletableFuture<?>[MESSAGES + 1];
+      for (int i = 0; i < MESSAGES; i++) {
+        outputs[i] = ByteBuffer.allocate(QPLStreamEncoder.maxEncodedLength(MESSAGE_LENGTH));
+        futures[i] =
+            encoder.encodeAsync(
+                ByteBuffer.wrap(src, i * MESSAGE_LENGTH, MESSAGE_LENGTH), outputs[i], executor);
+      }
+      outputs[MESSAGES] = ByteBuffer.allocate(QPLStreamEncoder.maxEncodedLength(0));
+      futures[MESSAGES] = encoder.finishAsync(outputs[MESSAGES], executor);
+      CompletableFuture.allOf(futures).get();
+
+      byte[] compressed = new byte[0];
+      for (ByteBuffer output : outputs) {
+        byte[] bytes = toArray(output);
+        compressed = Arrays.copyOf(compressed, compressed.length + bytes.length);
+        System.arraycopy(bytes, 0, compressed, compressed.length - bytes.length, bytes.length);
+      }
+      assertArrayEquals(src, decompress(QPLUtils.StreamFormats.GZIP, compressed, src.length));
+    } finally {
+      job.doClear();
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testEmptyStream() throws IOException, DataFormatException {
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      for (QPLUtils.StreamFormats format : QPLUtils.StreamFormats.values()) {
+        QPLStreamEncoder encoder = new QPLStreamEncoder(job, format);
+        ByteBuffer dst = ByteBuffer.allocate(QPLStreamEncoder.maxEncodedLength(0));
+        assertEquals(0, encoder.encode(ByteBuffer.allocate(0), dst));
+        encoder.finish(dst);
+        assertEquals(0, decompress(format, toArray(dst), 0).length);
+      }
+    } finally {
+      job.doClear();
+    }
+  }
+
+  @Test
+  public void testWrongParameters() {
+    QPLJob job = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+    try {
+      QPLStreamEncoder encoder = new QPLStreamEncoder(job, QPLUtils.StreamFormats.ZLIB);
+      assertThrows(
+          QPLOutputOverflowException.class,
+          () -> encoder.encode(ByteBuffer.allocate(MESSAGE_LENGTH), ByteBuffer.allocate(100)));
+      encoder.finish(ByteBuffer.allocate(QPLStreamEncoder.maxEncodedLength(0)));
+      assertThrows(
+          IllegalStateException.class,
+          () -> encoder.encode(ByteBuffer.allocate(1), ByteBuffer.allocate(1024)));
+    } finally {
+      job.doClear();
+    }
+  }
+}
@@ -8,6 +8,7 @@ package com.intel.qpl.junit;
 
 import com.intel.qpl.QPLJob;
 import com.intel.qpl.QPLUtils;
+import java.lang.reflect.Field;
 import org.junit.platform.suite.api.SelectPackages;
 import org.junit.platform.suite.api.Suite;
 
@@ -18,4 +19,16 @@ public class QPLTestSuite {
       QPLJob.getValidExecutionPath(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE);
   public static final boolean FORCE_HARDWARE =
       (path != null && path.equals(QPLUtils.ExecutionPaths.QPL_PATH_HARDWARE));
+
+  // Makes the given job find the work queues busy for 'operations' operations on the accelerator,
+  // after letting 'skips' operations through.
+  static void injectBusyQueues(QPLJob job, int skips, int operations)
+      throws ReflectiveOperationException {
+    Field skipsField = QPLJob.class.getDeclaredField("injectedBusySkips");
+    Field operationsField = QPLJob.class.getDeclaredField("injectedBusyOperations");
+    skipsField.setAccessible(true);
+    operationsField.setAccessible(true);
+    skipsField.setInt(job, skips);
+    operationsField.setInt(job, operations);
+  }
 }
@@ -30,6 +30,22 @@ public class QPLUtilsTest {
     // test Operations enum
     assertEquals(QPLUtils.Operations.QPL_OP_DECOMPRESS.getOperationCode(), 0);
     assertEquals(QPLUtils.Operations.QPL_OP_COMPRESS.getOperationCode(), 1);
+
+    // test BackoffPolicies enum
+    assertEquals(QPLUtils.BackoffPolicies.SPIN.getBackoffPolicyCode(), 0);
+    assertEquals(QPLUtils.BackoffPolicies.YIELD.getBackoffPolicyCode(), 1);
+    assertEquals(QPLUtils.BackoffPolicies.EXPONENTIAL.getBackoffPolicyCode(), 2);
+  }
+
+  @Test
+  public void testWrongBackoffCap() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> {
+          QPLJob qplJob = new QPLJob(QPLUtils.ExecutionPaths.QPL_PATH_SOFTWARE);
+          qplJob.setBackoffPolicy(QPLUtils.BackoffPolicies.EXPONENTIAL);
+          qplJob.setBackoffCapNanos(0);
+        });
   }
 
   @Test
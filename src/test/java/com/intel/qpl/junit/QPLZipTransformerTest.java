@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Intel Corporation
+ *
+ * SPDX-License-Identifier: MIT
+ ******************************************************************************/
+package com.intel.qpl.junit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.intel.qpl.QPLGZIPInputStream;
+import com.intel.qpl.QPLGZIPOutputStream;
+import com.intel.qpl.QPLOffloadStatistics;
+import com.intel.qpl.QPLZipDeflater;
+import com.intel.qpl.QPLZipInflater;
+import com.intel.qpl.QPLZipInputStream;
+import com.intel.qpl.QPLZipOutputStream;
+import com.intel.qpl.QPLZipTransformer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+
+public class QPLZipTransformerTest {
+  private static final Random RANDOM = new Random();
+
+  private static byte[] getSrcArray(int len) {
+    byte[] bytes = new byte[len];
+    for (int i = 0; i < len; i++) bytes[i] = (byte) (RANDOM.nextInt(8));
+    return bytes;
+  }
+
+  public static class Sample {
+    public Deflater deflater() {
+      return new Deflater(Deflater.BEST_SPEED, true);
+    }
+
+    public Inflater inflater() {
+      return new Inflater();
+    }
+
+    public Supplier<Deflater> deflaterFactory() {
+      return Deflater::new;
+    }
+
+    public Object[] zipStreams() {
+      return new Object[] {
+        new ZipOutputStream(new ByteArrayOutputStream()),
+        new ZipInputStream(new ByteArrayInputStream(new byte[0]))
+      };
+    }
+
+    public Object[] gzipStreams() throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      gzip.close();
+      return new Object[] {gzip, new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))};
+    }
+
+    public byte[] roundTrip(byte[] data) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (GZIPOutputStream gzip = new GZIPOutputStream(out, 4096)) {
+        gzip.write(data);
+      }
+      try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+        return in.readAllBytes();
+      }
+    }
+  }
+
+  public static class SampleDeflater extends Deflater {
+    public SampleDeflater() {
+      super(Deflater.BEST_SPEED);
+    }
+  }
+
+  // Defines the given class from the rewritten bytes and loads the others from the parent.
+  private static class RewritingLoader extends ClassLoader {
+    private final String name;
+    private final byte[] bytes;
+
+    RewritingLoader(String name, byte[] bytes) {
+      super(QPLZipTransformerTest.class.getClassLoader());
+      this.name = name;
+      this.bytes = bytes;
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+      if (!name.equals(this.name)) {
+        return super.loadClass(name, resolve);
+      }
+      Class<?> c = findLoadedClass(name);
+      return c != null ? c : defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  private static byte[] classBytes(Class<?> c) throws IOException {
+    String resource = c.getName().substring(c.getPackageName().length() + 1) + ".class";
+    try (InputStream in = c.getResourceAsStream(resource)) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static byte[] transform(Class<?> c) throws IOException {
+    return new QPLZipTransformer()
+        .transform(c.getClassLoader(), c.getName().replace('.', '/'), null, null, classBytes(c));
+  }
+
+  private static Object call(Class<?> c, String method, Object... args) throws Exception {
+    Object sample = c.getConstructor().newInstance();
+    for (Method m : c.getMethods()) {
+      if (m.getName().equals(method)) {
+        return m.invoke(sample, args);
+      }
+    }
+    throw new NoSuchMethodException(method);
+  }
+
+  @Test
+  public void testRewrite() throws Exception {
+    byte[] rewritten = transform(Sample.class);
+    assertNotNull(rewritten);
+    Class<?> sample =
+        new RewritingLoader(Sample.class.getName(), rewritten).loadClass(Sample.class.getName());
+
+    assertTrue(call(sample, "deflater") instanceof QPLZipDeflater);
+    assertTrue(call(sample, "inflater") instanceof QPLZipInflater);
+    assertTrue(((Supplier<?>) call(sample, "deflaterFactory")).get() instanceof QPLZipDeflater);
+    Object[] zipStreams = (Object[]) call(sample, "zipStreams");
+    assertTrue(zipStreams[0] instanceof QPLZipOutputStream);
+    assertTrue(zipStreams[1] instanceof QPLZipInputStream);
+    Object[] gzipStreams = (Object[]) call(sample, "gzipStreams");
+    assertTrue(gzipStreams[0] instanceof QPLGZIPOutputStream);
+    assertTrue(gzipStreams[1] instanceof QPLGZIPInputStream);
+  }
+
+  @Test
+  public void testRoundTripStatistics() throws Exception {
+    Class<?> sample =
+        new RewritingLoader(Sample.class.getName(), transform(Sample.class))
+            .loadClass(Sample.class.getName());
+    QPLOffloadStatistics.clear();
+    byte[] src = getSrcArray(256 * 1024);
+    assertArrayEquals(src, (byte[]) call(sample, "roundTrip", (Object) src));
+
+    long calls = 0;
+    long bytes = 0;
+    for (QPLOffloadStatistics.Site site : QPLOffloadStatistics.getSites().values()) {
+      assertTrue(site.getName().startsWith(Sample.class.getName() + ".roundTrip("));
+      calls += site.getOffloadedCalls() + site.getFallbackCalls();
+      bytes += site.getOffloadedBytes() + site.getFallbackBytes();
+    }
+    assertEquals(2, QPLOffloadStatistics.getSites().size());
+    assertTrue(calls > 0);
+    // The uncompressed bytes read by the deflater plus those written by the inflater.
+    assertEquals(2L * src.length, bytes);
+  }
+
+  @Test
+  public void testUnchanged() throws IOException {
+    // A subclass calls its JDK superclass constructor, and other classes do not use java.util.zip.
+    assertNull(transform(SampleDeflater.class));
+    assertNull(transform(QPLTestSuite.class));
+    assertNull(
+        new QPLZipTransformer()
+            .transform(
+                getClass().getClassLoader(),
+                "java/util/zip/Sample",
+                null,
+                null,
+                classBytes(Sample.class)));
+  }
+}